@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An index, for a single resource type, from an Identifier (as the key built by the proxy from its system, type
+ * and value) to the logical id of the Resource that carries it, together with a short lived record of the
+ * Identifiers that were searched for and NOT found (negative entries).
+ *
+ * To hold millions of Identifiers, the index does not keep the keys themselves: each key is reduced to a 64-bit
+ * fingerprint, held in an open addressing (linear probing) table of primitive arrays, and the logical ids are held
+ * as UTF-8 byte arrays. The consequence is that a (very unlikely) fingerprint collision can produce a wrong answer,
+ * so callers must verify a positive answer against the Resource itself.
+ *
+ * The table starts small and doubles as it fills. When the index reaches its maximum number of entries, it is
+ * cleared and rebuilt from subsequent searches.
+ */
+public class IdentifierIndex {
+    /**
+     * Returned by lookup() for an Identifier known (within the negative time-to-live) not to exist.
+     */
+    public static final String IDENTIFIER_ABSENT = "";
+
+    private static final long EMPTY_SLOT = 0L;
+    private static final long DELETED_SLOT = 1L;
+    private static final long POSITIVE_ENTRY = Long.MAX_VALUE;
+    private static final int INITIAL_TABLE_SIZE = 1024;
+
+    private String resourceType;
+    private int maximumEntries;
+    private long negativeTimeToLive;
+    private long[] fingerprints;
+    private byte[][] logicalIds;
+    private long[] expiresAt;
+    private int tableMask;
+    private int maximumTableSize;
+    private int entryCount;
+    private int deletedCount;
+    private AtomicLong hitCount;
+    private AtomicLong negativeHitCount;
+    private AtomicLong missCount;
+    private AtomicLong staleCount;
+
+    public IdentifierIndex(String resourceType, int maximumEntries, long negativeTimeToLive){
+        this.resourceType = resourceType;
+        this.maximumEntries = maximumEntries;
+        this.negativeTimeToLive = negativeTimeToLive;
+        this.hitCount = new AtomicLong(0);
+        this.negativeHitCount = new AtomicLong(0);
+        this.missCount = new AtomicLong(0);
+        this.staleCount = new AtomicLong(0);
+        this.maximumTableSize = INITIAL_TABLE_SIZE;
+        while(maximumTableSize < maximumEntries + (maximumEntries / 3) && maximumTableSize < (1 << 30)){
+            maximumTableSize = maximumTableSize << 1;
+        }
+        allocateTable(INITIAL_TABLE_SIZE);
+    }
+
+    /**
+     * @param identifierKey The key of the Identifier searched for
+     * @return the logical id of the Resource carrying the Identifier, IDENTIFIER_ABSENT if it is known not to
+     * exist, or null if the index does not know
+     */
+    public synchronized String lookup(String identifierKey){
+        if(maximumEntries <= 0){
+            return(null);
+        }
+        int slot = findSlot(fingerprint(identifierKey));
+        if(slot < 0){
+            missCount.incrementAndGet();
+            return(null);
+        }
+        if(expiresAt[slot] != POSITIVE_ENTRY){
+            if(expiresAt[slot] < System.currentTimeMillis()){
+                removeSlot(slot);
+                missCount.incrementAndGet();
+                return(null);
+            }
+            negativeHitCount.incrementAndGet();
+            return(IDENTIFIER_ABSENT);
+        }
+        hitCount.incrementAndGet();
+        return(new String(logicalIds[slot], StandardCharsets.UTF_8));
+    }
+
+    public synchronized void recordPresent(String identifierKey, String logicalId){
+        if(maximumEntries <= 0 || logicalId == null){
+            return;
+        }
+        store(fingerprint(identifierKey), logicalId.getBytes(StandardCharsets.UTF_8), POSITIVE_ENTRY);
+    }
+
+    public synchronized void recordAbsent(String identifierKey){
+        if(maximumEntries <= 0 || negativeTimeToLive <= 0){
+            return;
+        }
+        store(fingerprint(identifierKey), null, System.currentTimeMillis() + negativeTimeToLive);
+    }
+
+    /**
+     * Remove whatever (positive or negative) entry is held for the Identifier.
+     */
+    public synchronized void invalidate(String identifierKey){
+        if(maximumEntries <= 0){
+            return;
+        }
+        int slot = findSlot(fingerprint(identifierKey));
+        if(slot >= 0){
+            removeSlot(slot);
+        }
+    }
+
+    /**
+     * Record that a positive entry turned out to be wrong (the Resource no longer carries the Identifier).
+     */
+    public void recordStale(String identifierKey){
+        staleCount.incrementAndGet();
+        invalidate(identifierKey);
+    }
+
+    //
+    // Open Addressing Table
+    //
+
+    private void allocateTable(int tableSize){
+        this.fingerprints = new long[tableSize];
+        this.logicalIds = new byte[tableSize][];
+        this.expiresAt = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.entryCount = 0;
+        this.deletedCount = 0;
+    }
+
+    private int findSlot(long keyFingerprint){
+        int slot = (int)(keyFingerprint ^ (keyFingerprint >>> 32)) & tableMask;
+        while(fingerprints[slot] != EMPTY_SLOT){
+            if(fingerprints[slot] == keyFingerprint){
+                return(slot);
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return(-1);
+    }
+
+    private void store(long keyFingerprint, byte[] logicalId, long expiry){
+        int existingSlot = findSlot(keyFingerprint);
+        if(existingSlot >= 0){
+            logicalIds[existingSlot] = logicalId;
+            expiresAt[existingSlot] = expiry;
+            return;
+        }
+        if(entryCount >= maximumEntries){
+            allocateTable(INITIAL_TABLE_SIZE);
+        } else if(entryCount + deletedCount >= (fingerprints.length >> 2) * 3){
+            int tableSize = fingerprints.length;
+            if(entryCount >= (tableSize >> 1) && tableSize < maximumTableSize){
+                tableSize = tableSize << 1;
+            }
+            rehash(tableSize);
+        }
+        int slot = (int)(keyFingerprint ^ (keyFingerprint >>> 32)) & tableMask;
+        while(fingerprints[slot] != EMPTY_SLOT && fingerprints[slot] != DELETED_SLOT){
+            slot = (slot + 1) & tableMask;
+        }
+        if(fingerprints[slot] == DELETED_SLOT){
+            deletedCount -= 1;
+        }
+        fingerprints[slot] = keyFingerprint;
+        logicalIds[slot] = logicalId;
+        expiresAt[slot] = expiry;
+        entryCount += 1;
+    }
+
+    private void removeSlot(int slot){
+        fingerprints[slot] = DELETED_SLOT;
+        logicalIds[slot] = null;
+        expiresAt[slot] = 0;
+        entryCount -= 1;
+        deletedCount += 1;
+    }
+
+    /**
+     * Rebuild the table (at the given size) without its deleted (and expired negative) entries.
+     */
+    private void rehash(int tableSize){
+        long[] previousFingerprints = fingerprints;
+        byte[][] previousLogicalIds = logicalIds;
+        long[] previousExpiresAt = expiresAt;
+        long now = System.currentTimeMillis();
+        allocateTable(tableSize);
+        for(int counter = 0; counter < previousFingerprints.length; counter++){
+            long currentFingerprint = previousFingerprints[counter];
+            if(currentFingerprint == EMPTY_SLOT || currentFingerprint == DELETED_SLOT || previousExpiresAt[counter] < now){
+                continue;
+            }
+            int slot = (int)(currentFingerprint ^ (currentFingerprint >>> 32)) & tableMask;
+            while(fingerprints[slot] != EMPTY_SLOT){
+                slot = (slot + 1) & tableMask;
+            }
+            fingerprints[slot] = currentFingerprint;
+            logicalIds[slot] = previousLogicalIds[counter];
+            expiresAt[slot] = previousExpiresAt[counter];
+            entryCount += 1;
+        }
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the key (finished with the MurmurHash3 mixer), avoiding the reserved slot markers.
+     */
+    private static long fingerprint(String identifierKey){
+        long hash = 0xcbf29ce484222325L;
+        for(int counter = 0; counter < identifierKey.length(); counter++){
+            hash ^= identifierKey.charAt(counter);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= (hash >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= (hash >>> 33);
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= (hash >>> 33);
+        if(hash == EMPTY_SLOT || hash == DELETED_SLOT){
+            hash += 2;
+        }
+        return(hash);
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public int getMaximumEntries() {
+        return maximumEntries;
+    }
+
+    public synchronized int getSize(){
+        return(entryCount);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+}
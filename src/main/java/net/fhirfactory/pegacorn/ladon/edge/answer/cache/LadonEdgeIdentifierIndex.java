@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.cache;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Identifier to logical id index of the Ladon Edge, which holds one IdentifierIndex per resource type.
+ *
+ * The size of each IdentifierIndex, and how long a "not found" result is trusted, is configurable per resource type
+ * via the "ladon.edge.[resource-type].identifier-index.maximum-entries" and
+ * "ladon.edge.[resource-type].identifier-index.negative-ttl-ms" properties (or the same without the resource type).
+ */
+@ApplicationScoped
+public class LadonEdgeIdentifierIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeIdentifierIndex.class);
+
+    private static final int DEFAULT_MAXIMUM_ENTRIES = 1000000;
+    private static final long DEFAULT_NEGATIVE_TIME_TO_LIVE = 5000L;
+
+    private ConcurrentHashMap<String, IdentifierIndex> identifierIndexes;
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    public LadonEdgeIdentifierIndex(){
+        this.identifierIndexes = new ConcurrentHashMap<>();
+    }
+
+    public IdentifierIndex getIdentifierIndex(String resourceType){
+        IdentifierIndex identifierIndex = identifierIndexes.computeIfAbsent(resourceType, this::newIdentifierIndex);
+        return(identifierIndex);
+    }
+
+    public Collection<IdentifierIndex> getIdentifierIndexes(){
+        return(new ArrayList<>(identifierIndexes.values()));
+    }
+
+    private IdentifierIndex newIdentifierIndex(String resourceType){
+        int maximumEntries = answerConfiguration.getIntegerProperty(resourceType, "identifier-index.maximum-entries", DEFAULT_MAXIMUM_ENTRIES);
+        long negativeTimeToLive = answerConfiguration.getLongProperty(resourceType, "identifier-index.negative-ttl-ms", DEFAULT_NEGATIVE_TIME_TO_LIVE);
+        LOG.info(".newIdentifierIndex(): resourceType --> {}, maximumEntries --> {}, negativeTimeToLive --> {}", resourceType, maximumEntries, negativeTimeToLive);
+        return(new IdentifierIndex(resourceType, maximumEntries, negativeTimeToLive));
+    }
+}
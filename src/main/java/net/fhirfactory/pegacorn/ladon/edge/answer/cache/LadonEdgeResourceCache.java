@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.cache;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The read-through Resource cache of the Ladon Edge, which holds one ResourceTypeCache per resource type.
+ *
+ * The size and freshness of each ResourceTypeCache is configurable per resource type, via the
+ * "ladon.edge.[resource-type].cache.maximum-entries" and "ladon.edge.[resource-type].cache.ttl-ms"
+ * properties (or "ladon.edge.cache.maximum-entries" / "ladon.edge.cache.ttl-ms" for all types).
+ */
+@ApplicationScoped
+public class LadonEdgeResourceCache {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeResourceCache.class);
+
+    private static final int DEFAULT_MAXIMUM_ENTRIES = 1000;
+    private static final long DEFAULT_TIME_TO_LIVE = 30000L;
+
+    private ConcurrentHashMap<String, ResourceTypeCache> resourceTypeCaches;
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    public LadonEdgeResourceCache(){
+        this.resourceTypeCaches = new ConcurrentHashMap<>();
+    }
+
+    public ResourceTypeCache getResourceTypeCache(String resourceType){
+        ResourceTypeCache typeCache = resourceTypeCaches.computeIfAbsent(resourceType, this::newResourceTypeCache);
+        return(typeCache);
+    }
+
+    public Collection<ResourceTypeCache> getResourceTypeCaches(){
+        return(new ArrayList<>(resourceTypeCaches.values()));
+    }
+
+    private ResourceTypeCache newResourceTypeCache(String resourceType){
+        int maximumEntries = answerConfiguration.getIntegerProperty(resourceType, "cache.maximum-entries", DEFAULT_MAXIMUM_ENTRIES);
+        long timeToLive = answerConfiguration.getLongProperty(resourceType, "cache.ttl-ms", DEFAULT_TIME_TO_LIVE);
+        LOG.info(".newResourceTypeCache(): resourceType --> {}, maximumEntries --> {}, timeToLive --> {}", resourceType, maximumEntries, timeToLive);
+        return(new ResourceTypeCache(resourceType, maximumEntries, timeToLive));
+    }
+}
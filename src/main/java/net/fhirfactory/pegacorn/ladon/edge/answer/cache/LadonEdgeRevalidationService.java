@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.cache;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.concurrent.LadonEdgeThreadFactory;
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Supports the "stale-while-revalidate" serving of reads: when a (no longer fresh) cached value is available, the
+ * VirtualDB accessor call is made on one of a small pool of revalidation threads and the reader only waits for it
+ * for the latency budget of the resource type. If the call takes longer (or fails), the reader is given the stale
+ * value and the call carries on in the background, refreshing the cache when it completes.
+ *
+ * The latency budget and the maximum staleness (i.e. the age beyond which a cached value is never served) are
+ * configurable per resource type, via "ladon.edge.[resource-type].stale-while-revalidate.latency-budget-ms"
+ * (0, the default, disables stale serving) and "ladon.edge.[resource-type].stale-while-revalidate.maximum-staleness-ms".
+ *
+ * A stale response is flagged (for the StaleResponseInterceptor, which adds the Warning and Age headers) via a
+ * thread local, in the same manner as a write-behind ticket.
+ */
+@ApplicationScoped
+public class LadonEdgeRevalidationService {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeRevalidationService.class);
+
+    private static final long DEFAULT_MAXIMUM_STALENESS = 300000L;
+
+    private static final ThreadLocal<Long> STALE_RESPONSE_AGE = new ThreadLocal<>();
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    @Inject
+    private LadonEdgeThreadFactory threadFactory;
+
+    private ConcurrentHashMap<String, StaleReadPolicy> policies;
+    private ThreadPoolExecutor revalidationExecutor;
+    private AtomicLong staleResponseCount;
+    private AtomicLong budgetExceededCount;
+    private AtomicLong accessorFailureCount;
+
+    public LadonEdgeRevalidationService(){
+        this.policies = new ConcurrentHashMap<>();
+        this.staleResponseCount = new AtomicLong(0);
+        this.budgetExceededCount = new AtomicLong(0);
+        this.accessorFailureCount = new AtomicLong(0);
+    }
+
+    @PostConstruct
+    public void initialise(){
+        int threads = answerConfiguration.getIntegerProperty("stale-while-revalidate.threads", 8);
+        int maximumQueued = answerConfiguration.getIntegerProperty("stale-while-revalidate.maximum-queued", 1000);
+        this.revalidationExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(maximumQueued),
+                threadFactory.newThreadFactory("ladon-edge-revalidation"));
+        this.revalidationExecutor.allowCoreThreadTimeOut(true);
+        LOG.info(".initialise(): threads --> {}, maximumQueued --> {}", threads, maximumQueued);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        revalidationExecutor.shutdownNow();
+    }
+
+    public StaleReadPolicy getPolicy(String resourceType){
+        return(policies.computeIfAbsent(resourceType, this::newPolicy));
+    }
+
+    /**
+     * Perform the call, but only wait for it for the latency budget: if it takes longer, or fails, the stale value
+     * is returned instead (and the call is left to complete, and so refresh the cache, in the background). A null
+     * result is also taken to be a failure, as the VirtualDB does not support deletion - so a Resource that has been
+     * cached cannot legitimately cease to exist.
+     *
+     * @param call The (cache populating) VirtualDB accessor call
+     * @param latencyBudget How long (in milliseconds) to wait for the call
+     * @param staleValue The value to serve if the call is not answered in time
+     * @param staleAge The age (in milliseconds) of the stale value
+     * @return The result of the call, or the stale value
+     */
+    public <V> V callWithinBudget(Supplier<V> call, long latencyBudget, V staleValue, long staleAge){
+        CompletableFuture<V> pendingCall;
+        try {
+            pendingCall = CompletableFuture.supplyAsync(call, revalidationExecutor);
+        } catch(RejectedExecutionException rejectedException){
+            // The revalidation threads are saturated, so the call is made (and waited for) as normal
+            return(call.get());
+        }
+        try {
+            V result = pendingCall.get(latencyBudget, TimeUnit.MILLISECONDS);
+            if(result != null){
+                return(result);
+            }
+            accessorFailureCount.incrementAndGet();
+            LOG.warn(".callWithinBudget(): Accessor call returned nothing, serving stale value, age --> {}", staleAge);
+        } catch(TimeoutException timeoutException){
+            budgetExceededCount.incrementAndGet();
+            LOG.debug(".callWithinBudget(): Latency budget exceeded, serving stale value, age --> {}", staleAge);
+        } catch(ExecutionException executionException){
+            accessorFailureCount.incrementAndGet();
+            LOG.warn(".callWithinBudget(): Accessor call failed, serving stale value, age --> {}, error --> {}", staleAge, executionException.getCause() == null ? null : executionException.getCause().getMessage());
+        } catch(InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+        }
+        staleResponseCount.incrementAndGet();
+        markStaleResponse(staleAge);
+        return(staleValue);
+    }
+
+    public static void markStaleResponse(long staleAge){
+        Long currentAge = STALE_RESPONSE_AGE.get();
+        if(currentAge == null || currentAge < staleAge){
+            STALE_RESPONSE_AGE.set(staleAge);
+        }
+    }
+
+    /**
+     * @return the age (in milliseconds) of the oldest stale value served to the current request (on this thread),
+     * or null if none was - clearing it in the process.
+     */
+    public static Long takeStaleResponseAge(){
+        Long staleAge = STALE_RESPONSE_AGE.get();
+        STALE_RESPONSE_AGE.remove();
+        return(staleAge);
+    }
+
+    public long getStaleResponseCount() {
+        return staleResponseCount.get();
+    }
+
+    public long getBudgetExceededCount() {
+        return budgetExceededCount.get();
+    }
+
+    public long getAccessorFailureCount() {
+        return accessorFailureCount.get();
+    }
+
+    public int getRevalidationsInProgress(){
+        return(revalidationExecutor.getActiveCount() + revalidationExecutor.getQueue().size());
+    }
+
+    private StaleReadPolicy newPolicy(String resourceType){
+        long latencyBudget = answerConfiguration.getLongProperty(resourceType, "stale-while-revalidate.latency-budget-ms", 0L);
+        long maximumStaleness = answerConfiguration.getLongProperty(resourceType, "stale-while-revalidate.maximum-staleness-ms", DEFAULT_MAXIMUM_STALENESS);
+        LOG.info(".newPolicy(): resourceType --> {}, latencyBudget --> {}, maximumStaleness --> {}", resourceType, latencyBudget, maximumStaleness);
+        return(new StaleReadPolicy(latencyBudget, maximumStaleness));
+    }
+
+    public static class StaleReadPolicy {
+        private long latencyBudget;
+        private long maximumStaleness;
+
+        public StaleReadPolicy(long latencyBudget, long maximumStaleness){
+            this.latencyBudget = latencyBudget;
+            this.maximumStaleness = maximumStaleness;
+        }
+
+        public boolean isEnabled(){
+            return(latencyBudget > 0 && maximumStaleness > 0);
+        }
+
+        public long getLatencyBudget() {
+            return latencyBudget;
+        }
+
+        public long getMaximumStaleness() {
+            return maximumStaleness;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.cache;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lightweight index of the latest known versionId (and lastUpdated) of each Resource that has passed through
+ * the Ladon Edge, keyed by "[resource-type]/[id]". It allows conditional requests (e.g. If-None-Match) to be
+ * answered without a VirtualDB accessor call.
+ *
+ * It also supports optimistic concurrency (If-Match) for updates: an update of version N first reserves the entry
+ * (a compare-and-set of "version N, not reserved" to "version N, reserved", within the entry's own bin of the map,
+ * so updates of different Resources do not contend), and the entry is then replaced once the update has been
+ * applied. A second update of version N, arriving in the meantime, therefore fails its precondition.
+ *
+ * As the VirtualDB can be updated via other routes, an entry is only trusted for timeToLive milliseconds
+ * ("ladon.edge.version-index.ttl-ms"). The number of entries is bounded by "ladon.edge.version-index.maximum-entries":
+ * the keys are also held in insertion order and, once the index is full, the oldest entries are evicted (a batch at
+ * a time, by a single thread). A reserved entry is never evicted - that would let a second update of the same version
+ * through - it is instead moved to the back of the eviction order.
+ */
+@ApplicationScoped
+public class LadonEdgeVersionIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeVersionIndex.class);
+
+    private ConcurrentHashMap<String, VersionEntry> versionEntries;
+    private ConcurrentLinkedQueue<String> evictionOrder;
+    private AtomicInteger evictionOrderSize;
+    private AtomicBoolean isEvicting;
+    private int maximumEntries;
+    private long timeToLive;
+    private AtomicLong notModifiedCount;
+    private AtomicLong preconditionFailedCount;
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    public LadonEdgeVersionIndex(){
+        this.versionEntries = new ConcurrentHashMap<>();
+        this.evictionOrder = new ConcurrentLinkedQueue<>();
+        this.evictionOrderSize = new AtomicInteger(0);
+        this.isEvicting = new AtomicBoolean(false);
+        this.notModifiedCount = new AtomicLong(0);
+        this.preconditionFailedCount = new AtomicLong(0);
+    }
+
+    LadonEdgeVersionIndex(int maximumEntries, long timeToLive){
+        this();
+        this.maximumEntries = maximumEntries;
+        this.timeToLive = timeToLive;
+    }
+
+    @PostConstruct
+    public void initialise(){
+        this.maximumEntries = answerConfiguration.getIntegerProperty("version-index.maximum-entries", 100000);
+        this.timeToLive = answerConfiguration.getLongProperty("version-index.ttl-ms", 60000L);
+        LOG.info(".initialise(): maximumEntries --> {}, timeToLive --> {}", maximumEntries, timeToLive);
+    }
+
+    /**
+     * Record the version details of a Resource (e.g. one that has just been read).
+     *
+     * @param resource The Resource, it must have an id and a meta.versionId to be recorded
+     */
+    public void record(Resource resource){
+        if(resource == null || !resource.hasIdElement() || !resource.hasMeta() || !resource.getMeta().hasVersionId()){
+            return;
+        }
+        long lastUpdated = -1;
+        if(resource.getMeta().hasLastUpdated()){
+            lastUpdated = resource.getMeta().getLastUpdated().getTime();
+        }
+        record(resource.fhirType(), resource.getIdElement().getIdPart(), resource.getMeta().getVersionId(), lastUpdated);
+    }
+
+    public void record(String resourceType, String idPart, String versionId, long lastUpdated){
+        if(resourceType == null || idPart == null || versionId == null || maximumEntries <= 0){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String entryKey = buildKey(resourceType, idPart);
+        AtomicBoolean isNewKey = new AtomicBoolean(false);
+        // (Re-)reading the reserved version must not release the reservation, only the update (or its failure) does
+        versionEntries.compute(entryKey, (key, currentEntry) -> {
+            if(currentEntry == null){
+                isNewKey.set(true);
+            } else if(currentEntry.isReserved() && !currentEntry.hasExpired(now) && currentEntry.getVersionId().equals(versionId)){
+                return(currentEntry);
+            }
+            return(new VersionEntry(versionId, lastUpdated, now + timeToLive));
+        });
+        if(isNewKey.get()){
+            evictionOrder.offer(entryKey);
+            // Every entry has (at least) one key in the eviction order, so this also bounds the number of entries
+            if(evictionOrderSize.incrementAndGet() > maximumEntries){
+                evictEntries();
+            }
+        }
+    }
+
+    /**
+     * Get the (still trusted) version details of a Resource.
+     *
+     * @return The VersionEntry or null if the Resource is unknown (or its entry has expired)
+     */
+    public VersionEntry lookup(String resourceType, String idPart){
+        if(resourceType == null || idPart == null){
+            return(null);
+        }
+        String key = buildKey(resourceType, idPart);
+        VersionEntry versionEntry = versionEntries.get(key);
+        if(versionEntry == null){
+            return(null);
+        }
+        if(versionEntry.hasExpired(System.currentTimeMillis())){
+            versionEntries.remove(key, versionEntry);
+            return(null);
+        }
+        return(versionEntry);
+    }
+
+    /**
+     * Reserve the (trusted) entry of a Resource for an update, provided it is still at the expected version and no
+     * other update holds the reservation. The reservation is released when the entry is next recorded or
+     * invalidated (i.e. when the update has been applied, or has failed).
+     *
+     * @return true if the reservation was made
+     */
+    public boolean reserveForUpdate(String resourceType, String idPart, String expectedVersionId){
+        if(resourceType == null || idPart == null || expectedVersionId == null){
+            return(false);
+        }
+        long now = System.currentTimeMillis();
+        AtomicBoolean isReserved = new AtomicBoolean(false);
+        versionEntries.computeIfPresent(buildKey(resourceType, idPart), (key, currentEntry) -> {
+            if(currentEntry.isReserved() || currentEntry.hasExpired(now) || !currentEntry.getVersionId().equals(expectedVersionId)){
+                return(currentEntry);
+            }
+            isReserved.set(true);
+            return(new VersionEntry(currentEntry.getVersionId(), currentEntry.getLastUpdated(), currentEntry.expiresAt, true));
+        });
+        return(isReserved.get());
+    }
+
+    public void invalidate(String resourceType, String idPart){
+        if(resourceType == null || idPart == null){
+            return;
+        }
+        versionEntries.remove(buildKey(resourceType, idPart));
+    }
+
+    public void recordNotModifiedResponse(){
+        notModifiedCount.incrementAndGet();
+    }
+
+    public long getNotModifiedCount(){
+        return(notModifiedCount.get());
+    }
+
+    public void recordPreconditionFailedResponse(){
+        preconditionFailedCount.incrementAndGet();
+    }
+
+    public long getPreconditionFailedCount(){
+        return(preconditionFailedCount.get());
+    }
+
+    public int getSize(){
+        return(versionEntries.size());
+    }
+
+    /**
+     * Evict the oldest entries until the index is back to 90% of its maximum size. The eviction order may still hold
+     * the keys of entries that have since been removed (e.g. invalidated), and polling those frees their place.
+     */
+    private void evictEntries(){
+        if(!isEvicting.compareAndSet(false, true)){
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            int targetSize = (maximumEntries * 9) / 10;
+            int examined = 0;
+            int examinationLimit = evictionOrderSize.get();
+            while(evictionOrderSize.get() > targetSize && examined < examinationLimit){
+                String key = evictionOrder.poll();
+                if(key == null){
+                    break;
+                }
+                examined += 1;
+                VersionEntry retainedEntry = versionEntries.computeIfPresent(key, (currentKey, currentEntry) -> {
+                    if(currentEntry.isReserved() && !currentEntry.hasExpired(now)){
+                        return(currentEntry);
+                    }
+                    return(null);
+                });
+                if(retainedEntry != null){
+                    evictionOrder.offer(key);
+                } else {
+                    evictionOrderSize.decrementAndGet();
+                }
+            }
+        } finally {
+            isEvicting.set(false);
+        }
+    }
+
+    private String buildKey(String resourceType, String idPart){
+        return(resourceType + "/" + idPart);
+    }
+
+    /**
+     * @return the versionId of a (weak or strong) ETag, e.g. an If-Match header, or null if there is none (or it is "*")
+     */
+    public static String parseETagVersion(String eTag){
+        if(eTag == null){
+            return(null);
+        }
+        String tag = eTag.trim();
+        if(tag.startsWith("W/")){
+            tag = tag.substring(2);
+        }
+        if(tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")){
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        if(tag.isEmpty() || tag.equals("*")){
+            return(null);
+        }
+        return(tag);
+    }
+
+    public static class VersionEntry {
+        private String versionId;
+        private long lastUpdated;
+        private long expiresAt;
+        private boolean reserved;
+
+        public VersionEntry(String versionId, long lastUpdated, long expiresAt){
+            this(versionId, lastUpdated, expiresAt, false);
+        }
+
+        public VersionEntry(String versionId, long lastUpdated, long expiresAt, boolean reserved){
+            this.versionId = versionId;
+            this.lastUpdated = lastUpdated;
+            this.expiresAt = expiresAt;
+            this.reserved = reserved;
+        }
+
+        public String getVersionId() {
+            return versionId;
+        }
+
+        public boolean hasLastUpdated(){
+            return(lastUpdated >= 0);
+        }
+
+        public long getLastUpdated() {
+            return lastUpdated;
+        }
+
+        public boolean isReserved() {
+            return reserved;
+        }
+
+        public boolean hasExpired(long now){
+            return(now >= expiresAt);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.cache;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, least-recently-used cache of the Resources (of a single type) read via the Ladon Edge.
+ *
+ * Each Resource is held under its logical id (the "current" version, which is only trusted for timeToLive
+ * milliseconds) and, if it has a meta.versionId, under its version specific id (which never changes and so
+ * does not expire). The cache holds (and hands out) copies, so callers are free to modify what they receive.
+ *
+ * An entry that is no longer fresh is not discarded (until it is evicted or invalidated), so that it can still be
+ * served - as a stale value - when the VirtualDB accessor is slow or unavailable (see getStale()).
+ */
+public class ResourceTypeCache {
+    private String resourceType;
+    private int maximumEntries;
+    private long timeToLive;
+    private LinkedHashMap<String, CachedResource> cacheEntries;
+    private AtomicLong hitCount;
+    private AtomicLong missCount;
+    private AtomicLong evictionCount;
+    private AtomicLong invalidationCount;
+
+    public ResourceTypeCache(String resourceType, int maximumEntries, long timeToLive){
+        this.resourceType = resourceType;
+        this.maximumEntries = maximumEntries;
+        this.timeToLive = timeToLive;
+        this.hitCount = new AtomicLong(0);
+        this.missCount = new AtomicLong(0);
+        this.evictionCount = new AtomicLong(0);
+        this.invalidationCount = new AtomicLong(0);
+        this.cacheEntries = new LinkedHashMap<String, CachedResource>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResource> eldest) {
+                if(size() > ResourceTypeCache.this.maximumEntries){
+                    evictionCount.incrementAndGet();
+                    return(true);
+                }
+                return(false);
+            }
+        };
+    }
+
+    /**
+     * Retrieve a (copy of the) cached Resource.
+     *
+     * @param id The id of the Resource, if it includes a version then only that version is returned
+     * @return A copy of the cached Resource, or null if it is not cached (or no longer fresh)
+     */
+    public Resource get(IdType id){
+        if(maximumEntries <= 0 || id == null || !id.hasIdPart()){
+            return(null);
+        }
+        String cacheKey = buildCacheKey(id.getIdPart(), id.getVersionIdPart());
+        CachedResource cachedResource;
+        synchronized (cacheEntries) {
+            cachedResource = cacheEntries.get(cacheKey);
+        }
+        if(cachedResource == null || (!id.hasVersionIdPart() && cachedResource.getAge() > timeToLive)){
+            missCount.incrementAndGet();
+            return(null);
+        }
+        hitCount.incrementAndGet();
+        return(cachedResource.getResource().copy());
+    }
+
+    /**
+     * Retrieve a (copy of the) cached "current" version of a Resource, even if it is no longer fresh - as long as it
+     * has been cached for no more than maximumStaleness milliseconds.
+     *
+     * @param idPart The logical id of the Resource
+     * @param maximumStaleness The maximum age of the cached Resource
+     * @return The StaleResource (a copy of the cached Resource, and its age) or null if there is none
+     */
+    public StaleResource getStale(String idPart, long maximumStaleness){
+        if(maximumEntries <= 0 || idPart == null){
+            return(null);
+        }
+        CachedResource cachedResource;
+        synchronized (cacheEntries) {
+            cachedResource = cacheEntries.get(buildCacheKey(idPart, null));
+        }
+        if(cachedResource == null){
+            return(null);
+        }
+        long age = cachedResource.getAge();
+        if(age > maximumStaleness){
+            return(null);
+        }
+        return(new StaleResource(cachedResource.getResource().copy(), age));
+    }
+
+    public void put(Resource resource){
+        if(maximumEntries <= 0 || resource == null || !resource.hasIdElement() || !resource.getIdElement().hasIdPart()){
+            return;
+        }
+        String idPart = resource.getIdElement().getIdPart();
+        String versionId = null;
+        if(resource.hasMeta() && resource.getMeta().hasVersionId()){
+            versionId = resource.getMeta().getVersionId();
+        } else if(resource.getIdElement().hasVersionIdPart()){
+            versionId = resource.getIdElement().getVersionIdPart();
+        }
+        CachedResource cachedResource = new CachedResource(resource.copy(), versionId);
+        synchronized (cacheEntries) {
+            cacheEntries.put(buildCacheKey(idPart, null), cachedResource);
+            if(versionId != null){
+                cacheEntries.put(buildCacheKey(idPart, versionId), cachedResource);
+            }
+        }
+    }
+
+    /**
+     * Remove the "current" version of a Resource (version specific entries remain valid).
+     *
+     * @param idPart The logical id of the Resource
+     */
+    public void invalidate(String idPart){
+        if(idPart == null){
+            return;
+        }
+        CachedResource removedResource;
+        synchronized (cacheEntries) {
+            removedResource = cacheEntries.remove(buildCacheKey(idPart, null));
+        }
+        if(removedResource != null){
+            invalidationCount.incrementAndGet();
+        }
+    }
+
+    private String buildCacheKey(String idPart, String versionId){
+        if(versionId == null){
+            return(idPart);
+        }
+        return(idPart + "/_history/" + versionId);
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public int getMaximumEntries() {
+        return maximumEntries;
+    }
+
+    public int getSize(){
+        synchronized (cacheEntries) {
+            return (cacheEntries.size());
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public static class StaleResource {
+        private Resource resource;
+        private long age;
+
+        public StaleResource(Resource resource, long age){
+            this.resource = resource;
+            this.age = age;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        public long getAge() {
+            return age;
+        }
+    }
+
+    private static class CachedResource {
+        private Resource resource;
+        private String versionId;
+        private long cachedAt;
+
+        public CachedResource(Resource resource, String versionId){
+            this.resource = resource;
+            this.versionId = versionId;
+            this.cachedAt = System.currentTimeMillis();
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        public String getVersionId() {
+            return versionId;
+        }
+
+        public long getAge(){
+            return(System.currentTimeMillis() - cachedAt);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The source of the Ladon Edge's background threads (executors, drainers etc.). Threads are created by the
+ * container's (default) ManagedThreadFactory, so that they carry the naming/security context of the application and
+ * are visible to (and stopped by) the container, as the threads of the AnswerServletRequestDispatcher are. Outside a
+ * container (e.g. in unit tests) plain daemon threads are used.
+ */
+@ApplicationScoped
+public class LadonEdgeThreadFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeThreadFactory.class);
+
+    @Resource
+    private ManagedThreadFactory managedThreadFactory;
+
+    /**
+     * @param threadNamePrefix The prefix of the thread names, e.g. "ladon-edge-batch" (the threads are numbered)
+     * @return a ThreadFactory for a single executor/service
+     */
+    public ThreadFactory newThreadFactory(String threadNamePrefix){
+        LOG.debug(".newThreadFactory(): Entry, threadNamePrefix --> {}, isManaged --> {}", threadNamePrefix, managedThreadFactory != null);
+        return(newThreadFactory(managedThreadFactory, threadNamePrefix));
+    }
+
+    /**
+     * @param managedThreadFactory The container's ThreadFactory, or null to use plain daemon threads
+     */
+    public static ThreadFactory newThreadFactory(ThreadFactory managedThreadFactory, String threadNamePrefix){
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        return(runnable -> {
+            Thread newThread;
+            if(managedThreadFactory != null){
+                newThread = managedThreadFactory.newThread(runnable);
+            } else {
+                newThread = new Thread(runnable);
+                newThread.setDaemon(true);
+            }
+            newThread.setName(threadNamePrefix + "-" + threadCounter.incrementAndGet());
+            return(newThread);
+        });
+    }
+}
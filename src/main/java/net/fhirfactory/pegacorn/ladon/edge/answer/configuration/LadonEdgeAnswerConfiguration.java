@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Central lookup for the tuning parameters of the Ladon Edge "answer" (FHIR RESTful) services.
+ *
+ * A property is resolved from the JVM system properties first (e.g. "ladon.edge.answer.dispatch-mode") and then
+ * from the environment, where the name is upper-cased and the '.' / '-' separators are replaced by '_'
+ * (e.g. LADON_EDGE_ANSWER_DISPATCH_MODE). Resource specific properties (e.g. cache sizes) are looked up as
+ * "ladon.edge.[resource-type].[name]" first and then fall back to "ladon.edge.[name]".
+ */
+@ApplicationScoped
+public class LadonEdgeAnswerConfiguration {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeAnswerConfiguration.class);
+
+    private static final String PROPERTY_PREFIX = "ladon.edge.";
+
+    public String getStringProperty(String propertyName, String defaultValue){
+        String propertyValue = resolveProperty(PROPERTY_PREFIX + propertyName);
+        if(propertyValue == null){
+            return(defaultValue);
+        }
+        return(propertyValue);
+    }
+
+    public int getIntegerProperty(String propertyName, int defaultValue){
+        return((int)getLongProperty(propertyName, defaultValue));
+    }
+
+    public long getLongProperty(String propertyName, long defaultValue){
+        String propertyValue = resolveProperty(PROPERTY_PREFIX + propertyName);
+        return(parseLong(propertyName, propertyValue, defaultValue));
+    }
+
+    public boolean getBooleanProperty(String propertyName, boolean defaultValue){
+        String propertyValue = resolveProperty(PROPERTY_PREFIX + propertyName);
+        if(propertyValue == null){
+            return(defaultValue);
+        }
+        return(Boolean.parseBoolean(propertyValue.trim()));
+    }
+
+    public int getIntegerProperty(String resourceType, String propertyName, int defaultValue){
+        return((int)getLongProperty(resourceType, propertyName, defaultValue));
+    }
+
+    public long getLongProperty(String resourceType, String propertyName, long defaultValue){
+        String propertyValue = resolveProperty(PROPERTY_PREFIX + resourceType.toLowerCase() + "." + propertyName);
+        if(propertyValue == null){
+            propertyValue = resolveProperty(PROPERTY_PREFIX + propertyName);
+        }
+        return(parseLong(resourceType + "." + propertyName, propertyValue, defaultValue));
+    }
+
+    private long parseLong(String propertyName, String propertyValue, long defaultValue){
+        if(propertyValue == null){
+            return(defaultValue);
+        }
+        try {
+            return(Long.parseLong(propertyValue.trim()));
+        } catch(NumberFormatException numberFormatException){
+            LOG.warn(".parseLong(): Property {} has a non-numeric value ({}), using default --> {}", propertyName, propertyValue, defaultValue);
+            return(defaultValue);
+        }
+    }
+
+    private String resolveProperty(String propertyName){
+        String propertyValue = System.getProperty(propertyName);
+        if(propertyValue == null){
+            String environmentName = propertyName.toUpperCase().replace('.', '_').replace('-', '_');
+            propertyValue = System.getenv(environmentName);
+        }
+        if(propertyValue != null && propertyValue.trim().isEmpty()){
+            return(null);
+        }
+        return(propertyValue);
+    }
+}
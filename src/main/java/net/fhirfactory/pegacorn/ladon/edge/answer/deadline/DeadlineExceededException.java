@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.deadline;
+
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.hl7.fhir.r4.model.OperationOutcome;
+
+/**
+ * The RequestDeadline of a request passed before some (part of its) processing could be completed, it is reported
+ * to the client as a 504 (Gateway Timeout) carrying a "timeout" OperationOutcome.
+ */
+public class DeadlineExceededException extends UnclassifiedServerFailureException {
+
+    private static final int GATEWAY_TIMEOUT = 504;
+
+    /**
+     * @param activity What could not be completed in time, for the OperationOutcome's diagnostics
+     */
+    public DeadlineExceededException(String activity){
+        super(GATEWAY_TIMEOUT, buildMessage(activity), buildOperationOutcome(buildMessage(activity)));
+    }
+
+    private static String buildMessage(String activity){
+        return("The request deadline passed before " + activity + " could be completed");
+    }
+
+    private static OperationOutcome buildOperationOutcome(String message){
+        OperationOutcome outcome = new OperationOutcome();
+        outcome.addIssue()
+                .setSeverity(OperationOutcome.IssueSeverity.ERROR)
+                .setCode(OperationOutcome.IssueType.TIMEOUT)
+                .setDiagnostics(message);
+        return(outcome);
+    }
+}
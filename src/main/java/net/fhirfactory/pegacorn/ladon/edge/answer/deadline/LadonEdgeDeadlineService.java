@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.deadline;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Enforces the RequestDeadline of the current request on the VirtualDB accessor calls made on its behalf.
+ *
+ * A read/search call is made on the calling thread, but a timer is set for the deadline: if the call is still in
+ * progress when it passes, the calling thread is interrupted (cancelling the call, as far as the accessor honours
+ * interruption) and the request fails with a 504 (Gateway Timeout). A write is never abandoned part way (its outcome
+ * would then be unknown), it is only refused if the deadline has already passed when it is about to be made. Calls
+ * made without a deadline (e.g. by the write-behind drainers or the revalidation threads) are simply made.
+ *
+ * The deadline of a request is taken from its "X-Request-Timeout-Ms" header (if present), capped by the default for
+ * its operation: "ladon.edge.request-deadline.[operation]-ms" (where [operation] is the HAPI operation code, e.g.
+ * "read" or "search-type") falling back to "ladon.edge.request-deadline.default-ms" (30000). Extended operations
+ * (e.g. $import, $export) have no default deadline, as they are expected to run for longer.
+ */
+@ApplicationScoped
+public class LadonEdgeDeadlineService {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeDeadlineService.class);
+
+    private static final long DEFAULT_DEADLINE = 30000L;
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    private ScheduledThreadPoolExecutor deadlineTimer;
+    private long defaultDeadline;
+    private AtomicInteger callsInProgress;
+    private AtomicLong expiredBeforeCallCount;
+    private AtomicLong timedOutCallCount;
+
+    public LadonEdgeDeadlineService(){
+        this.callsInProgress = new AtomicInteger(0);
+        this.expiredBeforeCallCount = new AtomicLong(0);
+        this.timedOutCallCount = new AtomicLong(0);
+    }
+
+    LadonEdgeDeadlineService(LadonEdgeAnswerConfiguration answerConfiguration){
+        this();
+        this.answerConfiguration = answerConfiguration;
+    }
+
+    @PostConstruct
+    public void initialise(){
+        this.defaultDeadline = answerConfiguration.getLongProperty("request-deadline.default-ms", DEFAULT_DEADLINE);
+        // The timer only ever interrupts the (calling) threads, so a single thread suffices
+        this.deadlineTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread timerThread = new Thread(runnable, "ladon-edge-deadline-timer");
+            timerThread.setDaemon(true);
+            return(timerThread);
+        });
+        this.deadlineTimer.setRemoveOnCancelPolicy(true);
+        LOG.info(".initialise(): defaultDeadline --> {}", defaultDeadline);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        deadlineTimer.shutdownNow();
+    }
+
+    /**
+     * @param operationCode The (HAPI) code of the requested operation
+     * @param isExtendedOperation Whether the request is for an extended ($) operation
+     * @param requestedTimeout The timeout (in milliseconds) asked for by the client, or null
+     * @return The deadline for the request, or null if it has none
+     */
+    public RequestDeadline resolveDeadline(String operationCode, boolean isExtendedOperation, Long requestedTimeout){
+        long operationDeadline = answerConfiguration.getLongProperty("request-deadline." + operationCode + "-ms", isExtendedOperation ? 0L : defaultDeadline);
+        long budget = operationDeadline;
+        if(requestedTimeout != null && requestedTimeout > 0 && (budget <= 0 || requestedTimeout < budget)){
+            budget = requestedTimeout;
+        }
+        if(budget <= 0){
+            return(null);
+        }
+        return(RequestDeadline.after(budget));
+    }
+
+    /**
+     * Make a (read/search) call on the calling thread, interrupting it if it is still in progress when the current
+     * request's deadline passes.
+     *
+     * @param call The VirtualDB accessor call
+     * @param activity A description of the call, for the 504 OperationOutcome
+     * @return The result of the call
+     */
+    public <T> T callWithinDeadline(Supplier<T> call, String activity){
+        RequestDeadline deadline = RequestDeadline.current();
+        if(deadline == null){
+            return(call.get());
+        }
+        checkDeadline(deadline, activity);
+        Thread callingThread = Thread.currentThread();
+        AtomicBoolean inProgress = new AtomicBoolean(true);
+        ScheduledFuture<?> deadlineAlarm = deadlineTimer.schedule(() -> {
+            if(inProgress.compareAndSet(true, false)){
+                callingThread.interrupt();
+            }
+        }, deadline.getRemaining(), TimeUnit.MILLISECONDS);
+        callsInProgress.incrementAndGet();
+        try {
+            T result = call.get();
+            if(!inProgress.compareAndSet(true, false)){
+                // The deadline passed just as the call completed, its result is still good
+                Thread.interrupted();
+            }
+            return(result);
+        } catch(RuntimeException callException){
+            if(inProgress.compareAndSet(true, false)){
+                throw callException;
+            }
+            // The call failed because it was interrupted at the deadline
+            Thread.interrupted();
+            timedOutCallCount.incrementAndGet();
+            LOG.debug(".callWithinDeadline(): Deadline passed, call interrupted --> {}", activity);
+            throw new DeadlineExceededException(activity);
+        } finally {
+            deadlineAlarm.cancel(false);
+            callsInProgress.decrementAndGet();
+        }
+    }
+
+    /**
+     * Make a (write) call, unless the current request's deadline has already passed.
+     */
+    public <T> T callBeforeDeadline(Supplier<T> call, String activity){
+        RequestDeadline deadline = RequestDeadline.current();
+        if(deadline != null){
+            checkDeadline(deadline, activity);
+        }
+        return(call.get());
+    }
+
+    private void checkDeadline(RequestDeadline deadline, String activity){
+        if(deadline.hasExpired()){
+            expiredBeforeCallCount.incrementAndGet();
+            LOG.debug(".checkDeadline(): Deadline already passed, call not made --> {}", activity);
+            throw new DeadlineExceededException(activity);
+        }
+    }
+
+    public long getExpiredBeforeCallCount() {
+        return expiredBeforeCallCount.get();
+    }
+
+    public long getTimedOutCallCount() {
+        return timedOutCallCount.get();
+    }
+
+    public int getCallsInProgress(){
+        return(callsInProgress.get());
+    }
+}
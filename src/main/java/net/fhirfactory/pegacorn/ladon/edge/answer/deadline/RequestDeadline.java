@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.deadline;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The point in time by which the processing of a (FHIR) request must be complete. It is established (by the
+ * RequestDeadlineInterceptor) as the request arrives and is held in a thread local for the request's processing
+ * thread - work handed to another thread on the request's behalf must be wrapped via propagate() to carry it.
+ */
+public class RequestDeadline {
+
+    private static final ThreadLocal<RequestDeadline> CURRENT_DEADLINE = new ThreadLocal<>();
+
+    private final long expiresAt;
+
+    public RequestDeadline(long expiresAt){
+        this.expiresAt = expiresAt;
+    }
+
+    public static RequestDeadline after(long budget){
+        return(new RequestDeadline(System.currentTimeMillis() + budget));
+    }
+
+    public static RequestDeadline current(){
+        return(CURRENT_DEADLINE.get());
+    }
+
+    public static void setCurrent(RequestDeadline deadline){
+        if(deadline == null){
+            CURRENT_DEADLINE.remove();
+        } else {
+            CURRENT_DEADLINE.set(deadline);
+        }
+    }
+
+    public static void clearCurrent(){
+        CURRENT_DEADLINE.remove();
+    }
+
+    /**
+     * @return The task, wrapped so that it runs (on whichever thread) under the calling thread's current deadline
+     */
+    public static <V> Callable<V> propagate(Callable<V> task){
+        RequestDeadline deadline = current();
+        if(deadline == null){
+            return(task);
+        }
+        return(() -> {
+            RequestDeadline previousDeadline = current();
+            setCurrent(deadline);
+            try {
+                return(task.call());
+            } finally {
+                setCurrent(previousDeadline);
+            }
+        });
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getRemaining(){
+        return(Math.max(0, expiresAt - System.currentTimeMillis()));
+    }
+
+    public boolean hasExpired(){
+        return(System.currentTimeMillis() >= expiresAt);
+    }
+}
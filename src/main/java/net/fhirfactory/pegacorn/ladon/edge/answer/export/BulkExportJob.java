@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.export;
+
+import org.hl7.fhir.r4.model.IdType;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of a single (asynchronous) Bulk Data "$export" request: the Group being exported, the resource types
+ * requested and, as the export progresses, the NDJSON output file (and resource count) for each resource type.
+ */
+public class BulkExportJob {
+
+    public enum BulkExportJobStatusEnum {
+        EXPORT_QUEUED,
+        EXPORT_IN_PROGRESS,
+        EXPORT_COMPLETE,
+        EXPORT_FAILED,
+        EXPORT_CANCELLED
+    }
+
+    private String jobId;
+    private IdType groupId;
+    private Set<String> resourceTypes;
+    private String requestUrl;
+    private File outputDirectory;
+    private long transactionTime;
+    private volatile long completionTime;
+    private volatile BulkExportJobStatusEnum status;
+    private volatile String failureMessage;
+    private AtomicLong exportedResourceCount;
+    private AtomicLong failedResourceCount;
+    private Map<String, Long> outputCounts;
+    private volatile Future<?> execution;
+
+    public BulkExportJob(String jobId, IdType groupId, Set<String> resourceTypes, String requestUrl, File outputDirectory){
+        this.jobId = jobId;
+        this.groupId = groupId;
+        this.resourceTypes = resourceTypes;
+        this.requestUrl = requestUrl;
+        this.outputDirectory = outputDirectory;
+        this.transactionTime = System.currentTimeMillis();
+        this.completionTime = -1;
+        this.status = BulkExportJobStatusEnum.EXPORT_QUEUED;
+        this.exportedResourceCount = new AtomicLong(0);
+        this.failedResourceCount = new AtomicLong(0);
+        this.outputCounts = new LinkedHashMap<>();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public IdType getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * @return the requested resource types (from the "_type" parameter), an empty set means all types
+     */
+    public Set<String> getResourceTypes() {
+        return resourceTypes;
+    }
+
+    public boolean isResourceTypeRequested(String resourceType){
+        return(resourceTypes.isEmpty() || resourceTypes.contains(resourceType));
+    }
+
+    public String getRequestUrl() {
+        return requestUrl;
+    }
+
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public File getOutputFile(String resourceType){
+        return(new File(outputDirectory, resourceType + ".ndjson"));
+    }
+
+    public long getTransactionTime() {
+        return transactionTime;
+    }
+
+    public long getCompletionTime() {
+        return completionTime;
+    }
+
+    public BulkExportJobStatusEnum getStatus() {
+        return status;
+    }
+
+    public void setStatus(BulkExportJobStatusEnum status) {
+        this.status = status;
+        if(status == BulkExportJobStatusEnum.EXPORT_COMPLETE || status == BulkExportJobStatusEnum.EXPORT_FAILED || status == BulkExportJobStatusEnum.EXPORT_CANCELLED){
+            this.completionTime = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isFinished(){
+        return(completionTime >= 0);
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public void setFailureMessage(String failureMessage) {
+        this.failureMessage = failureMessage;
+    }
+
+    public long getExportedResourceCount() {
+        return exportedResourceCount.get();
+    }
+
+    public long getFailedResourceCount() {
+        return failedResourceCount.get();
+    }
+
+    public void recordFailedResource(){
+        failedResourceCount.incrementAndGet();
+    }
+
+    public synchronized void recordExportedResource(String resourceType){
+        exportedResourceCount.incrementAndGet();
+        Long currentCount = outputCounts.get(resourceType);
+        outputCounts.put(resourceType, currentCount == null ? 1L : currentCount + 1);
+    }
+
+    public synchronized Map<String, Long> getOutputCounts() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(outputCounts));
+    }
+
+    public Future<?> getExecution() {
+        return execution;
+    }
+
+    public void setExecution(Future<?> execution) {
+        this.execution = execution;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.export;
+
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.concurrent.LadonEdgeThreadFactory;
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeProxyRegistry;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.hl7.fhir.r4.model.Group;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs the Bulk Data "$export" jobs. Each job walks the members of a Group, retrieves each member resource directly
+ * from the VirtualDB accessor (i.e. bypassing, and so not disturbing, the edge resource cache) and appends it to a
+ * per resource type NDJSON file within the job's output directory. Only one resource is held in memory at a time.
+ *
+ * Exports are background work, so they run on a small pool of low priority threads and back off whenever the
+ * number of interactive requests in-flight exceeds "ladon.edge.export.interactive-threshold".
+ */
+@ApplicationScoped
+public class LadonEdgeBulkExportManager {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeBulkExportManager.class);
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    @Inject
+    private LadonEdgeProxyRegistry proxyRegistry;
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    @Inject
+    private LadonEdgeThreadFactory threadFactory;
+
+    private ConcurrentHashMap<String, BulkExportJob> jobs;
+    private ExecutorService exportExecutor;
+    private File exportRootDirectory;
+    private int maximumJobs;
+    private long retentionPeriod;
+    private int interactiveThreshold;
+    private long backoffInterval;
+    private long resourcePause;
+    private volatile IntSupplier interactiveLoadSupplier;
+
+    @PostConstruct
+    public void initialise(){
+        this.jobs = new ConcurrentHashMap<>();
+        String defaultDirectory = new File(System.getProperty("java.io.tmpdir"), "ladon-edge-export").getPath();
+        this.exportRootDirectory = new File(answerConfiguration.getStringProperty("export.directory", defaultDirectory));
+        this.maximumJobs = answerConfiguration.getIntegerProperty("export.maximum-jobs", 4);
+        this.retentionPeriod = answerConfiguration.getLongProperty("export.retention-ms", 3600000L);
+        this.interactiveThreshold = answerConfiguration.getIntegerProperty("export.interactive-threshold", 16);
+        this.backoffInterval = answerConfiguration.getLongProperty("export.backoff-ms", 50L);
+        this.resourcePause = answerConfiguration.getLongProperty("export.pause-ms", 0L);
+        int parallelism = answerConfiguration.getIntegerProperty("export.parallelism", 1);
+        ThreadFactory exportThreadFactory = threadFactory.newThreadFactory("ladon-edge-export");
+        this.exportExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread exportThread = exportThreadFactory.newThread(runnable);
+            exportThread.setPriority(Thread.MIN_PRIORITY);
+            return(exportThread);
+        });
+        this.interactiveLoadSupplier = () -> 0;
+        LOG.info(".initialise(): exportRootDirectory --> {}, parallelism --> {}, maximumJobs --> {}", exportRootDirectory, parallelism, maximumJobs);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        exportExecutor.shutdownNow();
+    }
+
+    /**
+     * The source of the interactive load figure (typically the in-flight request count of the answer servlet's
+     * request dispatcher) that the export threads defer to.
+     */
+    public void setInteractiveLoadSupplier(IntSupplier interactiveLoadSupplier) {
+        this.interactiveLoadSupplier = interactiveLoadSupplier;
+    }
+
+    /**
+     * Queue a new export of the given Group.
+     *
+     * @return the queued job, or null if the maximum number of concurrent exports has been reached
+     */
+    public BulkExportJob submitGroupExport(IdType groupId, Set<String> resourceTypes, String requestUrl){
+        LOG.debug(".submitGroupExport(): Entry, groupId --> {}, resourceTypes --> {}", groupId, resourceTypes);
+        purgeExpiredJobs();
+        synchronized(jobs){
+            int activeJobs = 0;
+            for(BulkExportJob currentJob: jobs.values()){
+                if(!currentJob.isFinished()){
+                    activeJobs += 1;
+                }
+            }
+            if(activeJobs >= maximumJobs){
+                LOG.debug(".submitGroupExport(): Exit, maximum concurrent exports ({}) reached", maximumJobs);
+                return(null);
+            }
+            String jobId = UUID.randomUUID().toString();
+            BulkExportJob job = new BulkExportJob(jobId, groupId.toUnqualifiedVersionless(), resourceTypes, requestUrl, new File(exportRootDirectory, jobId));
+            jobs.put(jobId, job);
+            job.setExecution(exportExecutor.submit(() -> runExport(job)));
+            LOG.debug(".submitGroupExport(): Exit, jobId --> {}", jobId);
+            return(job);
+        }
+    }
+
+    public BulkExportJob getJob(String jobId){
+        if(jobId == null){
+            return(null);
+        }
+        purgeExpiredJobs();
+        return(jobs.get(jobId));
+    }
+
+    //
+    // Export Processing
+    //
+
+    private void runExport(BulkExportJob job){
+        LOG.info(".runExport(): Starting export, jobId --> {}, groupId --> {}", job.getJobId(), job.getGroupId());
+        job.setStatus(BulkExportJob.BulkExportJobStatusEnum.EXPORT_IN_PROGRESS);
+        IParser ndjsonParser = fhirContextUtility.getFhirContext().newJsonParser().setPrettyPrint(false);
+        Map<String, Writer> outputWriters = new HashMap<>();
+        try {
+            if(!job.getOutputDirectory().mkdirs() && !job.getOutputDirectory().isDirectory()){
+                throw new IOException("Unable to create export directory " + job.getOutputDirectory());
+            }
+            Resource groupResource = proxyRegistry.readResourceFromSource(job.getGroupId());
+            if(!(groupResource instanceof Group)){
+                throw new ResourceNotFoundException(job.getGroupId());
+            }
+            Group group = (Group)groupResource;
+            if(job.isResourceTypeRequested("Group")){
+                writeResource(job, group, ndjsonParser, outputWriters);
+            }
+            Set<String> exportedMembers = new HashSet<>();
+            for(Group.GroupMemberComponent currentMember: group.getMember()){
+                if(Thread.currentThread().isInterrupted()){
+                    job.setStatus(BulkExportJob.BulkExportJobStatusEnum.EXPORT_CANCELLED);
+                    return;
+                }
+                if(!currentMember.hasEntity() || !currentMember.getEntity().hasReference()){
+                    continue;
+                }
+                IdType memberId = new IdType(currentMember.getEntity().getReference()).toUnqualifiedVersionless();
+                if(!memberId.hasResourceType() || !job.isResourceTypeRequested(memberId.getResourceType())){
+                    continue;
+                }
+                if(proxyRegistry.getProxy(memberId.getResourceType()) == null || !exportedMembers.add(memberId.getValue())){
+                    continue;
+                }
+                deferToInteractiveLoad();
+                exportMember(job, memberId, ndjsonParser, outputWriters);
+            }
+            // The export files must be complete (flushed and closed) before the job is reported as complete
+            closeOutputWriters(outputWriters);
+            job.setStatus(BulkExportJob.BulkExportJobStatusEnum.EXPORT_COMPLETE);
+            LOG.info(".runExport(): Export complete, jobId --> {}, resources --> {}, failures --> {}", job.getJobId(), job.getExportedResourceCount(), job.getFailedResourceCount());
+        } catch(InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+            job.setStatus(BulkExportJob.BulkExportJobStatusEnum.EXPORT_CANCELLED);
+        } catch(Exception exportException){
+            LOG.warn(".runExport(): Export failed, jobId --> {}", job.getJobId(), exportException);
+            job.setFailureMessage(exportException.getMessage());
+            job.setStatus(BulkExportJob.BulkExportJobStatusEnum.EXPORT_FAILED);
+        } finally {
+            for(Writer currentWriter: outputWriters.values()){
+                try {
+                    currentWriter.close();
+                } catch (IOException closeException) {
+                    LOG.warn(".runExport(): Unable to close export file, jobId --> {}", job.getJobId(), closeException);
+                }
+            }
+        }
+    }
+
+    private void closeOutputWriters(Map<String, Writer> outputWriters) throws IOException {
+        Iterator<Writer> writerIterator = outputWriters.values().iterator();
+        while(writerIterator.hasNext()){
+            Writer currentWriter = writerIterator.next();
+            writerIterator.remove();
+            currentWriter.close();
+        }
+    }
+
+    private void exportMember(BulkExportJob job, IdType memberId, IParser ndjsonParser, Map<String, Writer> outputWriters) throws IOException {
+        Resource memberResource;
+        try {
+            memberResource = proxyRegistry.readResourceFromSource(memberId);
+        } catch(RuntimeException retrievalException){
+            LOG.debug(".exportMember(): Unable to retrieve member --> {}, reason --> {}", memberId, retrievalException.getMessage());
+            job.recordFailedResource();
+            return;
+        }
+        if(memberResource == null){
+            job.recordFailedResource();
+            return;
+        }
+        writeResource(job, memberResource, ndjsonParser, outputWriters);
+    }
+
+    private void writeResource(BulkExportJob job, Resource resource, IParser ndjsonParser, Map<String, Writer> outputWriters) throws IOException {
+        String resourceType = resource.fhirType();
+        Writer outputWriter = outputWriters.get(resourceType);
+        if(outputWriter == null){
+            outputWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(job.getOutputFile(resourceType)), StandardCharsets.UTF_8));
+            outputWriters.put(resourceType, outputWriter);
+        }
+        ndjsonParser.encodeResourceToWriter(resource, outputWriter);
+        outputWriter.write('\n');
+        job.recordExportedResource(resourceType);
+    }
+
+    private void deferToInteractiveLoad() throws InterruptedException {
+        while(interactiveLoadSupplier.getAsInt() > interactiveThreshold){
+            Thread.sleep(backoffInterval);
+        }
+        if(resourcePause > 0){
+            Thread.sleep(resourcePause);
+        }
+    }
+
+    //
+    // Housekeeping
+    //
+
+    private void purgeExpiredJobs(){
+        long expiryThreshold = System.currentTimeMillis() - retentionPeriod;
+        List<BulkExportJob> expiredJobs = new ArrayList<>();
+        Iterator<BulkExportJob> jobIterator = jobs.values().iterator();
+        while(jobIterator.hasNext()){
+            BulkExportJob currentJob = jobIterator.next();
+            if(currentJob.isFinished() && currentJob.getCompletionTime() < expiryThreshold){
+                jobIterator.remove();
+                expiredJobs.add(currentJob);
+            }
+        }
+        for(BulkExportJob currentJob: expiredJobs){
+            LOG.debug(".purgeExpiredJobs(): Removing expired export, jobId --> {}", currentJob.getJobId());
+            File[] outputFiles = currentJob.getOutputDirectory().listFiles();
+            if(outputFiles != null){
+                for(File currentFile: outputFiles){
+                    if(!currentFile.delete()){
+                        LOG.warn(".purgeExpiredJobs(): Unable to delete --> {}", currentFile);
+                    }
+                }
+            }
+            if(!currentJob.getOutputDirectory().delete()){
+                LOG.debug(".purgeExpiredJobs(): Unable to delete --> {}", currentJob.getOutputDirectory());
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.guard;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.DeadlineExceededException;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Supplier;
+
+/**
+ * Guards the VirtualDB accessor calls of a single resource type: each call must first enter the (per resource
+ * type) Bulkhead and be permitted by the CircuitBreaker. A call that is refused fails fast, with a 503 (Service
+ * Unavailable) carrying an OperationOutcome and a Retry-After header, rather than waiting on an accessor that is
+ * already saturated or failing.
+ *
+ * A call counts as failed (for the CircuitBreaker) if it throws anything other than a client error (4xx)
+ * exception - i.e. a caller's bad request does not open the circuit - or if it returns a VirtualDBMethodOutcome
+ * whose status is not a finished one (e.g. REVIEW_FINISH, SEARCH_FINISHED), as that is how the accessors report
+ * most of their failures. A call ended by the caller's own deadline (a DeadlineExceededException) is recorded as
+ * cancelled rather than failed, so a client asking for a very short deadline can not open the circuit.
+ */
+public class AccessorGuard {
+    private static final Logger LOG = LoggerFactory.getLogger(AccessorGuard.class);
+
+    private final String resourceType;
+    private final Bulkhead bulkhead;
+    private final CircuitBreaker circuitBreaker;
+
+    public AccessorGuard(String resourceType, Bulkhead bulkhead, CircuitBreaker circuitBreaker){
+        this.resourceType = resourceType;
+        this.bulkhead = bulkhead;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public <T> T execute(Supplier<T> accessorCall){
+        if(!bulkhead.tryEnter()){
+            LOG.warn(".execute(): Bulkhead full, refusing accessor call, resourceType --> {}, inFlight --> {}", resourceType, bulkhead.getInFlight());
+            throw new AccessorUnavailableException("Too many concurrent " + resourceType + " requests are in progress, please retry later", 1000L);
+        }
+        boolean hasPermission = false;
+        boolean hasFailed = false;
+        boolean wasCancelled = false;
+        long startTime = System.currentTimeMillis();
+        try {
+            hasPermission = circuitBreaker.tryAcquirePermission();
+            if(!hasPermission){
+                LOG.debug(".execute(): Circuit open, refusing accessor call, resourceType --> {}", resourceType);
+                throw new AccessorUnavailableException("The " + resourceType + " data source is currently unavailable, please retry later", circuitBreaker.getRetryAfter());
+            }
+            T result = accessorCall.get();
+            hasFailed = isFailedOutcome(result);
+            return(result);
+        } catch(DeadlineExceededException deadlineException){
+            wasCancelled = true;
+            throw deadlineException;
+        } catch(RuntimeException callException){
+            hasFailed = hasPermission && isServerFailure(callException);
+            throw callException;
+        } finally {
+            bulkhead.exit();
+            if(hasPermission){
+                CircuitBreaker.CircuitStateEnum previousState = circuitBreaker.getState();
+                if(wasCancelled){
+                    circuitBreaker.recordCancelled(System.currentTimeMillis() - startTime);
+                } else {
+                    circuitBreaker.recordOutcome(System.currentTimeMillis() - startTime, hasFailed);
+                }
+                if(circuitBreaker.getState() != previousState){
+                    LOG.warn(".execute(): Circuit state changed, resourceType --> {}, from --> {}, to --> {}", resourceType, previousState, circuitBreaker.getState());
+                }
+            }
+        }
+    }
+
+    private boolean isServerFailure(RuntimeException callException){
+        if(callException instanceof BaseServerResponseException){
+            return(((BaseServerResponseException) callException).getStatusCode() >= 500);
+        }
+        return(true);
+    }
+
+    private boolean isFailedOutcome(Object result){
+        if(!(result instanceof VirtualDBMethodOutcome)){
+            return(false);
+        }
+        VirtualDBActionStatusEnum status = ((VirtualDBMethodOutcome) result).getStatusEnum();
+        if(status == null){
+            return(true);
+        }
+        String statusName = status.name();
+        return(!(statusName.endsWith("_FINISH") || statusName.endsWith("_FINISHED")));
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+}
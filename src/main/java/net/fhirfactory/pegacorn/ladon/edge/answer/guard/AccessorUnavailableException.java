@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.guard;
+
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.hl7.fhir.r4.model.OperationOutcome;
+
+/**
+ * A VirtualDB accessor call refused by its AccessorGuard (the circuit is open or the bulkhead is full) - the call
+ * was never made. It is reported to clients as a 503 (Service Unavailable) with a Retry-After header, background
+ * callers (e.g. the write-behind drainers) instead wait for getRetryAfter() and try again.
+ */
+public class AccessorUnavailableException extends UnclassifiedServerFailureException {
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final long retryAfter;
+
+    public AccessorUnavailableException(String message, long retryAfter){
+        super(SERVICE_UNAVAILABLE, message, buildOperationOutcome(message));
+        this.retryAfter = retryAfter;
+        addResponseHeader("Retry-After", Long.toString(Math.max(1L, (retryAfter + 999L) / 1000L)));
+    }
+
+    private static OperationOutcome buildOperationOutcome(String message){
+        OperationOutcome outcome = new OperationOutcome();
+        outcome.addIssue()
+                .setSeverity(OperationOutcome.IssueSeverity.ERROR)
+                .setCode(OperationOutcome.IssueType.TRANSIENT)
+                .setDiagnostics(message);
+        return(outcome);
+    }
+
+    /**
+     * @return how long (in milliseconds) until the accessor is expected to accept calls again
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
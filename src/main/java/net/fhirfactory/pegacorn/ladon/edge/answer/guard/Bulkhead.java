@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.guard;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of concurrent (in-flight) calls: a call that cannot enter within maximumWait milliseconds is
+ * refused, so a slow VirtualDB accessor can only ever tie up maximumConcurrent of the container's threads.
+ */
+public class Bulkhead {
+
+    private final int maximumConcurrent;
+    private final long maximumWait;
+    private final Semaphore permits;
+    private final AtomicLong rejectedCount;
+
+    public Bulkhead(int maximumConcurrent, long maximumWait){
+        this.maximumConcurrent = maximumConcurrent;
+        this.maximumWait = maximumWait;
+        this.permits = new Semaphore(maximumConcurrent);
+        this.rejectedCount = new AtomicLong(0);
+    }
+
+    /**
+     * @return true if the call may proceed (in which case exit() must be called once it is done)
+     */
+    public boolean tryEnter(){
+        boolean hasEntered;
+        try {
+            hasEntered = maximumWait > 0 ? permits.tryAcquire(maximumWait, TimeUnit.MILLISECONDS) : permits.tryAcquire();
+        } catch(InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+            hasEntered = false;
+        }
+        if(!hasEntered){
+            rejectedCount.incrementAndGet();
+        }
+        return(hasEntered);
+    }
+
+    public void exit(){
+        permits.release();
+    }
+
+    public int getMaximumConcurrent() {
+        return maximumConcurrent;
+    }
+
+    public int getInFlight(){
+        return(maximumConcurrent - permits.availablePermits());
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.guard;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A count based circuit breaker. While CLOSED, the outcomes of the last windowSize calls are held and, once at least
+ * minimumCalls have been made, the circuit OPENs if the proportion of failed calls (or of slow calls, those taking
+ * at least slowCallThreshold milliseconds) reaches its threshold. While OPEN, every call is refused. After
+ * openDuration milliseconds the circuit is HALF_OPEN: up to halfOpenCalls trial calls are permitted, and if they
+ * all succeed (and are not slow) the circuit CLOSEs again, otherwise it re-OPENs.
+ *
+ * A call cancelled by its caller (e.g. at the caller's deadline) says nothing about the health of the data source, so
+ * is not counted - unless it had already run for at least slowCallThreshold, in which case it counts as a slow call.
+ */
+public class CircuitBreaker {
+
+    public enum CircuitStateEnum {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long slowCallThreshold;
+    private final int slowCallRatePercent;
+    private final long openDuration;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+
+    private CircuitStateEnum state;
+    private byte[] window;
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+    private int windowSlowCalls;
+    private long openedAt;
+    private int trialCallsPermitted;
+    private int trialCallsSucceeded;
+
+    private long callCount;
+    private long failureCount;
+    private long slowCallCount;
+    private long refusedCount;
+    private long cancelledCount;
+    private long openedCount;
+
+    private static final byte OUTCOME_FAILED = 1;
+    private static final byte OUTCOME_SLOW = 2;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRatePercent, long slowCallThreshold, int slowCallRatePercent, long openDuration, int halfOpenCalls){
+        this(windowSize, minimumCalls, failureRatePercent, slowCallThreshold, slowCallRatePercent, openDuration, halfOpenCalls, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int windowSize, int minimumCalls, int failureRatePercent, long slowCallThreshold, int slowCallRatePercent, long openDuration, int halfOpenCalls, LongSupplier clock){
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallThreshold = slowCallThreshold;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.openDuration = openDuration;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.clock = clock;
+        this.state = CircuitStateEnum.CLOSED;
+        this.window = new byte[this.windowSize];
+    }
+
+    /**
+     * @return true if a call may be made (in which case its outcome must then be recorded via recordOutcome())
+     */
+    public synchronized boolean tryAcquirePermission(){
+        if(state == CircuitStateEnum.OPEN && clock.getAsLong() - openedAt >= openDuration){
+            state = CircuitStateEnum.HALF_OPEN;
+            trialCallsPermitted = 0;
+            trialCallsSucceeded = 0;
+        }
+        switch(state){
+            case CLOSED:
+                return(true);
+            case HALF_OPEN:
+                if(trialCallsPermitted < halfOpenCalls){
+                    trialCallsPermitted++;
+                    return(true);
+                }
+                refusedCount++;
+                return(false);
+            default:
+                refusedCount++;
+                return(false);
+        }
+    }
+
+    public synchronized void recordOutcome(long duration, boolean failed){
+        boolean slow = slowCallThreshold > 0 && duration >= slowCallThreshold;
+        callCount++;
+        if(failed){
+            failureCount++;
+        }
+        if(slow){
+            slowCallCount++;
+        }
+        switch(state){
+            case CLOSED:
+                recordInWindow(failed, slow);
+                if(windowCount >= minimumCalls && (exceeds(windowFailures, failureRatePercent) || exceeds(windowSlowCalls, slowCallRatePercent))){
+                    open();
+                }
+                break;
+            case HALF_OPEN:
+                if(failed || slow){
+                    open();
+                } else if(++trialCallsSucceeded >= halfOpenCalls){
+                    close();
+                }
+                break;
+            default:
+                // The outcome of a call made before the circuit opened, it has already been accounted for
+                break;
+        }
+    }
+
+    /**
+     * Record the outcome of a permitted call that was cancelled by its caller.
+     */
+    public synchronized void recordCancelled(long duration){
+        if(slowCallThreshold > 0 && duration >= slowCallThreshold){
+            recordOutcome(duration, false);
+            return;
+        }
+        cancelledCount++;
+        if(state == CircuitStateEnum.HALF_OPEN && trialCallsPermitted > 0){
+            // Hand the trial back, so another call can be made in its place
+            trialCallsPermitted--;
+        }
+    }
+
+    private void recordInWindow(boolean failed, boolean slow){
+        if(windowCount == windowSize){
+            byte evictedOutcome = window[windowPosition];
+            if((evictedOutcome & OUTCOME_FAILED) != 0){
+                windowFailures--;
+            }
+            if((evictedOutcome & OUTCOME_SLOW) != 0){
+                windowSlowCalls--;
+            }
+        } else {
+            windowCount++;
+        }
+        byte outcome = (byte)((failed ? OUTCOME_FAILED : 0) | (slow ? OUTCOME_SLOW : 0));
+        window[windowPosition] = outcome;
+        windowPosition = (windowPosition + 1) % windowSize;
+        if(failed){
+            windowFailures++;
+        }
+        if(slow){
+            windowSlowCalls++;
+        }
+    }
+
+    private boolean exceeds(int count, int ratePercent){
+        return(ratePercent > 0 && count * 100L >= (long)ratePercent * windowCount);
+    }
+
+    private void open(){
+        state = CircuitStateEnum.OPEN;
+        openedAt = clock.getAsLong();
+        openedCount++;
+    }
+
+    private void close(){
+        state = CircuitStateEnum.CLOSED;
+        windowPosition = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        windowSlowCalls = 0;
+    }
+
+    /**
+     * @return how long (in milliseconds) until an OPEN circuit will permit trial calls (0 if it is not OPEN)
+     */
+    public synchronized long getRetryAfter(){
+        if(state != CircuitStateEnum.OPEN){
+            return(0);
+        }
+        return(Math.max(0, openedAt + openDuration - clock.getAsLong()));
+    }
+
+    public synchronized CircuitStateEnum getState() {
+        return state;
+    }
+
+    public synchronized long getCallCount() {
+        return callCount;
+    }
+
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    public synchronized long getSlowCallCount() {
+        return slowCallCount;
+    }
+
+    public synchronized long getRefusedCount() {
+        return refusedCount;
+    }
+
+    public synchronized long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    public synchronized long getOpenedCount() {
+        return openedCount;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.guard;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The AccessorGuards (bulkhead + circuit breaker) for the VirtualDB accessor calls, one per resource type, so that
+ * a slow or failing accessor for one type cannot exhaust the container threads serving the others.
+ *
+ * The guards are configured per resource type, via
+ *     "ladon.edge.[resource-type].accessor.bulkhead.maximum-concurrent" (16)
+ *     "ladon.edge.[resource-type].accessor.bulkhead.maximum-wait-ms" (100)
+ *     "ladon.edge.[resource-type].accessor.circuit-breaker.window-size" (50)
+ *     "ladon.edge.[resource-type].accessor.circuit-breaker.minimum-calls" (20)
+ *     "ladon.edge.[resource-type].accessor.circuit-breaker.failure-rate-percent" (50)
+ *     "ladon.edge.[resource-type].accessor.circuit-breaker.slow-call-ms" (5000)
+ *     "ladon.edge.[resource-type].accessor.circuit-breaker.slow-call-rate-percent" (80)
+ *     "ladon.edge.[resource-type].accessor.circuit-breaker.open-ms" (30000)
+ *     "ladon.edge.[resource-type].accessor.circuit-breaker.half-open-calls" (3)
+ * (falling back to "ladon.edge.accessor...." as usual).
+ */
+@ApplicationScoped
+public class LadonEdgeAccessorGuards {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeAccessorGuards.class);
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    private ConcurrentHashMap<String, AccessorGuard> guards;
+
+    public LadonEdgeAccessorGuards(){
+        this.guards = new ConcurrentHashMap<>();
+    }
+
+    public AccessorGuard getGuard(String resourceType){
+        return(guards.computeIfAbsent(resourceType, this::newGuard));
+    }
+
+    public Collection<AccessorGuard> getGuards(){
+        return(new ArrayList<>(guards.values()));
+    }
+
+    private AccessorGuard newGuard(String resourceType){
+        int maximumConcurrent = answerConfiguration.getIntegerProperty(resourceType, "accessor.bulkhead.maximum-concurrent", 16);
+        long maximumWait = answerConfiguration.getLongProperty(resourceType, "accessor.bulkhead.maximum-wait-ms", 100L);
+        Bulkhead bulkhead = new Bulkhead(Math.max(1, maximumConcurrent), maximumWait);
+        int windowSize = answerConfiguration.getIntegerProperty(resourceType, "accessor.circuit-breaker.window-size", 50);
+        int minimumCalls = answerConfiguration.getIntegerProperty(resourceType, "accessor.circuit-breaker.minimum-calls", 20);
+        int failureRatePercent = answerConfiguration.getIntegerProperty(resourceType, "accessor.circuit-breaker.failure-rate-percent", 50);
+        long slowCallThreshold = answerConfiguration.getLongProperty(resourceType, "accessor.circuit-breaker.slow-call-ms", 5000L);
+        int slowCallRatePercent = answerConfiguration.getIntegerProperty(resourceType, "accessor.circuit-breaker.slow-call-rate-percent", 80);
+        long openDuration = answerConfiguration.getLongProperty(resourceType, "accessor.circuit-breaker.open-ms", 30000L);
+        int halfOpenCalls = answerConfiguration.getIntegerProperty(resourceType, "accessor.circuit-breaker.half-open-calls", 3);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRatePercent, slowCallThreshold, slowCallRatePercent, openDuration, halfOpenCalls);
+        LOG.info(".newGuard(): resourceType --> {}, maximumConcurrent --> {}, windowSize --> {}, failureRatePercent --> {}, slowCallThreshold --> {}, openDuration --> {}",
+                resourceType, maximumConcurrent, windowSize, failureRatePercent, slowCallThreshold, openDuration);
+        return(new AccessorGuard(resourceType, bulkhead, circuitBreaker));
+    }
+}
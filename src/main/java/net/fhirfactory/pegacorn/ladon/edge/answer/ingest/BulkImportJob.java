@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.ingest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state and progress of a single NDJSON "$import": the number of lines read, the resources created/updated
+ * (or, for the write-behind resource types, accepted into the write-behind queue), the resources that could not be
+ * imported and the first few failures (with their line numbers).
+ *
+ * A write the server refused because it was temporarily unavailable (a 503) is retried, and is only counted as
+ * refused (not failed) if the server remained unavailable, as resubmitting the resource may well succeed.
+ */
+public class BulkImportJob {
+
+    public enum BulkImportJobStatusEnum {
+        IMPORT_QUEUED,
+        IMPORT_IN_PROGRESS,
+        IMPORT_COMPLETE,
+        IMPORT_FAILED,
+        IMPORT_CANCELLED
+    }
+
+    private static final int MAXIMUM_RECORDED_FAILURES = 20;
+
+    private String jobId;
+    private String source;
+    private long submittedAt;
+    private volatile long startedAt;
+    private volatile long completedAt;
+    private volatile BulkImportJobStatusEnum status;
+    private volatile String failureMessage;
+    private AtomicLong lineCount;
+    private AtomicLong createdCount;
+    private AtomicLong updatedCount;
+    private AtomicLong acceptedCount;
+    private AtomicLong retryCount;
+    private AtomicLong refusedCount;
+    private AtomicLong failedCount;
+    private List<String> failures;
+
+    public BulkImportJob(String jobId, String source){
+        this.jobId = jobId;
+        this.source = source;
+        this.submittedAt = System.currentTimeMillis();
+        this.startedAt = -1;
+        this.completedAt = -1;
+        this.status = BulkImportJobStatusEnum.IMPORT_QUEUED;
+        this.lineCount = new AtomicLong(0);
+        this.createdCount = new AtomicLong(0);
+        this.updatedCount = new AtomicLong(0);
+        this.acceptedCount = new AtomicLong(0);
+        this.retryCount = new AtomicLong(0);
+        this.refusedCount = new AtomicLong(0);
+        this.failedCount = new AtomicLong(0);
+        this.failures = new ArrayList<>();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public BulkImportJobStatusEnum getStatus() {
+        return status;
+    }
+
+    public void setStatus(BulkImportJobStatusEnum status) {
+        this.status = status;
+        if(status == BulkImportJobStatusEnum.IMPORT_IN_PROGRESS){
+            this.startedAt = System.currentTimeMillis();
+        } else if(isFinished()){
+            this.completedAt = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isFinished(){
+        return(status == BulkImportJobStatusEnum.IMPORT_COMPLETE || status == BulkImportJobStatusEnum.IMPORT_FAILED || status == BulkImportJobStatusEnum.IMPORT_CANCELLED);
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public void setFailureMessage(String failureMessage) {
+        this.failureMessage = failureMessage;
+    }
+
+    public void recordLine(){
+        lineCount.incrementAndGet();
+    }
+
+    public void recordCreated(){
+        createdCount.incrementAndGet();
+    }
+
+    public void recordUpdated(){
+        updatedCount.incrementAndGet();
+    }
+
+    public void recordAccepted(){
+        acceptedCount.incrementAndGet();
+    }
+
+    public void recordRetry(){
+        retryCount.incrementAndGet();
+    }
+
+    public void recordRefused(long lineNumber, String message){
+        refusedCount.incrementAndGet();
+        recordFailureDetail(lineNumber, "refused, " + message);
+    }
+
+    public void recordFailure(long lineNumber, String message){
+        failedCount.incrementAndGet();
+        recordFailureDetail(lineNumber, message);
+    }
+
+    private void recordFailureDetail(long lineNumber, String message){
+        synchronized(failures){
+            if(failures.size() < MAXIMUM_RECORDED_FAILURES){
+                failures.add("line " + lineNumber + ": " + message);
+            }
+        }
+    }
+
+    public long getLineCount() {
+        return lineCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getUpdatedCount() {
+        return updatedCount.get();
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getRefusedCount() {
+        return refusedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public List<String> getFailures(){
+        synchronized(failures){
+            return(Collections.unmodifiableList(new ArrayList<>(failures)));
+        }
+    }
+
+    public long getElapsedTime(){
+        if(startedAt < 0){
+            return(0);
+        }
+        long endedAt = completedAt < 0 ? System.currentTimeMillis() : completedAt;
+        return(endedAt - startedAt);
+    }
+
+    /**
+     * @return the number of resources imported (created, updated or accepted for write-behind) per second
+     */
+    public double getThroughput(){
+        long elapsedTime = getElapsedTime();
+        if(elapsedTime <= 0){
+            return(0.0);
+        }
+        return((createdCount.get() + updatedCount.get() + acceptedCount.get()) * 1000.0 / elapsedTime);
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.ingest;
+
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.concurrent.LadonEdgeThreadFactory;
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeProxyRegistry;
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.LadonEdgeWriteBehindQueue;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the NDJSON "$import" jobs. A request body is first spooled to a file (so the request is answered as soon as
+ * the body has been received, and the import is not tied to - or cancelled with - the request), then the NDJSON (from
+ * the spooled body, or from a file within the import directory) is read a line at a time; each Resource is added to a batch for its resource type and, once a batch is full, the batch
+ * is handed to the import pool which creates (no id) or updates (id) each of its Resources via the resource proxy.
+ *
+ * At most "ladon.edge.import.parallelism" batches are applied at once, and the reader waits once twice that many are
+ * outstanding, so the memory used is bounded by the batch size (not by the size of the NDJSON). Batches are applied
+ * in parallel, so the order in which two lines for the same Resource are applied is not guaranteed.
+ *
+ * A write refused with a 503 (the write-behind queue is full, or the Virtual DB accessor is unavailable) is retried
+ * every "ladon.edge.import.refusal-retry-ms" for up to "ladon.edge.import.refusal-maximum-wait-ms", which also
+ * slows the reader down to the rate at which the server can accept the Resources.
+ */
+@ApplicationScoped
+public class LadonEdgeBulkImportManager {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeBulkImportManager.class);
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    @Inject
+    private LadonEdgeProxyRegistry proxyRegistry;
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    @Inject
+    private LadonEdgeThreadFactory threadFactory;
+
+    private ConcurrentHashMap<String, BulkImportJob> jobs;
+    private ExecutorService jobExecutor;
+    private ExecutorService batchExecutor;
+    private File importDirectory;
+    private File spoolDirectory;
+    private int parallelism;
+    private int batchSize;
+    private int maximumJobs;
+    private long retentionPeriod;
+    private long refusalRetryInterval;
+    private long refusalMaximumWait;
+
+    @PostConstruct
+    public void initialise(){
+        this.jobs = new ConcurrentHashMap<>();
+        String configuredDirectory = answerConfiguration.getStringProperty("import.directory", null);
+        this.importDirectory = configuredDirectory == null ? null : new File(configuredDirectory);
+        String configuredSpoolDirectory = answerConfiguration.getStringProperty("import.spool-directory", null);
+        this.spoolDirectory = configuredSpoolDirectory == null ? null : new File(configuredSpoolDirectory);
+        this.parallelism = Math.max(1, answerConfiguration.getIntegerProperty("import.parallelism", 4));
+        this.batchSize = Math.max(1, answerConfiguration.getIntegerProperty("import.batch-size", 100));
+        this.maximumJobs = Math.max(1, answerConfiguration.getIntegerProperty("import.maximum-jobs", 2));
+        this.retentionPeriod = answerConfiguration.getLongProperty("import.retention-ms", 3600000L);
+        this.refusalRetryInterval = Math.max(1L, answerConfiguration.getLongProperty("import.refusal-retry-ms", 1000L));
+        this.refusalMaximumWait = answerConfiguration.getLongProperty("import.refusal-maximum-wait-ms", 300000L);
+        this.jobExecutor = Executors.newFixedThreadPool(maximumJobs, threadFactory.newThreadFactory("ladon-edge-import-reader"));
+        this.batchExecutor = Executors.newFixedThreadPool(parallelism, threadFactory.newThreadFactory("ladon-edge-import"));
+        LOG.info(".initialise(): importDirectory --> {}, parallelism --> {}, batchSize --> {}", importDirectory, parallelism, batchSize);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        jobExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+    }
+
+    /**
+     * Queue the import of the NDJSON (request body) read from the InputStream. The body is spooled to a file before
+     * this returns, the import itself is run by the import pool.
+     *
+     * @return the queued job, or null if the maximum number of concurrent imports has been reached
+     * @throws IOException if the body could not be read or spooled
+     */
+    public BulkImportJob submitBodyImport(InputStream ndjsonBody) throws IOException {
+        LOG.debug(".submitBodyImport(): Entry");
+        BulkImportJob job = registerJob("request");
+        if(job == null){
+            LOG.debug(".submitBodyImport(): Exit, maximum concurrent imports ({}) reached", maximumJobs);
+            return(null);
+        }
+        File spoolFile;
+        try {
+            spoolFile = File.createTempFile("ladon-edge-import-", ".ndjson", spoolDirectory);
+        } catch(IOException spoolException){
+            failJob(job, spoolException);
+            throw spoolException;
+        }
+        try {
+            Files.copy(ndjsonBody, spoolFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException spoolException){
+            deleteSpoolFile(spoolFile);
+            failJob(job, spoolException);
+            throw spoolException;
+        }
+        submitImport(job, spoolFile, true);
+        LOG.debug(".submitBodyImport(): Exit, jobId --> {}, spooled --> {} bytes", job.getJobId(), spoolFile.length());
+        return(job);
+    }
+
+    /**
+     * Queue the import of an NDJSON file from the import directory ("ladon.edge.import.directory").
+     *
+     * @param fileName The name of the file, relative to the import directory
+     * @return the queued job, or null if the maximum number of concurrent imports has been reached
+     */
+    public BulkImportJob submitFileImport(String fileName){
+        LOG.debug(".submitFileImport(): Entry, fileName --> {}", fileName);
+        File importFile = resolveImportFile(fileName);
+        BulkImportJob job = registerJob("file:" + fileName);
+        if(job == null){
+            LOG.debug(".submitFileImport(): Exit, maximum concurrent imports ({}) reached", maximumJobs);
+            return(null);
+        }
+        submitImport(job, importFile, false);
+        LOG.debug(".submitFileImport(): Exit, jobId --> {}", job.getJobId());
+        return(job);
+    }
+
+    private BulkImportJob registerJob(String source){
+        purgeExpiredJobs();
+        synchronized(jobs){
+            int activeJobs = 0;
+            for(BulkImportJob currentJob: jobs.values()){
+                if(!currentJob.isFinished()){
+                    activeJobs += 1;
+                }
+            }
+            if(activeJobs >= maximumJobs){
+                return(null);
+            }
+            BulkImportJob job = new BulkImportJob(UUID.randomUUID().toString(), source);
+            jobs.put(job.getJobId(), job);
+            return(job);
+        }
+    }
+
+    private void submitImport(BulkImportJob job, File ndjsonFile, boolean deleteWhenDone){
+        try {
+            jobExecutor.submit(() -> {
+                try(BufferedReader fileReader = new BufferedReader(new InputStreamReader(new FileInputStream(ndjsonFile), StandardCharsets.UTF_8))){
+                    processImport(job, fileReader);
+                } catch(IOException fileException){
+                    LOG.warn(".submitImport(): Unable to read import file --> {}", ndjsonFile, fileException);
+                    failJob(job, fileException);
+                } finally {
+                    if(deleteWhenDone){
+                        deleteSpoolFile(ndjsonFile);
+                    }
+                }
+            });
+        } catch(RejectedExecutionException rejectedException){
+            if(deleteWhenDone){
+                deleteSpoolFile(ndjsonFile);
+            }
+            failJob(job, rejectedException);
+            throw new UnclassifiedServerFailureException(503, "The import service is not available, please retry later");
+        }
+    }
+
+    private void failJob(BulkImportJob job, Exception failure){
+        job.setFailureMessage(failure.getMessage());
+        job.setStatus(BulkImportJob.BulkImportJobStatusEnum.IMPORT_FAILED);
+    }
+
+    private void deleteSpoolFile(File spoolFile){
+        try {
+            Files.deleteIfExists(spoolFile.toPath());
+        } catch(IOException deleteException){
+            LOG.warn(".deleteSpoolFile(): Unable to delete spooled import --> {}", spoolFile, deleteException);
+        }
+    }
+
+    public BulkImportJob getJob(String jobId){
+        if(jobId == null){
+            return(null);
+        }
+        purgeExpiredJobs();
+        return(jobs.get(jobId));
+    }
+
+    /**
+     * Only plain file names within the import directory are accepted, so a client can not read an arbitrary file.
+     */
+    private File resolveImportFile(String fileName){
+        if(importDirectory == null){
+            throw new InvalidRequestException("File based import is not enabled on this server");
+        }
+        if(fileName == null || fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\") || fileName.startsWith(".")){
+            throw new InvalidRequestException("Invalid import file name --> " + fileName);
+        }
+        File importFile = new File(importDirectory, fileName);
+        try {
+            if(!importFile.getCanonicalFile().getParentFile().equals(importDirectory.getCanonicalFile())){
+                throw new InvalidRequestException("Invalid import file name --> " + fileName);
+            }
+        } catch(IOException pathException){
+            throw new InvalidRequestException("Invalid import file name --> " + fileName);
+        }
+        if(!importFile.isFile()){
+            throw new ResourceNotFoundException("No import file named --> " + fileName);
+        }
+        return(importFile);
+    }
+
+    //
+    // Import Processing
+    //
+
+    private void processImport(BulkImportJob job, BufferedReader ndjsonReader){
+        LOG.info(".processImport(): Starting import, jobId --> {}, source --> {}", job.getJobId(), job.getSource());
+        job.setStatus(BulkImportJob.BulkImportJobStatusEnum.IMPORT_IN_PROGRESS);
+        IParser ndjsonParser = fhirContextUtility.getFhirContext().newJsonParser();
+        int maximumOutstandingBatches = parallelism * 2;
+        Semaphore outstandingBatches = new Semaphore(maximumOutstandingBatches);
+        Map<String, List<ImportEntry>> pendingBatches = new HashMap<>();
+        try {
+            String line;
+            long lineNumber = 0;
+            while((line = ndjsonReader.readLine()) != null){
+                lineNumber += 1;
+                job.recordLine();
+                if(line.trim().isEmpty()){
+                    continue;
+                }
+                Resource resource = parseLine(job, ndjsonParser, line, lineNumber);
+                if(resource == null){
+                    continue;
+                }
+                List<ImportEntry> batch = pendingBatches.computeIfAbsent(resource.fhirType(), resourceType -> new ArrayList<>(batchSize));
+                batch.add(new ImportEntry(lineNumber, resource));
+                if(batch.size() >= batchSize){
+                    pendingBatches.remove(resource.fhirType());
+                    dispatchBatch(job, batch, outstandingBatches);
+                }
+                if(Thread.currentThread().isInterrupted()){
+                    throw new InterruptedException();
+                }
+            }
+            for(List<ImportEntry> currentBatch: pendingBatches.values()){
+                dispatchBatch(job, currentBatch, outstandingBatches);
+            }
+            pendingBatches.clear();
+            // Wait for the outstanding batches to be applied
+            outstandingBatches.acquire(maximumOutstandingBatches);
+            outstandingBatches.release(maximumOutstandingBatches);
+            job.setStatus(BulkImportJob.BulkImportJobStatusEnum.IMPORT_COMPLETE);
+            LOG.info(".processImport(): Import complete, jobId --> {}, created --> {}, updated --> {}, accepted --> {}, refused --> {}, failed --> {}, throughput --> {}/s",
+                    job.getJobId(), job.getCreatedCount(), job.getUpdatedCount(), job.getAcceptedCount(), job.getRefusedCount(), job.getFailedCount(), job.getThroughput());
+        } catch(InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+            job.setStatus(BulkImportJob.BulkImportJobStatusEnum.IMPORT_CANCELLED);
+        } catch(IOException | RejectedExecutionException importException){
+            LOG.warn(".processImport(): Import failed, jobId --> {}", job.getJobId(), importException);
+            job.setFailureMessage(importException.getMessage());
+            job.setStatus(BulkImportJob.BulkImportJobStatusEnum.IMPORT_FAILED);
+        }
+    }
+
+    private Resource parseLine(BulkImportJob job, IParser ndjsonParser, String line, long lineNumber){
+        IBaseResource parsedResource;
+        try {
+            parsedResource = ndjsonParser.parseResource(line);
+        } catch(RuntimeException parseException){
+            job.recordFailure(lineNumber, "unable to parse, " + parseException.getMessage());
+            return(null);
+        }
+        if(!(parsedResource instanceof Resource) || proxyRegistry.getProxy(((Resource) parsedResource).fhirType()) == null){
+            job.recordFailure(lineNumber, "resource type " + parsedResource.fhirType() + " is not supported by this server");
+            return(null);
+        }
+        return((Resource) parsedResource);
+    }
+
+    private void dispatchBatch(BulkImportJob job, List<ImportEntry> batch, Semaphore outstandingBatches) throws InterruptedException {
+        outstandingBatches.acquire();
+        try {
+            batchExecutor.submit(() -> {
+                try {
+                    applyBatch(job, batch);
+                } finally {
+                    outstandingBatches.release();
+                }
+            });
+        } catch(RejectedExecutionException rejectedException){
+            outstandingBatches.release();
+            throw rejectedException;
+        }
+    }
+
+    private void applyBatch(BulkImportJob job, List<ImportEntry> batch){
+        for(ImportEntry currentEntry: batch){
+            if(!applyEntry(job, currentEntry)){
+                return;
+            }
+        }
+    }
+
+    /**
+     * Create/update a single Resource, retrying while the server refuses the write as (temporarily) unavailable. A
+     * write to a write-behind resource type is only queued, so is recorded as accepted rather than created/updated.
+     *
+     * @return false if the import has been cancelled (the thread interrupted)
+     */
+    private boolean applyEntry(BulkImportJob job, ImportEntry entry){
+        Resource resource = entry.getResource();
+        boolean isUpdate = resource.hasIdElement() && resource.getIdElement().hasIdPart();
+        long refusedSince = -1;
+        while(true){
+            try {
+                LadonEdgeWriteBehindQueue.takeAcceptedTicket();
+                MethodOutcome outcome = isUpdate ? proxyRegistry.updateResource(resource) : proxyRegistry.createResource(resource);
+                String acceptedTicket = LadonEdgeWriteBehindQueue.takeAcceptedTicket();
+                if(outcome == null){
+                    job.recordFailure(entry.getLineNumber(), "the resource could not be " + (isUpdate ? "updated" : "created"));
+                } else if(acceptedTicket != null){
+                    job.recordAccepted();
+                } else if(isUpdate){
+                    job.recordUpdated();
+                } else {
+                    job.recordCreated();
+                }
+                return(true);
+            } catch(UnclassifiedServerFailureException refusedException){
+                LadonEdgeWriteBehindQueue.takeAcceptedTicket();
+                if(refusedException.getStatusCode() != 503){
+                    job.recordFailure(entry.getLineNumber(), refusedException.getMessage());
+                    return(true);
+                }
+                long now = System.currentTimeMillis();
+                if(refusedSince < 0){
+                    refusedSince = now;
+                }
+                if(now - refusedSince >= refusalMaximumWait){
+                    job.recordRefused(entry.getLineNumber(), refusedException.getMessage());
+                    return(true);
+                }
+                job.recordRetry();
+                try {
+                    Thread.sleep(refusalRetryInterval);
+                } catch(InterruptedException interruptedException){
+                    Thread.currentThread().interrupt();
+                    job.recordFailure(entry.getLineNumber(), "the import was cancelled");
+                    return(false);
+                }
+            } catch(RuntimeException writeException){
+                LadonEdgeWriteBehindQueue.takeAcceptedTicket();
+                job.recordFailure(entry.getLineNumber(), writeException.getMessage());
+                return(true);
+            }
+        }
+    }
+
+    //
+    // Housekeeping
+    //
+
+    private void purgeExpiredJobs(){
+        long expiryThreshold = System.currentTimeMillis() - retentionPeriod;
+        Iterator<BulkImportJob> jobIterator = jobs.values().iterator();
+        while(jobIterator.hasNext()){
+            BulkImportJob currentJob = jobIterator.next();
+            if(currentJob.isFinished() && currentJob.getCompletedAt() < expiryThreshold){
+                LOG.debug(".purgeExpiredJobs(): Removing expired import, jobId --> {}", currentJob.getJobId());
+                jobIterator.remove();
+            }
+        }
+    }
+
+    private static class ImportEntry {
+        private long lineNumber;
+        private Resource resource;
+
+        public ImportEntry(long lineNumber, Resource resource){
+            this.lineNumber = lineNumber;
+            this.resource = resource;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
+import ca.uhn.fhir.util.DateUtils;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeVersionIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+
+/**
+ * Answers conditional reads (If-None-Match / If-Modified-Since) with a 304 (Not Modified) from the
+ * LadonEdgeVersionIndex, before the read is handed to the resource proxy - so neither the VirtualDB accessor nor
+ * the encoder is involved. Requests for Resources not in the index are processed as normal (where HAPI will
+ * still apply its own ETag handling to the Resource that is read).
+ */
+@Interceptor
+public class ConditionalReadInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(ConditionalReadInterceptor.class);
+
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private LadonEdgeVersionIndex versionIndex;
+
+    public ConditionalReadInterceptor(LadonEdgeVersionIndex versionIndex){
+        this.versionIndex = versionIndex;
+    }
+
+    @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+    public void incomingRequestPreHandled(RequestDetails theRequestDetails, RestOperationTypeEnum theOperation) {
+        if(theOperation != RestOperationTypeEnum.READ || theRequestDetails.getId() == null || !theRequestDetails.getId().hasIdPart()){
+            return;
+        }
+        String ifNoneMatch = theRequestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH);
+        String ifModifiedSince = theRequestDetails.getHeader(HEADER_IF_MODIFIED_SINCE);
+        if(ifNoneMatch == null && ifModifiedSince == null){
+            return;
+        }
+        LadonEdgeVersionIndex.VersionEntry versionEntry = versionIndex.lookup(theRequestDetails.getResourceName(), theRequestDetails.getId().getIdPart());
+        if(versionEntry == null){
+            return;
+        }
+        boolean notModified;
+        if(ifNoneMatch != null){
+            // If-None-Match takes precedence over If-Modified-Since (RFC 7232)
+            notModified = matchesETag(ifNoneMatch, versionEntry.getVersionId());
+        } else {
+            notModified = isNotModifiedSince(ifModifiedSince, versionEntry);
+        }
+        if(notModified){
+            LOG.debug(".incomingRequestPreHandled(): Resource is not modified, id --> {}", theRequestDetails.getId());
+            versionIndex.recordNotModifiedResponse();
+            throw new NotModifiedException("Not Modified");
+        }
+    }
+
+    private boolean matchesETag(String ifNoneMatch, String versionId){
+        for(String currentTag: ifNoneMatch.split(",")){
+            String tag = currentTag.trim();
+            if(tag.equals("*")){
+                return(true);
+            }
+            if(tag.startsWith("W/")){
+                tag = tag.substring(2);
+            }
+            if(tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")){
+                tag = tag.substring(1, tag.length() - 1);
+            }
+            if(tag.equals(versionId)){
+                return(true);
+            }
+        }
+        return(false);
+    }
+
+    private boolean isNotModifiedSince(String ifModifiedSince, LadonEdgeVersionIndex.VersionEntry versionEntry){
+        if(!versionEntry.hasLastUpdated()){
+            return(false);
+        }
+        Date modifiedSince = DateUtils.parseDate(ifModifiedSince);
+        if(modifiedSince == null){
+            return(false);
+        }
+        // HTTP dates have a resolution of one second
+        long lastUpdatedSeconds = versionEntry.getLastUpdated() / 1000L;
+        return(lastUpdatedSeconds <= modifiedSince.getTime() / 1000L);
+    }
+}
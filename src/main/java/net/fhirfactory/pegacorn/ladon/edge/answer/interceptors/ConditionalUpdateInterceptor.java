@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeVersionIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rejects updates/patches whose If-Match version is not the current version of the Resource (as held in the
+ * LadonEdgeVersionIndex) with a 412 (Precondition Failed), once the request has been classified but before its
+ * body is parsed and it is handed to the resource proxy. This is only an early rejection: the resource proxies
+ * enforce the If-Match themselves (see LadonEdgeGetResourceBase.updateResourceIfMatch() and patchResource()), so
+ * requests for Resources not in the index are simply processed as normal.
+ */
+@Interceptor
+public class ConditionalUpdateInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(ConditionalUpdateInterceptor.class);
+
+    private LadonEdgeVersionIndex versionIndex;
+
+    public ConditionalUpdateInterceptor(LadonEdgeVersionIndex versionIndex){
+        this.versionIndex = versionIndex;
+    }
+
+    @Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+    public boolean incomingRequestPostProcessed(RequestDetails theRequestDetails) {
+        RestOperationTypeEnum operation = theRequestDetails.getRestOperationType();
+        if(operation != RestOperationTypeEnum.UPDATE && operation != RestOperationTypeEnum.PATCH){
+            return(true);
+        }
+        if(theRequestDetails.getId() == null || !theRequestDetails.getId().hasIdPart()){
+            return(true);
+        }
+        String expectedVersionId = LadonEdgeVersionIndex.parseETagVersion(theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        if(expectedVersionId == null){
+            return(true);
+        }
+        LadonEdgeVersionIndex.VersionEntry versionEntry = versionIndex.lookup(theRequestDetails.getResourceName(), theRequestDetails.getId().getIdPart());
+        if(versionEntry == null){
+            return(true);
+        }
+        if(!versionEntry.getVersionId().equals(expectedVersionId) || versionEntry.isReserved()){
+            LOG.debug(".incomingRequestPostProcessed(): Stale update rejected, id --> {}, expectedVersionId --> {}", theRequestDetails.getId(), expectedVersionId);
+            versionIndex.recordPreconditionFailedResponse();
+            throw new PreconditionFailedException("Version " + expectedVersionId + " is not the current version of " + theRequestDetails.getResourceName() + "/" + theRequestDetails.getId().getIdPart());
+        }
+        return(true);
+    }
+}
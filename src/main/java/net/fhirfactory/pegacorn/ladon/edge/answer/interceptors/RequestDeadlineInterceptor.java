@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.LadonEdgeDeadlineService;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.RequestDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Establishes the RequestDeadline of each request (from its "X-Request-Timeout-Ms" header and/or the default for
+ * its operation, see LadonEdgeDeadlineService) before it is processed, and discards it once processing is complete.
+ */
+@Interceptor
+public class RequestDeadlineInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestDeadlineInterceptor.class);
+
+    public static final String HEADER_REQUEST_TIMEOUT = "X-Request-Timeout-Ms";
+
+    private LadonEdgeDeadlineService deadlineService;
+
+    public RequestDeadlineInterceptor(LadonEdgeDeadlineService deadlineService){
+        this.deadlineService = deadlineService;
+    }
+
+    @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+    public void incomingRequestPreHandled(RequestDetails theRequestDetails, RestOperationTypeEnum theOperation) {
+        boolean isExtendedOperation = theOperation == RestOperationTypeEnum.EXTENDED_OPERATION_SERVER
+                || theOperation == RestOperationTypeEnum.EXTENDED_OPERATION_TYPE
+                || theOperation == RestOperationTypeEnum.EXTENDED_OPERATION_INSTANCE;
+        Long requestedTimeout = parseTimeout(theRequestDetails.getHeader(HEADER_REQUEST_TIMEOUT));
+        RequestDeadline deadline = deadlineService.resolveDeadline(theOperation.getCode(), isExtendedOperation, requestedTimeout);
+        LOG.trace(".incomingRequestPreHandled(): operation --> {}, requestedTimeout --> {}, deadline --> {}", theOperation, requestedTimeout, deadline == null ? null : deadline.getExpiresAt());
+        RequestDeadline.setCurrent(deadline);
+    }
+
+    @Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+    public void processingCompleted(RequestDetails theRequestDetails) {
+        RequestDeadline.clearCurrent();
+    }
+
+    private Long parseTimeout(String headerValue){
+        if(headerValue == null || headerValue.trim().isEmpty()){
+            return(null);
+        }
+        try {
+            return(Long.parseLong(headerValue.trim()));
+        } catch(NumberFormatException numberFormatException){
+            LOG.debug(".parseTimeout(): Ignoring non-numeric {} header --> {}", HEADER_REQUEST_TIMEOUT, headerValue);
+            return(null);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import net.fhirfactory.pegacorn.ladon.edge.answer.projection.ResourceProjection;
+import net.fhirfactory.pegacorn.ladon.edge.answer.projection.ResourceProjector;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the "_summary" / "_elements" projection to read and search responses before they are encoded, so the
+ * encoder only walks (and writes) the retained elements. Projections are not cached: building one shares the
+ * retained elements of the Resource rather than copying them, which is cheaper than the deep copies a cache needs.
+ */
+@Interceptor
+public class ResourceProjectionInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceProjectionInterceptor.class);
+
+    private ResourceProjector projector;
+
+    public ResourceProjectionInterceptor(FhirContext fhirContext){
+        this.projector = new ResourceProjector(fhirContext);
+    }
+
+    @Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+    public boolean outgoingResponse(RequestDetails theRequestDetails, ResponseDetails theResponseDetails){
+        IBaseResource responseResource = theResponseDetails.getResponseResource();
+        if(responseResource == null){
+            return(true);
+        }
+        ResourceProjection projection = ResourceProjection.fromRequest(theRequestDetails);
+        if(projection == null){
+            return(true);
+        }
+        LOG.debug(".outgoingResponse(): Entry, projection --> {}", projection.getProjectionKey());
+        if(responseResource instanceof Bundle){
+            Bundle responseBundle = (Bundle) responseResource;
+            if(responseBundle.getType() == Bundle.BundleType.SEARCHSET){
+                for(Bundle.BundleEntryComponent currentEntry: responseBundle.getEntry()){
+                    if(currentEntry.hasResource()){
+                        currentEntry.setResource(projector.project(currentEntry.getResource(), projection));
+                    }
+                }
+            }
+        } else if(isRead(theRequestDetails.getRestOperationType()) && responseResource instanceof Resource){
+            theResponseDetails.setResponseResource(projector.project((Resource) responseResource, projection));
+        }
+        return(true);
+    }
+
+    private boolean isRead(RestOperationTypeEnum operationType){
+        return(operationType == RestOperationTypeEnum.READ || operationType == RestOperationTypeEnum.VREAD);
+    }
+}
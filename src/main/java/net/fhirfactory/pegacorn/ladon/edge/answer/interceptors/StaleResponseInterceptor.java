@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeRevalidationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+
+/**
+ * Marks a response that includes a stale value (served by the stale-while-revalidate path, see
+ * LadonEdgeRevalidationService, because the VirtualDB accessor was slow or unavailable) with a
+ * "Warning: 110 - "Response is Stale"" header and an Age header giving the age (in seconds) of the oldest stale value.
+ */
+@Interceptor
+public class StaleResponseInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(StaleResponseInterceptor.class);
+
+    private static final String HEADER_WARNING = "Warning";
+    private static final String HEADER_AGE = "Age";
+    private static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+    @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+    public void incomingRequestPreHandled(RequestDetails theRequestDetails) {
+        // Discard any marker left on this (pooled) thread by an earlier request
+        LadonEdgeRevalidationService.takeStaleResponseAge();
+    }
+
+    @Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+    public boolean outgoingResponse(RequestDetails theRequestDetails, ResponseDetails theResponseDetails) {
+        Long staleAge = LadonEdgeRevalidationService.takeStaleResponseAge();
+        if(staleAge == null){
+            return(true);
+        }
+        LOG.debug(".outgoingResponse(): Stale response, age --> {}", staleAge);
+        theRequestDetails.getResponse().getHeaders().put(HEADER_WARNING, Collections.singletonList(STALE_WARNING));
+        theRequestDetails.getResponse().getHeaders().put(HEADER_AGE, Collections.singletonList(Long.toString(staleAge / 1000L)));
+        return(true);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Takes over the writing of large (JSON) "searchset" Bundle responses from HAPI, so that they are written to the
+ * servlet output stream entry by entry (see StreamingBundleWriter) rather than being encoded into a single String.
+ *
+ * Requests for XML, HTML (browsers), pretty-printed output or filtered output (_summary/_elements) are left to
+ * HAPI, as are Bundles with fewer than minimumEntryCount entries.
+ */
+@Interceptor
+public class StreamingBundleResponseInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingBundleResponseInterceptor.class);
+
+    private StreamingBundleWriter bundleWriter;
+    private int minimumEntryCount;
+    private boolean defaultEncodingIsJson;
+
+    public StreamingBundleResponseInterceptor(FhirContext fhirContext, int minimumEntryCount, boolean defaultEncodingIsJson){
+        this.bundleWriter = new StreamingBundleWriter(fhirContext);
+        this.minimumEntryCount = minimumEntryCount;
+        this.defaultEncodingIsJson = defaultEncodingIsJson;
+    }
+
+    @Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+    public boolean outgoingResponse(RequestDetails theRequestDetails, ResponseDetails theResponseDetails, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) throws IOException {
+        IBaseResource responseResource = theResponseDetails.getResponseResource();
+        if(!(responseResource instanceof Bundle)){
+            return(true);
+        }
+        Bundle responseBundle = (Bundle)responseResource;
+        if(responseBundle.getType() != Bundle.BundleType.SEARCHSET || responseBundle.getEntry().size() < minimumEntryCount){
+            return(true);
+        }
+        if(theServletResponse == null || !isStreamableRequest(theRequestDetails, theServletRequest) || !bundleWriter.canStream(responseBundle)){
+            return(true);
+        }
+        LOG.debug(".outgoingResponse(): Streaming searchset Bundle, entry count --> {}", responseBundle.getEntry().size());
+        theServletResponse.setStatus(theResponseDetails.getResponseCode());
+        theServletResponse.setContentType(Constants.CT_FHIR_JSON_NEW);
+        theServletResponse.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+        OutputStream responseStream = theServletResponse.getOutputStream();
+        String acceptEncoding = theServletRequest.getHeader(Constants.HEADER_ACCEPT_ENCODING);
+        boolean gzipResponse = acceptEncoding != null && acceptEncoding.toLowerCase().contains(Constants.ENCODING_GZIP);
+        if(gzipResponse){
+            theServletResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+            responseStream = new GZIPOutputStream(responseStream, true);
+        }
+        Writer responseWriter = new BufferedWriter(new OutputStreamWriter(responseStream, StandardCharsets.UTF_8));
+        bundleWriter.write(responseBundle, responseWriter);
+        responseWriter.close();
+        return(false);
+    }
+
+    private boolean isStreamableRequest(RequestDetails theRequestDetails, HttpServletRequest theServletRequest){
+        String[] formatValues = theRequestDetails.getParameters().get(Constants.PARAM_FORMAT);
+        if(formatValues != null && formatValues.length > 0 && !formatValues[0].toLowerCase().contains("json")){
+            return(false);
+        }
+        if(formatValues == null || formatValues.length == 0){
+            String acceptHeader = theServletRequest.getHeader(Constants.HEADER_ACCEPT);
+            String accept = acceptHeader == null ? "" : acceptHeader.toLowerCase();
+            if(accept.contains("html") || (accept.contains("xml") && !accept.contains("json"))){
+                return(false);
+            }
+            if(!accept.contains("json") && !defaultEncodingIsJson){
+                return(false);
+            }
+        }
+        if(theRequestDetails.getParameters().containsKey(Constants.PARAM_PRETTY)
+                || theRequestDetails.getParameters().containsKey(Constants.PARAM_SUMMARY)
+                || theRequestDetails.getParameters().containsKey(Constants.PARAM_ELEMENTS)){
+            return(false);
+        }
+        return(true);
+    }
+}
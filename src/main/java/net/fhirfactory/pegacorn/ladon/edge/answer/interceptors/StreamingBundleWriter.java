@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Bundle;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a (JSON) FHIR::Bundle to a Writer one entry at a time, rather than encoding the whole Bundle into a
+ * single String first. Each entry's resource is released once it has been written, so the heap held for the
+ * response shrinks as it is being sent.
+ *
+ * Only Bundles whose entries consist of fullUrl, resource and search elements can be streamed (which is the
+ * case for all "searchset" Bundles produced by the Ladon Edge), see canStream().
+ */
+public class StreamingBundleWriter {
+    private static final int FLUSH_INTERVAL = 32;
+
+    private FhirContext fhirContext;
+
+    public StreamingBundleWriter(FhirContext fhirContext){
+        this.fhirContext = fhirContext;
+    }
+
+    public boolean canStream(Bundle bundle){
+        for(Bundle.BundleEntryComponent currentEntry: bundle.getEntry()){
+            if(currentEntry.hasRequest() || currentEntry.hasResponse() || currentEntry.hasLink() || currentEntry.hasExtension() || currentEntry.hasModifierExtension() || currentEntry.hasId()){
+                return(false);
+            }
+        }
+        return(true);
+    }
+
+    /**
+     * Write the Bundle. Note that the Bundle's entries are detached from it (and discarded) as part of the process.
+     *
+     * @param bundle The Bundle to be written
+     * @param writer The (response) Writer
+     */
+    public void write(Bundle bundle, Writer writer) throws IOException {
+        IParser jsonParser = fhirContext.newJsonParser();
+        jsonParser.setPrettyPrint(false);
+        List<Bundle.BundleEntryComponent> entries = bundle.getEntry();
+        bundle.setEntry(new ArrayList<>());
+        String bundleShell = jsonParser.encodeResourceToString(bundle);
+        // The "shell" is the Bundle without its entries, so write it minus its closing brace and append the entries
+        writer.write(bundleShell, 0, bundleShell.lastIndexOf('}'));
+        if(!entries.isEmpty()){
+            writer.write(",\"entry\":[");
+            for(int counter = 0; counter < entries.size(); counter++){
+                if(counter > 0){
+                    writer.write(',');
+                }
+                writeEntry(jsonParser, entries.get(counter), writer);
+                entries.set(counter, null);
+                if(counter == 0 || counter % FLUSH_INTERVAL == 0){
+                    writer.flush();
+                }
+            }
+            writer.write(']');
+        }
+        writer.write('}');
+        writer.flush();
+    }
+
+    private void writeEntry(IParser jsonParser, Bundle.BundleEntryComponent entry, Writer writer) throws IOException {
+        writer.write('{');
+        boolean hasPreviousElement = false;
+        if(entry.hasFullUrl()){
+            writer.write("\"fullUrl\":");
+            writer.write(JSONObject.quote(entry.getFullUrl()));
+            hasPreviousElement = true;
+        }
+        if(entry.hasResource()){
+            if(hasPreviousElement){
+                writer.write(',');
+            }
+            writer.write("\"resource\":");
+            jsonParser.encodeResourceToWriter(entry.getResource(), writer);
+            hasPreviousElement = true;
+        }
+        if(entry.hasSearch()){
+            Bundle.BundleEntrySearchComponent search = entry.getSearch();
+            if(hasPreviousElement){
+                writer.write(',');
+            }
+            writer.write("\"search\":{");
+            boolean hasPreviousSearchElement = false;
+            if(search.hasMode()){
+                writer.write("\"mode\":");
+                writer.write(JSONObject.quote(search.getMode().toCode()));
+                hasPreviousSearchElement = true;
+            }
+            if(search.hasScore()){
+                if(hasPreviousSearchElement){
+                    writer.write(',');
+                }
+                writer.write("\"score\":");
+                writer.write(search.getScore().toPlainString());
+            }
+            writer.write('}');
+        }
+        writer.write('}');
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.LadonEdgeWriteBehindQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+
+/**
+ * Turns the response to a create/update/patch accepted by the write-behind path (see LadonEdgeWriteBehindQueue) into
+ * a 202 (Accepted), always with a Content-Location pointing at the "$write-status" of the write's ticket. A create
+ * without a client assigned id has no id (or Location) until it has been applied, the client learns it from the
+ * "location" of the write's status.
+ */
+@Interceptor
+public class WriteBehindResponseInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindResponseInterceptor.class);
+
+    @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+    public void incomingRequestPreHandled(RequestDetails theRequestDetails) {
+        // Discard any ticket left on this (pooled) thread by an earlier request
+        LadonEdgeWriteBehindQueue.takeAcceptedTicket();
+    }
+
+    @Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+    public boolean outgoingResponse(RequestDetails theRequestDetails, ResponseDetails theResponseDetails) {
+        String ticket = LadonEdgeWriteBehindQueue.takeAcceptedTicket();
+        RestOperationTypeEnum operation = theRequestDetails.getRestOperationType();
+        if(ticket == null || !isWriteOperation(operation)){
+            return(true);
+        }
+        String statusUrl = theRequestDetails.getFhirServerBase() + "/$write-status?_ticket=" + ticket;
+        LOG.debug(".outgoingResponse(): Write accepted, statusUrl --> {}", statusUrl);
+        theResponseDetails.setResponseCode(HttpServletResponse.SC_ACCEPTED);
+        theRequestDetails.getResponse().getHeaders().put(Constants.HEADER_CONTENT_LOCATION, Collections.singletonList(statusUrl));
+        return(true);
+    }
+
+    private boolean isWriteOperation(RestOperationTypeEnum operation){
+        return(operation == RestOperationTypeEnum.CREATE || operation == RestOperationTypeEnum.UPDATE || operation == RestOperationTypeEnum.PATCH);
+    }
+}
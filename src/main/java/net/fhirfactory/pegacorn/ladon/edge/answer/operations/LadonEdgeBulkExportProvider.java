@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.operations;
+
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import net.fhirfactory.pegacorn.ladon.edge.answer.export.BulkExportJob;
+import net.fhirfactory.pegacorn.ladon.edge.answer.export.LadonEdgeBulkExportManager;
+import org.hl7.fhir.r4.model.Group;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.StringType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A plain provider implementing the (asynchronous) FHIR Bulk Data "$export" pattern for Groups:
+ *
+ *  - GET [base]/Group/[id]/$export kicks off the export and responds with a 202 (Accepted) and a Content-Location
+ *    pointing at the status operation;
+ *  - GET [base]/$export-poll-status?_jobId=[id] responds with a 202 (and X-Progress) while the export is running, and
+ *    with the export manifest once it has completed;
+ *  - GET [base]/$export-download?_jobId=[id]&_file=[resource type] returns one of the NDJSON output files.
+ */
+@ApplicationScoped
+public class LadonEdgeBulkExportProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeBulkExportProvider.class);
+
+    private static final String NDJSON_CONTENT_TYPE = "application/fhir+ndjson";
+    private static final String HEADER_X_PROGRESS = "X-Progress";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    @Inject
+    private LadonEdgeBulkExportManager exportManager;
+
+    @Operation(name = "$export", type = Group.class, idempotent = true, manualResponse = true)
+    public void groupExport(
+            @IdParam IdType theGroupId,
+            @OperationParam(name = "_outputFormat") StringType theOutputFormat,
+            @OperationParam(name = "_type") StringType theType,
+            ServletRequestDetails theRequestDetails) throws IOException {
+        LOG.debug(".groupExport(): Entry, groupId --> {}, type --> {}", theGroupId, theType);
+        if(theOutputFormat != null && theOutputFormat.hasValue()){
+            String outputFormat = theOutputFormat.getValue();
+            if(!outputFormat.equals(NDJSON_CONTENT_TYPE) && !outputFormat.equals("application/ndjson") && !outputFormat.equals("ndjson")){
+                throw new InvalidRequestException("Unsupported _outputFormat (" + outputFormat + "), only " + NDJSON_CONTENT_TYPE + " is supported");
+            }
+        }
+        Set<String> resourceTypes = new LinkedHashSet<>();
+        if(theType != null && theType.hasValue()){
+            for(String currentType: theType.getValue().split(",")){
+                if(!currentType.trim().isEmpty()){
+                    resourceTypes.add(currentType.trim());
+                }
+            }
+        }
+        BulkExportJob job = exportManager.submitGroupExport(theGroupId, resourceTypes, theRequestDetails.getCompleteUrl());
+        if(job == null){
+            throw new UnclassifiedServerFailureException(429, "Too many concurrent exports, please retry later");
+        }
+        HttpServletResponse response = theRequestDetails.getServletResponse();
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setHeader(Constants.HEADER_CONTENT_LOCATION, buildPollStatusUrl(theRequestDetails, job));
+        response.getOutputStream().close();
+        LOG.debug(".groupExport(): Exit, jobId --> {}", job.getJobId());
+    }
+
+    @Operation(name = "$export-poll-status", idempotent = true, manualResponse = true)
+    public void exportPollStatus(
+            @OperationParam(name = "_jobId") StringType theJobId,
+            ServletRequestDetails theRequestDetails) throws IOException {
+        LOG.debug(".exportPollStatus(): Entry, jobId --> {}", theJobId);
+        BulkExportJob job = resolveJob(theJobId);
+        HttpServletResponse response = theRequestDetails.getServletResponse();
+        switch(job.getStatus()){
+            case EXPORT_QUEUED:
+            case EXPORT_IN_PROGRESS:
+                response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                response.setHeader(HEADER_X_PROGRESS, job.getStatus() + ", " + job.getExportedResourceCount() + " resources exported");
+                response.setHeader(HEADER_RETRY_AFTER, "5");
+                response.getOutputStream().close();
+                break;
+            case EXPORT_COMPLETE:
+                writeJson(response, HttpServletResponse.SC_OK, buildManifest(theRequestDetails, job));
+                break;
+            default:
+                JSONObject failure = new JSONObject();
+                failure.put("resourceType", "OperationOutcome");
+                JSONObject issue = new JSONObject();
+                issue.put("severity", "error");
+                issue.put("code", "exception");
+                issue.put("diagnostics", "Export " + job.getStatus() + (job.getFailureMessage() == null ? "" : ": " + job.getFailureMessage()));
+                failure.put("issue", new JSONArray().put(issue));
+                writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, failure);
+        }
+        LOG.debug(".exportPollStatus(): Exit, status --> {}", job.getStatus());
+    }
+
+    @Operation(name = "$export-download", idempotent = true, manualResponse = true)
+    public void exportDownload(
+            @OperationParam(name = "_jobId") StringType theJobId,
+            @OperationParam(name = "_file") StringType theFile,
+            ServletRequestDetails theRequestDetails) throws IOException {
+        LOG.debug(".exportDownload(): Entry, jobId --> {}, file --> {}", theJobId, theFile);
+        BulkExportJob job = resolveJob(theJobId);
+        if(job.getStatus() != BulkExportJob.BulkExportJobStatusEnum.EXPORT_COMPLETE){
+            throw new InvalidRequestException("Export " + job.getJobId() + " is not complete");
+        }
+        // Only the types actually written are served, so the _file value is never used to build an arbitrary path
+        if(theFile == null || !job.getOutputCounts().containsKey(theFile.getValue())){
+            throw new ResourceNotFoundException("Export " + job.getJobId() + " has no output file for --> " + (theFile == null ? null : theFile.getValue()));
+        }
+        File outputFile = job.getOutputFile(theFile.getValue());
+        HttpServletResponse response = theRequestDetails.getServletResponse();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(NDJSON_CONTENT_TYPE);
+        response.setContentLengthLong(outputFile.length());
+        try(OutputStream outputStream = response.getOutputStream()){
+            Files.copy(outputFile.toPath(), outputStream);
+        }
+        LOG.debug(".exportDownload(): Exit");
+    }
+
+    private BulkExportJob resolveJob(StringType theJobId){
+        BulkExportJob job = exportManager.getJob(theJobId == null ? null : theJobId.getValue());
+        if(job == null){
+            throw new ResourceNotFoundException("Unknown (or expired) export --> " + (theJobId == null ? null : theJobId.getValue()));
+        }
+        return(job);
+    }
+
+    private JSONObject buildManifest(ServletRequestDetails theRequestDetails, BulkExportJob job) throws IOException {
+        JSONObject manifest = new JSONObject();
+        manifest.put("transactionTime", new InstantType(new Date(job.getTransactionTime())).getValueAsString());
+        manifest.put("request", job.getRequestUrl());
+        manifest.put("requiresAccessToken", false);
+        JSONArray output = new JSONArray();
+        for(Map.Entry<String, Long> currentOutput: job.getOutputCounts().entrySet()){
+            JSONObject outputEntry = new JSONObject();
+            outputEntry.put("type", currentOutput.getKey());
+            outputEntry.put("url", theRequestDetails.getFhirServerBase() + "/$export-download?_jobId=" + encode(job.getJobId()) + "&_file=" + encode(currentOutput.getKey()));
+            outputEntry.put("count", currentOutput.getValue().longValue());
+            output.put(outputEntry);
+        }
+        manifest.put("output", output);
+        manifest.put("error", new JSONArray());
+        return(manifest);
+    }
+
+    private String buildPollStatusUrl(ServletRequestDetails theRequestDetails, BulkExportJob job) throws IOException {
+        return(theRequestDetails.getFhirServerBase() + "/$export-poll-status?_jobId=" + encode(job.getJobId()));
+    }
+
+    private String encode(String value) throws IOException {
+        return(URLEncoder.encode(value, StandardCharsets.UTF_8.name()));
+    }
+
+    private void writeJson(HttpServletResponse response, int status, JSONObject content) throws IOException {
+        response.setStatus(status);
+        response.setContentType(Constants.CT_JSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try(Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)){
+            content.write(writer);
+        }
+    }
+}
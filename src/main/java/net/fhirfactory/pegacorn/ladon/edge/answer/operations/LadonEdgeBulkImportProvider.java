@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.operations;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import net.fhirfactory.pegacorn.ladon.edge.answer.ingest.BulkImportJob;
+import net.fhirfactory.pegacorn.ladon.edge.answer.ingest.LadonEdgeBulkImportManager;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * A (system level) plain provider for the bulk ingest of NDJSON:
+ *
+ *  - POST [base]/$import with an NDJSON (application/fhir+ndjson) body spools the body and queues its import;
+ *  - POST [base]/$import?_file=[name] queues the import of a file from the (server side) import directory;
+ *  - both respond with a 202 (Accepted) and a Content-Location pointing at the status operation;
+ *  - GET [base]/$import-poll-status?_jobId=[id] reports the progress (and throughput) of an import.
+ */
+@ApplicationScoped
+public class LadonEdgeBulkImportProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeBulkImportProvider.class);
+
+    private static final String FILE_PARAMETER = "_file";
+
+    @Inject
+    private LadonEdgeBulkImportManager importManager;
+
+    @Operation(name = "$import", manualRequest = true, manualResponse = true)
+    public void bulkImport(ServletRequestDetails theRequestDetails) throws IOException {
+        String[] fileNames = theRequestDetails.getParameters().get(FILE_PARAMETER);
+        BulkImportJob job;
+        if(fileNames != null && fileNames.length > 0){
+            LOG.debug(".bulkImport(): Entry, file --> {}", fileNames[0]);
+            job = importManager.submitFileImport(fileNames[0]);
+        } else {
+            LOG.debug(".bulkImport(): Entry, importing the request body");
+            job = importManager.submitBodyImport(theRequestDetails.getServletRequest().getInputStream());
+        }
+        if(job == null){
+            throw new UnclassifiedServerFailureException(429, "Too many concurrent imports, please retry later");
+        }
+        HttpServletResponse response = theRequestDetails.getServletResponse();
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setHeader(Constants.HEADER_CONTENT_LOCATION, theRequestDetails.getFhirServerBase() + "/$import-poll-status?_jobId="
+                + URLEncoder.encode(job.getJobId(), StandardCharsets.UTF_8.name()));
+        response.getOutputStream().close();
+        LOG.debug(".bulkImport(): Exit, jobId --> {}", job.getJobId());
+    }
+
+    @Operation(name = "$import-poll-status", idempotent = true)
+    public Parameters importPollStatus(@OperationParam(name = "_jobId") StringType theJobId) {
+        LOG.debug(".importPollStatus(): Entry, jobId --> {}", theJobId);
+        BulkImportJob job = importManager.getJob(theJobId == null ? null : theJobId.getValue());
+        if(job == null){
+            throw new ResourceNotFoundException("Unknown (or expired) import --> " + (theJobId == null ? null : theJobId.getValue()));
+        }
+        Parameters status = buildJobStatus(job);
+        LOG.debug(".importPollStatus(): Exit, status --> {}", job.getStatus());
+        return(status);
+    }
+
+    private Parameters buildJobStatus(BulkImportJob job){
+        Parameters status = new Parameters();
+        status.addParameter().setName("jobId").setValue(new StringType(job.getJobId()));
+        status.addParameter().setName("source").setValue(new StringType(job.getSource()));
+        status.addParameter().setName("status").setValue(new StringType(job.getStatus().name()));
+        status.addParameter().setName("submitted").setValue(new InstantType(new Date(job.getSubmittedAt())));
+        status.addParameter().setName("lines").setValue(new DecimalType(job.getLineCount()));
+        status.addParameter().setName("created").setValue(new DecimalType(job.getCreatedCount()));
+        status.addParameter().setName("updated").setValue(new DecimalType(job.getUpdatedCount()));
+        status.addParameter().setName("accepted").setValue(new DecimalType(job.getAcceptedCount()));
+        status.addParameter().setName("retried").setValue(new DecimalType(job.getRetryCount()));
+        status.addParameter().setName("refused").setValue(new DecimalType(job.getRefusedCount()));
+        status.addParameter().setName("failed").setValue(new DecimalType(job.getFailedCount()));
+        status.addParameter().setName("elapsedMs").setValue(new DecimalType(job.getElapsedTime()));
+        status.addParameter().setName("resourcesPerSecond").setValue(new DecimalType(job.getThroughput()));
+        if(job.getFailureMessage() != null){
+            status.addParameter().setName("diagnostics").setValue(new StringType(job.getFailureMessage()));
+        }
+        for(String currentFailure: job.getFailures()){
+            status.addParameter().setName("failure").setValue(new StringType(currentFailure));
+        }
+        return(status);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.operations;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.IdentifierIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeIdentifierIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeResourceCache;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeRevalidationService;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeVersionIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.LadonEdgeDeadlineService;
+import net.fhirfactory.pegacorn.ladon.edge.answer.guard.AccessorGuard;
+import net.fhirfactory.pegacorn.ladon.edge.answer.guard.LadonEdgeAccessorGuards;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeGetResourceBase;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeProxyRegistry;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeSynchronousCRUDResourceBase;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.UpdateCoalescer;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.ResourceTypeCache;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.DateBucketedSearchCache;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.IntervalIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.LadonEdgeIntervalIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.LadonEdgeSearchResultCache;
+import net.fhirfactory.pegacorn.ladon.edge.answer.startup.LadonEdgeStartupCoordinator;
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.LadonEdgeWriteBehindQueue;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Map;
+
+/**
+ * A (system level) plain provider exposing the operational statistics of the Ladon Edge answer services via the
+ * "$edge-statistics" operation.
+ */
+@ApplicationScoped
+public class LadonEdgeStatisticsProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeStatisticsProvider.class);
+
+    @Inject
+    private LadonEdgeResourceCache resourceCache;
+
+    @Inject
+    private LadonEdgeVersionIndex versionIndex;
+
+    @Inject
+    private LadonEdgeIdentifierIndex identifierIndex;
+
+    @Inject
+    private LadonEdgeProxyRegistry proxyRegistry;
+
+    @Inject
+    private LadonEdgeStartupCoordinator startupCoordinator;
+
+    @Inject
+    private LadonEdgeSearchResultCache searchResultCache;
+
+    @Inject
+    private LadonEdgeIntervalIndex intervalIndex;
+
+    @Inject
+    private LadonEdgeWriteBehindQueue writeBehindQueue;
+
+    @Inject
+    private LadonEdgeRevalidationService revalidationService;
+
+    @Inject
+    private LadonEdgeAccessorGuards accessorGuards;
+
+    @Inject
+    private LadonEdgeDeadlineService deadlineService;
+
+    @Operation(name = "$edge-statistics", idempotent = true)
+    public Parameters getEdgeStatistics() {
+        LOG.debug(".getEdgeStatistics(): Entry");
+        Parameters statistics = new Parameters();
+        Parameters.ParametersParameterComponent startupStatistics = statistics.addParameter().setName("startup");
+        startupStatistics.addPart().setName("state").setValue(new StringType(startupCoordinator.getStartupState().getStartupState()));
+        for(Map.Entry<String, Long> currentStage: startupCoordinator.getStageDurations().entrySet()){
+            addStatistic(startupStatistics, currentStage.getKey() + "DurationMs", currentStage.getValue());
+        }
+        Parameters.ParametersParameterComponent cacheStatistics = statistics.addParameter().setName("resourceCache");
+        for(ResourceTypeCache currentCache: resourceCache.getResourceTypeCaches()){
+            Parameters.ParametersParameterComponent typeStatistics = cacheStatistics.addPart().setName(currentCache.getResourceType());
+            addStatistic(typeStatistics, "maximumEntries", currentCache.getMaximumEntries());
+            addStatistic(typeStatistics, "entries", currentCache.getSize());
+            addStatistic(typeStatistics, "hits", currentCache.getHitCount());
+            addStatistic(typeStatistics, "misses", currentCache.getMissCount());
+            addStatistic(typeStatistics, "evictions", currentCache.getEvictionCount());
+            addStatistic(typeStatistics, "invalidations", currentCache.getInvalidationCount());
+        }
+        Parameters.ParametersParameterComponent identifierIndexStatistics = statistics.addParameter().setName("identifierIndex");
+        for(IdentifierIndex currentIndex: identifierIndex.getIdentifierIndexes()){
+            Parameters.ParametersParameterComponent typeStatistics = identifierIndexStatistics.addPart().setName(currentIndex.getResourceType());
+            addStatistic(typeStatistics, "maximumEntries", currentIndex.getMaximumEntries());
+            addStatistic(typeStatistics, "entries", currentIndex.getSize());
+            addStatistic(typeStatistics, "hits", currentIndex.getHitCount());
+            addStatistic(typeStatistics, "negativeHits", currentIndex.getNegativeHitCount());
+            addStatistic(typeStatistics, "misses", currentIndex.getMissCount());
+            addStatistic(typeStatistics, "staleEntries", currentIndex.getStaleCount());
+        }
+        Parameters.ParametersParameterComponent searchCacheStatistics = statistics.addParameter().setName("searchResultCache");
+        for(DateBucketedSearchCache currentCache: searchResultCache.getSearchCaches()){
+            Parameters.ParametersParameterComponent searchStatistics = searchCacheStatistics.addPart().setName(currentCache.getPlan().getSearchName().name());
+            addStatistic(searchStatistics, "buckets", currentCache.getBucketCount());
+            addStatistic(searchStatistics, "heldBytes", currentCache.getHeldBytes());
+            addStatistic(searchStatistics, "bucketHits", currentCache.getBucketHitCount());
+            addStatistic(searchStatistics, "bucketMisses", currentCache.getBucketMissCount());
+            searchStatistics.addPart().setName("bucketHitRatio").setValue(new DecimalType(currentCache.getBucketHitRatio()));
+            addStatistic(searchStatistics, "accessorSearches", currentCache.getAccessorSearchCount());
+            addStatistic(searchStatistics, "invalidatedBuckets", currentCache.getInvalidatedBucketCount());
+        }
+        Parameters.ParametersParameterComponent intervalIndexStatistics = statistics.addParameter().setName("intervalIndex");
+        for(IntervalIndex currentIndex: intervalIndex.getIntervalIndexes()){
+            Parameters.ParametersParameterComponent searchStatistics = intervalIndexStatistics.addPart().setName(currentIndex.getPlan().getSearchName().name());
+            addStatistic(searchStatistics, "maximumEntries", currentIndex.getMaximumEntries());
+            addStatistic(searchStatistics, "entries", currentIndex.getSize());
+            addStatistic(searchStatistics, "partitions", currentIndex.getPartitionCount());
+            addStatistic(searchStatistics, "unresolvedPartitions", currentIndex.getUnresolvedPartitionCount());
+            addStatistic(searchStatistics, "hits", currentIndex.getHitCount());
+            addStatistic(searchStatistics, "misses", currentIndex.getMissCount());
+            addStatistic(searchStatistics, "invalidations", currentIndex.getInvalidationCount());
+        }
+        Parameters.ParametersParameterComponent versionIndexStatistics = statistics.addParameter().setName("versionIndex");
+        addStatistic(versionIndexStatistics, "entries", versionIndex.getSize());
+        addStatistic(versionIndexStatistics, "notModifiedResponses", versionIndex.getNotModifiedCount());
+        addStatistic(versionIndexStatistics, "preconditionFailedResponses", versionIndex.getPreconditionFailedCount());
+        Parameters.ParametersParameterComponent writeBehindStatistics = statistics.addParameter().setName("writeBehind");
+        addStatistic(writeBehindStatistics, "maximumQueued", writeBehindQueue.getMaximumQueued());
+        addStatistic(writeBehindStatistics, "queued", writeBehindQueue.getQueuedCount());
+        addStatistic(writeBehindStatistics, "accepted", writeBehindQueue.getAcceptedCount());
+        addStatistic(writeBehindStatistics, "rejected", writeBehindQueue.getRejectedCount());
+        addStatistic(writeBehindStatistics, "completed", writeBehindQueue.getCompletedCount());
+        addStatistic(writeBehindStatistics, "failed", writeBehindQueue.getFailedCount());
+        addStatistic(writeBehindStatistics, "batches", writeBehindQueue.getBatchCount());
+        addStatistic(writeBehindStatistics, "superseded", writeBehindQueue.getSupersededCount());
+        Parameters.ParametersParameterComponent staleReadStatistics = statistics.addParameter().setName("staleWhileRevalidate");
+        addStatistic(staleReadStatistics, "staleResponses", revalidationService.getStaleResponseCount());
+        addStatistic(staleReadStatistics, "budgetExceeded", revalidationService.getBudgetExceededCount());
+        addStatistic(staleReadStatistics, "accessorFailures", revalidationService.getAccessorFailureCount());
+        addStatistic(staleReadStatistics, "revalidationsInProgress", revalidationService.getRevalidationsInProgress());
+        Parameters.ParametersParameterComponent accessorStatistics = statistics.addParameter().setName("accessorGuards");
+        for(AccessorGuard currentGuard: accessorGuards.getGuards()){
+            Parameters.ParametersParameterComponent typeStatistics = accessorStatistics.addPart().setName(currentGuard.getResourceType());
+            typeStatistics.addPart().setName("circuitState").setValue(new StringType(currentGuard.getCircuitBreaker().getState().name()));
+            addStatistic(typeStatistics, "circuitOpenings", currentGuard.getCircuitBreaker().getOpenedCount());
+            addStatistic(typeStatistics, "circuitRefusals", currentGuard.getCircuitBreaker().getRefusedCount());
+            addStatistic(typeStatistics, "cancelledCalls", currentGuard.getCircuitBreaker().getCancelledCount());
+            addStatistic(typeStatistics, "calls", currentGuard.getCircuitBreaker().getCallCount());
+            addStatistic(typeStatistics, "failedCalls", currentGuard.getCircuitBreaker().getFailureCount());
+            addStatistic(typeStatistics, "slowCalls", currentGuard.getCircuitBreaker().getSlowCallCount());
+            addStatistic(typeStatistics, "bulkheadMaximumConcurrent", currentGuard.getBulkhead().getMaximumConcurrent());
+            addStatistic(typeStatistics, "bulkheadInFlight", currentGuard.getBulkhead().getInFlight());
+            addStatistic(typeStatistics, "bulkheadRejections", currentGuard.getBulkhead().getRejectedCount());
+        }
+        Parameters.ParametersParameterComponent deadlineStatistics = statistics.addParameter().setName("requestDeadlines");
+        addStatistic(deadlineStatistics, "expiredBeforeCall", deadlineService.getExpiredBeforeCallCount());
+        addStatistic(deadlineStatistics, "timedOutCalls", deadlineService.getTimedOutCallCount());
+        addStatistic(deadlineStatistics, "callsInProgress", deadlineService.getCallsInProgress());
+        Parameters.ParametersParameterComponent proxyStatistics = statistics.addParameter().setName("proxies");
+        for(LadonEdgeGetResourceBase currentProxy: proxyRegistry.getProxies()){
+            Parameters.ParametersParameterComponent typeStatistics = proxyStatistics.addPart().setName(currentProxy.getResourceTypeName());
+            addStatistic(typeStatistics, "coalescedReads", currentProxy.getCoalescedReadCount());
+            addStatistic(typeStatistics, "coalescedIdentifierSearches", currentProxy.getCoalescedIdentifierSearchCount());
+            if(currentProxy instanceof LadonEdgeSynchronousCRUDResourceBase){
+                UpdateCoalescer<?, ?> updateCoalescer = ((LadonEdgeSynchronousCRUDResourceBase) currentProxy).getUpdateCoalescer();
+                addStatistic(typeStatistics, "submittedUpdates", updateCoalescer.getSubmittedUpdateCount());
+                addStatistic(typeStatistics, "appliedUpdates", updateCoalescer.getAppliedUpdateCount());
+                typeStatistics.addPart().setName("updateCollapseRatio").setValue(new DecimalType(updateCoalescer.getCollapseRatio()));
+            }
+        }
+        LOG.debug(".getEdgeStatistics(): Exit");
+        return (statistics);
+    }
+
+    protected void addStatistic(Parameters.ParametersParameterComponent parent, String name, long value){
+        parent.addPart().setName(name).setValue(new DecimalType(value));
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.operations;
+
+import ca.uhn.fhir.rest.annotation.Transaction;
+import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.MethodNotAllowedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.util.FhirTerser;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeVersionIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.concurrent.LadonEdgeThreadFactory;
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.RequestDeadline;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeAsynchronousCRUDResourceBase;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeProxyRegistry;
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.LadonEdgeWriteBehindQueue;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A (system level) plain provider implementing FHIR "batch" and "transaction" Bundle processing on top of the
+ * resource proxies (via the LadonEdgeProxyRegistry).
+ *
+ * Batch entries are independent, so they are dispatched in parallel on a bounded executor
+ * ("ladon.edge.batch.parallelism" threads, at most "ladon.edge.batch.queue-capacity" entries waiting for them). When
+ * the queue is full a batch fails with a 429 (Too Many Requests), or if it was partly queued its remaining entries do. Transaction entries are processed sequentially in dependency order: the
+ * FHIR processing order (DELETE, POST, PUT, GET) and, within the POSTs, so that an entry is created before any
+ * entry that refers to it (via its urn:uuid fullUrl). Such references are rewritten to the id assigned on creation.
+ *
+ * A PUT entry carrying an If-Match (request.ifMatch) is only applied if the Resource is still at that version, see
+ * LadonEdgeGetResourceBase.updateResourceIfMatch(), otherwise the entry fails with a 412 (Precondition Failed).
+ *
+ * Note that the VirtualDB has no means of rolling back, so a failing transaction stops at the failing entry but
+ * does not undo the entries that were already processed.
+ */
+@ApplicationScoped
+public class LadonEdgeTransactionProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeTransactionProvider.class);
+
+    @Inject
+    private LadonEdgeProxyRegistry proxyRegistry;
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    @Inject
+    private LadonEdgeThreadFactory threadFactory;
+
+    private ExecutorService batchExecutor;
+    private int maximumEntries;
+
+    @PostConstruct
+    public void initialise(){
+        int parallelism = answerConfiguration.getIntegerProperty("batch.parallelism", 8);
+        this.maximumEntries = answerConfiguration.getIntegerProperty("batch.maximum-entries", 500);
+        int queueCapacity = answerConfiguration.getIntegerProperty("batch.queue-capacity", 2 * maximumEntries);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory.newThreadFactory("ladon-edge-batch"));
+        executor.allowCoreThreadTimeOut(true);
+        this.batchExecutor = executor;
+        LOG.info(".initialise(): parallelism --> {}, queueCapacity --> {}, maximumEntries --> {}", parallelism, queueCapacity, maximumEntries);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        batchExecutor.shutdownNow();
+    }
+
+    @Transaction
+    public Bundle transaction(@TransactionParam Bundle theInput) {
+        LOG.debug(".transaction(): Entry, type --> {}, entry count --> {}", theInput.getType(), theInput.getEntry().size());
+        if(theInput.getEntry().size() > maximumEntries){
+            throw new InvalidRequestException("Bundle contains " + theInput.getEntry().size() + " entries, the maximum supported is " + maximumEntries);
+        }
+        Bundle response;
+        switch(theInput.getType()){
+            case BATCH:
+                response = processBatch(theInput);
+                break;
+            case TRANSACTION:
+                response = processTransaction(theInput);
+                break;
+            default:
+                throw new InvalidRequestException("Unable to process a Bundle of type " + theInput.getType() + ", only batch and transaction Bundles are supported");
+        }
+        LOG.debug(".transaction(): Exit");
+        return (response);
+    }
+
+    //
+    // Batch
+    //
+
+    private Bundle processBatch(Bundle batch){
+        List<Future<Bundle.BundleEntryComponent>> entryResponses = new ArrayList<>();
+        for(Bundle.BundleEntryComponent currentEntry: batch.getEntry()){
+            // The entries carry the request's deadline, those still outstanding when it passes fail (individually) with a 504
+            try {
+                entryResponses.add(batchExecutor.submit(RequestDeadline.propagate(() -> processBatchEntry(currentEntry))));
+            } catch(RejectedExecutionException rejectedException){
+                int statusCode = batchExecutor.isShutdown() ? 503 : 429;
+                String message = batchExecutor.isShutdown() ? "The server is shutting down" : "Too many concurrent batch entries, please retry later";
+                if(entryResponses.isEmpty()){
+                    throw new UnclassifiedServerFailureException(statusCode, message);
+                }
+                LOG.debug(".processBatch(): Entry rejected --> {}", message);
+                entryResponses.add(CompletableFuture.completedFuture(buildErrorResponse(statusCode, message)));
+            }
+        }
+        Bundle response = new Bundle();
+        response.setType(Bundle.BundleType.BATCHRESPONSE);
+        for(Future<Bundle.BundleEntryComponent> currentResponse: entryResponses){
+            try {
+                response.addEntry(currentResponse.get());
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                entryResponses.forEach(entryResponse -> entryResponse.cancel(true));
+                throw new InvalidRequestException("Batch processing was interrupted");
+            } catch (ExecutionException executionException) {
+                response.addEntry(buildErrorResponse(500, String.valueOf(executionException.getCause())));
+            }
+        }
+        return(response);
+    }
+
+    private Bundle.BundleEntryComponent processBatchEntry(Bundle.BundleEntryComponent entry){
+        try {
+            return(processEntry(entry));
+        } catch(BaseServerResponseException responseException){
+            LOG.debug(".processBatchEntry(): Entry failed --> {}", responseException.getMessage());
+            return(buildErrorResponse(responseException.getStatusCode(), responseException.getMessage()));
+        } catch(RuntimeException processingException){
+            LOG.warn(".processBatchEntry(): Entry failed", processingException);
+            return(buildErrorResponse(500, processingException.getMessage()));
+        }
+    }
+
+    //
+    // Transaction
+    //
+
+    private Bundle processTransaction(Bundle transaction){
+        List<Bundle.BundleEntryComponent> entries = transaction.getEntry();
+        Map<String, String> assignedReferences = new HashMap<>();
+        Bundle.BundleEntryComponent[] entryResponses = new Bundle.BundleEntryComponent[entries.size()];
+        for(Integer currentIndex: buildProcessingOrder(entries)){
+            Bundle.BundleEntryComponent currentEntry = entries.get(currentIndex);
+            if(currentEntry.hasResource()){
+                rewriteReferences(currentEntry.getResource(), assignedReferences);
+            }
+            // Later entries may reference this one, so a write-behind create/update must be applied (and its id
+            // assigned) before they are processed
+            Bundle.BundleEntryComponent entryResponse = LadonEdgeAsynchronousCRUDResourceBase.callWithWriteThrough(() -> processEntry(currentEntry));
+            if(currentEntry.hasFullUrl() && entryResponse.getResponse().hasLocation()){
+                IdType assignedId = new IdType(entryResponse.getResponse().getLocation());
+                assignedReferences.put(currentEntry.getFullUrl(), assignedId.toUnqualifiedVersionless().getValue());
+            } else if(currentEntry.hasFullUrl() && currentEntry.getFullUrl().startsWith("urn:") && currentEntry.getRequest().getMethod() == Bundle.HTTPVerb.POST){
+                throw new InternalErrorException("No id was assigned to the Resource created for " + currentEntry.getFullUrl() + ", so the references to it cannot be resolved");
+            }
+            entryResponses[currentIndex] = entryResponse;
+        }
+        Bundle response = new Bundle();
+        response.setType(Bundle.BundleType.TRANSACTIONRESPONSE);
+        for(Bundle.BundleEntryComponent currentResponse: entryResponses){
+            response.addEntry(currentResponse);
+        }
+        return(response);
+    }
+
+    /**
+     * Order the transaction entries: DELETE, POST, PUT/PATCH, GET and, within the POSTs, referenced before referencing.
+     */
+    private List<Integer> buildProcessingOrder(List<Bundle.BundleEntryComponent> entries){
+        List<Integer> processingOrder = new ArrayList<>();
+        List<Integer> postEntries = new ArrayList<>();
+        List<Integer> putEntries = new ArrayList<>();
+        List<Integer> getEntries = new ArrayList<>();
+        for(int counter = 0; counter < entries.size(); counter++){
+            Bundle.BundleEntryComponent currentEntry = entries.get(counter);
+            if(!currentEntry.hasRequest() || !currentEntry.getRequest().hasMethod()){
+                throw new InvalidRequestException("Transaction entry " + counter + " has no request method");
+            }
+            switch(currentEntry.getRequest().getMethod()){
+                case DELETE:
+                    processingOrder.add(counter);
+                    break;
+                case POST:
+                    postEntries.add(counter);
+                    break;
+                case GET:
+                case HEAD:
+                    getEntries.add(counter);
+                    break;
+                default:
+                    putEntries.add(counter);
+            }
+        }
+        processingOrder.addAll(orderByDependency(entries, postEntries));
+        processingOrder.addAll(putEntries);
+        processingOrder.addAll(getEntries);
+        return(processingOrder);
+    }
+
+    private List<Integer> orderByDependency(List<Bundle.BundleEntryComponent> entries, List<Integer> postEntries){
+        FhirTerser terser = fhirContextUtility.getFhirContext().newTerser();
+        Map<String, Integer> fullUrlToEntry = new HashMap<>();
+        for(Integer currentIndex: postEntries){
+            Bundle.BundleEntryComponent currentEntry = entries.get(currentIndex);
+            if(currentEntry.hasFullUrl()){
+                fullUrlToEntry.put(currentEntry.getFullUrl(), currentIndex);
+            }
+        }
+        Map<Integer, Set<Integer>> dependents = new HashMap<>();
+        Map<Integer, Integer> outstandingDependencies = new HashMap<>();
+        for(Integer currentIndex: postEntries){
+            outstandingDependencies.put(currentIndex, 0);
+            dependents.put(currentIndex, new HashSet<>());
+        }
+        for(Integer currentIndex: postEntries){
+            Bundle.BundleEntryComponent currentEntry = entries.get(currentIndex);
+            if(!currentEntry.hasResource()){
+                continue;
+            }
+            Set<Integer> dependencies = new HashSet<>();
+            for(Reference currentReference: terser.getAllPopulatedChildElementsOfType(currentEntry.getResource(), Reference.class)){
+                Integer referencedEntry = fullUrlToEntry.get(currentReference.getReference());
+                if(referencedEntry != null && !referencedEntry.equals(currentIndex)){
+                    dependencies.add(referencedEntry);
+                }
+            }
+            for(Integer currentDependency: dependencies){
+                dependents.get(currentDependency).add(currentIndex);
+            }
+            outstandingDependencies.put(currentIndex, dependencies.size());
+        }
+        Deque<Integer> readyEntries = new ArrayDeque<>();
+        for(Integer currentIndex: postEntries){
+            if(outstandingDependencies.get(currentIndex) == 0){
+                readyEntries.add(currentIndex);
+            }
+        }
+        List<Integer> orderedEntries = new ArrayList<>();
+        while(!readyEntries.isEmpty()){
+            Integer currentIndex = readyEntries.poll();
+            orderedEntries.add(currentIndex);
+            for(Integer currentDependent: dependents.get(currentIndex)){
+                int remaining = outstandingDependencies.get(currentDependent) - 1;
+                outstandingDependencies.put(currentDependent, remaining);
+                if(remaining == 0){
+                    readyEntries.add(currentDependent);
+                }
+            }
+        }
+        if(orderedEntries.size() != postEntries.size()){
+            throw new InvalidRequestException("Transaction contains circular references between the entries to be created");
+        }
+        return(orderedEntries);
+    }
+
+    private void rewriteReferences(Resource resource, Map<String, String> assignedReferences){
+        if(assignedReferences.isEmpty()){
+            return;
+        }
+        FhirTerser terser = fhirContextUtility.getFhirContext().newTerser();
+        for(Reference currentReference: terser.getAllPopulatedChildElementsOfType(resource, Reference.class)){
+            String assignedReference = assignedReferences.get(currentReference.getReference());
+            if(assignedReference != null){
+                currentReference.setReference(assignedReference);
+            }
+        }
+    }
+
+    //
+    // Entry Processing
+    //
+
+    private Bundle.BundleEntryComponent processEntry(Bundle.BundleEntryComponent entry){
+        Bundle.BundleEntryRequestComponent request = entry.getRequest();
+        if(request == null || !request.hasMethod()){
+            throw new InvalidRequestException("Bundle entry has no request method");
+        }
+        Bundle.BundleEntryComponent entryResponse = new Bundle.BundleEntryComponent();
+        switch(request.getMethod()){
+            case GET:{
+                if(!request.hasUrl() || request.getUrl().contains("?")){
+                    throw new InvalidRequestException("Only reads (GET [type]/[id]) are supported within a Bundle, url --> " + request.getUrl());
+                }
+                IdType id = new IdType(request.getUrl());
+                Resource resource = proxyRegistry.readResource(id);
+                if(resource == null){
+                    throw new ResourceNotFoundException(id);
+                }
+                entryResponse.setResource(resource);
+                entryResponse.getResponse().setStatus("200 OK");
+                if(resource.hasMeta() && resource.getMeta().hasVersionId()){
+                    entryResponse.getResponse().setEtag("W/\"" + resource.getMeta().getVersionId() + "\"");
+                }
+                break;
+            }
+            case POST:{
+                Resource resource = requireResource(entry);
+                MethodOutcome outcome = proxyRegistry.createResource(resource, request.getIfNoneExist());
+                populateResponse(entryResponse, outcome, Boolean.FALSE.equals(outcome == null ? null : outcome.getCreated()) ? "200 OK" : "201 Created");
+                break;
+            }
+            case PUT:{
+                Resource resource = requireResource(entry);
+                String conditionalUrl = null;
+                if(request.hasUrl() && request.getUrl().contains("?")){
+                    conditionalUrl = request.getUrl();
+                } else if(request.hasUrl()){
+                    IdType id = new IdType(request.getUrl());
+                    if(id.hasIdPart()){
+                        resource.setId(id.toUnqualifiedVersionless());
+                    }
+                }
+                String expectedVersionId = LadonEdgeVersionIndex.parseETagVersion(request.getIfMatch());
+                MethodOutcome outcome;
+                if(expectedVersionId != null){
+                    if(conditionalUrl != null || !resource.getIdElement().hasIdPart()){
+                        throw new InvalidRequestException("If-Match is only supported on an update of a Resource by id, url --> " + request.getUrl());
+                    }
+                    outcome = proxyRegistry.updateResourceIfMatch(resource, expectedVersionId);
+                } else {
+                    outcome = proxyRegistry.updateResource(resource, conditionalUrl);
+                }
+                populateResponse(entryResponse, outcome, Boolean.TRUE.equals(outcome == null ? null : outcome.getCreated()) ? "201 Created" : "200 OK");
+                break;
+            }
+            default:
+                throw new MethodNotAllowedException("Request method " + request.getMethod().toCode() + " is not supported within a Bundle");
+        }
+        return(entryResponse);
+    }
+
+    private Resource requireResource(Bundle.BundleEntryComponent entry){
+        if(!entry.hasResource()){
+            throw new InvalidRequestException("Bundle entry (" + entry.getRequest().getMethod().toCode() + ") has no resource");
+        }
+        return(entry.getResource());
+    }
+
+    private void populateResponse(Bundle.BundleEntryComponent entryResponse, MethodOutcome outcome, String status){
+        if(outcome == null){
+            throw new InvalidRequestException("The request could not be processed by the server");
+        }
+        // A write accepted by a write-behind proxy has not (yet) been applied
+        String acceptedTicket = LadonEdgeWriteBehindQueue.takeAcceptedTicket();
+        entryResponse.getResponse().setStatus(acceptedTicket == null ? status : "202 Accepted");
+        if(outcome.getId() != null){
+            entryResponse.getResponse().setLocation(outcome.getId().getValue());
+            if(outcome.getId().hasVersionIdPart()){
+                entryResponse.getResponse().setEtag("W/\"" + outcome.getId().getVersionIdPart() + "\"");
+            }
+        }
+        if(outcome.getOperationOutcome() != null){
+            entryResponse.getResponse().setOutcome((Resource) outcome.getOperationOutcome());
+        }
+    }
+
+    private Bundle.BundleEntryComponent buildErrorResponse(int statusCode, String message){
+        Bundle.BundleEntryComponent entryResponse = new Bundle.BundleEntryComponent();
+        entryResponse.getResponse().setStatus(Integer.toString(statusCode));
+        OperationOutcome outcome = new OperationOutcome();
+        outcome.addIssue()
+                .setSeverity(OperationOutcome.IssueSeverity.ERROR)
+                .setCode(OperationOutcome.IssueType.PROCESSING)
+                .setDiagnostics(message);
+        entryResponse.getResponse().setOutcome(outcome);
+        return(entryResponse);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.operations;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.LadonEdgeWriteBehindQueue;
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.WriteBehindEntry;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.UriType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Date;
+
+/**
+ * A (system level) plain provider reporting the progress of a write accepted by the write-behind path, via the
+ * "$write-status?_ticket=[ticket]" operation (the Content-Location of the 202 (Accepted) response).
+ */
+@ApplicationScoped
+public class LadonEdgeWriteStatusProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeWriteStatusProvider.class);
+
+    @Inject
+    private LadonEdgeWriteBehindQueue writeBehindQueue;
+
+    @Operation(name = "$write-status", idempotent = true)
+    public Parameters getWriteStatus(@OperationParam(name = "_ticket") StringType theTicket) {
+        LOG.debug(".getWriteStatus(): Entry, ticket --> {}", theTicket);
+        WriteBehindEntry entry = writeBehindQueue.getEntry(theTicket == null ? null : theTicket.getValue());
+        if(entry == null){
+            throw new ResourceNotFoundException("Unknown (or expired) write ticket --> " + (theTicket == null ? null : theTicket.getValue()));
+        }
+        Parameters status = new Parameters();
+        status.addParameter().setName("ticket").setValue(new StringType(entry.getTicket()));
+        status.addParameter().setName("status").setValue(new StringType(entry.getStatus().name()));
+        status.addParameter().setName("operation").setValue(new StringType(entry.getOperation().name()));
+        status.addParameter().setName("resourceType").setValue(new StringType(entry.getResourceType()));
+        status.addParameter().setName("attempts").setValue(new DecimalType(entry.getAttempts()));
+        status.addParameter().setName("queued").setValue(new InstantType(new Date(entry.getQueuedAt())));
+        if(entry.isFinished()){
+            status.addParameter().setName("completed").setValue(new InstantType(new Date(entry.getCompletedAt())));
+        }
+        if(entry.getResultId() != null){
+            status.addParameter().setName("location").setValue(new UriType(entry.getResultId()));
+        }
+        if(entry.getFailureMessage() != null){
+            status.addParameter().setName("diagnostics").setValue(new StringType(entry.getFailureMessage()));
+        }
+        LOG.debug(".getWriteStatus(): Exit, status --> {}", entry.getStatus());
+        return(status);
+    }
+}
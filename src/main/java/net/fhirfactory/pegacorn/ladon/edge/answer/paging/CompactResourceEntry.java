@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.paging;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A FHIR::Resource held in its compact (non-pretty JSON, UTF-8) serialised form rather than as a live HAPI object
+ * graph, which is typically an order of magnitude larger on the heap.
+ */
+public class CompactResourceEntry {
+    private String resourceType;
+    private String resourceId;
+    private byte[] encodedResource;
+
+    public CompactResourceEntry(String resourceType, String resourceId, byte[] encodedResource){
+        this.resourceType = resourceType;
+        this.resourceId = resourceId;
+        this.encodedResource = encodedResource;
+    }
+
+    public static CompactResourceEntry fromResource(FhirContext fhirContext, Resource resource){
+        IParser jsonParser = fhirContext.newJsonParser();
+        jsonParser.setPrettyPrint(false);
+        String encodedResource = jsonParser.encodeResourceToString(resource);
+        String resourceId = null;
+        if(resource.hasIdElement()){
+            resourceId = resource.getIdElement().getIdPart();
+        }
+        return(new CompactResourceEntry(resource.fhirType(), resourceId, encodedResource.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public Resource toResource(FhirContext fhirContext){
+        IParser jsonParser = fhirContext.newJsonParser();
+        Resource decodedResource = (Resource) jsonParser.parseResource(new String(encodedResource, StandardCharsets.UTF_8));
+        return(decodedResource);
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public byte[] getEncodedResource() {
+        return encodedResource;
+    }
+
+    public int getEncodedSize(){
+        return(encodedResource.length);
+    }
+}
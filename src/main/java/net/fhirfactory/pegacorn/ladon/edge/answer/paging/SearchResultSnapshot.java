@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.paging;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The (immutable) result set of a search, as returned by the VirtualDB, which HAPI pages through via the
+ * SearchResultSnapshotPagingProvider.
+ *
+ * A snapshot starts out holding the (live) resources from the search outcome. Only when it is handed over to the
+ * paging provider to be held between requests (i.e. the result set spans more than one page) is it compacted
+ * into CompactResourceEntry's - each page is then decoded as it is requested.
+ */
+public class SearchResultSnapshot implements IBundleProvider {
+    private String uuid;
+    private InstantType published;
+    private Integer preferredPageSize;
+    private FhirContext fhirContext;
+    private List<Resource> liveEntries;
+    private List<CompactResourceEntry> compactEntries;
+    private long heldBytes;
+
+    public SearchResultSnapshot(FhirContext fhirContext, List<Resource> resources, Integer preferredPageSize){
+        this.uuid = UUID.randomUUID().toString();
+        this.published = InstantType.withCurrentTime();
+        this.preferredPageSize = preferredPageSize;
+        this.fhirContext = fhirContext;
+        this.liveEntries = new ArrayList<>(resources);
+        this.compactEntries = null;
+        this.heldBytes = 0;
+    }
+
+    public static SearchResultSnapshot fromBundle(FhirContext fhirContext, Bundle searchOutcome, Integer preferredPageSize){
+        List<Resource> resources = new ArrayList<>();
+        if(searchOutcome != null) {
+            for (Bundle.BundleEntryComponent currentEntry : searchOutcome.getEntry()) {
+                if (currentEntry.hasResource()) {
+                    resources.add(currentEntry.getResource());
+                }
+            }
+        }
+        return(new SearchResultSnapshot(fhirContext, resources, preferredPageSize));
+    }
+
+    /**
+     * Convert the live resources into their compact (serialised) form and release the live object graph.
+     */
+    public synchronized void compact(){
+        if(compactEntries != null){
+            return;
+        }
+        List<CompactResourceEntry> entries = new ArrayList<>(liveEntries.size());
+        long entryBytes = 0;
+        for(Resource currentResource: liveEntries){
+            CompactResourceEntry currentEntry = CompactResourceEntry.fromResource(fhirContext, currentResource);
+            entryBytes += currentEntry.getEncodedSize();
+            entries.add(currentEntry);
+        }
+        this.compactEntries = Collections.unmodifiableList(entries);
+        this.heldBytes = entryBytes;
+        this.liveEntries = null;
+    }
+
+    public synchronized boolean isCompacted(){
+        return(compactEntries != null);
+    }
+
+    public synchronized long getHeldBytes() {
+        return heldBytes;
+    }
+
+    @Override
+    public IPrimitiveType<Date> getPublished() {
+        return (published);
+    }
+
+    @Override
+    public synchronized List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+        int entryCount = size();
+        int fromIndex = Math.max(0, Math.min(theFromIndex, entryCount));
+        int toIndex = Math.max(fromIndex, Math.min(theToIndex, entryCount));
+        List<IBaseResource> pageResources = new ArrayList<>(toIndex - fromIndex);
+        if(compactEntries == null){
+            pageResources.addAll(liveEntries.subList(fromIndex, toIndex));
+        } else {
+            for (CompactResourceEntry currentEntry : compactEntries.subList(fromIndex, toIndex)) {
+                pageResources.add(currentEntry.toResource(fhirContext));
+            }
+        }
+        return (pageResources);
+    }
+
+    @Override
+    public String getUuid() {
+        return (uuid);
+    }
+
+    @Override
+    public Integer preferredPageSize() {
+        return (preferredPageSize);
+    }
+
+    @Override
+    public synchronized Integer size() {
+        if(compactEntries == null){
+            return(liveEntries.size());
+        }
+        return (compactEntries.size());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.paging;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.BasePagingProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An IPagingProvider which holds the SearchResultSnapshot's of multi-page searches in a bounded store. Snapshots
+ * are evicted (oldest first) once they have exceeded their time-to-live or once the maximum number of snapshots
+ * or maximum number of (compacted) bytes held is exceeded.
+ */
+public class SearchResultSnapshotPagingProvider extends BasePagingProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(SearchResultSnapshotPagingProvider.class);
+
+    private LinkedHashMap<String, HeldSnapshot> snapshotStore;
+    private int maximumSnapshotCount;
+    private long maximumHeldBytes;
+    private long snapshotTimeToLive;
+    private long heldBytes;
+    private AtomicLong evictionCount;
+
+    public SearchResultSnapshotPagingProvider(int defaultPageSize, int maximumPageSize, int maximumSnapshotCount, long maximumHeldBytes, long snapshotTimeToLive){
+        super();
+        setDefaultPageSize(defaultPageSize);
+        setMaximumPageSize(maximumPageSize);
+        this.snapshotStore = new LinkedHashMap<>();
+        this.maximumSnapshotCount = maximumSnapshotCount;
+        this.maximumHeldBytes = maximumHeldBytes;
+        this.snapshotTimeToLive = snapshotTimeToLive;
+        this.heldBytes = 0;
+        this.evictionCount = new AtomicLong(0);
+    }
+
+    @Override
+    public synchronized IBundleProvider retrieveResultList(RequestDetails theRequestDetails, String theSearchId) {
+        LOG.debug(".retrieveResultList(): Entry, theSearchId --> {}", theSearchId);
+        evictExpiredSnapshots(System.currentTimeMillis());
+        HeldSnapshot heldSnapshot = snapshotStore.get(theSearchId);
+        if(heldSnapshot == null){
+            LOG.debug(".retrieveResultList(): Exit, no snapshot found (or it has expired)");
+            return(null);
+        }
+        return (heldSnapshot.getSnapshot());
+    }
+
+    @Override
+    public String storeResultList(RequestDetails theRequestDetails, IBundleProvider theList) {
+        LOG.debug(".storeResultList(): Entry");
+        String searchId = theList.getUuid();
+        long snapshotBytes = 0;
+        if(theList instanceof SearchResultSnapshot){
+            // Compacting is the expensive part (it encodes the held Resources), so it is done before taking the
+            // store's lock, which then only guards the (cheap) insert and eviction
+            ((SearchResultSnapshot)theList).compact();
+            snapshotBytes = ((SearchResultSnapshot)theList).getHeldBytes();
+        }
+        HeldSnapshot heldSnapshot = new HeldSnapshot(theList, snapshotBytes, System.currentTimeMillis() + snapshotTimeToLive);
+        synchronized(this) {
+            holdSnapshot(searchId, heldSnapshot);
+            LOG.debug(".storeResultList(): Exit, searchId --> {}, snapshotCount --> {}, heldBytes --> {}", searchId, snapshotStore.size(), heldBytes);
+        }
+        return (searchId);
+    }
+
+    private void holdSnapshot(String searchId, HeldSnapshot heldSnapshot){
+        // Removed first, so that a re-stored snapshot moves to the (newest) end of the store
+        HeldSnapshot previousSnapshot = snapshotStore.remove(searchId);
+        if(previousSnapshot != null){
+            heldBytes -= previousSnapshot.getHeldBytes();
+        }
+        snapshotStore.put(searchId, heldSnapshot);
+        heldBytes += heldSnapshot.getHeldBytes();
+        evictExpiredSnapshots(System.currentTimeMillis());
+        Iterator<Map.Entry<String, HeldSnapshot>> snapshotIterator = snapshotStore.entrySet().iterator();
+        while(snapshotIterator.hasNext() && (snapshotStore.size() > maximumSnapshotCount || heldBytes > maximumHeldBytes)){
+            Map.Entry<String, HeldSnapshot> oldestSnapshot = snapshotIterator.next();
+            if(oldestSnapshot.getKey().equals(searchId)){
+                break;
+            }
+            heldBytes -= oldestSnapshot.getValue().getHeldBytes();
+            snapshotIterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void evictExpiredSnapshots(long now){
+        Iterator<HeldSnapshot> snapshotIterator = snapshotStore.values().iterator();
+        while(snapshotIterator.hasNext()){
+            HeldSnapshot currentSnapshot = snapshotIterator.next();
+            if(currentSnapshot.getExpiresAt() > now){
+                break;
+            }
+            heldBytes -= currentSnapshot.getHeldBytes();
+            snapshotIterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    public synchronized int getSnapshotCount(){
+        return(snapshotStore.size());
+    }
+
+    public synchronized long getHeldBytes(){
+        return(heldBytes);
+    }
+
+    public long getEvictionCount(){
+        return(evictionCount.get());
+    }
+
+    private static class HeldSnapshot {
+        private IBundleProvider snapshot;
+        private long heldBytes;
+        private long expiresAt;
+
+        public HeldSnapshot(IBundleProvider snapshot, long heldBytes, long expiresAt){
+            this.snapshot = snapshot;
+            this.heldBytes = heldBytes;
+            this.expiresAt = expiresAt;
+        }
+
+        public IBundleProvider getSnapshot() {
+            return snapshot;
+        }
+
+        public long getHeldBytes() {
+            return heldBytes;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
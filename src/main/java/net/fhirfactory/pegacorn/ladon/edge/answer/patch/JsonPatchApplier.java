@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.patch;
+
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a JSON Patch (RFC 6902) document to the JSON form of a Resource, supporting the add, remove, replace,
+ * move, copy and test operations (with the paths given as JSON Pointers, RFC 6901).
+ *
+ * The operations are applied, in order, to the given (freshly encoded) document, so a failed patch leaves nothing
+ * behind other than a discarded document. A malformed patch document is an InvalidRequestException (400), a patch
+ * that cannot be applied to the Resource (e.g. a missing path or a failed test) is an UnprocessableEntityException
+ * (422).
+ */
+public class JsonPatchApplier {
+
+    public void apply(JSONObject document, JSONArray patch){
+        for(int operationIndex = 0; operationIndex < patch.length(); operationIndex++){
+            JSONObject operation = patch.optJSONObject(operationIndex);
+            if(operation == null){
+                throw new InvalidRequestException("JSON Patch operation " + operationIndex + " is not an object");
+            }
+            applyOperation(document, operation, operationIndex);
+        }
+    }
+
+    private void applyOperation(JSONObject document, JSONObject operation, int operationIndex){
+        String operationName = requireMember(operation, "op", operationIndex);
+        List<String> path = parsePointer(requireMember(operation, "path", operationIndex), operationIndex);
+        switch(operationName){
+            case "add":
+                addValue(document, path, requireValue(operation, operationIndex), operationIndex);
+                break;
+            case "remove":
+                removeValue(document, path, operationIndex);
+                break;
+            case "replace":
+                Object replacementValue = requireValue(operation, operationIndex);
+                removeValue(document, path, operationIndex);
+                addValue(document, path, replacementValue, operationIndex);
+                break;
+            case "move": {
+                List<String> fromPath = parsePointer(requireMember(operation, "from", operationIndex), operationIndex);
+                if(path.size() > fromPath.size() && path.subList(0, fromPath.size()).equals(fromPath)){
+                    throw new UnprocessableEntityException("JSON Patch operation " + operationIndex + " moves a value into one of its own children");
+                }
+                Object movedValue = removeValue(document, fromPath, operationIndex);
+                addValue(document, path, movedValue, operationIndex);
+                break;
+            }
+            case "copy": {
+                List<String> fromPath = parsePointer(requireMember(operation, "from", operationIndex), operationIndex);
+                Object copiedValue = deepCopy(getValue(document, fromPath, operationIndex));
+                addValue(document, path, copiedValue, operationIndex);
+                break;
+            }
+            case "test":
+                Object expectedValue = requireValue(operation, operationIndex);
+                if(!valuesAreEqual(getValue(document, path, operationIndex), expectedValue)){
+                    throw new UnprocessableEntityException("JSON Patch operation " + operationIndex + " (test) failed for path " + operation.getString("path"));
+                }
+                break;
+            default:
+                throw new InvalidRequestException("JSON Patch operation " + operationIndex + " has an unknown op --> " + operationName);
+        }
+    }
+
+    private Object getValue(JSONObject document, List<String> path, int operationIndex){
+        Object currentValue = document;
+        for(String currentToken: path){
+            if(currentValue instanceof JSONObject && ((JSONObject) currentValue).has(currentToken)){
+                currentValue = ((JSONObject) currentValue).get(currentToken);
+            } else if(currentValue instanceof JSONArray){
+                JSONArray currentArray = (JSONArray) currentValue;
+                currentValue = currentArray.get(parseIndex(currentToken, currentArray.length() - 1, operationIndex));
+            } else {
+                throw missingPath(path, operationIndex);
+            }
+        }
+        return(currentValue);
+    }
+
+    private void addValue(JSONObject document, List<String> path, Object value, int operationIndex){
+        if(path.isEmpty()){
+            throw new UnprocessableEntityException("JSON Patch operation " + operationIndex + " replaces the whole Resource, use an update instead");
+        }
+        Object parent = getValue(document, path.subList(0, path.size() - 1), operationIndex);
+        String lastToken = path.get(path.size() - 1);
+        if(parent instanceof JSONObject){
+            ((JSONObject) parent).put(lastToken, value);
+        } else if(parent instanceof JSONArray){
+            JSONArray parentArray = (JSONArray) parent;
+            int insertionIndex = lastToken.equals("-") ? parentArray.length() : parseIndex(lastToken, parentArray.length(), operationIndex);
+            for(int currentIndex = parentArray.length(); currentIndex > insertionIndex; currentIndex--){
+                parentArray.put(currentIndex, parentArray.get(currentIndex - 1));
+            }
+            parentArray.put(insertionIndex, value);
+        } else {
+            throw missingPath(path, operationIndex);
+        }
+    }
+
+    private Object removeValue(JSONObject document, List<String> path, int operationIndex){
+        if(path.isEmpty()){
+            throw new UnprocessableEntityException("JSON Patch operation " + operationIndex + " removes the whole Resource");
+        }
+        Object parent = getValue(document, path.subList(0, path.size() - 1), operationIndex);
+        String lastToken = path.get(path.size() - 1);
+        if(parent instanceof JSONObject && ((JSONObject) parent).has(lastToken)){
+            return(((JSONObject) parent).remove(lastToken));
+        }
+        if(parent instanceof JSONArray){
+            JSONArray parentArray = (JSONArray) parent;
+            return(parentArray.remove(parseIndex(lastToken, parentArray.length() - 1, operationIndex)));
+        }
+        throw missingPath(path, operationIndex);
+    }
+
+    private int parseIndex(String token, int maximumIndex, int operationIndex){
+        boolean isWellFormed = !token.isEmpty() && token.chars().allMatch(Character::isDigit) && (token.length() == 1 || token.charAt(0) != '0');
+        int index = -1;
+        if(isWellFormed && token.length() < 10){
+            index = Integer.parseInt(token);
+        }
+        if(index < 0 || index > maximumIndex){
+            throw new UnprocessableEntityException("JSON Patch operation " + operationIndex + " has an invalid array index --> " + token);
+        }
+        return(index);
+    }
+
+    private List<String> parsePointer(String pointer, int operationIndex){
+        List<String> tokens = new ArrayList<>();
+        if(pointer.isEmpty()){
+            return(tokens);
+        }
+        if(pointer.charAt(0) != '/'){
+            throw new InvalidRequestException("JSON Patch operation " + operationIndex + " has an invalid path --> " + pointer);
+        }
+        for(String currentToken: pointer.substring(1).split("/", -1)){
+            tokens.add(currentToken.replace("~1", "/").replace("~0", "~"));
+        }
+        return(tokens);
+    }
+
+    private String requireMember(JSONObject operation, String memberName, int operationIndex){
+        Object memberValue = operation.opt(memberName);
+        if(!(memberValue instanceof String)){
+            throw new InvalidRequestException("JSON Patch operation " + operationIndex + " has no (string) " + memberName);
+        }
+        return((String) memberValue);
+    }
+
+    private Object requireValue(JSONObject operation, int operationIndex){
+        if(!operation.has("value")){
+            throw new InvalidRequestException("JSON Patch operation " + operationIndex + " has no value");
+        }
+        return(deepCopy(operation.get("value")));
+    }
+
+    private Object deepCopy(Object value){
+        if(value instanceof JSONObject){
+            return(new JSONObject(value.toString()));
+        }
+        if(value instanceof JSONArray){
+            return(new JSONArray(value.toString()));
+        }
+        return(value);
+    }
+
+    private boolean valuesAreEqual(Object actualValue, Object expectedValue){
+        if(actualValue instanceof JSONObject && expectedValue instanceof JSONObject){
+            return(((JSONObject) actualValue).similar(expectedValue));
+        }
+        if(actualValue instanceof JSONArray && expectedValue instanceof JSONArray){
+            return(((JSONArray) actualValue).similar(expectedValue));
+        }
+        if(actualValue instanceof Number && expectedValue instanceof Number){
+            return(new BigDecimal(actualValue.toString()).compareTo(new BigDecimal(expectedValue.toString())) == 0);
+        }
+        return(actualValue.equals(expectedValue));
+    }
+
+    private UnprocessableEntityException missingPath(List<String> path, int operationIndex){
+        return(new UnprocessableEntityException("JSON Patch operation " + operationIndex + " refers to a path that does not exist --> /" + String.join("/", path)));
+    }
+}
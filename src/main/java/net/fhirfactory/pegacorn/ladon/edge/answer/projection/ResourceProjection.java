@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.projection;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The (top level) projection requested by a client via the "_summary" or "_elements" parameters. Where both are
+ * present, a "_summary" of true, text or data takes precedence (as it does within HAPI's encoder).
+ *
+ * Element names may be qualified with a resource type (e.g. "Patient.name"), in which case they only apply to that
+ * type. Nested paths (e.g. "name.family") are reduced to their top level element, the finer grained filtering is
+ * still done by the encoder.
+ */
+public class ResourceProjection {
+    private SummaryEnum summaryMode;
+    private Set<String> elements;
+    private String projectionKey;
+
+    private ResourceProjection(SummaryEnum summaryMode, Set<String> elements){
+        this.summaryMode = summaryMode;
+        this.elements = elements;
+        if(summaryMode != null){
+            this.projectionKey = Constants.PARAM_SUMMARY + "=" + summaryMode.getCode();
+        } else {
+            this.projectionKey = Constants.PARAM_ELEMENTS + "=" + String.join(",", elements);
+        }
+    }
+
+    /**
+     * @return the projection requested by the client, or null if the full resource is to be returned
+     */
+    public static ResourceProjection fromRequest(RequestDetails theRequestDetails){
+        return(fromParameters(theRequestDetails.getParameters()));
+    }
+
+    static ResourceProjection fromParameters(Map<String, String[]> parameters){
+        String[] summaryValues = parameters.get(Constants.PARAM_SUMMARY);
+        if(summaryValues != null && summaryValues.length > 0){
+            SummaryEnum summaryMode = SummaryEnum.fromCode(summaryValues[0]);
+            if(summaryMode == SummaryEnum.TRUE || summaryMode == SummaryEnum.TEXT || summaryMode == SummaryEnum.DATA){
+                return(new ResourceProjection(summaryMode, Collections.<String>emptySet()));
+            }
+        }
+        String[] elementsValues = parameters.get(Constants.PARAM_ELEMENTS);
+        if(elementsValues == null || elementsValues.length == 0){
+            return(null);
+        }
+        Set<String> elements = new TreeSet<>();
+        for(String currentValue: elementsValues){
+            for(String currentElement: currentValue.split(",")){
+                String element = currentElement.trim();
+                if(!element.isEmpty()){
+                    elements.add(element);
+                }
+            }
+        }
+        if(elements.isEmpty()){
+            return(null);
+        }
+        return(new ResourceProjection(null, Collections.unmodifiableSet(elements)));
+    }
+
+    public SummaryEnum getSummaryMode() {
+        return summaryMode;
+    }
+
+    public Set<String> getElements() {
+        return elements;
+    }
+
+    /**
+     * @return a canonical description of the projection, used to cache projected Resources separately from the full ones
+     */
+    public String getProjectionKey() {
+        return projectionKey;
+    }
+
+    /**
+     * @return true if the top level element (of the given resource type) is requested via "_elements"
+     */
+    public boolean isElementRequested(String resourceType, String elementName){
+        for(String currentElement: elements){
+            String element = currentElement;
+            if(element.startsWith(resourceType + ".")){
+                element = element.substring(resourceType.length() + 1);
+            } else if(!element.isEmpty() && Character.isUpperCase(element.charAt(0))){
+                continue;
+            }
+            int pathSeparator = element.indexOf('.');
+            if(pathSeparator > 0){
+                element = element.substring(0, pathSeparator);
+            }
+            if(element.equals(elementName) || element.equals("*")){
+                return(true);
+            }
+        }
+        return(false);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.projection;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * Builds the projected (pruned) form of a Resource, before it is handed to the encoder, so that neither the
+ * encoder nor the response carry the elements the client did not ask for.
+ *
+ * The id and meta are always retained, as are the mandatory (min > 0) elements. "_summary=true" keeps the elements
+ * flagged as summary elements, "_summary=text" keeps the narrative, "_summary=data" drops the narrative and
+ * "_elements" keeps the named elements.
+ */
+public class ResourceProjector {
+
+    private static final String CHOICE_SUFFIX = "[x]";
+
+    private FhirContext fhirContext;
+
+    public ResourceProjector(FhirContext fhirContext){
+        this.fhirContext = fhirContext;
+    }
+
+    /**
+     * @return a new Resource that holds (the same element instances as) the retained elements of the given Resource
+     */
+    public Resource project(Resource resource, ResourceProjection projection){
+        RuntimeResourceDefinition resourceDefinition = fhirContext.getResourceDefinition(resource);
+        Resource projectedResource = (Resource) resourceDefinition.newInstance();
+        projectedResource.setIdElement(resource.getIdElement());
+        if(resource.hasMeta()){
+            projectedResource.setMeta(resource.getMeta());
+        }
+        for(BaseRuntimeChildDefinition currentChild: resourceDefinition.getChildren()){
+            String elementName = currentChild.getElementName();
+            if(elementName.endsWith(CHOICE_SUFFIX)){
+                elementName = elementName.substring(0, elementName.length() - CHOICE_SUFFIX.length());
+            }
+            if(elementName.equals("id") || elementName.equals("meta")){
+                continue;
+            }
+            if(!isRetained(resourceDefinition.getName(), elementName, currentChild, projection)){
+                continue;
+            }
+            for(IBase currentValue: currentChild.getAccessor().getValues(resource)){
+                currentChild.getMutator().addValue(projectedResource, currentValue);
+            }
+        }
+        return(projectedResource);
+    }
+
+    private boolean isRetained(String resourceType, String elementName, BaseRuntimeChildDefinition child, ResourceProjection projection){
+        boolean isMandatory = child.getMin() > 0;
+        if(projection.getSummaryMode() == null){
+            return(isMandatory || projection.isElementRequested(resourceType, elementName));
+        }
+        switch(projection.getSummaryMode()){
+            case TRUE:
+                return(isMandatory || child.isSummary());
+            case TEXT:
+                return(isMandatory || elementName.equals("text"));
+            case DATA:
+                return(!elementName.equals("text"));
+            default:
+                return(true);
+        }
+    }
+}
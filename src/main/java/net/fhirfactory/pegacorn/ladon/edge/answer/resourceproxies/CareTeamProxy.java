@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class CareTeamProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createCareTeam(@ResourceParam CareTeam theResource) {
+    public MethodOutcome createCareTeam(@ResourceParam CareTeam theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class CareTeamProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
     @Read()
     public CareTeam reviewCareTeam(@IdParam IdType resourceId) {
         LOG.debug(".reviewCareTeam(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        CareTeam retrievedDocRef = (CareTeam) outcome.getResource();
+        CareTeam retrievedDocRef = (CareTeam) readResource(resourceId);
         LOG.debug(".reviewCareTeam(): Exit, retrieved Document Reference (CareTeam) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class CareTeamProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateCareTeam(@ResourceParam CareTeam resourceToUpdate) {
+    public MethodOutcome updateCareTeam(@IdParam IdType resourceId, @ResourceParam CareTeam resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readCareTeam(): Entry, docRefToUpdate (CareTeam) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readCareTeam(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchCareTeam(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchCareTeam(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchCareTeam(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteCareTeam(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteCareTeam(): Entry, resourceId (IdType) --> {}", resourceId);
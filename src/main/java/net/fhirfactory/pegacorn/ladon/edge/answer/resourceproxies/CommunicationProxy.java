@@ -22,11 +22,14 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
-import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeSynchronousCRUDResourceBase;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeAsynchronousCRUDResourceBase;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.virtualdb.accessors.CommunicationAccessor;
 import net.fhirfactory.pegacorn.ladon.virtualdb.accessors.common.AccessorBase;
@@ -39,7 +42,7 @@ import javax.inject.Inject;
 import javax.naming.OperationNotSupportedException;
 
 @ApplicationScoped
-public class CommunicationProxy extends LadonEdgeSynchronousCRUDResourceBase implements IResourceProvider {
+public class CommunicationProxy extends LadonEdgeAsynchronousCRUDResourceBase implements IResourceProvider {
     private static final Logger LOG = LoggerFactory.getLogger(CommunicationProxy.class);
 
     public CommunicationProxy() {
@@ -73,9 +76,9 @@ public class CommunicationProxy extends LadonEdgeSynchronousCRUDResourceBase imp
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createCommunication(@ResourceParam Communication theResource) {
+    public MethodOutcome createCommunication(@ResourceParam Communication theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class CommunicationProxy extends LadonEdgeSynchronousCRUDResourceBase imp
     @Read()
     public Communication reviewCommunication(@IdParam IdType resourceId) {
         LOG.debug(".reviewCommunication(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Communication retrievedDocRef = (Communication) outcome.getResource();
+        Communication retrievedDocRef = (Communication) readResource(resourceId);
         LOG.debug(".reviewCommunication(): Exit, retrieved Document Reference (Communication) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class CommunicationProxy extends LadonEdgeSynchronousCRUDResourceBase imp
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateCommunication(@ResourceParam Communication resourceToUpdate) {
+    public MethodOutcome updateCommunication(@IdParam IdType resourceId, @ResourceParam Communication resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readCommunication(): Entry, docRefToUpdate (Communication) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readCommunication(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchCommunication(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchCommunication(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchCommunication(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteCommunication(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteCommunication(): Entry, resourceId (IdType) --> {}", resourceId);
@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class CommunicationRequestProxy extends LadonEdgeSynchronousCRUDResourceB
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createCommunicationRequest(@ResourceParam CommunicationRequest theResource) {
+    public MethodOutcome createCommunicationRequest(@ResourceParam CommunicationRequest theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class CommunicationRequestProxy extends LadonEdgeSynchronousCRUDResourceB
     @Read()
     public CommunicationRequest reviewCommunicationRequest(@IdParam IdType resourceId) {
         LOG.debug(".reviewCommunicationRequest(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        CommunicationRequest retrievedDocRef = (CommunicationRequest) outcome.getResource();
+        CommunicationRequest retrievedDocRef = (CommunicationRequest) readResource(resourceId);
         LOG.debug(".reviewCommunicationRequest(): Exit, retrieved Document Reference (CommunicationRequest) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class CommunicationRequestProxy extends LadonEdgeSynchronousCRUDResourceB
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateCommunicationRequest(@ResourceParam CommunicationRequest resourceToUpdate) {
+    public MethodOutcome updateCommunicationRequest(@IdParam IdType resourceId, @ResourceParam CommunicationRequest resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readCommunicationRequest(): Entry, docRefToUpdate (CommunicationRequest) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readCommunicationRequest(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchCommunicationRequest(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchCommunicationRequest(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchCommunicationRequest(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteCommunicationRequest(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteCommunicationRequest(): Entry, resourceId (IdType) --> {}", resourceId);
@@ -21,12 +21,6 @@
  */
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
-import java.io.Serializable;
-import java.time.Instant;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.naming.OperationNotSupportedException;
@@ -37,25 +31,35 @@ import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ca.uhn.fhir.rest.annotation.ConditionalUrlParam;
 import ca.uhn.fhir.rest.annotation.Create;
 import ca.uhn.fhir.rest.annotation.Delete;
 import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Patch;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
 import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeSynchronousCRUDResourceBase;
-import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.BoundSearch;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.SearchPlanRegistry;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.virtualdb.accessors.DocumentReferenceAccessor;
 import net.fhirfactory.pegacorn.ladon.virtualdb.accessors.common.AccessorBase;
 
+import java.util.HashSet;
+import java.util.Set;
+
 @ApplicationScoped
 public class DocumentReferenceProxy extends LadonEdgeSynchronousCRUDResourceBase implements IResourceProvider {
     private static final Logger LOG = LoggerFactory.getLogger(DocumentReferenceProxy.class);
@@ -94,9 +98,9 @@ public class DocumentReferenceProxy extends LadonEdgeSynchronousCRUDResourceBase
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createDocumentReference(@ResourceParam DocumentReference theResource) {
+    public MethodOutcome createDocumentReference(@ResourceParam DocumentReference theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -115,20 +119,30 @@ public class DocumentReferenceProxy extends LadonEdgeSynchronousCRUDResourceBase
     @Read()
     public DocumentReference reviewDocumentReference(@IdParam IdType resourceId) {
         LOG.debug(".reviewDocumentReference(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        DocumentReference retrievedDocRef = (DocumentReference) outcome.getResource();
+        DocumentReference retrievedDocRef = (DocumentReference) readResource(resourceId);
         LOG.debug(".reviewDocumentReference(): Exit, retrieved Document Reference (DocumentReference) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
 
     @Update()
-    public MethodOutcome updateDocumentReference(@ResourceParam DocumentReference docRefToUpdate) {
+    public MethodOutcome updateDocumentReference(@IdParam IdType resourceId, @ResourceParam DocumentReference docRefToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readDocumentReference(): Entry, docRefToUpdate (DocumentReference) --> {}", docRefToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(docRefToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, docRefToUpdate, conditionalUrl);
         LOG.debug(".readDocumentReference(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchDocumentReference(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchDocumentReference(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchDocumentReference(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteDocumentReference(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteDocumentReference(): Entry, resourceId (IdType) --> {}", resourceId);
@@ -156,42 +170,37 @@ public class DocumentReferenceProxy extends LadonEdgeSynchronousCRUDResourceBase
     }
 
     @Search()
-    public Bundle searchByDateAndType(@RequiredParam(name = DocumentReference.SP_DATE) DateRangeParam theRange, @RequiredParam(name = DocumentReference.SP_TYPE) TokenParam docRefType) {
+    public IBundleProvider searchByDateAndType(@RequiredParam(name = DocumentReference.SP_DATE) DateRangeParam theRange, @RequiredParam(name = DocumentReference.SP_TYPE) TokenParam docRefType) {
         LOG.debug(".searchByDateAndType(): Entry, DateTimeRange --> {}, Type --> {}", theRange, docRefType);
 
-        HashMap<Property, Serializable> argumentList = new HashMap<>(); // TODO Need to replace "Object" with something more meaningful and appropriate
-
-        // First Parameter, the DocumentReference.type
-        Property docRefTypeProperty = new Property(
-                "type",
-                "CodeableConcept",
-                "Specifies the particular kind of document referenced (e.g. History and Physical, Discharge Summary, Progress Note). This usually equates to the purpose of making the document referenced.",
-                0,
-                1,
-                (List<? extends Base>) null);
-        argumentList.put(docRefTypeProperty, docRefType);
-        // Second Parameter, the DocumentReference.date (expressed as a Period, where the date is to be in-between)
-        Period searchPeriod = new Period();
-        Property docRefDateProperty = new Property(
-                "date",
-                "instant",
-                "When the document reference was created.",
-                0,
-                1,
-                (List<? extends Base>) null);
-        argumentList.put(docRefDateProperty, theRange);
-
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().searchUsingCriteria(ResourceType.DocumentReference, SearchNameEnum.DOCUMENT_REFERENCE_DATE_AND_TYPE, argumentList);
-
-        if (outcome.getStatusEnum() == VirtualDBActionStatusEnum.SEARCH_FINISHED) {
-            Bundle searchOutcome = (Bundle) outcome.getResource();
-            return (searchOutcome);
-        } else {
-            Bundle outputBundle = new Bundle();
-            outputBundle.setType(Bundle.BundleType.SEARCHSET);
-            outputBundle.setTimestamp(Date.from(Instant.now()));
-            outputBundle.setTotal(0);
-            return (outputBundle);
+        BoundSearch boundSearch = getSearchPlan(SearchNameEnum.DOCUMENT_REFERENCE_DATE_AND_TYPE).bind(docRefType, theRange);
+        IBundleProvider searchOutcome = searchUsingDateBucketedPlan(".searchByDateAndType()", boundSearch, SearchPlanRegistry.DOCUMENT_REFERENCE_DATE, this::extractDateInterval, this::extractTypeCodes);
+        return (searchOutcome);
+    }
+
+    private long[] extractDateInterval(Resource resource){
+        DocumentReference documentReference = (DocumentReference) resource;
+        if(!documentReference.hasDate()){
+            return(null);
+        }
+        long documentDate = documentReference.getDate().getTime();
+        return(new long[]{documentDate, documentDate});
+    }
+
+    private Set<String> extractTypeCodes(Resource resource){
+        DocumentReference documentReference = (DocumentReference) resource;
+        Set<String> typeCodes = new HashSet<>();
+        if(!documentReference.hasType()){
+            return(typeCodes);
+        }
+        for(Coding currentCoding: documentReference.getType().getCoding()){
+            if(currentCoding.hasCode()){
+                typeCodes.add(currentCoding.getCode());
+            }
+        }
+        if(typeCodes.isEmpty()){
+            return(null);
         }
+        return(typeCodes);
     }
 }
@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class EncounterProxy extends LadonEdgeSynchronousCRUDResourceBase impleme
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createEncounter(@ResourceParam Encounter theResource) {
+    public MethodOutcome createEncounter(@ResourceParam Encounter theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createEncounter(): Entry, theResource (Encounter) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class EncounterProxy extends LadonEdgeSynchronousCRUDResourceBase impleme
     @Read()
     public Encounter reviewEncounter(@IdParam IdType resourceId) {
         LOG.debug(".reviewEncounter(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Encounter retrievedDocRef = (Encounter) outcome.getResource();
+        Encounter retrievedDocRef = (Encounter) readResource(resourceId);
         LOG.debug(".reviewEncounter(): Exit, retrieved Document Reference (Encounter) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class EncounterProxy extends LadonEdgeSynchronousCRUDResourceBase impleme
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateEncounter(@ResourceParam Encounter resourceToUpdate) {
+    public MethodOutcome updateEncounter(@IdParam IdType resourceId, @ResourceParam Encounter resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readEncounter(): Entry, docRefToUpdate (Encounter) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readEncounter(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchEncounter(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchEncounter(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchEncounter(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteEncounter(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteEncounter(): Entry, resourceId (IdType) --> {}", resourceId);
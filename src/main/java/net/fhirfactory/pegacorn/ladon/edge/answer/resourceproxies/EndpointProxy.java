@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class EndpointProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createEndpoint(@ResourceParam Endpoint theResource) {
+    public MethodOutcome createEndpoint(@ResourceParam Endpoint theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createEndpoint(): Entry, theResource (Endpoint) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class EndpointProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
     @Read()
     public Endpoint reviewEndpoint(@IdParam IdType resourceId) {
         LOG.debug(".reviewEndpoint(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Endpoint retrievedDocRef = (Endpoint) outcome.getResource();
+        Endpoint retrievedDocRef = (Endpoint) readResource(resourceId);
         LOG.debug(".reviewEndpoint(): Exit, retrieved Document Reference (Endpoint) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class EndpointProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateEndpoint(@ResourceParam Endpoint resourceToUpdate) {
+    public MethodOutcome updateEndpoint(@IdParam IdType resourceId, @ResourceParam Endpoint resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readEndpoint(): Entry, docRefToUpdate (Endpoint) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readEndpoint(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchEndpoint(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchEndpoint(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchEndpoint(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteEndpoint(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteEndpoint(): Entry, resourceId (IdType) --> {}", resourceId);
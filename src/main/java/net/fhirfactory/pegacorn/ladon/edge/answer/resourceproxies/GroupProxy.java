@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class GroupProxy extends LadonEdgeSynchronousCRUDResourceBase implements
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createGroup(@ResourceParam Group theResource) {
+    public MethodOutcome createGroup(@ResourceParam Group theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class GroupProxy extends LadonEdgeSynchronousCRUDResourceBase implements
     @Read()
     public Group reviewGroup(@IdParam IdType resourceId) {
         LOG.debug(".reviewGroup(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Group retrievedDocRef = (Group) outcome.getResource();
+        Group retrievedDocRef = (Group) readResource(resourceId);
         LOG.debug(".reviewGroup(): Exit, retrieved Document Reference (Group) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class GroupProxy extends LadonEdgeSynchronousCRUDResourceBase implements
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateGroup(@ResourceParam Group resourceToUpdate) {
+    public MethodOutcome updateGroup(@IdParam IdType resourceId, @ResourceParam Group resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readGroup(): Entry, docRefToUpdate (Group) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readGroup(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchGroup(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchGroup(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchGroup(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteGroup(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteGroup(): Entry, resourceId (IdType) --> {}", resourceId);
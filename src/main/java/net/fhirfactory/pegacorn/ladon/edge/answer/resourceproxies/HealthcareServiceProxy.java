@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class HealthcareServiceProxy extends LadonEdgeSynchronousCRUDResourceBase
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createHealthcareService(@ResourceParam HealthcareService theResource) {
+    public MethodOutcome createHealthcareService(@ResourceParam HealthcareService theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class HealthcareServiceProxy extends LadonEdgeSynchronousCRUDResourceBase
     @Read()
     public HealthcareService reviewHealthcareService(@IdParam IdType resourceId) {
         LOG.debug(".reviewHealthcareService(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        HealthcareService retrievedDocRef = (HealthcareService) outcome.getResource();
+        HealthcareService retrievedDocRef = (HealthcareService) readResource(resourceId);
         LOG.debug(".reviewHealthcareService(): Exit, retrieved Document Reference (HealthcareService) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class HealthcareServiceProxy extends LadonEdgeSynchronousCRUDResourceBase
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateHealthcareService(@ResourceParam HealthcareService resourceToUpdate) {
+    public MethodOutcome updateHealthcareService(@IdParam IdType resourceId, @ResourceParam HealthcareService resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readHealthcareService(): Entry, docRefToUpdate (HealthcareService) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readHealthcareService(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchHealthcareService(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchHealthcareService(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchHealthcareService(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteHealthcareService(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteHealthcareService(): Entry, resourceId (IdType) --> {}", resourceId);
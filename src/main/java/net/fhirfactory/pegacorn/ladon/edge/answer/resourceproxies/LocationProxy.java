@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class LocationProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createLocation(@ResourceParam Location theResource) {
+    public MethodOutcome createLocation(@ResourceParam Location theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class LocationProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
     @Read()
     public Location reviewLocation(@IdParam IdType resourceId) {
         LOG.debug(".reviewLocation(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Location retrievedDocRef = (Location) outcome.getResource();
+        Location retrievedDocRef = (Location) readResource(resourceId);
         LOG.debug(".reviewLocation(): Exit, retrieved Document Reference (Location) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class LocationProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateLocation(@ResourceParam Location resourceToUpdate) {
+    public MethodOutcome updateLocation(@IdParam IdType resourceId, @ResourceParam Location resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readLocation(): Entry, docRefToUpdate (Location) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readLocation(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchLocation(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchLocation(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchLocation(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteLocation(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteLocation(): Entry, resourceId (IdType) --> {}", resourceId);
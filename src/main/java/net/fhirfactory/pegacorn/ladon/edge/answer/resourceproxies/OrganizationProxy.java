@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class OrganizationProxy extends LadonEdgeSynchronousCRUDResourceBase impl
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createOrganization(@ResourceParam Organization theResource) {
+    public MethodOutcome createOrganization(@ResourceParam Organization theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class OrganizationProxy extends LadonEdgeSynchronousCRUDResourceBase impl
     @Read()
     public Organization reviewOrganization(@IdParam IdType resourceId) {
         LOG.debug(".reviewOrganization(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Organization retrievedDocRef = (Organization) outcome.getResource();
+        Organization retrievedDocRef = (Organization) readResource(resourceId);
         LOG.debug(".reviewOrganization(): Exit, retrieved Document Reference (Organization) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class OrganizationProxy extends LadonEdgeSynchronousCRUDResourceBase impl
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateOrganization(@ResourceParam Organization resourceToUpdate) {
+    public MethodOutcome updateOrganization(@IdParam IdType resourceId, @ResourceParam Organization resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readOrganization(): Entry, docRefToUpdate (Organization) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readOrganization(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchOrganization(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchOrganization(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchOrganization(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteOrganization(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteOrganization(): Entry, resourceId (IdType) --> {}", resourceId);
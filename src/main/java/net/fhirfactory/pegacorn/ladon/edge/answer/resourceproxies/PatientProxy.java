@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.base.entities.bundle.BundleContentHelper;
@@ -73,10 +76,10 @@ public class PatientProxy extends LadonEdgeSynchronousCRUDResourceBase implement
      * which adds a new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createPatient(@ResourceParam Patient thePatient) {
+    public MethodOutcome createPatient(@ResourceParam Patient thePatient, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", thePatient);
         // validateResource(thePatient);
-        VirtualDBMethodOutcome resourceActionOutcome = getVirtualDBAccessor().createResource(thePatient);
+        VirtualDBMethodOutcome resourceActionOutcome = conditionalCreateResource(thePatient, conditionalUrl);
         return (resourceActionOutcome);
     }
 
@@ -96,8 +99,7 @@ public class PatientProxy extends LadonEdgeSynchronousCRUDResourceBase implement
     @Read()
     public Patient readPatient(@IdParam IdType patientID) {
         LOG.debug(".readPatient(): Entry, patientID (IdType) --> {}", patientID);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().getResource(patientID);
-        Patient retrievedPatient = (Patient) outcome.getResource();
+        Patient retrievedPatient = (Patient) readResource(patientID);
         LOG.debug(".readPatient(): Exit, retrieved Patient (Patient) --> {}", retrievedPatient);
         return (retrievedPatient);
     }
@@ -107,12 +109,23 @@ public class PatientProxy extends LadonEdgeSynchronousCRUDResourceBase implement
      * which adds a new instance of a resource to the server.
      */
     @Update()
-    public MethodOutcome updatePatient(@ResourceParam Patient thePatient) {
+    public MethodOutcome updatePatient(@IdParam IdType resourceId, @ResourceParam Patient thePatient, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", thePatient);
-        VirtualDBMethodOutcome resourceActionOutcome = getVirtualDBAccessor().updateResource(thePatient);
+        VirtualDBMethodOutcome resourceActionOutcome = conditionalUpdateResource(resourceId, thePatient, conditionalUrl);
         return (resourceActionOutcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchPatient(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchPatient(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchPatient(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deletePatient(@IdParam IdType resourceId) {
         LOG.debug(".deletePatient(): Entry, resourceId (IdType) --> {}", resourceId);
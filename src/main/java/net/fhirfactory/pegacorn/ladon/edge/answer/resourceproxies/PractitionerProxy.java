@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class PractitionerProxy extends LadonEdgeSynchronousCRUDResourceBase impl
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createPractitioner(@ResourceParam Practitioner theResource) {
+    public MethodOutcome createPractitioner(@ResourceParam Practitioner theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class PractitionerProxy extends LadonEdgeSynchronousCRUDResourceBase impl
     @Read()
     public Practitioner reviewPractitioner(@IdParam IdType resourceId) {
         LOG.debug(".reviewPractitioner(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Practitioner retrievedDocRef = (Practitioner) outcome.getResource();
+        Practitioner retrievedDocRef = (Practitioner) readResource(resourceId);
         LOG.debug(".reviewPractitioner(): Exit, retrieved Document Reference (Practitioner) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class PractitionerProxy extends LadonEdgeSynchronousCRUDResourceBase impl
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updatePractitioner(@ResourceParam Practitioner resourceToUpdate) {
+    public MethodOutcome updatePractitioner(@IdParam IdType resourceId, @ResourceParam Practitioner resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readPractitioner(): Entry, docRefToUpdate (Practitioner) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readPractitioner(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchPractitioner(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchPractitioner(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchPractitioner(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deletePractitioner(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deletePractitioner(): Entry, resourceId (IdType) --> {}", resourceId);
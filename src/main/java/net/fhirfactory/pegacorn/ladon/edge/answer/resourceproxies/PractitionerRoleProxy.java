@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class PractitionerRoleProxy extends LadonEdgeSynchronousCRUDResourceBase
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createPractitionerRole(@ResourceParam PractitionerRole theResource) {
+    public MethodOutcome createPractitionerRole(@ResourceParam PractitionerRole theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class PractitionerRoleProxy extends LadonEdgeSynchronousCRUDResourceBase
     @Read()
     public PractitionerRole reviewPractitionerRole(@IdParam IdType resourceId) {
         LOG.debug(".reviewPractitionerRole(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        PractitionerRole retrievedDocRef = (PractitionerRole) outcome.getResource();
+        PractitionerRole retrievedDocRef = (PractitionerRole) readResource(resourceId);
         LOG.debug(".reviewPractitionerRole(): Exit, retrieved Document Reference (PractitionerRole) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class PractitionerRoleProxy extends LadonEdgeSynchronousCRUDResourceBase
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updatePractitionerRole(@ResourceParam PractitionerRole resourceToUpdate) {
+    public MethodOutcome updatePractitionerRole(@IdParam IdType resourceId, @ResourceParam PractitionerRole resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readPractitionerRole(): Entry, docRefToUpdate (PractitionerRole) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readPractitionerRole(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchPractitionerRole(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchPractitionerRole(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchPractitionerRole(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deletePractitionerRole(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deletePractitionerRole(): Entry, resourceId (IdType) --> {}", resourceId);
@@ -22,14 +22,19 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
 import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeSynchronousCRUDResourceBase;
-import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.BoundSearch;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.SearchPlanRegistry;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
 import net.fhirfactory.pegacorn.ladon.virtualdb.accessors.ProcedureAccessor;
@@ -41,12 +46,9 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.naming.OperationNotSupportedException;
-import java.io.Serializable;
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Collections;
+import java.util.Set;
 
 @ApplicationScoped
 public class ProcedureProxy extends LadonEdgeSynchronousCRUDResourceBase implements IResourceProvider {
@@ -83,9 +85,9 @@ public class ProcedureProxy extends LadonEdgeSynchronousCRUDResourceBase impleme
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createProcedure(@ResourceParam Procedure theResource) {
+    public MethodOutcome createProcedure(@ResourceParam Procedure theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -104,8 +106,7 @@ public class ProcedureProxy extends LadonEdgeSynchronousCRUDResourceBase impleme
     @Read()
     public Procedure reviewProcedure(@IdParam IdType resourceId) {
         LOG.debug(".reviewProcedure(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Procedure retrievedDocRef = (Procedure) outcome.getResource();
+        Procedure retrievedDocRef = (Procedure) readResource(resourceId);
         LOG.debug(".reviewProcedure(): Exit, retrieved Document Reference (Procedure) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -121,13 +122,24 @@ public class ProcedureProxy extends LadonEdgeSynchronousCRUDResourceBase impleme
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateProcedure(@ResourceParam Procedure resourceToUpdate) {
+    public MethodOutcome updateProcedure(@IdParam IdType resourceId, @ResourceParam Procedure resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readProcedure(): Entry, docRefToUpdate (Procedure) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readProcedure(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchProcedure(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchProcedure(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchProcedure(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteProcedure(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteProcedure(): Entry, resourceId (IdType) --> {}", resourceId);
@@ -155,42 +167,34 @@ public class ProcedureProxy extends LadonEdgeSynchronousCRUDResourceBase impleme
     }
 
     @Search(queryName = "searchProceduresForPatientDuringPeriod")
-    public Bundle searchProcedureSetForPatient(@RequiredParam(name = Procedure.SP_DATE) DateRangeParam theRange, @RequiredParam(name = "subject") TokenParam patientIdentifierParam) {
+    public IBundleProvider searchProcedureSetForPatient(@RequiredParam(name = Procedure.SP_DATE) DateRangeParam theRange, @RequiredParam(name = "subject") TokenParam patientIdentifierParam) {
         LOG.debug(".searchByDateAndSubject(): Entry, DateTimeRange --> {}, Patient --> {}", theRange, patientIdentifierParam);
 
-        HashMap<Property, Serializable> argumentList = new HashMap<>(); // TODO Need to replace "Serializable" with something more meaningful and appropriate
-
-        // First Parameter, the DocumentReference.type
-        Property subjectProperty = new Property(
-                "subject",
-                "Reference",
-                "The person, animal or group on which the procedure was performed.",
-                0,
-                1,
-                (List<? extends Base>) null);
-        argumentList.put(subjectProperty, patientIdentifierParam);
-        // Second Parameter, the DocumentReference.date (expressed as a Period, where the date is to be in-between)
-        Period searchPeriod = new Period();
-        Property docRefDateProperty = new Property(
-                "performed",
-                "dateTime",
-                "Estimated or actual date, date-time, period, or age when the procedure was performed. Allows a period to support complex procedures that span more than one date, and also allows for the length of the procedure to be captured.",
-                0,
-                1,
-                (List<? extends Base>) null);
-        argumentList.put(docRefDateProperty, theRange);
-
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().searchUsingCriteria(ResourceType.DocumentReference, SearchNameEnum.PROCEDURE_PATIENT_AND_DATE, argumentList);
-
-        if (outcome.getStatusEnum() == VirtualDBActionStatusEnum.SEARCH_FINISHED) {
-            Bundle searchOutcome = (Bundle) outcome.getResource();
-            return (searchOutcome);
-        } else {
-            Bundle outputBundle = new Bundle();
-            outputBundle.setType(Bundle.BundleType.SEARCHSET);
-            outputBundle.setTimestamp(Date.from(Instant.now()));
-            outputBundle.setTotal(0);
-            return (outputBundle);
+        BoundSearch boundSearch = getSearchPlan(SearchNameEnum.PROCEDURE_PATIENT_AND_DATE).bind(patientIdentifierParam, theRange);
+        IBundleProvider searchOutcome = searchUsingDateBucketedPlan(".searchProcedureSetForPatient()", boundSearch, SearchPlanRegistry.PROCEDURE_PERFORMED, this::extractPerformedInterval, this::extractSubjectReference);
+        return (searchOutcome);
+    }
+
+    private long[] extractPerformedInterval(Resource resource){
+        Procedure procedure = (Procedure) resource;
+        if(procedure.hasPerformedDateTimeType() && procedure.getPerformedDateTimeType().getValue() != null){
+            long performed = procedure.getPerformedDateTimeType().getValue().getTime();
+            return(new long[]{performed, performed});
+        }
+        if(procedure.hasPerformedPeriod()){
+            Period performedPeriod = procedure.getPerformedPeriod();
+            long periodStart = performedPeriod.hasStart() ? performedPeriod.getStart().getTime() : Long.MIN_VALUE;
+            long periodEnd = performedPeriod.hasEnd() ? performedPeriod.getEnd().getTime() : Long.MAX_VALUE;
+            return(new long[]{periodStart, periodEnd});
+        }
+        return(null);
+    }
+
+    private Set<String> extractSubjectReference(Resource resource){
+        Procedure procedure = (Procedure) resource;
+        if(!procedure.hasSubject() || !procedure.getSubject().hasReference() || procedure.getSubject().getReference().startsWith("#")){
+            return(null);
         }
+        return(Collections.singleton(procedure.getSubject().getReferenceElement().toUnqualifiedVersionless().getValue()));
     }
 }
@@ -22,11 +22,14 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
-import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeSynchronousCRUDResourceBase;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeAsynchronousCRUDResourceBase;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.virtualdb.accessors.TaskAccessor;
 import net.fhirfactory.pegacorn.ladon.virtualdb.accessors.common.AccessorBase;
@@ -39,7 +42,7 @@ import javax.inject.Inject;
 import javax.naming.OperationNotSupportedException;
 
 @ApplicationScoped
-public class TaskProxy extends LadonEdgeSynchronousCRUDResourceBase implements IResourceProvider {
+public class TaskProxy extends LadonEdgeAsynchronousCRUDResourceBase implements IResourceProvider {
     private static final Logger LOG = LoggerFactory.getLogger(TaskProxy.class);
 
     public TaskProxy() {
@@ -73,9 +76,9 @@ public class TaskProxy extends LadonEdgeSynchronousCRUDResourceBase implements I
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createTask(@ResourceParam Task theResource) {
+    public MethodOutcome createTask(@ResourceParam Task theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class TaskProxy extends LadonEdgeSynchronousCRUDResourceBase implements I
     @Read()
     public Task reviewTask(@IdParam IdType resourceId) {
         LOG.debug(".reviewTask(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        Task retrievedDocRef = (Task) outcome.getResource();
+        Task retrievedDocRef = (Task) readResource(resourceId);
         LOG.debug(".reviewTask(): Exit, retrieved Document Reference (Task) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class TaskProxy extends LadonEdgeSynchronousCRUDResourceBase implements I
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateTask(@ResourceParam Task resourceToUpdate) {
+    public MethodOutcome updateTask(@IdParam IdType resourceId, @ResourceParam Task resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readTask(): Entry, docRefToUpdate (Task) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readTask(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchTask(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchTask(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchTask(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteTask(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteTask(): Entry, resourceId (IdType) --> {}", resourceId);
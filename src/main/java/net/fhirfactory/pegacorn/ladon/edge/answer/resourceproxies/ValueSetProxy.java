@@ -22,7 +22,10 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies;
 
 import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.operationaloutcome.OperationOutcomeGenerator;
@@ -73,9 +76,9 @@ public class ValueSetProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
      * new instance of a resource to the server.
      */
     @Create()
-    public MethodOutcome createValueSet(@ResourceParam ValueSet theResource) {
+    public MethodOutcome createValueSet(@ResourceParam ValueSet theResource, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".createPatient(): Entry, thePatient (Patient) --> {}", theResource);
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().createResource(theResource);
+        VirtualDBMethodOutcome outcome = conditionalCreateResource(theResource, conditionalUrl);
         return (outcome);
     }
 
@@ -94,8 +97,7 @@ public class ValueSetProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
     @Read()
     public ValueSet reviewValueSet(@IdParam IdType resourceId) {
         LOG.debug(".reviewValueSet(): Entry, resourceId (IdType) --> {}", resourceId);
-        VirtualDBMethodOutcome outcome = getResource(resourceId);
-        ValueSet retrievedDocRef = (ValueSet) outcome.getResource();
+        ValueSet retrievedDocRef = (ValueSet) readResource(resourceId);
         LOG.debug(".reviewValueSet(): Exit, retrieved Document Reference (ValueSet) --> {}", retrievedDocRef);
         return (retrievedDocRef);
     }
@@ -111,13 +113,24 @@ public class ValueSetProxy extends LadonEdgeSynchronousCRUDResourceBase implemen
      * @return Returns an outcome (MethodOutcome) detailing the success (or otherwise) of the action.
      */
     @Update()
-    public MethodOutcome updateValueSet(@ResourceParam ValueSet resourceToUpdate) {
+    public MethodOutcome updateValueSet(@IdParam IdType resourceId, @ResourceParam ValueSet resourceToUpdate, @ConditionalUrlParam String conditionalUrl) {
         LOG.debug(".readValueSet(): Entry, docRefToUpdate (ValueSet) --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome outcome = updateResource(resourceToUpdate);
+        VirtualDBMethodOutcome outcome = conditionalUpdateResource(resourceId, resourceToUpdate, conditionalUrl);
         LOG.debug(".readValueSet(): Exit, outcome (VirtualDBMethodOutcome) --> {}", outcome);
         return (outcome);
     }
 
+    /**
+     * The "@Patch" annotation indicates that this method implements "patch" (JSON Patch only), see patchResource().
+     */
+    @Patch()
+    public MethodOutcome patchValueSet(@IdParam IdType resourceId, PatchTypeEnum patchType, @ResourceParam String patchBody, RequestDetails theRequestDetails) {
+        LOG.debug(".patchValueSet(): Entry, resourceId (IdType) --> {}, patchType --> {}", resourceId, patchType);
+        MethodOutcome outcome = patchResource(resourceId, patchType, patchBody, theRequestDetails.getHeader(Constants.HEADER_IF_MATCH));
+        LOG.debug(".patchValueSet(): Exit, outcome (MethodOutcome) --> {}", outcome);
+        return (outcome);
+    }
+
     @Delete()
     public MethodOutcome deleteValueSet(@IdParam IdType resourceId) throws OperationNotSupportedException {
         LOG.debug(".deleteValueSet(): Entry, resourceId (IdType) --> {}", resourceId);
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
+
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.TokenParamModifier;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Identifier;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts an identifier search TokenParam into an Identifier, as per LadonEdgeGetResourceBase.tokenParam2Identifier().
+ *
+ * The "[type-code]|[value]" form is split without a regular expression. For the well known identifier type systems
+ * (e.g. HL7 v2 table 0203) the type code, and the type's text, are held once and matched in place, so the only String
+ * created is the identifier value; codes of any other system are simply copied out of the token. Each Identifier
+ * gets its own Identifier.type (only the immutable Strings are shared), so it may be modified downstream.
+ */
+public final class IdentifierTokenParser {
+    private static final char TOKEN_SEPARATOR = '|';
+    private static final int MAXIMUM_SHARED_CODES = 256;
+    private static final SharedTypeCode[] NO_SHARED_CODES = new SharedTypeCode[0];
+
+    static final Set<String> SHARED_TYPE_SYSTEMS = Collections.singleton("http://terminology.hl7.org/CodeSystem/v2-0203");
+
+    private static final ConcurrentHashMap<String, SharedTypeCode[]> sharedCodesBySystem = new ConcurrentHashMap<>();
+    private static final AtomicInteger sharedCodeCount = new AtomicInteger(0);
+
+    private IdentifierTokenParser(){
+    }
+
+    public static Identifier parseIdentifier(TokenParam identifierParam){
+        String paramValue = identifierParam.getValue();
+        int separatorPosition = paramValue == null ? -1 : paramValue.indexOf(TOKEN_SEPARATOR);
+        boolean isTypedIdentifier = identifierParam.getModifier() == TokenParamModifier.OF_TYPE;
+        // HAPI FHIR Server is not passing Modifiers, so the presence of the separator is also taken to mean "of-type"
+        if(!isTypedIdentifier && separatorPosition < 0){
+            Identifier generatedIdentifier = new Identifier();
+            generatedIdentifier.setSystem(identifierParam.getSystem());
+            generatedIdentifier.setValue(paramValue);
+            return(generatedIdentifier);
+        }
+        if(separatorPosition < 0){
+            throw new InvalidRequestException("Identifier search of-type requires a value of the form [system]|[type-code]|[value]");
+        }
+        int valueEnd = paramValue.indexOf(TOKEN_SEPARATOR, separatorPosition + 1);
+        if(valueEnd < 0){
+            valueEnd = paramValue.length();
+        }
+        Identifier generatedIdentifier = new Identifier();
+        generatedIdentifier.setType(buildIdentifierType(identifierParam.getSystem(), paramValue, separatorPosition));
+        if(valueEnd > separatorPosition + 1){
+            generatedIdentifier.setValue(paramValue.substring(separatorPosition + 1, valueEnd));
+        }
+        return(generatedIdentifier);
+    }
+
+    /**
+     * Build the Identifier.type for the type system and the code held in paramValue[0, codeLength).
+     */
+    static CodeableConcept buildIdentifierType(String typeSystem, String paramValue, int codeLength){
+        SharedTypeCode typeCode;
+        if(typeSystem != null && SHARED_TYPE_SYSTEMS.contains(typeSystem)){
+            typeCode = resolveSharedCode(typeSystem, paramValue, codeLength);
+        } else {
+            typeCode = new SharedTypeCode(typeSystem, paramValue.substring(0, codeLength));
+        }
+        CodeableConcept identifierType = new CodeableConcept();
+        identifierType.addCoding(new Coding().setSystem(typeSystem).setCode(typeCode.getCode()));
+        identifierType.setText(typeCode.getText());
+        return(identifierType);
+    }
+
+    private static SharedTypeCode resolveSharedCode(String typeSystem, String paramValue, int codeLength){
+        SharedTypeCode[] sharedCodes = sharedCodesBySystem.getOrDefault(typeSystem, NO_SHARED_CODES);
+        for(SharedTypeCode currentCode: sharedCodes){
+            if(currentCode.matches(paramValue, codeLength)){
+                return(currentCode);
+            }
+        }
+        SharedTypeCode typeCode = new SharedTypeCode(typeSystem, paramValue.substring(0, codeLength));
+        if(sharedCodeCount.get() >= MAXIMUM_SHARED_CODES){
+            return(typeCode);
+        }
+        SharedTypeCode[] updatedCodes = sharedCodesBySystem.compute(typeSystem, (key, existingCodes) -> {
+            SharedTypeCode[] currentCodes = existingCodes == null ? NO_SHARED_CODES : existingCodes;
+            for(SharedTypeCode currentCode: currentCodes){
+                if(currentCode.matches(paramValue, codeLength)){
+                    return(currentCodes);
+                }
+            }
+            SharedTypeCode[] extendedCodes = new SharedTypeCode[currentCodes.length + 1];
+            System.arraycopy(currentCodes, 0, extendedCodes, 0, currentCodes.length);
+            extendedCodes[currentCodes.length] = typeCode;
+            sharedCodeCount.incrementAndGet();
+            return(extendedCodes);
+        });
+        for(SharedTypeCode currentCode: updatedCodes){
+            if(currentCode.matches(paramValue, codeLength)){
+                return(currentCode);
+            }
+        }
+        return(typeCode);
+    }
+
+    /**
+     * The (immutable) Strings of an identifier type code.
+     */
+    private static final class SharedTypeCode {
+        private final String code;
+        private final String text;
+
+        SharedTypeCode(String typeSystem, String code){
+            this.code = code;
+            this.text = typeSystem + ":" + code;
+        }
+
+        boolean matches(String paramValue, int codeLength){
+            return(code.length() == codeLength && paramValue.regionMatches(0, code, 0, codeLength));
+        }
+
+        String getCode() {
+            return code;
+        }
+
+        String getText() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.DeadlineExceededException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.RequestDeadline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces identical concurrent calls ("single-flight"): the first caller for a given key performs the call,
+ * any caller arriving with the same key while that call is in-flight waits for it and receives (a copy of) its
+ * result instead of making its own call.
+ *
+ * @param <V> The type of the call result
+ */
+public class InFlightCallCoalescer<V> {
+    private ConcurrentHashMap<String, CompletableFuture<V>> inFlightCalls;
+    private AtomicLong executedCallCount;
+    private AtomicLong coalescedCallCount;
+
+    public InFlightCallCoalescer(){
+        this.inFlightCalls = new ConcurrentHashMap<>();
+        this.executedCallCount = new AtomicLong(0);
+        this.coalescedCallCount = new AtomicLong(0);
+    }
+
+    /**
+     * Perform the call (or join an identical in-flight one). A joining caller waits no longer than its own
+     * RequestDeadline (if it has one); and if the in-flight call failed only because the deadline of the caller
+     * making it passed, a joining caller whose own deadline has not yet passed makes the call itself.
+     *
+     * @param key The key identifying identical calls
+     * @param call The actual call
+     * @param resultCopier Creates the (independent) copy of the result handed to each joining caller
+     * @return The result of the call
+     */
+    public V execute(String key, Supplier<V> call, UnaryOperator<V> resultCopier){
+        while(true) {
+            CompletableFuture<V> ourCall = new CompletableFuture<>();
+            CompletableFuture<V> inFlightCall = inFlightCalls.putIfAbsent(key, ourCall);
+            if(inFlightCall == null) {
+                executedCallCount.incrementAndGet();
+                try {
+                    V result = call.get();
+                    ourCall.complete(result);
+                    return(result);
+                } catch(RuntimeException | Error callException) {
+                    ourCall.completeExceptionally(callException);
+                    throw callException;
+                } finally {
+                    inFlightCalls.remove(key, ourCall);
+                }
+            }
+            coalescedCallCount.incrementAndGet();
+            V sharedResult;
+            try {
+                sharedResult = awaitResult(inFlightCall);
+            } catch(DeadlineExceededException leaderDeadlineException) {
+                RequestDeadline ourDeadline = RequestDeadline.current();
+                if(ourDeadline != null && ourDeadline.hasExpired()) {
+                    throw leaderDeadlineException;
+                }
+                // Only the deadline of the caller making the call passed, so try again (most likely making it ourselves)
+                inFlightCalls.remove(key, inFlightCall);
+                continue;
+            }
+            if(sharedResult == null) {
+                return(null);
+            }
+            return(resultCopier.apply(sharedResult));
+        }
+    }
+
+    private V awaitResult(CompletableFuture<V> inFlightCall){
+        RequestDeadline deadline = RequestDeadline.current();
+        try {
+            if(deadline == null){
+                return(inFlightCall.get());
+            }
+            return(inFlightCall.get(deadline.getRemaining(), TimeUnit.MILLISECONDS));
+        } catch(TimeoutException timeoutException){
+            throw new DeadlineExceededException("the shared (coalesced) call");
+        } catch(InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("the shared (coalesced) call");
+        } catch(ExecutionException executionException){
+            if(executionException.getCause() instanceof RuntimeException){
+                throw (RuntimeException)executionException.getCause();
+            }
+            if(executionException.getCause() instanceof Error){
+                throw (Error)executionException.getCause();
+            }
+            throw new IllegalStateException(executionException.getCause());
+        }
+    }
+
+    public long getExecutedCallCount() {
+        return executedCallCount.get();
+    }
+
+    public long getCoalescedCallCount() {
+        return coalescedCallCount.get();
+    }
+}
@@ -21,25 +21,153 @@
  */
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
 
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.LadonEdgeWriteBehindQueue;
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.WriteBehindEntry;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Resource;
 
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The base class of the resource proxies whose creates/updates are "write-behind": the write is accepted into the
+ * (durable, bounded) LadonEdgeWriteBehindQueue and acknowledged with a 202 (Accepted), rather than the client waiting
+ * on the VirtualDB. The queue's drainers then apply the write via applyQueuedWrite(). Reads and searches are as per
+ * LadonEdgeGetResourceBase, so a read only reflects a write once it has been applied.
+ *
+ * A conditionally created Resource cannot be found (via its Identifier) until the create has been applied, so the
+ * accepted conditional creates are held (by Identifier) until they are finished, and a repeat of the create is
+ * answered with the outcome of the pending one.
+ *
+ * Within callWithWriteThrough() (e.g. the entries of a transaction, whose later entries need the ids assigned by
+ * the earlier ones) the writes are instead applied immediately, as per LadonEdgeSynchronousCRUDResourceBase.
+ */
 abstract public class LadonEdgeAsynchronousCRUDResourceBase extends LadonEdgeGetResourceBase{
+    private static final int PENDING_CREATE_SWEEP_THRESHOLD = 1000;
+
+    private static final ThreadLocal<Boolean> WRITE_THROUGH = new ThreadLocal<>();
+
+    @Inject
+    private LadonEdgeWriteBehindQueue writeBehindQueue;
+
+    private ConcurrentHashMap<String, WriteBehindEntry> pendingConditionalCreates = new ConcurrentHashMap<>();
 
     @Override
     protected VirtualDBMethodOutcome createResource(Resource resource) {
-        return null;
+        getLogger().debug(".createResource(): Entry, resource --> {}", resource);
+        VirtualDBMethodOutcome outcome = acceptWrite(WriteBehindEntry.WriteBehindOperationEnum.CREATE, resource);
+        getLogger().debug(".createResource(): Exit, outcome --> {}", outcome);
+        return(outcome);
     }
 
     @Override
     protected VirtualDBMethodOutcome updateResource(Resource resource) {
-        return null;
+        getLogger().debug(".updateResource(): Entry, resource --> {}", resource);
+        VirtualDBMethodOutcome outcome = acceptWrite(WriteBehindEntry.WriteBehindOperationEnum.UPDATE, resource);
+        getLogger().debug(".updateResource(): Exit, outcome --> {}", outcome);
+        return(outcome);
     }
 
     @Override
     protected VirtualDBMethodOutcome deleteResource(IdType id) {
+        // The VirtualDB accessors do not (yet) support deletion, as per LadonEdgeSynchronousCRUDResourceBase
         return null;
     }
+
+    /**
+     * Apply a (previously accepted) write to the VirtualDB, this is called by the LadonEdgeWriteBehindQueue drainers.
+     *
+     * @param operation The write to be applied
+     * @param resource The Resource to be created/updated
+     * @return The outcome of the VirtualDB action
+     */
+    public VirtualDBMethodOutcome applyQueuedWrite(WriteBehindEntry.WriteBehindOperationEnum operation, Resource resource){
+        getLogger().debug(".applyQueuedWrite(): Entry, operation --> {}, resource --> {}", operation, resource);
+        VirtualDBMethodOutcome outcome;
+        if(operation == WriteBehindEntry.WriteBehindOperationEnum.CREATE){
+            outcome = applyViaVirtualDBAccessor(() -> getVirtualDBAccessor().createResource(resource));
+        } else {
+            outcome = applyViaVirtualDBAccessor(() -> getVirtualDBAccessor().updateResource(resource));
+        }
+        resourceHasChanged(resource, outcome);
+        getLogger().debug(".applyQueuedWrite(): Exit, outcome --> {}", outcome);
+        return(outcome);
+    }
+
+    /**
+     * Perform the call with any write-behind creates/updates it makes applied immediately (on the calling thread).
+     */
+    public static <V> V callWithWriteThrough(Supplier<V> call){
+        Boolean previousWriteThrough = WRITE_THROUGH.get();
+        WRITE_THROUGH.set(Boolean.TRUE);
+        try {
+            return(call.get());
+        } finally {
+            if(previousWriteThrough == null){
+                WRITE_THROUGH.remove();
+            }
+        }
+    }
+
+    private boolean isWriteThrough(){
+        return(Boolean.TRUE.equals(WRITE_THROUGH.get()));
+    }
+
+    @Override
+    protected VirtualDBMethodOutcome createForCondition(Resource resource, Identifier identifier, String identifierKey){
+        if(isWriteThrough()){
+            return(super.createForCondition(resource, identifier, identifierKey));
+        }
+        WriteBehindEntry entry = writeBehindQueue.enqueue(WriteBehindEntry.WriteBehindOperationEnum.CREATE, resource);
+        if(pendingConditionalCreates.size() >= PENDING_CREATE_SWEEP_THRESHOLD){
+            pendingConditionalCreates.values().removeIf(WriteBehindEntry::isFinished);
+        }
+        pendingConditionalCreates.put(identifierKey, entry);
+        return(buildAcceptedOutcome(entry, true));
+    }
+
+    @Override
+    protected VirtualDBMethodOutcome findPendingConditionalCreate(String identifierKey){
+        WriteBehindEntry pendingEntry = pendingConditionalCreates.get(identifierKey);
+        if(pendingEntry == null){
+            return(null);
+        }
+        if(pendingEntry.isFinished()){
+            // Once applied, the create is found via the IdentifierIndex (or a search); if it failed, it can be retried
+            pendingConditionalCreates.remove(identifierKey, pendingEntry);
+            return(null);
+        }
+        VirtualDBMethodOutcome pendingOutcome = buildAcceptedOutcome(pendingEntry, false);
+        return(pendingOutcome);
+    }
+
+    private VirtualDBMethodOutcome acceptWrite(WriteBehindEntry.WriteBehindOperationEnum operation, Resource resource){
+        if(isWriteThrough()){
+            return(applyQueuedWrite(operation, resource));
+        }
+        WriteBehindEntry entry = writeBehindQueue.enqueue(operation, resource);
+        return(buildAcceptedOutcome(entry, operation == WriteBehindEntry.WriteBehindOperationEnum.CREATE));
+    }
+
+    private VirtualDBMethodOutcome buildAcceptedOutcome(WriteBehindEntry entry, boolean created){
+        // The response (including a repeat of a pending conditional create) points the client at the ticket's status
+        LadonEdgeWriteBehindQueue.setAcceptedTicket(entry.getTicket());
+        WriteBehindEntry.WriteBehindOperationEnum operation = entry.getOperation();
+        VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+        outcome.setCreated(created);
+        if(entry.getResourceId() != null){
+            outcome.setId(new IdType(getResourceTypeName(), entry.getResourceId()));
+        }
+        OperationOutcome acceptedOutcome = new OperationOutcome();
+        acceptedOutcome.addIssue()
+                .setSeverity(OperationOutcome.IssueSeverity.INFORMATION)
+                .setCode(OperationOutcome.IssueType.INFORMATIONAL)
+                .setDiagnostics("The " + operation.name().toLowerCase() + " has been accepted for processing, ticket --> " + entry.getTicket());
+        outcome.setOperationOutcome(acceptedOutcome);
+        return(outcome);
+    }
 }
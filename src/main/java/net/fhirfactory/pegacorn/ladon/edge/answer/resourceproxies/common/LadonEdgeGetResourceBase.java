@@ -21,47 +21,821 @@
  */
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
 
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PatchTypeEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.TokenParam;
-import ca.uhn.fhir.rest.param.TokenParamModifier;
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.IdentifierIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeIdentifierIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeRevalidationService;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeResourceCache;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeVersionIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.ResourceTypeCache;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.RequestDeadline;
+import net.fhirfactory.pegacorn.ladon.edge.answer.paging.SearchResultSnapshot;
+import net.fhirfactory.pegacorn.ladon.edge.answer.patch.JsonPatchApplier;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.BoundSearch;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.DateBucketedSearchCache;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.IntervalIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.LadonEdgeIntervalIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.LadonEdgeSearchResultCache;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.ResourceIntervalExtractor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.ResourcePartitionExtractor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.SearchPlan;
+import net.fhirfactory.pegacorn.ladon.edge.answer.search.SearchPlanRegistry;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.r4.model.*;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import javax.inject.Inject;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class LadonEdgeGetResourceBase extends LadonEdgeProxyBase{
     private static String parameterSepeator = "|";
+    private static final String IDENTIFIER_CONDITION = "identifier=";
+    private static final int CONDITIONAL_WRITE_LOCK_STRIPES = 64;
+
+    @Inject
+    private LadonEdgeResourceCache resourceCache;
+
+    @Inject
+    private LadonEdgeVersionIndex versionIndex;
+
+    @Inject
+    private LadonEdgeIdentifierIndex identifierIndex;
+
+    @Inject
+    private SearchPlanRegistry searchPlanRegistry;
+
+    @Inject
+    private LadonEdgeSearchResultCache searchResultCache;
+
+    @Inject
+    private LadonEdgeIntervalIndex intervalIndex;
+
+    @Inject
+    private LadonEdgeRevalidationService revalidationService;
+
+    private InFlightCallCoalescer<Resource> readCoalescer = new InFlightCallCoalescer<>();
+
+    private InFlightCallCoalescer<Resource> identifierSearchCoalescer = new InFlightCallCoalescer<>();
+
+    private JsonPatchApplier jsonPatchApplier = new JsonPatchApplier();
+
+    private StripedLocks conditionalWriteLocks = new StripedLocks(CONDITIONAL_WRITE_LOCK_STRIPES);
+
+    protected ResourceTypeCache getResourceTypeCache(){
+        return(resourceCache.getResourceTypeCache(getResourceTypeName()));
+    }
+
+    protected IdentifierIndex getIdentifierIndex(){
+        return(identifierIndex.getIdentifierIndex(getResourceTypeName()));
+    }
+
+    /**
+     * This is the default read (@Read) function. It returns the Resource from the (read-through) ResourceTypeCache
+     * if it is present (and fresh), otherwise it retrieves it via the VirtualDB accessor and caches it. Concurrent
+     * reads of the same id share a single accessor call.
+     *
+     * If stale-while-revalidate is enabled for the resource type and the cache still holds a (no longer fresh)
+     * copy of the Resource, the reader only waits for the accessor for the latency budget - if the accessor is
+     * slower (or fails) the stale copy is returned and the accessor call refreshes the cache in the background.
+     *
+     * @param id The id of the Resource to be retrieved (which may include a version)
+     * @return The Resource or null if none exists.
+     */
+    protected Resource readResource(IdType id) {
+        return(readResource(id, true));
+    }
+
+    /**
+     * As per readResource(id), but a stale copy is only ever returned if allowStale is set - a Resource read in
+     * order to be modified (e.g. patched) must be the current version.
+     */
+    protected Resource readResource(IdType id, boolean allowStale) {
+        getLogger().debug(".readResource(): Entry, id --> {}, allowStale --> {}", id, allowStale);
+        ResourceTypeCache typeCache = getResourceTypeCache();
+        Resource cachedResource = typeCache.get(id);
+        if(cachedResource != null){
+            getLogger().debug(".readResource(): Exit, returning cached Resource");
+            return(cachedResource);
+        }
+        String readKey = id.getIdPart() + "/_history/" + id.getVersionIdPart();
+        LadonEdgeRevalidationService.StaleReadPolicy staleReadPolicy = revalidationService.getPolicy(getResourceTypeName());
+        if(allowStale && !id.hasVersionIdPart() && staleReadPolicy.isEnabled()){
+            ResourceTypeCache.StaleResource staleResource = typeCache.getStale(id.getIdPart(), staleReadPolicy.getMaximumStaleness());
+            if(staleResource != null){
+                // Serve the stale value, rather than a 504, if the request's deadline would pass first
+                long latencyBudget = staleReadPolicy.getLatencyBudget();
+                RequestDeadline deadline = RequestDeadline.current();
+                if(deadline != null){
+                    latencyBudget = Math.min(latencyBudget, deadline.getRemaining());
+                }
+                Resource revalidatedResource = revalidationService.callWithinBudget(() -> readCoalescer.execute(readKey, () -> retrieveResource(id), Resource::copy),
+                        latencyBudget, staleResource.getResource(), staleResource.getAge());
+                getLogger().debug(".readResource(): Exit, revalidated Resource --> {}", revalidatedResource);
+                return(revalidatedResource);
+            }
+        }
+        Resource retrievedResource = readCoalescer.execute(readKey, () -> retrieveResource(id), Resource::copy);
+        getLogger().debug(".readResource(): Exit, retrieved Resource --> {}", retrievedResource);
+        return(retrievedResource);
+    }
+
+    private Resource retrieveResource(IdType id){
+        VirtualDBMethodOutcome outcome = getResource(id);
+        Resource retrievedResource = null;
+        if(outcome != null && outcome.getResource() != null){
+            retrievedResource = (Resource) outcome.getResource();
+            if(retrievedResource.fhirType().equals(getResourceTypeName())){
+                getResourceTypeCache().put(retrievedResource);
+                if(!id.hasVersionIdPart()) {
+                    versionIndex.record(retrievedResource);
+                }
+            }
+        }
+        return(retrievedResource);
+    }
+
+    /**
+     * This method is called once a Resource has been created or updated (via this proxy), so that any (now out of
+     * date) cached content can be discarded.
+     *
+     * @param resource The Resource that was created/updated
+     * @param outcome The outcome of the create/update action
+     */
+    protected void resourceHasChanged(Resource resource, MethodOutcome outcome){
+        String idPart = null;
+        if(outcome != null && outcome.getId() != null && outcome.getId().hasIdPart()){
+            idPart = outcome.getId().getIdPart();
+        } else if(resource != null && resource.hasIdElement()){
+            idPart = resource.getIdElement().getIdPart();
+        }
+        getLogger().trace(".resourceHasChanged(): Invalidating cached content for id --> {}", idPart);
+        getResourceTypeCache().invalidate(idPart);
+        versionIndex.invalidate(getResourceTypeName(), idPart);
+        if(resource != null){
+            invalidateIdentifiers(resource);
+            searchResultCache.invalidate(resource);
+            intervalIndex.invalidate(resource);
+        }
+        if(outcome != null && outcome.getId() != null && outcome.getId().hasVersionIdPart()){
+            versionIndex.record(getResourceTypeName(), idPart, outcome.getId().getVersionIdPart(), -1);
+        }
+    }
 
 
+    /**
+     * This is the default conditional create (@Create with an If-None-Exist header) function. The condition must be
+     * a single "identifier=[system]|[value]" criterion, which is resolved via the IdentifierIndex (or, failing that,
+     * an identifier search). If a single Resource matches, its id is returned without anything being created; if
+     * several match, the create fails (412); otherwise the Resource is created and the Identifier indexed, so that
+     * a repeat of the create is answered at the edge.
+     *
+     * Conditional creates/updates of the same Identifier are serialised (via one of a set of striped locks), so
+     * that concurrent creates cannot both find no match and both create.
+     *
+     * @param resource The Resource to be created
+     * @param conditionalUrl The condition (as per the If-None-Exist header), or null for an unconditional create
+     * @return An outcome (MethodOutcome) detailing the success (or otherwise) of the action.
+     */
+    protected VirtualDBMethodOutcome conditionalCreateResource(Resource resource, String conditionalUrl){
+        if(conditionalUrl == null || conditionalUrl.trim().isEmpty()){
+            return(createResource(resource));
+        }
+        getLogger().debug(".conditionalCreateResource(): Entry, conditionalUrl --> {}", conditionalUrl);
+        Identifier identifier = parseIdentifierCondition(conditionalUrl);
+        String identifierKey = buildIdentifierKey(identifier);
+        ReentrantLock identifierLock = conditionalWriteLocks.getLock(identifierKey);
+        identifierLock.lock();
+        try {
+            VirtualDBMethodOutcome pendingOutcome = findPendingConditionalCreate(identifierKey);
+            if(pendingOutcome != null){
+                getLogger().debug(".conditionalCreateResource(): Exit, a matching create is pending");
+                return(pendingOutcome);
+            }
+            List<IdType> matchingIds = resolveIdentifierMatches(identifier, identifierKey);
+            if(matchingIds.size() > 1){
+                throw new PreconditionFailedException("Multiple " + getResourceTypeName() + " resources match the condition --> " + conditionalUrl);
+            }
+            if(matchingIds.size() == 1){
+                VirtualDBMethodOutcome existingOutcome = new VirtualDBMethodOutcome();
+                existingOutcome.setCreated(false);
+                existingOutcome.setId(matchingIds.get(0));
+                getLogger().debug(".conditionalCreateResource(): Exit, matching Resource exists --> {}", matchingIds.get(0));
+                return(existingOutcome);
+            }
+            VirtualDBMethodOutcome outcome = createForCondition(resource, identifier, identifierKey);
+            getLogger().debug(".conditionalCreateResource(): Exit, outcome --> {}", outcome);
+            return(outcome);
+        } finally {
+            identifierLock.unlock();
+        }
+    }
+
+    /**
+     * This is the default conditional update (@Update of [type]?identifier=[system]|[value]) function. The
+     * condition is resolved (and serialised) as per conditionalCreateResource(): a single match is updated, no match
+     * results in a create and several matches fail the update (412).
+     *
+     * @param resource The Resource to be updated
+     * @param conditionalUrl The condition, or null for an unconditional update
+     * @return An outcome (MethodOutcome) detailing the success (or otherwise) of the action.
+     */
+    protected VirtualDBMethodOutcome conditionalUpdateResource(Resource resource, String conditionalUrl){
+        return(conditionalUpdateResource(null, resource, conditionalUrl));
+    }
+
+    /**
+     * This is the default update (@Update) function. The update is conditional on the Resource matching the
+     * condition (see above), or - if the id includes a version (i.e. HAPI has applied an If-Match header) - on the
+     * Resource still being at that version (see updateResourceIfMatch()).
+     *
+     * @param id The id of the Resource being updated (null for a conditional update), possibly with a version
+     * @param resource The Resource to be updated
+     * @param conditionalUrl The condition, or null for an unconditional update
+     * @return An outcome (MethodOutcome) detailing the success (or otherwise) of the action.
+     */
+    protected VirtualDBMethodOutcome conditionalUpdateResource(IdType id, Resource resource, String conditionalUrl){
+        if(conditionalUrl == null || conditionalUrl.trim().isEmpty()){
+            if(id != null && id.hasIdPart()){
+                resource.setId(new IdType(getResourceTypeName(), id.getIdPart()));
+                if(id.hasVersionIdPart()){
+                    return(updateResourceIfMatch(resource, id.getVersionIdPart()));
+                }
+            }
+            return(updateResource(resource));
+        }
+        getLogger().debug(".conditionalUpdateResource(): Entry, conditionalUrl --> {}", conditionalUrl);
+        Identifier identifier = parseIdentifierCondition(conditionalUrl);
+        String identifierKey = buildIdentifierKey(identifier);
+        ReentrantLock identifierLock = conditionalWriteLocks.getLock(identifierKey);
+        identifierLock.lock();
+        try {
+            List<IdType> matchingIds = new ArrayList<>();
+            VirtualDBMethodOutcome pendingOutcome = findPendingConditionalCreate(identifierKey);
+            if(pendingOutcome != null){
+                if(pendingOutcome.getId() == null || !pendingOutcome.getId().hasIdPart()){
+                    throw new ResourceVersionConflictException("A create of the matching " + getResourceTypeName() + " is still being processed");
+                }
+                matchingIds.add(pendingOutcome.getId().toUnqualifiedVersionless());
+            } else {
+                matchingIds.addAll(resolveIdentifierMatches(identifier, identifierKey));
+            }
+            if(matchingIds.size() > 1){
+                throw new PreconditionFailedException("Multiple " + getResourceTypeName() + " resources match the condition --> " + conditionalUrl);
+            }
+            VirtualDBMethodOutcome outcome;
+            if(matchingIds.size() == 1){
+                String matchingIdPart = matchingIds.get(0).getIdPart();
+                if(resource.getIdElement().hasIdPart() && !resource.getIdElement().getIdPart().equals(matchingIdPart)){
+                    throw new InvalidRequestException("The id of the Resource (" + resource.getIdElement().getIdPart() + ") does not match the Resource matching the condition (" + matchingIdPart + ")");
+                }
+                resource.setId(new IdType(getResourceTypeName(), matchingIdPart));
+                outcome = updateResource(resource);
+            } else if(resource.getIdElement().hasIdPart()){
+                outcome = updateResource(resource);
+            } else {
+                outcome = createForCondition(resource, identifier, identifierKey);
+            }
+            getLogger().debug(".conditionalUpdateResource(): Exit, outcome --> {}", outcome);
+            return(outcome);
+        } finally {
+            identifierLock.unlock();
+        }
+    }
+
+    /**
+     * Update the Resource, provided it is (still) at the expected version - otherwise the update fails (412) without
+     * reaching the VirtualDB accessor. The current version is taken from the LadonEdgeVersionIndex (or, failing that,
+     * from a read of the Resource), and the version index entry is then reserved for this update, so that of two
+     * concurrent updates of the same version only one proceeds. The reservation is per Resource, so updates of
+     * different Resources do not contend.
+     *
+     * The update is applied directly (see updateResourceWithoutCoalescing()), as it must not be merged with others.
+     *
+     * @param resource The Resource to be updated (with its id)
+     * @param expectedVersionId The version the client last saw (e.g. from the If-Match header)
+     * @return An outcome (MethodOutcome) detailing the success (or otherwise) of the action.
+     */
+    protected VirtualDBMethodOutcome updateResourceIfMatch(Resource resource, String expectedVersionId){
+        String idPart = resource.getIdElement().getIdPart();
+        getLogger().debug(".updateResourceIfMatch(): Entry, id --> {}, expectedVersionId --> {}", idPart, expectedVersionId);
+        LadonEdgeVersionIndex.VersionEntry versionEntry = versionIndex.lookup(getResourceTypeName(), idPart);
+        if(versionEntry == null){
+            Resource currentResource = readResource(new IdType(getResourceTypeName(), idPart));
+            if(currentResource == null){
+                throw new ResourceNotFoundException(new IdType(getResourceTypeName(), idPart));
+            }
+            versionIndex.record(currentResource);
+            versionEntry = versionIndex.lookup(getResourceTypeName(), idPart);
+        }
+        if(versionEntry == null || !versionEntry.getVersionId().equals(expectedVersionId)){
+            versionIndex.recordPreconditionFailedResponse();
+            throw new PreconditionFailedException("Version " + expectedVersionId + " is not the current version of " + getResourceTypeName() + "/" + idPart);
+        }
+        if(!versionIndex.reserveForUpdate(getResourceTypeName(), idPart, expectedVersionId)){
+            versionIndex.recordPreconditionFailedResponse();
+            throw new PreconditionFailedException("Version " + expectedVersionId + " of " + getResourceTypeName() + "/" + idPart + " is already being updated");
+        }
+        VirtualDBMethodOutcome outcome;
+        try {
+            outcome = updateResourceWithoutCoalescing(resource);
+        } catch(RuntimeException updateException){
+            versionIndex.invalidate(getResourceTypeName(), idPart);
+            throw updateException;
+        }
+        getLogger().debug(".updateResourceIfMatch(): Exit, outcome --> {}", outcome);
+        return(outcome);
+    }
+
+    /**
+     * Update the Resource without it being merged with (coalesced into) any other update of it.
+     */
+    protected VirtualDBMethodOutcome updateResourceWithoutCoalescing(Resource resource){
+        return(updateResource(resource));
+    }
+
+    /**
+     * Create the Resource on behalf of a conditional create/update (which holds the lock for the Identifier) and, if
+     * it carries the Identifier, record it in the IdentifierIndex.
+     */
+    protected VirtualDBMethodOutcome createForCondition(Resource resource, Identifier identifier, String identifierKey){
+        VirtualDBMethodOutcome outcome = createResource(resource);
+        if(outcome != null && outcome.getId() != null && outcome.getId().hasIdPart() && carriesIdentifier(resource, identifier)){
+            getIdentifierIndex().recordPresent(identifierKey, outcome.getId().getIdPart());
+        }
+        return(outcome);
+    }
+
+    /**
+     * @return the outcome of an accepted (but not yet applied) create of a Resource with the Identifier, or null if
+     * there is none. Creates are applied before they are acknowledged, unless the proxy is write-behind.
+     */
+    protected VirtualDBMethodOutcome findPendingConditionalCreate(String identifierKey){
+        return(null);
+    }
+
+    private List<IdType> resolveIdentifierMatches(Identifier identifier, String identifierKey){
+        // A (brief) negative index entry may have been recorded by a search that overlapped an earlier create, so it
+        // is not trusted for a condition - only the (verified) positive entries are
+        Resource searchOutcome = findResourceViaIdentifierIndex(identifier, identifierKey, false);
+        if(searchOutcome == null){
+            VirtualDBMethodOutcome outcome = callVirtualDBAccessor(() -> getVirtualDBAccessor().findResourceViaIdentifier(identifier));
+            if(outcome == null || !(outcome.getStatusEnum().equals(VirtualDBActionStatusEnum.REVIEW_FINISH) || outcome.getStatusEnum().equals(VirtualDBActionStatusEnum.SEARCH_FINISHED))){
+                throw new InternalErrorException("The search for the condition failed, so the conditional action cannot be resolved");
+            }
+            searchOutcome = (Resource) outcome.getResource();
+            indexSearchOutcome(identifierKey, searchOutcome);
+        }
+        List<IdType> matchingIds = new ArrayList<>();
+        if(searchOutcome instanceof Bundle){
+            for(Bundle.BundleEntryComponent currentEntry: ((Bundle) searchOutcome).getEntry()){
+                if(currentEntry.hasResource() && currentEntry.getResource().fhirType().equals(getResourceTypeName())){
+                    matchingIds.add(currentEntry.getResource().getIdElement().toUnqualifiedVersionless());
+                }
+            }
+        } else if(searchOutcome != null && searchOutcome.fhirType().equals(getResourceTypeName())){
+            matchingIds.add(searchOutcome.getIdElement().toUnqualifiedVersionless());
+        }
+        return(matchingIds);
+    }
+
+    /**
+     * Convert the condition ("[type]?identifier=[system]|[value]" or just "identifier=[system]|[value]") into an
+     * Identifier, as per an identifier search.
+     */
+    private Identifier parseIdentifierCondition(String conditionalUrl){
+        String criteria = conditionalUrl.trim();
+        int queryStart = criteria.indexOf('?');
+        if(queryStart >= 0){
+            criteria = criteria.substring(queryStart + 1);
+        }
+        if(!criteria.startsWith(IDENTIFIER_CONDITION) || criteria.indexOf('&') >= 0){
+            throw new InvalidRequestException("Only a single identifier=[system]|[value] condition is supported, condition --> " + conditionalUrl);
+        }
+        String identifierToken;
+        try {
+            identifierToken = URLDecoder.decode(criteria.substring(IDENTIFIER_CONDITION.length()), StandardCharsets.UTF_8.name());
+        } catch(UnsupportedEncodingException encodingException){
+            throw new InternalErrorException(encodingException);
+        }
+        if(identifierToken.isEmpty() || identifierToken.indexOf(',') >= 0){
+            throw new InvalidRequestException("The identifier condition must name a single identifier, condition --> " + conditionalUrl);
+        }
+        int systemEnd = identifierToken.indexOf('|');
+        TokenParam identifierParam;
+        if(systemEnd < 0){
+            identifierParam = new TokenParam(null, identifierToken);
+        } else {
+            identifierParam = new TokenParam(systemEnd == 0 ? null : identifierToken.substring(0, systemEnd), identifierToken.substring(systemEnd + 1));
+        }
+        return(tokenParam2Identifier(identifierParam));
+    }
+
     /**
      * This is the default findByIdentifier() search function. It is called by the subclass (@Search annotated) public
-     * Resource specific findByIdentifier() classes after those classes have resolved the Identifier.
+     * Resource specific findByIdentifier() classes after those classes have resolved the Identifier. The Identifier
+     * is first resolved via the IdentifierIndex (a positive answer is verified by reading the Resource, a negative
+     * answer is only held briefly), otherwise concurrent searches for the same Identifier share a single accessor call.
      *
      * @param identifier the (partially populated) Identifier to search for
      * @return A FHIR::Bundle containing one or more resources matching the Identifier or an empty FHIR::Bundle.
      */
     protected Resource findResourceViaIdentifier(Identifier identifier) {
         getLogger().debug(".findByIdentifier(): Entry, identifier --> {}", identifier);
+        if(identifier == null){
+            return(searchForIdentifier(identifier, null));
+        }
+        String identifierKey = buildIdentifierKey(identifier);
+        Resource indexedOutcome = findResourceViaIdentifierIndex(identifier, identifierKey, true);
+        if(indexedOutcome != null){
+            getLogger().debug(".findByIdentifier(): Exit, resolved via the IdentifierIndex");
+            return(indexedOutcome);
+        }
+        Resource searchOutcome = identifierSearchCoalescer.execute(identifierKey, () -> searchForIdentifier(identifier, identifierKey), Resource::copy);
+        return(searchOutcome);
+    }
+
+    private Resource findResourceViaIdentifierIndex(Identifier identifier, String identifierKey, boolean trustAbsentEntries){
+        IdentifierIndex typeIdentifierIndex = getIdentifierIndex();
+        String logicalId = typeIdentifierIndex.lookup(identifierKey);
+        if(logicalId == null){
+            return(null);
+        }
+        if(IdentifierIndex.IDENTIFIER_ABSENT.equals(logicalId)){
+            return(trustAbsentEntries ? emptySearchBundle() : null);
+        }
+        Resource indexedResource = readResource(new IdType(getResourceTypeName(), logicalId));
+        if(indexedResource != null && carriesIdentifier(indexedResource, identifier)){
+            return(indexedResource);
+        }
+        getLogger().trace(".findResourceViaIdentifierIndex(): Stale index entry, identifierKey --> {}", identifierKey);
+        typeIdentifierIndex.recordStale(identifierKey);
+        return(null);
+    }
 
-        VirtualDBMethodOutcome outcome = getVirtualDBAccessor().findResourceViaIdentifier(identifier);
+    private Resource searchForIdentifier(Identifier identifier, String identifierKey){
+        VirtualDBMethodOutcome outcome = callVirtualDBAccessor(() -> getVirtualDBAccessor().findResourceViaIdentifier(identifier));
 
         if (outcome.getStatusEnum().equals(VirtualDBActionStatusEnum.REVIEW_FINISH) || outcome.getStatusEnum().equals(VirtualDBActionStatusEnum.SEARCH_FINISHED)) {
             getLogger().trace("findByIdentifier(): search is finished, extracting result Resource");
             Resource searchOutcome = (Resource) outcome.getResource();
+            if(identifierKey != null){
+                indexSearchOutcome(identifierKey, searchOutcome);
+            }
             getLogger().debug("findByIdentifier(): Exit, resulting Resource is {}", searchOutcome);
             return (searchOutcome);
         } else {
-            Resource emptyOutcomeBundle = searchProcessHasFailed(".findByIdentifier()");
-            getLogger().debug("findByIdentifier(): Exit, search failed (not just not finding any matching resources, but the search process itself faield)!");
-            return (emptyOutcomeBundle);
+            // An empty Bundle would be read as "no such Resource", so the failure is reported as such
+            searchProcessHasFailed(".findByIdentifier()");
+            throw new UnclassifiedServerFailureException(503, "The " + getResourceTypeName() + " identifier search could not be completed, please retry");
+        }
+    }
+
+    private void indexSearchOutcome(String identifierKey, Resource searchOutcome){
+        if(searchOutcome == null){
+            return;
+        }
+        if(searchOutcome instanceof Bundle){
+            Bundle searchBundle = (Bundle) searchOutcome;
+            if(searchBundle.getEntry().isEmpty()){
+                getIdentifierIndex().recordAbsent(identifierKey);
+            } else if(searchBundle.getEntry().size() == 1 && searchBundle.getEntryFirstRep().hasResource()){
+                Resource matchingResource = searchBundle.getEntryFirstRep().getResource();
+                if(matchingResource.fhirType().equals(getResourceTypeName())){
+                    getIdentifierIndex().recordPresent(identifierKey, matchingResource.getIdElement().getIdPart());
+                }
+            }
+        } else if(searchOutcome.fhirType().equals(getResourceTypeName())){
+            getIdentifierIndex().recordPresent(identifierKey, searchOutcome.getIdElement().getIdPart());
+        }
+    }
+
+    private List<Identifier> getIdentifiers(Resource resource){
+        List<Identifier> identifiers = new ArrayList<>();
+        BaseRuntimeChildDefinition identifierChild = getFHIRContextUtility().getFhirContext().getResourceDefinition(resource).getChildByName("identifier");
+        if(identifierChild == null){
+            return(identifiers);
+        }
+        for(IBase currentValue: identifierChild.getAccessor().getValues(resource)){
+            if(currentValue instanceof Identifier){
+                identifiers.add((Identifier) currentValue);
+            }
+        }
+        return(identifiers);
+    }
+
+    /**
+     * @return true if the Resource has an Identifier matching (the populated elements of) the searched for Identifier
+     */
+    private boolean carriesIdentifier(Resource resource, Identifier searchedIdentifier){
+        for(Identifier currentIdentifier: getIdentifiers(resource)){
+            if(searchedIdentifier.getValue() == null || !searchedIdentifier.getValue().equals(currentIdentifier.getValue())){
+                continue;
+            }
+            if(searchedIdentifier.hasSystem() && !searchedIdentifier.getSystem().equals(currentIdentifier.getSystem())){
+                continue;
+            }
+            if(searchedIdentifier.hasType() && searchedIdentifier.getType().hasCoding()){
+                Coding searchedType = searchedIdentifier.getType().getCodingFirstRep();
+                boolean typeMatches = false;
+                for(Coding currentType: currentIdentifier.getType().getCoding()){
+                    if(Objects.equals(searchedType.getSystem(), currentType.getSystem()) && Objects.equals(searchedType.getCode(), currentType.getCode())){
+                        typeMatches = true;
+                    }
+                }
+                if(!typeMatches){
+                    continue;
+                }
+            }
+            return(true);
+        }
+        return(false);
+    }
+
+    /**
+     * Discard any index entries for the Identifiers of a created/updated Resource, in each of the forms they may
+     * have been searched for (value only, with system, with type and with both).
+     */
+    private void invalidateIdentifiers(Resource resource){
+        IdentifierIndex typeIdentifierIndex = getIdentifierIndex();
+        for(Identifier currentIdentifier: getIdentifiers(resource)){
+            String identifierValue = currentIdentifier.getValue();
+            typeIdentifierIndex.invalidate(buildIdentifierKey(new Identifier().setValue(identifierValue)));
+            if(currentIdentifier.hasSystem()){
+                typeIdentifierIndex.invalidate(buildIdentifierKey(new Identifier().setSystem(currentIdentifier.getSystem()).setValue(identifierValue)));
+            }
+            for(Coding currentType: currentIdentifier.getType().getCoding()){
+                Identifier typedIdentifier = new Identifier().setValue(identifierValue);
+                typedIdentifier.getType().addCoding(new Coding().setSystem(currentType.getSystem()).setCode(currentType.getCode()));
+                typeIdentifierIndex.invalidate(buildIdentifierKey(typedIdentifier));
+                if(currentIdentifier.hasSystem()){
+                    typedIdentifier.setSystem(currentIdentifier.getSystem());
+                    typeIdentifierIndex.invalidate(buildIdentifierKey(typedIdentifier));
+                }
+            }
+        }
+    }
+
+    private Bundle emptySearchBundle(){
+        Bundle outputBundle = new Bundle();
+        outputBundle.setType(Bundle.BundleType.SEARCHSET);
+        outputBundle.setTimestamp(java.util.Date.from(Instant.now()));
+        outputBundle.setTotal(0);
+        return(outputBundle);
+    }
+
+    protected String buildIdentifierKey(Identifier identifier){
+        StringBuilder keyBuilder = new StringBuilder();
+        keyBuilder.append(identifier.getSystem()).append(parameterSepeator);
+        if(identifier.hasType() && identifier.getType().hasCoding()){
+            Coding identifierTypeCode = identifier.getType().getCodingFirstRep();
+            keyBuilder.append(identifierTypeCode.getSystem()).append(parameterSepeator).append(identifierTypeCode.getCode());
+        }
+        keyBuilder.append(parameterSepeator).append(identifier.getValue());
+        return(keyBuilder.toString());
+    }
+
+    public long getCoalescedReadCount(){
+        return(readCoalescer.getCoalescedCallCount());
+    }
+
+    public long getCoalescedIdentifierSearchCount(){
+        return(identifierSearchCoalescer.getCoalescedCallCount());
+    }
+
+
+    /**
+     * @param searchName The (criteria based) VirtualDB search
+     * @return The precompiled SearchPlan for the search, which is guaranteed to target this proxy's resource type
+     */
+    protected SearchPlan getSearchPlan(SearchNameEnum searchName){
+        return(searchPlanRegistry.getSearchPlan(searchName, getResourceTypeName()));
+    }
+
+    protected VirtualDBMethodOutcome searchUsingPlan(BoundSearch boundSearch){
+        getLogger().debug(".searchUsingPlan(): Entry, boundSearch --> {}", boundSearch);
+        SearchPlan plan = boundSearch.getPlan();
+        VirtualDBMethodOutcome outcome = callVirtualDBAccessor(() -> getVirtualDBAccessor().searchUsingCriteria(plan.getTargetResourceType(), plan.getSearchName(), boundSearch.getArgumentList()));
+        return(outcome);
+    }
+
+    /**
+     * Perform a date range search via the interval index and the (time bucketed) search result cache. If the
+     * interval index covers the date range (and the matching Resources are held in the ResourceTypeCache) the search
+     * is answered locally, otherwise the search result cache reuses the results of earlier searches with overlapping
+     * date ranges and only searches the VirtualDB for the parts of the range not held. The result then populates
+     * the interval index.
+     *
+     * @param searchMethod The name of the (calling) search method, used for logging
+     * @param boundSearch The search
+     * @param dateParameterName The name of the search's DateRangeParam parameter
+     * @param intervalExtractor Extracts the date (interval) of a matching Resource
+     * @param partitionExtractor Extracts the values identifying the partitions (the search without its date) a
+     *                           Resource can be found in, or null if they can not be
+     * @return An IBundleProvider containing the matching resources, or an empty one if the search failed.
+     */
+    protected IBundleProvider searchUsingDateBucketedPlan(String searchMethod, BoundSearch boundSearch, String dateParameterName, ResourceIntervalExtractor intervalExtractor,
+                                                          ResourcePartitionExtractor partitionExtractor){
+        getLogger().debug(".searchUsingDateBucketedPlan(): Entry, boundSearch --> {}", boundSearch);
+        DateRangeParam dateRange = (DateRangeParam) boundSearch.getValue(dateParameterName);
+        IntervalIndex typeIntervalIndex = intervalIndex.getIntervalIndex(boundSearch.getPlan(), intervalExtractor, partitionExtractor);
+        boolean isIndexable = typeIntervalIndex.isEnabled() && dateRange != null
+                && dateRange.getLowerBoundAsInstant() != null && dateRange.getUpperBoundAsInstant() != null;
+        String partitionKey = null;
+        long indexGeneration = 0;
+        if(isIndexable){
+            partitionKey = boundSearch.withValue(dateParameterName, null).getSearchKey();
+            indexGeneration = typeIntervalIndex.getInvalidationGeneration();
+            List<String> indexedIds = typeIntervalIndex.query(partitionKey, dateRange.getLowerBoundAsInstant().getTime(), dateRange.getUpperBoundAsInstant().getTime());
+            List<Resource> indexedResources = resolveHeldResources(indexedIds);
+            if(indexedResources != null){
+                getLogger().debug(".searchUsingDateBucketedPlan(): Exit, answered from the interval index, size --> {}", indexedResources.size());
+                return(new SearchResultSnapshot(getFHIRContextUtility().getFhirContext(), indexedResources, null));
+            }
+        }
+        DateBucketedSearchCache searchCache = searchResultCache.getSearchCache(boundSearch.getPlan(), dateParameterName, intervalExtractor);
+        List<Resource> matchingResources;
+        IBundleProvider snapshot;
+        if(searchCache.isCacheable(boundSearch)) {
+            matchingResources = searchCache.search(boundSearch, runSearch -> {
+                VirtualDBMethodOutcome outcome = searchUsingPlan(runSearch);
+                if (outcome == null || outcome.getStatusEnum() != VirtualDBActionStatusEnum.SEARCH_FINISHED) {
+                    return (null);
+                }
+                return ((Bundle) outcome.getResource());
+            });
+            if (matchingResources == null) {
+                snapshot = SearchResultSnapshot.fromBundle(getFHIRContextUtility().getFhirContext(), searchProcessHasFailed(searchMethod), null);
+            } else {
+                snapshot = new SearchResultSnapshot(getFHIRContextUtility().getFhirContext(), matchingResources, null);
+            }
+        } else {
+            VirtualDBMethodOutcome outcome = searchUsingPlan(boundSearch);
+            matchingResources = null;
+            if(outcome != null && outcome.getStatusEnum() == VirtualDBActionStatusEnum.SEARCH_FINISHED && outcome.getResource() instanceof Bundle){
+                matchingResources = new ArrayList<>();
+                for(Bundle.BundleEntryComponent currentEntry: ((Bundle) outcome.getResource()).getEntry()){
+                    if(currentEntry.hasResource() && currentEntry.getResource().fhirType().equals(getResourceTypeName())){
+                        matchingResources.add(currentEntry.getResource());
+                    }
+                }
+            }
+            snapshot = searchOutcome2Snapshot(searchMethod, outcome);
+        }
+        if(isIndexable && matchingResources != null){
+            for(Resource currentResource: matchingResources){
+                getResourceTypeCache().put(currentResource);
+            }
+            typeIntervalIndex.record(partitionKey, !boundSearch.hasModifiers(), dateRange.getLowerBoundAsInstant().getTime(), dateRange.getUpperBoundAsInstant().getTime(), matchingResources, indexGeneration);
         }
+        getLogger().debug(".searchUsingDateBucketedPlan(): Exit, snapshot size --> {}", snapshot.size());
+        return(snapshot);
     }
 
+    /**
+     * @return the (ResourceTypeCache held) Resources with the given logical ids, or null if any is not held
+     */
+    private List<Resource> resolveHeldResources(List<String> resourceIds){
+        if(resourceIds == null){
+            return(null);
+        }
+        List<Resource> heldResources = new ArrayList<>(resourceIds.size());
+        for(String currentId: resourceIds){
+            Resource heldResource = getResourceTypeCache().get(new IdType(getResourceTypeName(), currentId));
+            if(heldResource == null){
+                return(null);
+            }
+            heldResources.add(heldResource);
+        }
+        return(heldResources);
+    }
+
+    /**
+     * This method converts the outcome of a VirtualDB (criteria based) search into a SearchResultSnapshot, which
+     * allows HAPI to page through the result set (via the SearchResultSnapshotPagingProvider) rather than return
+     * the whole result Bundle in one response.
+     *
+     * @param searchMethod The name of the (calling) search method, used for logging
+     * @param outcome The outcome of the search as returned by the VirtualDB accessor
+     * @return An IBundleProvider containing the matching resources, or an empty one if the search failed.
+     */
+    protected IBundleProvider searchOutcome2Snapshot(String searchMethod, VirtualDBMethodOutcome outcome){
+        getLogger().debug(".searchOutcome2Snapshot(): Entry, searchMethod --> {}", searchMethod);
+        Bundle searchOutcome;
+        if (outcome != null && outcome.getStatusEnum() == VirtualDBActionStatusEnum.SEARCH_FINISHED) {
+            searchOutcome = (Bundle) outcome.getResource();
+        } else {
+            searchOutcome = searchProcessHasFailed(searchMethod);
+        }
+        SearchResultSnapshot snapshot = SearchResultSnapshot.fromBundle(getFHIRContextUtility().getFhirContext(), searchOutcome, null);
+        getLogger().debug(".searchOutcome2Snapshot(): Exit, snapshot size --> {}", snapshot.size());
+        return(snapshot);
+    }
 
     @Override
     protected VirtualDBMethodOutcome getResource(IdType id) {
-        return null;
+        VirtualDBMethodOutcome outcome = callVirtualDBAccessor(() -> getVirtualDBAccessor().getResource(id));
+        return(outcome);
+    }
+
+    /**
+     * This is the default patch (@Patch) function. The patch is applied to the current (fresh cached, or otherwise
+     * retrieved) version of the Resource and the result is then passed to updateResource(), so the client only
+     * sends the change. A patch that leaves the Resource unchanged is not forwarded at all.
+     *
+     * Only JSON Patch (application/json-patch+json) is supported, FHIRPath and XML patches are rejected.
+     *
+     * The patched Resource is only written if the Resource is still at the version that was patched (as per
+     * updateResourceIfMatch()), so a concurrent update is never silently overwritten.
+     *
+     * @param id The id of the Resource to be patched (if it includes a version it must be the current version)
+     * @param patchType The type of patch document, as resolved by HAPI from the request's Content-Type
+     * @param patchBody The patch document
+     * @param ifMatch The request's If-Match header (or null), HAPI does not pass its version to patch methods
+     * @return An outcome (MethodOutcome) detailing the success (or otherwise) of the action.
+     */
+    protected MethodOutcome patchResource(IdType id, PatchTypeEnum patchType, String patchBody, String ifMatch){
+        getLogger().debug(".patchResource(): Entry, id --> {}, patchType --> {}, ifMatch --> {}", id, patchType, ifMatch);
+        if(patchType != PatchTypeEnum.JSON_PATCH){
+            throw new InvalidRequestException("Only JSON Patch (application/json-patch+json) is supported, not --> " + patchType);
+        }
+        String expectedVersionId = LadonEdgeVersionIndex.parseETagVersion(ifMatch);
+        if(expectedVersionId != null && !id.hasVersionIdPart()){
+            id = id.withVersion(expectedVersionId);
+        }
+        // Never a stale-served copy, the patch must be applied to (and checked against) the current version
+        Resource currentResource = readResource(id.toVersionless(), false);
+        if(currentResource == null){
+            throw new ResourceNotFoundException(id);
+        }
+        String currentVersion = currentResource.getMeta().getVersionId();
+        if(id.hasVersionIdPart() && currentVersion != null && !id.getVersionIdPart().equals(currentVersion)){
+            versionIndex.recordPreconditionFailedResponse();
+            throw new PreconditionFailedException("Version " + id.getVersionIdPart() + " is not the current version (" + currentVersion + ") of " + id.toVersionless().getValue());
+        }
+        JSONArray patch;
+        try {
+            patch = new JSONArray(patchBody);
+        } catch(JSONException jsonException){
+            throw new InvalidRequestException("The JSON Patch document could not be parsed: " + jsonException.getMessage());
+        }
+        IParser jsonParser = getFHIRContextUtility().getFhirContext().newJsonParser();
+        String encodedResource = jsonParser.encodeResourceToString(currentResource);
+        JSONObject patchedDocument = new JSONObject(encodedResource);
+        jsonPatchApplier.apply(patchedDocument, patch);
+        if(patchedDocument.similar(new JSONObject(encodedResource))){
+            getLogger().debug(".patchResource(): Exit, the patch made no change");
+            return(new MethodOutcome(currentResource.getIdElement()));
+        }
+        Resource patchedResource;
+        try {
+            patchedResource = (Resource) jsonParser.parseResource(getResourceType(), patchedDocument.toString());
+        } catch(RuntimeException parseException){
+            throw new UnprocessableEntityException("The patched Resource is not valid: " + parseException.getMessage());
+        }
+        if(!id.getIdPart().equals(patchedResource.getIdElement().getIdPart())){
+            throw new UnprocessableEntityException("A patch cannot change the id of a Resource");
+        }
+        patchedResource.setId(new IdType(getResourceTypeName(), id.getIdPart()));
+        MethodOutcome outcome;
+        if(id.hasVersionIdPart()){
+            outcome = updateResourceIfMatch(patchedResource, id.getVersionIdPart());
+        } else if(currentVersion != null){
+            try {
+                outcome = updateResourceIfMatch(patchedResource, currentVersion);
+            } catch(PreconditionFailedException preconditionFailed){
+                throw new ResourceVersionConflictException(id.toVersionless().getValue() + " was updated while it was being patched, please retry");
+            }
+        } else {
+            outcome = updateResource(patchedResource);
+        }
+        getLogger().debug(".patchResource(): Exit, outcome --> {}", outcome);
+        return(outcome);
     }
 
     /**
@@ -72,6 +846,8 @@ public abstract class LadonEdgeGetResourceBase extends LadonEdgeProxyBase{
      * Pegacorn maps the System & Code to be associated to the FHIR::Identifier.type.system &  FHIR::Identifier.type.code
      * rather than the System attribute of the TokenParam mapping to the FHIR::Identifier.system.
      *
+     * The parsing itself is done by the IdentifierTokenParser.
+     *
      * @param identifierParam The TokenParam attribute representing an FHIR::Identifier
      * @return A (minimally populated) FHIR::Identifier element.
      */
@@ -81,45 +857,7 @@ public abstract class LadonEdgeGetResourceBase extends LadonEdgeProxyBase{
             getLogger().warn(".tokenParam2Identifier(): Parameter identifierParam (TokenParam) is null");
             return(null);
         }
-        boolean hasAppropriateModifier = false;
-        if(identifierParam.getModifier() == null) {
-            getLogger().trace(".tokenParam2Identifier(): There is no modifier present");
-            hasAppropriateModifier = false;
-        } else {
-            if(identifierParam.getModifier().getValue().equals(TokenParamModifier.OF_TYPE.getValue())){
-                hasAppropriateModifier = true;
-            }
-        }
-        // HAPI FHIR Server is not passing Modifiers
-        // This code manually checks to see if a modifier 
-        // has been used. 
-        if(!hasAppropriateModifier) {
-            if(identifierParam.getValue().contains("|")) {
-                hasAppropriateModifier = true;
-            }
-        }
-        String identifierValue = null;
-        Identifier generatedIdentifier = new Identifier();
-        if(hasAppropriateModifier){
-            String identifierTypeSystemValue = identifierParam.getSystem();
-            String identifierTypeCodeValue = null;
-            String paramValue = identifierParam.getValue();
-            String[] values = paramValue.split("\\|");
-            identifierTypeCodeValue = values[0];
-            identifierValue = values[1];
-            CodeableConcept identifierType = new CodeableConcept();
-            Coding identifierTypeCode = new Coding();
-            identifierTypeCode.setCode(identifierTypeCodeValue);
-            identifierTypeCode.setSystem(identifierTypeSystemValue);
-            identifierType.addCoding(identifierTypeCode);
-            identifierType.setText(identifierTypeSystemValue + ":" + identifierTypeCodeValue);
-            generatedIdentifier.setType(identifierType);
-        } 
-        else {
-            generatedIdentifier.setSystem(identifierParam.getSystem());
-            identifierValue = identifierParam.getValue();
-        }
-        generatedIdentifier.setValue(identifierValue);
+        Identifier generatedIdentifier = IdentifierTokenParser.parseIdentifier(identifierParam);
         getLogger().debug(".tokenParam2Identifier(): Exit, created Identifier --> {}", generatedIdentifier);
         return(generatedIdentifier);
     }
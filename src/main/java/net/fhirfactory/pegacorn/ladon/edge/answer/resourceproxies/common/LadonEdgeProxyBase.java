@@ -1,9 +1,13 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
 
 import net.fhirfactory.pegacorn.datasets.fhir.r4.base.entities.bundle.BundleContentHelper;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.LadonEdgeDeadlineService;
+import net.fhirfactory.pegacorn.ladon.edge.answer.guard.LadonEdgeAccessorGuards;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.processingplant.LadonProcessingPlant;
 import net.fhirfactory.pegacorn.ladon.virtualdb.accessors.common.AccessorBase;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Identifier;
@@ -11,10 +15,10 @@ import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 
 
-import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.time.Instant;
 import java.util.Date;
+import java.util.function.Supplier;
 
 public abstract class LadonEdgeProxyBase {
     boolean isInitialised;
@@ -29,15 +33,30 @@ public abstract class LadonEdgeProxyBase {
     @Inject
     private BundleContentHelper bundleContentHelper;
 
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    @Inject
+    private LadonEdgeAccessorGuards accessorGuards;
+
+    @Inject
+    private LadonEdgeDeadlineService deadlineService;
+
     protected BundleContentHelper getBundleContentHelper(){
         return(bundleContentHelper);
     }
 
-    @PostConstruct
-    private void initialisePatientProxy(){
+    protected FHIRContextUtility getFHIRContextUtility(){
+        return(fhirContextUtility);
+    }
+
+    /**
+     * Initialise the VirtualDB accessor behind this proxy. This is invoked (once, for all the proxies, in parallel)
+     * by the LadonEdgeStartupCoordinator, after it has initialised the LadonProcessingPlant.
+     */
+    public synchronized void initialiseProxy(){
         if(!this.isInitialised()) {
             getLogger().info("LadonEdgeProxyBase::initialiseProxy(): Entry, Initialising Services");
-            getProcessingPlant().initialisePlant();
             getVirtualDBAccessor().initialiseServices();
             this.setInitialised(true);
             getLogger().debug("LadonEdgeProxyBase::initialiseProxy(): Exit");
@@ -57,6 +76,7 @@ public abstract class LadonEdgeProxyBase {
     }
 
     abstract protected Logger getLogger();
+    abstract public Class<? extends IBaseResource> getResourceType();
     abstract protected AccessorBase specifyVirtualDBAccessor();
     abstract protected VirtualDBMethodOutcome getResource(IdType id);
     abstract protected VirtualDBMethodOutcome createResource(Resource resource);
@@ -67,6 +87,32 @@ public abstract class LadonEdgeProxyBase {
         return(specifyVirtualDBAccessor());
     }
 
+    /**
+     * Make a (read/search) call on the VirtualDB accessor within the (per resource type) bulkhead and circuit
+     * breaker, see LadonEdgeAccessorGuards, and the deadline of the current request, see LadonEdgeDeadlineService.
+     * A call that is refused fails fast with a 503 (Service Unavailable), one that is still outstanding when the
+     * deadline passes is cancelled and fails with a 504 (Gateway Timeout).
+     */
+    protected <T> T callVirtualDBAccessor(Supplier<T> accessorCall){
+        return(accessorGuards.getGuard(getResourceTypeName()).execute(() -> deadlineService.callWithinDeadline(accessorCall, describeAccessorCall())));
+    }
+
+    /**
+     * As callVirtualDBAccessor(), but for a (create/update) call - which is not made if the deadline of the current
+     * request has already passed, but is otherwise never abandoned once started.
+     */
+    protected <T> T applyViaVirtualDBAccessor(Supplier<T> accessorCall){
+        return(accessorGuards.getGuard(getResourceTypeName()).execute(() -> deadlineService.callBeforeDeadline(accessorCall, describeAccessorCall())));
+    }
+
+    private String describeAccessorCall(){
+        return("the " + getResourceTypeName() + " VirtualDB accessor call");
+    }
+
+    public String getResourceTypeName(){
+        return(getResourceType().getSimpleName());
+    }
+
     protected Bundle searchProcessHasFailed(String searchMethod){
         getLogger().warn(searchMethod + ": A resource search has failed (not just not finding any matching resources, but the search process itself)");
         Bundle outputBundle = new Bundle();
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The set of resource proxies served by the EdgeAnswerServlet, keyed by the (simple) name of the resource type
+ * they serve. It is populated by the servlet as it registers its resource providers.
+ *
+ * It also allows the system level operations (e.g. batch/transaction) to invoke the standard read, create and
+ * update paths of the appropriate proxy, which are otherwise only reachable via each proxy's HAPI methods.
+ */
+@ApplicationScoped
+public class LadonEdgeProxyRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeProxyRegistry.class);
+
+    private ConcurrentHashMap<String, LadonEdgeGetResourceBase> proxies;
+
+    public LadonEdgeProxyRegistry(){
+        this.proxies = new ConcurrentHashMap<>();
+    }
+
+    public void register(LadonEdgeGetResourceBase proxy){
+        LOG.debug(".register(): Registering proxy for resource type --> {}", proxy.getResourceTypeName());
+        proxies.put(proxy.getResourceTypeName(), proxy);
+    }
+
+    public LadonEdgeGetResourceBase getProxy(String resourceType){
+        if(resourceType == null){
+            return(null);
+        }
+        return(proxies.get(resourceType));
+    }
+
+    public Collection<LadonEdgeGetResourceBase> getProxies(){
+        return(new ArrayList<>(proxies.values()));
+    }
+
+    public Resource readResource(IdType id){
+        LadonEdgeGetResourceBase proxy = resolveProxy(id.getResourceType());
+        return(proxy.readResource(id));
+    }
+
+    /**
+     * Retrieve the resource directly from the VirtualDB accessor, neither consulting nor populating the edge cache
+     * (for bulk/background access that would otherwise evict the entries serving interactive requests).
+     */
+    public Resource readResourceFromSource(IdType id){
+        LadonEdgeGetResourceBase proxy = resolveProxy(id.getResourceType());
+        VirtualDBMethodOutcome outcome = proxy.getResource(id);
+        if(outcome == null || outcome.getResource() == null){
+            return(null);
+        }
+        return((Resource) outcome.getResource());
+    }
+
+    public MethodOutcome createResource(Resource resource){
+        LadonEdgeGetResourceBase proxy = resolveProxy(resource.fhirType());
+        return(proxy.createResource(resource));
+    }
+
+    public MethodOutcome updateResource(Resource resource){
+        LadonEdgeGetResourceBase proxy = resolveProxy(resource.fhirType());
+        return(proxy.updateResource(resource));
+    }
+
+    /**
+     * Create the Resource unless one matching the condition (an If-None-Exist "identifier=[system]|[value]")
+     * already exists, as per LadonEdgeGetResourceBase.conditionalCreateResource().
+     */
+    public MethodOutcome createResource(Resource resource, String conditionalUrl){
+        LadonEdgeGetResourceBase proxy = resolveProxy(resource.fhirType());
+        return(proxy.conditionalCreateResource(resource, conditionalUrl));
+    }
+
+    public MethodOutcome updateResource(Resource resource, String conditionalUrl){
+        LadonEdgeGetResourceBase proxy = resolveProxy(resource.fhirType());
+        return(proxy.conditionalUpdateResource(resource, conditionalUrl));
+    }
+
+    /**
+     * Update the Resource provided it is (still) at the expected version (an If-Match), as per
+     * LadonEdgeGetResourceBase.updateResourceIfMatch() - otherwise the update fails with a 412.
+     */
+    public MethodOutcome updateResourceIfMatch(Resource resource, String expectedVersionId){
+        LadonEdgeGetResourceBase proxy = resolveProxy(resource.fhirType());
+        return(proxy.updateResourceIfMatch(resource, expectedVersionId));
+    }
+
+    private LadonEdgeGetResourceBase resolveProxy(String resourceType){
+        LadonEdgeGetResourceBase proxy = getProxy(resourceType);
+        if(proxy == null){
+            throw new InvalidRequestException("Resource type " + resourceType + " is not supported by this server");
+        }
+        return(proxy);
+    }
+}
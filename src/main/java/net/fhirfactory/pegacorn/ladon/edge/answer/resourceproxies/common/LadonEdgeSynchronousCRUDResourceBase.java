@@ -22,22 +22,87 @@
 package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
 
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 
+import javax.inject.Inject;
+
 abstract public class LadonEdgeSynchronousCRUDResourceBase extends LadonEdgeGetResourceBase{
 
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    private volatile UpdateCoalescer<Resource, VirtualDBMethodOutcome> updateCoalescer;
+
     @Override
     protected VirtualDBMethodOutcome createResource(Resource resource) {
-        return null;
+        getLogger().debug(".createResource(): Entry, resource --> {}", resource);
+        VirtualDBMethodOutcome outcome = applyViaVirtualDBAccessor(() -> getVirtualDBAccessor().createResource(resource));
+        resourceHasChanged(resource, outcome);
+        getLogger().debug(".createResource(): Exit, outcome --> {}", outcome);
+        return(outcome);
     }
 
+    /**
+     * Update the Resource. If an update coalescing window is configured for the resource type (via
+     * "ladon.edge.[resource-type].update-coalescing.window-ms") then a burst of updates to the same Resource (each
+     * arriving within the window of the previous one) is collapsed, so that only the last is applied - see
+     * UpdateCoalescer. A caller whose update was superseded receives the id (and version) and content of the update
+     * that was applied in its place, with an informational OperationOutcome saying so, rather than its own content.
+     */
     @Override
     protected VirtualDBMethodOutcome updateResource(Resource resource) {
-        return null;
+        getLogger().debug(".updateResource(): Entry, resource --> {}", resource);
+        String idPart = resource.hasIdElement() ? resource.getIdElement().getIdPart() : null;
+        VirtualDBMethodOutcome outcome = getUpdateCoalescer().submit(idPart, resource, this::applyUpdate, this::buildSupersededOutcome);
+        getLogger().debug(".updateResource(): Exit, outcome --> {}", outcome);
+        return(outcome);
+    }
+
+    @Override
+    protected VirtualDBMethodOutcome updateResourceWithoutCoalescing(Resource resource) {
+        getLogger().debug(".updateResourceWithoutCoalescing(): Entry, resource --> {}", resource);
+        VirtualDBMethodOutcome outcome = applyUpdate(resource);
+        getLogger().debug(".updateResourceWithoutCoalescing(): Exit, outcome --> {}", outcome);
+        return(outcome);
+    }
+
+    private VirtualDBMethodOutcome applyUpdate(Resource resource){
+        VirtualDBMethodOutcome outcome = applyViaVirtualDBAccessor(() -> getVirtualDBAccessor().updateResource(resource));
+        resourceHasChanged(resource, outcome);
+        return(outcome);
+    }
+
+    private VirtualDBMethodOutcome buildSupersededOutcome(Resource appliedResource, VirtualDBMethodOutcome appliedOutcome){
+        VirtualDBMethodOutcome supersededOutcome = new VirtualDBMethodOutcome();
+        supersededOutcome.setCreated(false);
+        supersededOutcome.setId(appliedOutcome == null ? null : appliedOutcome.getId());
+        supersededOutcome.setResource(appliedResource);
+        OperationOutcome supersededNotice = new OperationOutcome();
+        supersededNotice.addIssue()
+                .setSeverity(OperationOutcome.IssueSeverity.INFORMATION)
+                .setCode(OperationOutcome.IssueType.INFORMATIONAL)
+                .setDiagnostics("The update was superseded by a later update of the Resource, the Resource returned is as written by that update");
+        supersededOutcome.setOperationOutcome(supersededNotice);
+        return(supersededOutcome);
+    }
+
+    public UpdateCoalescer<Resource, VirtualDBMethodOutcome> getUpdateCoalescer(){
+        if(updateCoalescer == null){
+            synchronized(this){
+                if(updateCoalescer == null){
+                    long coalescingWindow = answerConfiguration.getLongProperty(getResourceTypeName(), "update-coalescing.window-ms", 0L);
+                    getLogger().info(".getUpdateCoalescer(): resourceType --> {}, coalescingWindow --> {}", getResourceTypeName(), coalescingWindow);
+                    updateCoalescer = new UpdateCoalescer<>(coalescingWindow);
+                }
+            }
+        }
+        return(updateCoalescer);
     }
 
     @Override
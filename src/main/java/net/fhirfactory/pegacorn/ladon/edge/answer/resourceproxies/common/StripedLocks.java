@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks, one of which is chosen by the hash of a key. Actions on the same key are serialised
+ * (they always take the same lock) while actions on different keys are, mostly, not (they only contend when their
+ * keys hash to the same stripe), without a lock being created (or retained) per key.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] stripes;
+    private final int stripeMask;
+
+    public StripedLocks(int minimumStripeCount){
+        int stripeCount = Integer.highestOneBit(Math.max(1, minimumStripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[stripeCount];
+        for(int stripeIndex = 0; stripeIndex < stripeCount; stripeIndex++){
+            stripes[stripeIndex] = new ReentrantLock();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public ReentrantLock getLock(String key){
+        int keyHash = key.hashCode();
+        keyHash ^= (keyHash >>> 16);
+        return(stripes[keyHash & stripeMask]);
+    }
+
+    public int getStripeCount(){
+        return(stripes.length);
+    }
+}
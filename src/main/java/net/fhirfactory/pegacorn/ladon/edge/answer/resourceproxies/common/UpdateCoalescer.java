@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Coalesces bursts of updates to the same Resource. An update for a key with no recent update is applied straight
+ * away. An update arriving whilst the previous update for the key is being applied, or within coalescingWindow
+ * milliseconds of it having been applied, instead becomes the key's pending update: it is applied once that window
+ * has closed, and any further update for the key arriving before then replaces it. So only the last update of a
+ * burst is applied, and only the updates within a burst wait.
+ *
+ * The caller whose update was applied receives its outcome. The callers whose updates were superseded receive the
+ * outcome built (by the supersededOutcomeBuilder) from the update that was applied in their place and its outcome -
+ * i.e. the content and version that were actually written, not their own content.
+ *
+ * Updates for the same key are applied in order. A coalescingWindow of zero (or less) applies every update directly.
+ *
+ * @param <U> The type of the update
+ * @param <V> The type of the update outcome
+ */
+public class UpdateCoalescer<U, V> {
+    private static final int APPLIED_UPDATE_SWEEP_THRESHOLD = 1000;
+
+    private ConcurrentHashMap<String, PendingUpdate<U, V>> pendingUpdates;
+    private long coalescingWindow;
+    private AtomicLong submittedUpdateCount;
+    private AtomicLong appliedUpdateCount;
+
+    public UpdateCoalescer(long coalescingWindow){
+        this.pendingUpdates = new ConcurrentHashMap<>();
+        this.coalescingWindow = coalescingWindow;
+        this.submittedUpdateCount = new AtomicLong(0);
+        this.appliedUpdateCount = new AtomicLong(0);
+    }
+
+    /**
+     * Submit an update (which may be superseded by a later update for the same key).
+     *
+     * @param key The key identifying updates to the same Resource (e.g. its logical id)
+     * @param update The update
+     * @param applier Applies an update
+     * @param supersededOutcomeBuilder Builds the outcome for a superseded update, from the applied update and its outcome
+     * @return The outcome of the update (or, if it was superseded, of the update applied in its place)
+     */
+    public V submit(String key, U update, Function<U, V> applier, BiFunction<U, V, V> supersededOutcomeBuilder){
+        submittedUpdateCount.incrementAndGet();
+        if(coalescingWindow <= 0 || key == null){
+            appliedUpdateCount.incrementAndGet();
+            return(applier.apply(update));
+        }
+        PendingUpdate<U, V> ourUpdate;
+        while(true){
+            PendingUpdate<U, V> previousUpdate = pendingUpdates.get(key);
+            if(previousUpdate == null || previousUpdate.isWindowClosed(coalescingWindow)){
+                ourUpdate = new PendingUpdate<>(update, null);
+                boolean isNext = previousUpdate == null ? pendingUpdates.putIfAbsent(key, ourUpdate) == null : pendingUpdates.replace(key, previousUpdate, ourUpdate);
+                if(isNext){
+                    break;
+                }
+            } else if(previousUpdate.supersede(update)){
+                V appliedOutcome = awaitOutcome(previousUpdate.getOutcome());
+                return(outcomeFor(update, previousUpdate.getAppliedUpdate(), appliedOutcome, supersededOutcomeBuilder));
+            } else {
+                // The previous update is being (or has just been) applied, ours follows it once the window closes
+                ourUpdate = new PendingUpdate<>(update, previousUpdate);
+                if(pendingUpdates.replace(key, previousUpdate, ourUpdate)){
+                    break;
+                }
+            }
+        }
+        try {
+            ourUpdate.awaitWindow(coalescingWindow);
+        } catch(InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+        }
+        U lastUpdate = ourUpdate.close();
+        try {
+            appliedUpdateCount.incrementAndGet();
+            V outcome = applier.apply(lastUpdate);
+            ourUpdate.applied(outcome);
+            return(outcomeFor(update, lastUpdate, outcome, supersededOutcomeBuilder));
+        } catch(RuntimeException updateException){
+            pendingUpdates.remove(key, ourUpdate);
+            ourUpdate.getOutcome().completeExceptionally(updateException);
+            throw updateException;
+        } finally {
+            if(pendingUpdates.size() > APPLIED_UPDATE_SWEEP_THRESHOLD){
+                pendingUpdates.values().removeIf(currentUpdate -> currentUpdate.isWindowClosed(coalescingWindow));
+            }
+        }
+    }
+
+    private V outcomeFor(U update, U appliedUpdate, V appliedOutcome, BiFunction<U, V, V> supersededOutcomeBuilder){
+        if(appliedUpdate == update){
+            return(appliedOutcome);
+        }
+        return(supersededOutcomeBuilder.apply(appliedUpdate, appliedOutcome));
+    }
+
+    private V awaitOutcome(CompletableFuture<V> outcome){
+        try {
+            return(outcome.join());
+        } catch(CompletionException completionException){
+            if(completionException.getCause() instanceof RuntimeException){
+                throw (RuntimeException)completionException.getCause();
+            }
+            throw completionException;
+        }
+    }
+
+    public long getCoalescingWindow() {
+        return coalescingWindow;
+    }
+
+    public long getSubmittedUpdateCount() {
+        return submittedUpdateCount.get();
+    }
+
+    public long getAppliedUpdateCount() {
+        return appliedUpdateCount.get();
+    }
+
+    /**
+     * @return the fraction of the submitted updates that were superseded (rather than applied)
+     */
+    public double getCollapseRatio(){
+        long submitted = submittedUpdateCount.get();
+        if(submitted == 0){
+            return(0.0);
+        }
+        return(1.0 - ((double) appliedUpdateCount.get() / (double) submitted));
+    }
+
+    private static class PendingUpdate<U, V> {
+        private U update;
+        private boolean closed;
+        private PendingUpdate<U, V> predecessor;
+        private CompletableFuture<V> outcome;
+        private volatile long appliedAt;
+
+        public PendingUpdate(U update, PendingUpdate<U, V> predecessor){
+            this.update = update;
+            this.closed = false;
+            this.predecessor = predecessor;
+            this.outcome = new CompletableFuture<>();
+            this.appliedAt = 0;
+        }
+
+        public synchronized boolean supersede(U laterUpdate){
+            if(closed){
+                return(false);
+            }
+            this.update = laterUpdate;
+            return(true);
+        }
+
+        public synchronized U close(){
+            this.closed = true;
+            return(update);
+        }
+
+        public synchronized U getAppliedUpdate(){
+            return(update);
+        }
+
+        public void applied(V appliedOutcome){
+            this.appliedAt = System.currentTimeMillis();
+            outcome.complete(appliedOutcome);
+        }
+
+        /**
+         * @return true once the update has been applied (or has failed) and the window following it has passed
+         */
+        public boolean isWindowClosed(long coalescingWindow){
+            return(outcome.isDone() && System.currentTimeMillis() - appliedAt >= coalescingWindow);
+        }
+
+        /**
+         * Wait for the predecessor to finish and the window following its application to pass.
+         */
+        public void awaitWindow(long coalescingWindow) throws InterruptedException {
+            if(predecessor == null){
+                return;
+            }
+            // The predecessor's outcome (or failure) is its callers' concern, it only has to have finished
+            predecessor.getOutcome().handle((result, failure) -> result).join();
+            long remainingWindow = predecessor.appliedAt + coalescingWindow - System.currentTimeMillis();
+            if(remainingWindow > 0){
+                Thread.sleep(remainingWindow);
+            }
+            this.predecessor = null;
+        }
+
+        public CompletableFuture<V> getOutcome() {
+            return outcome;
+        }
+    }
+}
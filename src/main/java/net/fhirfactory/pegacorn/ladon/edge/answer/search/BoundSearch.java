@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.r4.model.Property;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A SearchPlan bound to the values of a specific request. Two BoundSearches are equal when they are for the same
+ * search with the same (canonicalised) values, which allows them to be used as result cache keys.
+ */
+public class BoundSearch {
+    private SearchPlan plan;
+    private Serializable[] values;
+    private String searchKey;
+
+    BoundSearch(SearchPlan plan, Serializable[] values){
+        this.plan = plan;
+        this.values = values;
+        this.searchKey = buildSearchKey();
+    }
+
+    public SearchPlan getPlan() {
+        return plan;
+    }
+
+    public Serializable getValue(String parameterName){
+        List<SearchPlanParameter> parameters = plan.getParameters();
+        for(int counter = 0; counter < parameters.size(); counter++){
+            if(parameters.get(counter).getName().equals(parameterName)){
+                return(values[counter]);
+            }
+        }
+        return(null);
+    }
+
+    /**
+     * @return a copy of this BoundSearch with the value of one parameter replaced
+     */
+    public BoundSearch withValue(String parameterName, Serializable value){
+        Serializable[] updatedValues = values.clone();
+        List<SearchPlanParameter> parameters = plan.getParameters();
+        for(int counter = 0; counter < parameters.size(); counter++){
+            if(parameters.get(counter).getName().equals(parameterName)){
+                updatedValues[counter] = value;
+            }
+        }
+        return(plan.bind(updatedValues));
+    }
+
+    /**
+     * @return true if a value has a modifier or chain (e.g. "type:not" or "subject.name"), i.e. whether a Resource
+     * matches the search can not be judged by comparing its own values with the search's
+     */
+    public boolean hasModifiers(){
+        for(Serializable currentValue: values){
+            if(currentValue instanceof TokenParam && ((TokenParam) currentValue).getModifier() != null){
+                return(true);
+            }
+            if(currentValue instanceof ReferenceParam && ((ReferenceParam) currentValue).getChain() != null){
+                return(true);
+            }
+        }
+        return(false);
+    }
+
+    /**
+     * @return the argument list in the form expected by AccessorBase.searchUsingCriteria()
+     */
+    public HashMap<Property, Serializable> getArgumentList(){
+        List<SearchPlanParameter> parameters = plan.getParameters();
+        HashMap<Property, Serializable> argumentList = new HashMap<>(parameters.size() * 2);
+        for(int counter = 0; counter < parameters.size(); counter++){
+            argumentList.put(parameters.get(counter).getProperty(), values[counter]);
+        }
+        return(argumentList);
+    }
+
+    /**
+     * @return a canonical form of the search, e.g. "PROCEDURE_PATIENT_AND_DATE?subject=|123&performed=ge2020-01-01..lt2020-02-01"
+     */
+    public String getSearchKey() {
+        return searchKey;
+    }
+
+    private String buildSearchKey(){
+        StringBuilder keyBuilder = new StringBuilder();
+        keyBuilder.append(plan.getSearchName()).append('?');
+        List<SearchPlanParameter> parameters = plan.getParameters();
+        for(int counter = 0; counter < parameters.size(); counter++){
+            if(counter > 0){
+                keyBuilder.append('&');
+            }
+            keyBuilder.append(parameters.get(counter).getName()).append('=');
+            appendCanonicalValue(keyBuilder, values[counter]);
+        }
+        return(keyBuilder.toString());
+    }
+
+    private static void appendCanonicalValue(StringBuilder keyBuilder, Serializable value){
+        if(value == null){
+            return;
+        }
+        if(value instanceof TokenParam){
+            TokenParam tokenValue = (TokenParam) value;
+            if(tokenValue.getModifier() != null){
+                keyBuilder.append(':').append(tokenValue.getModifier().getValue()).append(':');
+            }
+            keyBuilder.append(tokenValue.getSystem() == null ? "" : tokenValue.getSystem()).append('|').append(tokenValue.getValue());
+        } else if(value instanceof DateRangeParam){
+            DateRangeParam rangeValue = (DateRangeParam) value;
+            appendDateBound(keyBuilder, rangeValue.getLowerBound());
+            keyBuilder.append("..");
+            appendDateBound(keyBuilder, rangeValue.getUpperBound());
+        } else if(value instanceof ReferenceParam){
+            keyBuilder.append(((ReferenceParam) value).getValue());
+        } else {
+            keyBuilder.append(value);
+        }
+    }
+
+    private static void appendDateBound(StringBuilder keyBuilder, DateParam dateBound){
+        if(dateBound == null || dateBound.isEmpty()){
+            return;
+        }
+        if(dateBound.getPrefix() != null){
+            keyBuilder.append(dateBound.getPrefix().getValue());
+        }
+        keyBuilder.append(dateBound.getValueAsString());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return(true);
+        }
+        if(!(other instanceof BoundSearch)){
+            return(false);
+        }
+        return(searchKey.equals(((BoundSearch) other).searchKey));
+    }
+
+    @Override
+    public int hashCode() {
+        return(searchKey.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return(searchKey);
+    }
+}
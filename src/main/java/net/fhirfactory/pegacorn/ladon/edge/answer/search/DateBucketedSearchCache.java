@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
+import net.fhirfactory.pegacorn.ladon.edge.answer.paging.CompactResourceEntry;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A result cache for a date range search (a SearchPlan with a DateRangeParam parameter).
+ *
+ * The time line is divided into fixed width buckets (bucketWidth milliseconds) and, for each "partition" (the search
+ * with its other parameter values, e.g. the DocumentReference.type), the matching Resources are held per bucket.
+ * A search is answered from the buckets its date range covers: the buckets already held are reused, and each
+ * contiguous run of missing buckets is retrieved with a single accessor search. The Resources are then filtered to
+ * the exact range requested.
+ *
+ * A bucket is trusted for timeToLive milliseconds. When a Resource is created/updated via the edge, only the
+ * buckets that held it, or that its (new) date falls into, are discarded. The Resources are held in their compact
+ * (encoded) form and the held bytes are bounded (least recently used buckets are evicted first).
+ */
+public class DateBucketedSearchCache {
+    private SearchPlan plan;
+    private String dateParameterName;
+    private ResourceIntervalExtractor intervalExtractor;
+    private FhirContext fhirContext;
+    private long bucketWidth;
+    private long timeToLive;
+    private long maximumHeldBytes;
+    private int maximumBucketsPerSearch;
+
+    private LinkedHashMap<String, SearchBucket> buckets;
+    private HashMap<String, Set<String>> bucketsByResourceId;
+    private long heldBytes;
+    private long invalidationGeneration;
+    private AtomicLong bucketHitCount;
+    private AtomicLong bucketMissCount;
+    private AtomicLong accessorSearchCount;
+    private AtomicLong invalidatedBucketCount;
+
+    public DateBucketedSearchCache(SearchPlan plan, String dateParameterName, ResourceIntervalExtractor intervalExtractor, FhirContext fhirContext,
+                                   long bucketWidth, long timeToLive, long maximumHeldBytes, int maximumBucketsPerSearch){
+        this.plan = plan;
+        this.dateParameterName = dateParameterName;
+        this.intervalExtractor = intervalExtractor;
+        this.fhirContext = fhirContext;
+        this.bucketWidth = bucketWidth;
+        this.timeToLive = timeToLive;
+        this.maximumHeldBytes = maximumHeldBytes;
+        this.maximumBucketsPerSearch = maximumBucketsPerSearch;
+        this.buckets = new LinkedHashMap<>(16, 0.75f, true);
+        this.bucketsByResourceId = new HashMap<>();
+        this.heldBytes = 0;
+        this.bucketHitCount = new AtomicLong(0);
+        this.bucketMissCount = new AtomicLong(0);
+        this.accessorSearchCount = new AtomicLong(0);
+        this.invalidatedBucketCount = new AtomicLong(0);
+    }
+
+    /**
+     * @return true if the (closed, and not overly wide) date range of the search can be answered via the buckets
+     */
+    public boolean isCacheable(BoundSearch boundSearch){
+        if(maximumHeldBytes <= 0 || bucketWidth <= 0){
+            return(false);
+        }
+        DateRangeParam dateRange = (DateRangeParam) boundSearch.getValue(dateParameterName);
+        if(dateRange == null || dateRange.getLowerBoundAsInstant() == null || dateRange.getUpperBoundAsInstant() == null){
+            return(false);
+        }
+        long firstBucket = Math.floorDiv(dateRange.getLowerBoundAsInstant().getTime(), bucketWidth);
+        long lastBucket = Math.floorDiv(dateRange.getUpperBoundAsInstant().getTime(), bucketWidth);
+        return(lastBucket >= firstBucket && lastBucket - firstBucket < maximumBucketsPerSearch);
+    }
+
+    /**
+     * Answer a (cacheable) search from the buckets, retrieving the missing buckets via the accessorSearch.
+     *
+     * @param boundSearch The search
+     * @param accessorSearch Performs a search via the VirtualDB accessor, returning null if the search failed
+     * @return the matching Resources, or null if an accessor search failed
+     */
+    public List<Resource> search(BoundSearch boundSearch, Function<BoundSearch, Bundle> accessorSearch){
+        DateRangeParam dateRange = (DateRangeParam) boundSearch.getValue(dateParameterName);
+        long queryStart = dateRange.getLowerBoundAsInstant().getTime();
+        long queryEnd = dateRange.getUpperBoundAsInstant().getTime();
+        String partitionKey = boundSearch.withValue(dateParameterName, null).getSearchKey();
+        long firstBucket = Math.floorDiv(queryStart, bucketWidth);
+        int bucketCount = (int)(Math.floorDiv(queryEnd, bucketWidth) - firstBucket + 1);
+        SearchBucket[] queryBuckets = new SearchBucket[bucketCount];
+        long searchGeneration;
+        synchronized (this) {
+            searchGeneration = invalidationGeneration;
+            long now = System.currentTimeMillis();
+            for(int counter = 0; counter < bucketCount; counter++){
+                String bucketKey = buildBucketKey(partitionKey, firstBucket + counter);
+                SearchBucket bucket = buckets.get(bucketKey);
+                if(bucket != null && now - bucket.getCreatedAt() > timeToLive){
+                    removeBucket(bucketKey);
+                    bucket = null;
+                }
+                if(bucket == null){
+                    bucketMissCount.incrementAndGet();
+                } else {
+                    bucketHitCount.incrementAndGet();
+                    queryBuckets[counter] = bucket;
+                }
+            }
+        }
+        int counter = 0;
+        while(counter < bucketCount){
+            if(queryBuckets[counter] != null){
+                counter += 1;
+                continue;
+            }
+            int runEnd = counter;
+            while(runEnd + 1 < bucketCount && queryBuckets[runEnd + 1] == null){
+                runEnd += 1;
+            }
+            if(!retrieveBuckets(boundSearch, accessorSearch, partitionKey, firstBucket + counter, firstBucket + runEnd, queryBuckets, counter, searchGeneration)){
+                return(null);
+            }
+            counter = runEnd + 1;
+        }
+        LinkedHashMap<String, Resource> matchingResources = new LinkedHashMap<>();
+        for(SearchBucket currentBucket: queryBuckets){
+            for(SearchBucketEntry currentEntry: currentBucket.getEntries()){
+                String resourceId = currentEntry.getResource().getResourceId();
+                if(currentEntry.overlaps(queryStart, queryEnd) && !matchingResources.containsKey(resourceId)){
+                    matchingResources.put(resourceId, currentEntry.getResource().toResource(fhirContext));
+                }
+            }
+        }
+        return(new ArrayList<>(matchingResources.values()));
+    }
+
+    private boolean retrieveBuckets(BoundSearch boundSearch, Function<BoundSearch, Bundle> accessorSearch, String partitionKey,
+                                    long runFirstBucket, long runLastBucket, SearchBucket[] queryBuckets, int queryBucketOffset, long searchGeneration){
+        long runStart = runFirstBucket * bucketWidth;
+        long runEnd = (runLastBucket + 1) * bucketWidth;
+        DateRangeParam runRange = new DateRangeParam(
+                new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, new Date(runStart)),
+                new DateParam(ParamPrefixEnum.LESSTHAN, new Date(runEnd)));
+        accessorSearchCount.incrementAndGet();
+        Bundle searchOutcome = accessorSearch.apply(boundSearch.withValue(dateParameterName, runRange));
+        if(searchOutcome == null){
+            return(false);
+        }
+        int runLength = (int)(runLastBucket - runFirstBucket + 1);
+        SearchBucket[] runBuckets = new SearchBucket[runLength];
+        for(int counter = 0; counter < runLength; counter++){
+            runBuckets[counter] = new SearchBucket(partitionKey, runFirstBucket + counter);
+        }
+        for(Bundle.BundleEntryComponent currentEntry: searchOutcome.getEntry()){
+            if(!currentEntry.hasResource() || !currentEntry.getResource().fhirType().equals(plan.getTargetResourceType().name())){
+                continue;
+            }
+            Resource currentResource = currentEntry.getResource();
+            long[] interval = intervalExtractor.extractInterval(currentResource);
+            long entryStart = interval == null ? Long.MIN_VALUE : interval[0];
+            long entryEnd = interval == null ? Long.MAX_VALUE : interval[1];
+            long clippedStart = Math.max(entryStart, runStart);
+            long clippedEnd = Math.min(entryEnd, runEnd - 1);
+            if(clippedStart > clippedEnd){
+                continue;
+            }
+            SearchBucketEntry bucketEntry = new SearchBucketEntry(CompactResourceEntry.fromResource(fhirContext, currentResource), entryStart, entryEnd);
+            int firstIndex = (int)(Math.floorDiv(clippedStart, bucketWidth) - runFirstBucket);
+            int lastIndex = (int)(Math.floorDiv(clippedEnd, bucketWidth) - runFirstBucket);
+            for(int index = firstIndex; index <= lastIndex; index++){
+                runBuckets[index].addEntry(bucketEntry);
+            }
+        }
+        synchronized (this) {
+            // A Resource may have been created/updated whilst the accessor search was in progress, in which case the
+            // retrieved buckets are used for this search only
+            boolean isCurrent = searchGeneration == invalidationGeneration;
+            for(int counter = 0; counter < runLength; counter++){
+                if(isCurrent){
+                    storeBucket(runBuckets[counter]);
+                }
+                queryBuckets[queryBucketOffset + counter] = runBuckets[counter];
+            }
+            evictToBound();
+        }
+        return(true);
+    }
+
+    /**
+     * Discard the buckets affected by the creation/update of a Resource: those that held (a previous version of)
+     * it and those that its (new) date falls into, in every partition.
+     */
+    public synchronized void invalidate(Resource resource){
+        if(resource == null){
+            return;
+        }
+        invalidationGeneration += 1;
+        if(buckets.isEmpty()){
+            return;
+        }
+        Set<String> affectedBuckets = new HashSet<>();
+        String resourceId = resource.getIdElement().getIdPart();
+        if(resourceId != null && bucketsByResourceId.containsKey(resourceId)){
+            affectedBuckets.addAll(bucketsByResourceId.get(resourceId));
+        }
+        long[] interval = intervalExtractor.extractInterval(resource);
+        long firstBucket = interval == null ? Long.MIN_VALUE : Math.floorDiv(interval[0], bucketWidth);
+        long lastBucket = interval == null ? Long.MAX_VALUE : Math.floorDiv(interval[1], bucketWidth);
+        for(Map.Entry<String, SearchBucket> currentBucket: buckets.entrySet()){
+            long bucketIndex = currentBucket.getValue().getBucketIndex();
+            if(bucketIndex >= firstBucket && bucketIndex <= lastBucket){
+                affectedBuckets.add(currentBucket.getKey());
+            }
+        }
+        for(String currentKey: affectedBuckets){
+            if(removeBucket(currentKey)){
+                invalidatedBucketCount.incrementAndGet();
+            }
+        }
+    }
+
+    //
+    // Bucket Housekeeping (the caller holds the lock)
+    //
+
+    private void storeBucket(SearchBucket bucket){
+        String bucketKey = buildBucketKey(bucket.getPartitionKey(), bucket.getBucketIndex());
+        removeBucket(bucketKey);
+        buckets.put(bucketKey, bucket);
+        heldBytes += bucket.getHeldBytes();
+        for(SearchBucketEntry currentEntry: bucket.getEntries()){
+            bucketsByResourceId.computeIfAbsent(currentEntry.getResource().getResourceId(), key -> new HashSet<>()).add(bucketKey);
+        }
+    }
+
+    private boolean removeBucket(String bucketKey){
+        SearchBucket removedBucket = buckets.remove(bucketKey);
+        if(removedBucket == null){
+            return(false);
+        }
+        heldBytes -= removedBucket.getHeldBytes();
+        for(SearchBucketEntry currentEntry: removedBucket.getEntries()){
+            Set<String> resourceBuckets = bucketsByResourceId.get(currentEntry.getResource().getResourceId());
+            if(resourceBuckets != null){
+                resourceBuckets.remove(bucketKey);
+                if(resourceBuckets.isEmpty()){
+                    bucketsByResourceId.remove(currentEntry.getResource().getResourceId());
+                }
+            }
+        }
+        return(true);
+    }
+
+    private void evictToBound(){
+        // (the buckets are in access order, so a get() whilst iterating would be a structural modification)
+        Iterator<Map.Entry<String, SearchBucket>> bucketEntries = buckets.entrySet().iterator();
+        List<String> evictedKeys = new ArrayList<>();
+        long remainingBytes = heldBytes;
+        while(remainingBytes > maximumHeldBytes && bucketEntries.hasNext()){
+            Map.Entry<String, SearchBucket> currentEntry = bucketEntries.next();
+            remainingBytes -= currentEntry.getValue().getHeldBytes();
+            evictedKeys.add(currentEntry.getKey());
+        }
+        for(String currentKey: evictedKeys){
+            removeBucket(currentKey);
+        }
+    }
+
+    private String buildBucketKey(String partitionKey, long bucketIndex){
+        return(partitionKey + "#" + bucketIndex);
+    }
+
+    //
+    // Statistics
+    //
+
+    public SearchPlan getPlan() {
+        return plan;
+    }
+
+    public synchronized long getHeldBytes() {
+        return heldBytes;
+    }
+
+    public synchronized int getBucketCount(){
+        return(buckets.size());
+    }
+
+    public long getBucketHitCount() {
+        return bucketHitCount.get();
+    }
+
+    public long getBucketMissCount() {
+        return bucketMissCount.get();
+    }
+
+    public double getBucketHitRatio(){
+        long hits = bucketHitCount.get();
+        long lookups = hits + bucketMissCount.get();
+        if(lookups == 0){
+            return(0.0);
+        }
+        return((double) hits / (double) lookups);
+    }
+
+    public long getAccessorSearchCount() {
+        return accessorSearchCount.get();
+    }
+
+    public long getInvalidatedBucketCount() {
+        return invalidatedBucketCount.get();
+    }
+
+    //
+    // Bucket Content
+    //
+
+    private static class SearchBucket {
+        private String partitionKey;
+        private long bucketIndex;
+        private long createdAt;
+        private List<SearchBucketEntry> entries;
+        private long heldBytes;
+
+        public SearchBucket(String partitionKey, long bucketIndex){
+            this.partitionKey = partitionKey;
+            this.bucketIndex = bucketIndex;
+            this.createdAt = System.currentTimeMillis();
+            this.entries = new ArrayList<>();
+            this.heldBytes = 0;
+        }
+
+        public void addEntry(SearchBucketEntry entry){
+            entries.add(entry);
+            heldBytes += entry.getResource().getEncodedSize();
+        }
+
+        public String getPartitionKey() {
+            return partitionKey;
+        }
+
+        public long getBucketIndex() {
+            return bucketIndex;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public List<SearchBucketEntry> getEntries() {
+            return entries;
+        }
+
+        public long getHeldBytes() {
+            return heldBytes;
+        }
+    }
+
+    private static class SearchBucketEntry {
+        private CompactResourceEntry resource;
+        private long start;
+        private long end;
+
+        public SearchBucketEntry(CompactResourceEntry resource, long start, long end){
+            this.resource = resource;
+            this.start = start;
+            this.end = end;
+        }
+
+        public CompactResourceEntry getResource() {
+            return resource;
+        }
+
+        public boolean overlaps(long rangeStart, long rangeEnd){
+            return(start <= rangeEnd && end >= rangeStart);
+        }
+    }
+}
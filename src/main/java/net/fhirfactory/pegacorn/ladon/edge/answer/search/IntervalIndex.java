@@ -0,0 +1,668 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory interval index for a date range search (a SearchPlan with a DateRangeParam parameter).
+ *
+ * For each "partition" (the search with its other parameter values, e.g. the Procedure.subject) it holds the
+ * (start, end) interval and logical id of each Resource seen in the results of that search, in primitive arrays
+ * sorted by start, together with the date ranges the partition "covers" (i.e. the ranges for which a complete
+ * result was retrieved from the VirtualDB). A search whose range is covered is answered with a binary search
+ * (logarithmic in the size of the partition, plus the number of matches) rather than an accessor search.
+ *
+ * A covered range is trusted for coverageTimeToLive milliseconds. When a Resource is created/updated via the edge,
+ * it is removed from the index and its (new) interval is no longer covered in any partition it could belong to. To
+ * find those partitions, each partition learns the values (see ResourcePartitionExtractor) shared by all the
+ * Resources recorded in it; a partition that has not (e.g. it has only had empty results, or its search has a
+ * modifier) is "unresolved" and uncovered by every invalidation. The total number of intervals is bounded (least
+ * recently used partitions are evicted first).
+ */
+public class IntervalIndex {
+    private SearchPlan plan;
+    private ResourceIntervalExtractor intervalExtractor;
+    private ResourcePartitionExtractor partitionExtractor;
+    private int maximumEntries;
+    private long coverageTimeToLive;
+
+    private LinkedHashMap<String, IntervalPartition> partitions;
+    private HashMap<String, Set<String>> partitionsByResourceId;
+    private HashMap<String, Set<IntervalPartition>> partitionsByValue;
+    private Set<IntervalPartition> unresolvedPartitions;
+    private long entryCount;
+    private long invalidationGeneration;
+    private AtomicLong hitCount;
+    private AtomicLong missCount;
+    private AtomicLong invalidationCount;
+
+    public IntervalIndex(SearchPlan plan, ResourceIntervalExtractor intervalExtractor, ResourcePartitionExtractor partitionExtractor,
+                         int maximumEntries, long coverageTimeToLive){
+        this.plan = plan;
+        this.intervalExtractor = intervalExtractor;
+        this.partitionExtractor = partitionExtractor;
+        this.maximumEntries = maximumEntries;
+        this.coverageTimeToLive = coverageTimeToLive;
+        this.partitions = new LinkedHashMap<>(16, 0.75f, true);
+        this.partitionsByResourceId = new HashMap<>();
+        this.partitionsByValue = new HashMap<>();
+        this.unresolvedPartitions = new HashSet<>();
+        this.entryCount = 0;
+        this.invalidationGeneration = 0;
+        this.hitCount = new AtomicLong(0);
+        this.missCount = new AtomicLong(0);
+        this.invalidationCount = new AtomicLong(0);
+    }
+
+    public boolean isEnabled(){
+        return(maximumEntries > 0);
+    }
+
+    /**
+     * @return the current invalidation generation, to be passed to record() once the corresponding search completes
+     */
+    public synchronized long getInvalidationGeneration(){
+        return(invalidationGeneration);
+    }
+
+    /**
+     * Find the Resources (of the partition) whose interval overlaps the (inclusive) range.
+     *
+     * @return the logical ids of the matching Resources, or null if the range is not (freshly) covered
+     */
+    public synchronized List<String> query(String partitionKey, long rangeStart, long rangeEnd){
+        IntervalPartition partition = partitions.get(partitionKey);
+        if(partition == null || !partition.isCovered(rangeStart, rangeEnd, System.currentTimeMillis() - coverageTimeToLive)){
+            missCount.incrementAndGet();
+            return(null);
+        }
+        hitCount.incrementAndGet();
+        return(partition.findOverlapping(rangeStart, rangeEnd));
+    }
+
+    /**
+     * Record the complete result of a search of the (inclusive) range, which then becomes covered.
+     *
+     * @param isResolvable Whether the partition's search (e.g. it has no modifiers) can be resolved from the values
+     *                     of the Resources found by it
+     * @param searchGeneration The invalidation generation at the start of the search, if a Resource has since been
+     *                         created/updated the result may be out of date and is not recorded
+     */
+    public synchronized void record(String partitionKey, boolean isResolvable, long rangeStart, long rangeEnd, List<Resource> matchingResources, long searchGeneration){
+        if(!isEnabled() || searchGeneration != invalidationGeneration || matchingResources.size() > maximumEntries){
+            return;
+        }
+        List<String> resourceIds = new ArrayList<>(matchingResources.size());
+        Set<String> recordedIds = new HashSet<>();
+        Set<String> sharedValues = null;
+        long[] starts = new long[matchingResources.size()];
+        long[] ends = new long[matchingResources.size()];
+        for(Resource currentResource: matchingResources){
+            String resourceId = currentResource.getIdElement().getIdPart();
+            if(resourceId == null || !recordedIds.add(resourceId)){
+                continue;
+            }
+            long[] interval = intervalExtractor.extractInterval(currentResource);
+            starts[resourceIds.size()] = interval == null ? Long.MIN_VALUE : interval[0];
+            ends[resourceIds.size()] = interval == null ? Long.MAX_VALUE : interval[1];
+            resourceIds.add(resourceId);
+            if(isResolvable && partitionExtractor != null){
+                sharedValues = intersectValues(sharedValues, partitionExtractor.extractPartitionValues(currentResource));
+            }
+        }
+        IntervalPartition partition = partitions.get(partitionKey);
+        if(partition == null){
+            partition = new IntervalPartition();
+            partitions.put(partitionKey, partition);
+        } else {
+            unlinkPartition(partition);
+        }
+        partition.resolve(isResolvable, sharedValues);
+        linkPartition(partition);
+        long previousSize = partition.getSize();
+        List<String> removedIds = partition.replaceRange(rangeStart, rangeEnd, resourceIds, starts, ends);
+        for(String currentId: removedIds){
+            unlinkResource(currentId, partitionKey);
+        }
+        for(String currentId: resourceIds){
+            partitionsByResourceId.computeIfAbsent(currentId, key -> new HashSet<>()).add(partitionKey);
+        }
+        entryCount += partition.getSize() - previousSize;
+        partition.cover(rangeStart, rangeEnd, System.currentTimeMillis(), System.currentTimeMillis() - coverageTimeToLive);
+        evictToBound();
+    }
+
+    /**
+     * Discard what is known about a Resource that has been created/updated: it is removed from every partition, and
+     * its (new) interval is no longer covered in any partition it could belong to (every partition, if its partition
+     * values can not be determined).
+     */
+    public synchronized void invalidate(Resource resource){
+        if(resource == null){
+            return;
+        }
+        invalidationGeneration += 1;
+        if(partitions.isEmpty()){
+            return;
+        }
+        invalidationCount.incrementAndGet();
+        String resourceId = resource.getIdElement().getIdPart();
+        Set<String> heldPartitions = resourceId == null ? null : partitionsByResourceId.remove(resourceId);
+        if(heldPartitions != null){
+            for(String currentKey: heldPartitions){
+                IntervalPartition partition = partitions.get(currentKey);
+                if(partition != null && partition.remove(resourceId)){
+                    entryCount -= 1;
+                }
+            }
+        }
+        long[] interval = intervalExtractor.extractInterval(resource);
+        long uncoverStart = interval == null ? Long.MIN_VALUE : interval[0];
+        long uncoverEnd = interval == null ? Long.MAX_VALUE : interval[1];
+        Set<String> partitionValues = partitionExtractor == null ? null : partitionExtractor.extractPartitionValues(resource);
+        if(partitionValues == null){
+            // (values() is a view, so iterating it does not alter the access order)
+            for(IntervalPartition currentPartition: partitions.values()){
+                currentPartition.uncover(uncoverStart, uncoverEnd);
+            }
+            return;
+        }
+        for(IntervalPartition currentPartition: unresolvedPartitions){
+            currentPartition.uncover(uncoverStart, uncoverEnd);
+        }
+        for(String currentValue: partitionValues){
+            Set<IntervalPartition> valuePartitions = partitionsByValue.get(currentValue);
+            if(valuePartitions != null){
+                for(IntervalPartition currentPartition: valuePartitions){
+                    currentPartition.uncover(uncoverStart, uncoverEnd);
+                }
+            }
+        }
+    }
+
+    private static Set<String> intersectValues(Set<String> sharedValues, Set<String> resourceValues){
+        if(resourceValues == null){
+            return(sharedValues);
+        }
+        if(sharedValues == null){
+            return(new HashSet<>(resourceValues));
+        }
+        sharedValues.retainAll(resourceValues);
+        return(sharedValues);
+    }
+
+    private void linkPartition(IntervalPartition partition){
+        if(partition.getPartitionValues() == null){
+            unresolvedPartitions.add(partition);
+            return;
+        }
+        for(String currentValue: partition.getPartitionValues()){
+            partitionsByValue.computeIfAbsent(currentValue, key -> new HashSet<>()).add(partition);
+        }
+    }
+
+    private void unlinkPartition(IntervalPartition partition){
+        if(partition.getPartitionValues() == null){
+            unresolvedPartitions.remove(partition);
+            return;
+        }
+        for(String currentValue: partition.getPartitionValues()){
+            Set<IntervalPartition> valuePartitions = partitionsByValue.get(currentValue);
+            if(valuePartitions != null){
+                valuePartitions.remove(partition);
+                if(valuePartitions.isEmpty()){
+                    partitionsByValue.remove(currentValue);
+                }
+            }
+        }
+    }
+
+    private void unlinkResource(String resourceId, String partitionKey){
+        Set<String> resourcePartitions = partitionsByResourceId.get(resourceId);
+        if(resourcePartitions != null){
+            resourcePartitions.remove(partitionKey);
+            if(resourcePartitions.isEmpty()){
+                partitionsByResourceId.remove(resourceId);
+            }
+        }
+    }
+
+    private void evictToBound(){
+        Iterator<Map.Entry<String, IntervalPartition>> partitionEntries = partitions.entrySet().iterator();
+        while(entryCount > maximumEntries && partitionEntries.hasNext()){
+            Map.Entry<String, IntervalPartition> currentEntry = partitionEntries.next();
+            for(String currentId: currentEntry.getValue().getResourceIds()){
+                unlinkResource(currentId, currentEntry.getKey());
+            }
+            entryCount -= currentEntry.getValue().getSize();
+            unlinkPartition(currentEntry.getValue());
+            partitionEntries.remove();
+        }
+    }
+
+    //
+    // Statistics
+    //
+
+    public SearchPlan getPlan() {
+        return plan;
+    }
+
+    public int getMaximumEntries() {
+        return maximumEntries;
+    }
+
+    public synchronized long getSize(){
+        return(entryCount);
+    }
+
+    public synchronized int getPartitionCount(){
+        return(partitions.size());
+    }
+
+    public synchronized int getUnresolvedPartitionCount(){
+        return(unresolvedPartitions.size());
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * The intervals of a single partition. Bounded intervals are held in arrays sorted by start, augmented with an
+     * implicit binary tree (maximumEnds) holding the latest end within each (power of two sized) block of them: a
+     * query finds the intervals starting before the range's end with one binary search, then only descends into the
+     * blocks whose latest end is within the range - so a few long intervals do not make every query linear. Open
+     * ended intervals (e.g. a Period without an end) are rare and held separately, unsorted.
+     *
+     * The covered ranges are disjoint, inclusive and sorted by start.
+     *
+     * The partition values are those shared by every Resource recorded in the partition (which therefore include the
+     * value that identifies the partition), or null while unresolved.
+     */
+    static class IntervalPartition {
+        private long[] starts;
+        private long[] ends;
+        private String[] resourceIds;
+        private int size;
+        private long[] maximumEnds;
+        private int leafCount;
+        private ArrayList<OpenInterval> openIntervals;
+        private long[] coverageStarts;
+        private long[] coverageEnds;
+        private long[] coverageCreatedAt;
+        private int coverageCount;
+        private Set<String> partitionValues;
+        private boolean isUnresolvable;
+
+        IntervalPartition(){
+            this.starts = new long[8];
+            this.ends = new long[8];
+            this.resourceIds = new String[8];
+            this.size = 0;
+            this.maximumEnds = new long[]{Long.MIN_VALUE, Long.MIN_VALUE};
+            this.leafCount = 1;
+            this.openIntervals = new ArrayList<>();
+            this.coverageStarts = new long[0];
+            this.coverageEnds = new long[0];
+            this.coverageCreatedAt = new long[0];
+            this.coverageCount = 0;
+            this.partitionValues = null;
+            this.isUnresolvable = false;
+        }
+
+        Set<String> getPartitionValues(){
+            return(partitionValues);
+        }
+
+        /**
+         * Narrow the partition values to those also shared by the Resources of a new search result (null if none of
+         * them had known values). Values found to disagree leave the partition unresolved for good.
+         */
+        void resolve(boolean isResolvable, Set<String> resultValues){
+            if(isUnresolvable){
+                return;
+            }
+            if(!isResolvable){
+                isUnresolvable = true;
+                partitionValues = null;
+                return;
+            }
+            if(resultValues == null){
+                return;
+            }
+            Set<String> narrowedValues = new HashSet<>(resultValues);
+            if(partitionValues != null){
+                narrowedValues.retainAll(partitionValues);
+            }
+            if(narrowedValues.isEmpty()){
+                isUnresolvable = true;
+                partitionValues = null;
+                return;
+            }
+            partitionValues = narrowedValues;
+        }
+
+        int getSize(){
+            return(size + openIntervals.size());
+        }
+
+        List<String> getResourceIds(){
+            List<String> allIds = new ArrayList<>(getSize());
+            allIds.addAll(Arrays.asList(resourceIds).subList(0, size));
+            for(OpenInterval currentInterval: openIntervals){
+                allIds.add(currentInterval.resourceId);
+            }
+            return(allIds);
+        }
+
+        List<String> findOverlapping(long rangeStart, long rangeEnd){
+            List<String> matchingIds = new ArrayList<>();
+            int candidateCount = rangeEnd == Long.MAX_VALUE ? size : firstIndexAtOrAfter(rangeEnd + 1);
+            collectOverlapping(1, 0, leafCount, candidateCount, rangeStart, matchingIds);
+            for(OpenInterval currentInterval: openIntervals){
+                if(currentInterval.start <= rangeEnd && currentInterval.end >= rangeStart){
+                    matchingIds.add(currentInterval.resourceId);
+                }
+            }
+            return(matchingIds);
+        }
+
+        /**
+         * Replace the intervals overlapping the range with those of a complete search result for it.
+         *
+         * @return the ids of the Resources that were removed (some of which may be re-added)
+         */
+        List<String> replaceRange(long rangeStart, long rangeEnd, List<String> newIds, long[] newStarts, long[] newEnds){
+            Set<String> newIdSet = new HashSet<>(newIds);
+            List<String> removedIds = new ArrayList<>();
+            // Keep the (still sorted) bounded intervals that are outside the range and not in the new result
+            int keptCount = 0;
+            for(int index = 0; index < size; index++){
+                boolean overlaps = starts[index] <= rangeEnd && ends[index] >= rangeStart;
+                if(overlaps || newIdSet.contains(resourceIds[index])){
+                    removedIds.add(resourceIds[index]);
+                    continue;
+                }
+                starts[keptCount] = starts[index];
+                ends[keptCount] = ends[index];
+                resourceIds[keptCount] = resourceIds[index];
+                keptCount += 1;
+            }
+            Arrays.fill(resourceIds, keptCount, size, null);
+            size = keptCount;
+            Iterator<OpenInterval> openIterator = openIntervals.iterator();
+            while(openIterator.hasNext()){
+                OpenInterval currentInterval = openIterator.next();
+                if((currentInterval.start <= rangeEnd && currentInterval.end >= rangeStart) || newIdSet.contains(currentInterval.resourceId)){
+                    removedIds.add(currentInterval.resourceId);
+                    openIterator.remove();
+                }
+            }
+            // Merge the new bounded intervals (sorted by start) into the kept ones
+            List<Integer> boundedOrder = new ArrayList<>(newIds.size());
+            for(int counter = 0; counter < newIds.size(); counter++){
+                if(newStarts[counter] == Long.MIN_VALUE || newEnds[counter] == Long.MAX_VALUE){
+                    openIntervals.add(new OpenInterval(newIds.get(counter), newStarts[counter], newEnds[counter]));
+                } else {
+                    boundedOrder.add(counter);
+                }
+            }
+            boundedOrder.sort((first, second) -> Long.compare(newStarts[first], newStarts[second]));
+            int mergedSize = size + boundedOrder.size();
+            long[] mergedStarts = new long[Math.max(8, mergedSize)];
+            long[] mergedEnds = new long[mergedStarts.length];
+            String[] mergedIds = new String[mergedStarts.length];
+            int keptIndex = 0;
+            int newIndex = 0;
+            for(int mergedIndex = 0; mergedIndex < mergedSize; mergedIndex++){
+                boolean takeKept = newIndex >= boundedOrder.size()
+                        || (keptIndex < size && starts[keptIndex] <= newStarts[boundedOrder.get(newIndex)]);
+                if(takeKept){
+                    mergedStarts[mergedIndex] = starts[keptIndex];
+                    mergedEnds[mergedIndex] = ends[keptIndex];
+                    mergedIds[mergedIndex] = resourceIds[keptIndex];
+                    keptIndex += 1;
+                } else {
+                    int newEntry = boundedOrder.get(newIndex);
+                    mergedStarts[mergedIndex] = newStarts[newEntry];
+                    mergedEnds[mergedIndex] = newEnds[newEntry];
+                    mergedIds[mergedIndex] = newIds.get(newEntry);
+                    newIndex += 1;
+                }
+            }
+            starts = mergedStarts;
+            ends = mergedEnds;
+            resourceIds = mergedIds;
+            size = mergedSize;
+            rebuildMaximumEnds();
+            return(removedIds);
+        }
+
+        boolean remove(String resourceId){
+            for(int index = 0; index < size; index++){
+                if(resourceIds[index].equals(resourceId)){
+                    System.arraycopy(starts, index + 1, starts, index, size - index - 1);
+                    System.arraycopy(ends, index + 1, ends, index, size - index - 1);
+                    System.arraycopy(resourceIds, index + 1, resourceIds, index, size - index - 1);
+                    size -= 1;
+                    resourceIds[size] = null;
+                    rebuildMaximumEnds();
+                    return(true);
+                }
+            }
+            return(openIntervals.removeIf(currentInterval -> currentInterval.resourceId.equals(resourceId)));
+        }
+
+        //
+        // Coverage
+        //
+
+        boolean isCovered(long rangeStart, long rangeEnd, long freshAfter){
+            int low = 0;
+            int high = coverageCount - 1;
+            int candidate = -1;
+            while(low <= high){
+                int middle = (low + high) >>> 1;
+                if(coverageStarts[middle] <= rangeStart){
+                    candidate = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return(candidate >= 0 && coverageEnds[candidate] >= rangeEnd && coverageCreatedAt[candidate] >= freshAfter);
+        }
+
+        void cover(long rangeStart, long rangeEnd, long now, long freshAfter){
+            long mergedStart = rangeStart;
+            long mergedEnd = rangeEnd;
+            long mergedCreatedAt = now;
+            long[] keptStarts = new long[coverageCount + 1];
+            long[] keptEnds = new long[coverageCount + 1];
+            long[] keptCreatedAt = new long[coverageCount + 1];
+            int keptCount = 0;
+            int insertAt = -1;
+            for(int index = 0; index < coverageCount; index++){
+                if(coverageCreatedAt[index] < freshAfter){
+                    continue;
+                }
+                boolean touches = coverageStarts[index] <= saturatedIncrement(mergedEnd) && saturatedIncrement(coverageEnds[index]) >= mergedStart;
+                if(touches){
+                    mergedStart = Math.min(mergedStart, coverageStarts[index]);
+                    mergedEnd = Math.max(mergedEnd, coverageEnds[index]);
+                    mergedCreatedAt = Math.min(mergedCreatedAt, coverageCreatedAt[index]);
+                    continue;
+                }
+                if(insertAt < 0 && coverageStarts[index] > mergedEnd){
+                    insertAt = keptCount;
+                    keptCount += 1;
+                }
+                keptStarts[keptCount] = coverageStarts[index];
+                keptEnds[keptCount] = coverageEnds[index];
+                keptCreatedAt[keptCount] = coverageCreatedAt[index];
+                keptCount += 1;
+            }
+            if(insertAt < 0){
+                insertAt = keptCount;
+                keptCount += 1;
+            }
+            keptStarts[insertAt] = mergedStart;
+            keptEnds[insertAt] = mergedEnd;
+            keptCreatedAt[insertAt] = mergedCreatedAt;
+            coverageStarts = keptStarts;
+            coverageEnds = keptEnds;
+            coverageCreatedAt = keptCreatedAt;
+            coverageCount = keptCount;
+        }
+
+        void uncover(long rangeStart, long rangeEnd){
+            // The covered ranges are disjoint and sorted, so their ends are sorted too: find the first ending at or
+            // after rangeStart, there is nothing to do unless it also starts at or before rangeEnd
+            int low = 0;
+            int high = coverageCount;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(coverageEnds[middle] < rangeStart){
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if(low == coverageCount || coverageStarts[low] > rangeEnd){
+                return;
+            }
+            long[] remainingStarts = new long[coverageCount + 1];
+            long[] remainingEnds = new long[coverageCount + 1];
+            long[] remainingCreatedAt = new long[coverageCount + 1];
+            int remainingCount = 0;
+            for(int index = 0; index < coverageCount; index++){
+                if(coverageStarts[index] > rangeEnd || coverageEnds[index] < rangeStart){
+                    remainingStarts[remainingCount] = coverageStarts[index];
+                    remainingEnds[remainingCount] = coverageEnds[index];
+                    remainingCreatedAt[remainingCount] = coverageCreatedAt[index];
+                    remainingCount += 1;
+                    continue;
+                }
+                if(coverageStarts[index] < rangeStart){
+                    remainingStarts[remainingCount] = coverageStarts[index];
+                    remainingEnds[remainingCount] = rangeStart - 1;
+                    remainingCreatedAt[remainingCount] = coverageCreatedAt[index];
+                    remainingCount += 1;
+                }
+                if(coverageEnds[index] > rangeEnd){
+                    remainingStarts[remainingCount] = rangeEnd + 1;
+                    remainingEnds[remainingCount] = coverageEnds[index];
+                    remainingCreatedAt[remainingCount] = coverageCreatedAt[index];
+                    remainingCount += 1;
+                }
+            }
+            coverageStarts = remainingStarts;
+            coverageEnds = remainingEnds;
+            coverageCreatedAt = remainingCreatedAt;
+            coverageCount = remainingCount;
+        }
+
+        /**
+         * Collect (in start order) the intervals of the node's block, [nodeLow, nodeHigh), that are among the first
+         * candidateCount and end at or after rangeStart.
+         */
+        private void collectOverlapping(int node, int nodeLow, int nodeHigh, int candidateCount, long rangeStart, List<String> matchingIds){
+            if(nodeLow >= candidateCount || maximumEnds[node] < rangeStart){
+                return;
+            }
+            if(nodeHigh - nodeLow == 1){
+                matchingIds.add(resourceIds[nodeLow]);
+                return;
+            }
+            int middle = (nodeLow + nodeHigh) >>> 1;
+            collectOverlapping(2 * node, nodeLow, middle, candidateCount, rangeStart, matchingIds);
+            collectOverlapping(2 * node + 1, middle, nodeHigh, candidateCount, rangeStart, matchingIds);
+        }
+
+        private void rebuildMaximumEnds(){
+            int leaves = 1;
+            while(leaves < size){
+                leaves <<= 1;
+            }
+            if(maximumEnds.length < 2 * leaves){
+                maximumEnds = new long[2 * leaves];
+            }
+            leafCount = leaves;
+            System.arraycopy(ends, 0, maximumEnds, leaves, size);
+            Arrays.fill(maximumEnds, leaves + size, 2 * leaves, Long.MIN_VALUE);
+            for(int node = leaves - 1; node >= 1; node--){
+                maximumEnds[node] = Math.max(maximumEnds[2 * node], maximumEnds[2 * node + 1]);
+            }
+        }
+
+        private int firstIndexAtOrAfter(long start){
+            int low = 0;
+            int high = size;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(starts[middle] < start){
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return(low);
+        }
+
+        private static long saturatedIncrement(long value){
+            return(value == Long.MAX_VALUE ? value : value + 1);
+        }
+    }
+
+    private static class OpenInterval {
+        private String resourceId;
+        private long start;
+        private long end;
+
+        public OpenInterval(String resourceId, long start, long end){
+            this.resourceId = resourceId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The interval indexes of the Ladon Edge, one IntervalIndex per (date range) SearchPlan.
+ *
+ * The size of each IntervalIndex, and how long a covered date range is trusted, is configurable per resource type
+ * via the "ladon.edge.[resource-type].interval-index.maximum-entries" and
+ * "ladon.edge.[resource-type].interval-index.coverage-ttl-ms" properties (or the same without the resource type).
+ */
+@ApplicationScoped
+public class LadonEdgeIntervalIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeIntervalIndex.class);
+
+    private static final int DEFAULT_MAXIMUM_ENTRIES = 1000000;
+    private static final long DEFAULT_COVERAGE_TIME_TO_LIVE = 60000L;
+
+    private ConcurrentHashMap<SearchNameEnum, IntervalIndex> intervalIndexes;
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    public LadonEdgeIntervalIndex(){
+        this.intervalIndexes = new ConcurrentHashMap<>();
+    }
+
+    public IntervalIndex getIntervalIndex(SearchPlan plan, ResourceIntervalExtractor intervalExtractor, ResourcePartitionExtractor partitionExtractor){
+        IntervalIndex intervalIndex = intervalIndexes.computeIfAbsent(plan.getSearchName(), searchName -> newIntervalIndex(plan, intervalExtractor, partitionExtractor));
+        return(intervalIndex);
+    }
+
+    public Collection<IntervalIndex> getIntervalIndexes(){
+        return(new ArrayList<>(intervalIndexes.values()));
+    }
+
+    /**
+     * Discard what the interval indexes know about the created/updated Resource.
+     */
+    public void invalidate(Resource resource){
+        if(resource == null){
+            return;
+        }
+        for(IntervalIndex currentIndex: intervalIndexes.values()){
+            if(currentIndex.getPlan().getTargetResourceType().name().equals(resource.fhirType())){
+                currentIndex.invalidate(resource);
+            }
+        }
+    }
+
+    private IntervalIndex newIntervalIndex(SearchPlan plan, ResourceIntervalExtractor intervalExtractor, ResourcePartitionExtractor partitionExtractor){
+        String resourceType = plan.getTargetResourceType().name();
+        int maximumEntries = answerConfiguration.getIntegerProperty(resourceType, "interval-index.maximum-entries", DEFAULT_MAXIMUM_ENTRIES);
+        long coverageTimeToLive = answerConfiguration.getLongProperty(resourceType, "interval-index.coverage-ttl-ms", DEFAULT_COVERAGE_TIME_TO_LIVE);
+        LOG.info(".newIntervalIndex(): searchName --> {}, maximumEntries --> {}, coverageTimeToLive --> {}", plan.getSearchName(), maximumEntries, coverageTimeToLive);
+        return(new IntervalIndex(plan, intervalExtractor, partitionExtractor, maximumEntries, coverageTimeToLive));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The search result caches of the Ladon Edge, one DateBucketedSearchCache per (date range) SearchPlan.
+ *
+ * The bucket width, freshness and size of each cache is configurable per resource type via the
+ * "ladon.edge.[resource-type].search-cache.bucket-ms", "...search-cache.ttl-ms", "...search-cache.maximum-held-bytes"
+ * and "...search-cache.maximum-buckets-per-search" properties (or the same without the resource type).
+ */
+@ApplicationScoped
+public class LadonEdgeSearchResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeSearchResultCache.class);
+
+    private static final long DEFAULT_BUCKET_WIDTH = 3600000L;
+    private static final long DEFAULT_TIME_TO_LIVE = 60000L;
+    private static final long DEFAULT_MAXIMUM_HELD_BYTES = 32L * 1024L * 1024L;
+    private static final int DEFAULT_MAXIMUM_BUCKETS_PER_SEARCH = 24 * 31;
+
+    private ConcurrentHashMap<SearchNameEnum, DateBucketedSearchCache> searchCaches;
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    public LadonEdgeSearchResultCache(){
+        this.searchCaches = new ConcurrentHashMap<>();
+    }
+
+    public DateBucketedSearchCache getSearchCache(SearchPlan plan, String dateParameterName, ResourceIntervalExtractor intervalExtractor){
+        DateBucketedSearchCache searchCache = searchCaches.computeIfAbsent(plan.getSearchName(), searchName -> newSearchCache(plan, dateParameterName, intervalExtractor));
+        return(searchCache);
+    }
+
+    public Collection<DateBucketedSearchCache> getSearchCaches(){
+        return(new ArrayList<>(searchCaches.values()));
+    }
+
+    /**
+     * Discard the cached results affected by the creation/update of the Resource.
+     */
+    public void invalidate(Resource resource){
+        if(resource == null){
+            return;
+        }
+        for(DateBucketedSearchCache currentCache: searchCaches.values()){
+            if(currentCache.getPlan().getTargetResourceType().name().equals(resource.fhirType())){
+                currentCache.invalidate(resource);
+            }
+        }
+    }
+
+    private DateBucketedSearchCache newSearchCache(SearchPlan plan, String dateParameterName, ResourceIntervalExtractor intervalExtractor){
+        String resourceType = plan.getTargetResourceType().name();
+        long bucketWidth = answerConfiguration.getLongProperty(resourceType, "search-cache.bucket-ms", DEFAULT_BUCKET_WIDTH);
+        long timeToLive = answerConfiguration.getLongProperty(resourceType, "search-cache.ttl-ms", DEFAULT_TIME_TO_LIVE);
+        long maximumHeldBytes = answerConfiguration.getLongProperty(resourceType, "search-cache.maximum-held-bytes", DEFAULT_MAXIMUM_HELD_BYTES);
+        int maximumBucketsPerSearch = answerConfiguration.getIntegerProperty(resourceType, "search-cache.maximum-buckets-per-search", DEFAULT_MAXIMUM_BUCKETS_PER_SEARCH);
+        LOG.info(".newSearchCache(): searchName --> {}, bucketWidth --> {}, timeToLive --> {}, maximumHeldBytes --> {}", plan.getSearchName(), bucketWidth, timeToLive, maximumHeldBytes);
+        return(new DateBucketedSearchCache(plan, dateParameterName, intervalExtractor, fhirContextUtility.getFhirContext(),
+                bucketWidth, timeToLive, maximumHeldBytes, maximumBucketsPerSearch));
+    }
+}
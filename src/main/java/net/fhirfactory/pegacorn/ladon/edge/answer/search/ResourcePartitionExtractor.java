@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.Set;
+
+/**
+ * Extracts the values that identify the partitions of a date based search a Resource can be found in (e.g. the
+ * Procedure.subject reference, or the DocumentReference.type codes). Every Resource found in a partition has that
+ * partition's value among its own, which lets an IntervalIndex invalidate only the partitions a changed Resource
+ * could belong to.
+ */
+public interface ResourcePartitionExtractor {
+    /**
+     * @param resource The Resource
+     * @return the values (empty if the Resource can be in no partition), or null if they can not be determined
+     */
+    Set<String> extractPartitionValues(Resource resource);
+}
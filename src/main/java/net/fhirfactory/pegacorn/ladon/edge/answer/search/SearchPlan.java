@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.ResourceType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A precompiled (criteria based) VirtualDB search: the SearchNameEnum, the ResourceType it targets and its ordered
+ * parameters. A plan is built once (see SearchPlanRegistry) and bound to the request values via bind().
+ */
+public class SearchPlan {
+    private SearchNameEnum searchName;
+    private ResourceType targetResourceType;
+    private List<SearchPlanParameter> parameters;
+
+    public SearchPlan(SearchNameEnum searchName, ResourceType targetResourceType, List<SearchPlanParameter> parameters){
+        this.searchName = searchName;
+        this.targetResourceType = targetResourceType;
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+    }
+
+    /**
+     * Bind the request values to the plan's parameters.
+     *
+     * @param values The parameter values, in the order of the plan's parameters
+     * @return The BoundSearch, ready to be passed to the VirtualDB accessor
+     */
+    public BoundSearch bind(Serializable... values){
+        if(values.length != parameters.size()){
+            throw new IllegalArgumentException("Search " + searchName + " requires " + parameters.size() + " parameter values, " + values.length + " were provided");
+        }
+        for(int counter = 0; counter < values.length; counter++){
+            SearchPlanParameter currentParameter = parameters.get(counter);
+            if(values[counter] != null && !currentParameter.getValueType().isInstance(values[counter])){
+                throw new IllegalArgumentException("Search " + searchName + " parameter " + currentParameter.getName() + " requires a " + currentParameter.getValueType().getSimpleName());
+            }
+        }
+        return(new BoundSearch(this, values.clone()));
+    }
+
+    public SearchNameEnum getSearchName() {
+        return searchName;
+    }
+
+    public ResourceType getTargetResourceType() {
+        return targetResourceType;
+    }
+
+    public List<SearchPlanParameter> getParameters() {
+        return parameters;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.Property;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A single (criteria) parameter of a SearchPlan: the FHIR Property that the VirtualDB accessor uses to identify the
+ * criteria, built once, and the type of the (HAPI) parameter value that is bound to it.
+ */
+public class SearchPlanParameter {
+    private String name;
+    private Property property;
+    private Class<? extends Serializable> valueType;
+
+    public SearchPlanParameter(String name, String typeCode, String definition, Class<? extends Serializable> valueType){
+        this.name = name;
+        this.property = new Property(name, typeCode, definition, 0, 1, (List<? extends Base>) null);
+        this.valueType = valueType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Property getProperty() {
+        return property;
+    }
+
+    public Class<? extends Serializable> getValueType() {
+        return valueType;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Arrays;
+import java.util.EnumMap;
+
+/**
+ * The SearchPlans for the (criteria based) VirtualDB searches supported by the resource proxies, keyed by
+ * SearchNameEnum and built once.
+ */
+@ApplicationScoped
+public class SearchPlanRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(SearchPlanRegistry.class);
+
+    public static final String DOCUMENT_REFERENCE_TYPE = "type";
+    public static final String DOCUMENT_REFERENCE_DATE = "date";
+    public static final String PROCEDURE_SUBJECT = "subject";
+    public static final String PROCEDURE_PERFORMED = "performed";
+
+    private EnumMap<SearchNameEnum, SearchPlan> searchPlans;
+
+    public SearchPlanRegistry(){
+        this.searchPlans = new EnumMap<>(SearchNameEnum.class);
+        register(new SearchPlan(SearchNameEnum.DOCUMENT_REFERENCE_DATE_AND_TYPE, ResourceType.DocumentReference, Arrays.asList(
+                new SearchPlanParameter(
+                        DOCUMENT_REFERENCE_TYPE,
+                        "CodeableConcept",
+                        "Specifies the particular kind of document referenced (e.g. History and Physical, Discharge Summary, Progress Note). This usually equates to the purpose of making the document referenced.",
+                        TokenParam.class),
+                new SearchPlanParameter(
+                        DOCUMENT_REFERENCE_DATE,
+                        "instant",
+                        "When the document reference was created.",
+                        DateRangeParam.class))));
+        register(new SearchPlan(SearchNameEnum.PROCEDURE_PATIENT_AND_DATE, ResourceType.Procedure, Arrays.asList(
+                new SearchPlanParameter(
+                        PROCEDURE_SUBJECT,
+                        "Reference",
+                        "The person, animal or group on which the procedure was performed.",
+                        TokenParam.class),
+                new SearchPlanParameter(
+                        PROCEDURE_PERFORMED,
+                        "dateTime",
+                        "Estimated or actual date, date-time, period, or age when the procedure was performed. Allows a period to support complex procedures that span more than one date, and also allows for the length of the procedure to be captured.",
+                        DateRangeParam.class))));
+    }
+
+    private void register(SearchPlan plan){
+        LOG.debug(".register(): searchName --> {}, targetResourceType --> {}", plan.getSearchName(), plan.getTargetResourceType());
+        searchPlans.put(plan.getSearchName(), plan);
+    }
+
+    /**
+     * @param searchName The search
+     * @param resourceType The resource type (name) served by the proxy performing the search
+     * @return the SearchPlan, which is guaranteed to target the given resource type
+     */
+    public SearchPlan getSearchPlan(SearchNameEnum searchName, String resourceType){
+        SearchPlan plan = searchPlans.get(searchName);
+        if(plan == null){
+            throw new IllegalStateException("No SearchPlan is defined for --> " + searchName);
+        }
+        if(!plan.getTargetResourceType().name().equals(resourceType)){
+            throw new IllegalStateException("SearchPlan " + searchName + " targets " + plan.getTargetResourceType() + ", not " + resourceType);
+        }
+        return(plan);
+    }
+}
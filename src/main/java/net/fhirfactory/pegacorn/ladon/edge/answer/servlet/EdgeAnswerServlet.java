@@ -21,13 +21,42 @@
  */
 package net.fhirfactory.pegacorn.ladon.edge.answer.servlet;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import net.fhirfactory.pegacorn.deployment.properties.SystemWideProperties;
+import net.fhirfactory.pegacorn.ladon.edge.answer.cache.LadonEdgeVersionIndex;
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import net.fhirfactory.pegacorn.ladon.edge.answer.deadline.LadonEdgeDeadlineService;
+import net.fhirfactory.pegacorn.ladon.edge.answer.export.LadonEdgeBulkExportManager;
+import net.fhirfactory.pegacorn.ladon.edge.answer.interceptors.ConditionalReadInterceptor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.interceptors.ConditionalUpdateInterceptor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.interceptors.RequestDeadlineInterceptor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.interceptors.ResourceProjectionInterceptor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.interceptors.StaleResponseInterceptor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.interceptors.StreamingBundleResponseInterceptor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.interceptors.WriteBehindResponseInterceptor;
+import net.fhirfactory.pegacorn.ladon.edge.answer.operations.LadonEdgeBulkExportProvider;
+import net.fhirfactory.pegacorn.ladon.edge.answer.operations.LadonEdgeBulkImportProvider;
+import net.fhirfactory.pegacorn.ladon.edge.answer.operations.LadonEdgeStatisticsProvider;
+import net.fhirfactory.pegacorn.ladon.edge.answer.operations.LadonEdgeTransactionProvider;
+import net.fhirfactory.pegacorn.ladon.edge.answer.operations.LadonEdgeWriteStatusProvider;
+import net.fhirfactory.pegacorn.ladon.edge.answer.paging.SearchResultSnapshotPagingProvider;
 import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.*;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeGetResourceBase;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeProxyRegistry;
+import net.fhirfactory.pegacorn.ladon.edge.answer.servlet.dispatch.AnswerServletDispatchModeEnum;
+import net.fhirfactory.pegacorn.ladon.edge.answer.servlet.dispatch.AnswerServletRequestDispatcher;
+import net.fhirfactory.pegacorn.ladon.edge.answer.startup.LadonEdgeStartupCoordinator;
+import net.fhirfactory.pegacorn.ladon.edge.answer.writebehind.LadonEdgeWriteBehindQueue;
 import net.fhirfactory.pegacorn.platform.edge.receive.common.ApiKeyValidatorInterceptor;
 import net.fhirfactory.pegacorn.util.FHIRContextUtility;
 
@@ -36,6 +65,8 @@ import org.slf4j.Logger;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.narrative.DefaultThymeleafNarrativeGenerator;
 import ca.uhn.fhir.narrative.INarrativeGenerator;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.server.ETagSupportEnum;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.interceptor.ResponseHighlighterInterceptor;
@@ -98,6 +129,53 @@ public abstract class EdgeAnswerServlet extends RestfulServer {
 
     @Inject
     protected FHIRContextUtility fHIRContextUtility;   
+
+    @Inject
+    protected LadonEdgeAnswerConfiguration answerConfiguration;
+
+    @Inject
+    protected LadonEdgeStatisticsProvider statisticsProvider;
+
+    @Inject
+    protected LadonEdgeTransactionProvider transactionProvider;
+
+    @Inject
+    protected LadonEdgeBulkExportProvider bulkExportProvider;
+
+    @Inject
+    protected LadonEdgeBulkExportManager bulkExportManager;
+
+    @Inject
+    protected LadonEdgeVersionIndex versionIndex;
+
+    @Inject
+    protected LadonEdgeProxyRegistry proxyRegistry;
+
+    @Inject
+    protected LadonEdgeStartupCoordinator startupCoordinator;
+
+    @Inject
+    protected LadonEdgeWriteStatusProvider writeStatusProvider;
+
+    @Inject
+    protected LadonEdgeBulkImportProvider bulkImportProvider;
+
+    @Inject
+    protected LadonEdgeWriteBehindQueue writeBehindQueue;
+
+    @Inject
+    protected LadonEdgeDeadlineService deadlineService;
+
+    /*
+     * The container's (default) thread factory, so that the dispatcher's worker threads are named, and carry the
+     * naming/security context, as the container's own threads do
+     */
+    @Resource
+    protected transient ManagedThreadFactory managedThreadFactory;
+
+    private transient AnswerServletRequestDispatcher requestDispatcher;
+
+    private transient SearchResultSnapshotPagingProvider searchResultPagingProvider;
     
     /**
      * Constructor
@@ -137,6 +215,28 @@ public abstract class EdgeAnswerServlet extends RestfulServer {
         providers.add(taskProxy);
         providers.add(valueSetProxy);
         setResourceProviders(providers);
+        for(IResourceProvider currentProvider: providers){
+            proxyRegistry.register((LadonEdgeGetResourceBase) currentProvider);
+        }
+        startupCoordinator.initialise(myFHIRContext, proxyRegistry.getProxies());
+        writeBehindQueue.start(proxyRegistry);
+        registerProvider(statisticsProvider);
+        registerProvider(transactionProvider);
+        registerProvider(bulkExportProvider);
+        registerProvider(writeStatusProvider);
+        registerProvider(bulkImportProvider);
+
+        /*
+         * Page large search results (via _count and the "next" links) rather than returning them in one response,
+         * the result sets are held as compacted snapshots between the page requests.
+         */
+        int defaultPageSize = answerConfiguration.getIntegerProperty("answer.paging.default-page-size", 50);
+        int maximumPageSize = answerConfiguration.getIntegerProperty("answer.paging.maximum-page-size", 500);
+        int maximumSnapshotCount = answerConfiguration.getIntegerProperty("answer.paging.maximum-snapshot-count", 1000);
+        long maximumSnapshotBytes = answerConfiguration.getLongProperty("answer.paging.maximum-held-bytes", 64L * 1024L * 1024L);
+        long snapshotTimeToLive = answerConfiguration.getLongProperty("answer.paging.snapshot-ttl-ms", 600000L);
+        searchResultPagingProvider = new SearchResultSnapshotPagingProvider(defaultPageSize, maximumPageSize, maximumSnapshotCount, maximumSnapshotBytes, snapshotTimeToLive);
+        setPagingProvider(searchResultPagingProvider);
 
         /*
          * Use a narrative generator. This is a completely optional step,
@@ -149,11 +249,95 @@ public abstract class EdgeAnswerServlet extends RestfulServer {
 //        ApiKeyValidatorInterceptor apiKeyValidatorInterceptor = new ApiKeyValidatorInterceptor(PegacornHapiFhirProxy.API_KEY_HEADER_NAME, PegacornHapiFhirProxy.DEFAULT_API_KEY_PROPERTY_NAME);
 //        registerInterceptor(apiKeyValidatorInterceptor);
         
+        /*
+         * Establish the deadline of each request (from its X-Request-Timeout-Ms header or the operation's default),
+         * which bounds the VirtualDB accessor calls made on its behalf
+         */
+        registerInterceptor(new RequestDeadlineInterceptor(deadlineService));
+
+        /*
+         * Prune read/search responses to the requested _summary/_elements before they are encoded (this must precede
+         * the interceptors that write the response)
+         */
+        registerInterceptor(new ResourceProjectionInterceptor(myFHIRContext));
+
         /*
          * Use nice coloured HTML when a browser is used to request the content
          */
         registerInterceptor(new ResponseHighlighterInterceptor());        
+
+        /*
+         * Answer conditional reads (If-None-Match/If-Modified-Since) from the version index where possible
+         */
+        setETagSupport(ETagSupportEnum.ENABLED);
+        registerInterceptor(new ConditionalReadInterceptor(versionIndex));
+
+        /*
+         * Reject stale (If-Match) updates/patches from the version index, before their bodies are parsed
+         */
+        registerInterceptor(new ConditionalUpdateInterceptor(versionIndex));
+
+        /*
+         * Respond to the creates/updates accepted by the write-behind proxies with a 202 (Accepted)
+         */
+        registerInterceptor(new WriteBehindResponseInterceptor());
+
+        /*
+         * Flag the responses that include stale values (served because the VirtualDB accessor was slow or down)
+         */
+        registerInterceptor(new StaleResponseInterceptor());
+
+        /*
+         * Write large (JSON) searchset Bundles to the response entry by entry, rather than as one encoded String. By
+         * default a full page of the default page size is large enough (a threshold above it would only ever be
+         * reached by clients asking for larger pages)
+         */
+        int streamingMinimumEntryCount = answerConfiguration.getIntegerProperty("answer.streaming.minimum-entry-count", defaultPageSize);
+        registerInterceptor(new StreamingBundleResponseInterceptor(myFHIRContext, streamingMinimumEntryCount, getDefaultResponseEncoding() == EncodingEnum.JSON));
+
+        /*
+         * Select how requests are executed: on the container thread (synchronous) or in a Servlet asynchronous
+         * continuation on a servlet-owned (platform or virtual) thread.
+         */
+        AnswerServletDispatchModeEnum dispatchMode = AnswerServletDispatchModeEnum.fromDispatchMode(answerConfiguration.getStringProperty("answer.dispatch-mode", null));
+        int workerPoolSize = answerConfiguration.getIntegerProperty("answer.worker-pool-size", 256);
+        int workerQueueSize = answerConfiguration.getIntegerProperty("answer.worker-queue-size", 1024);
+        int maxConcurrentRequests = answerConfiguration.getIntegerProperty("answer.max-concurrent-requests", 4096);
+        long asyncTimeout = answerConfiguration.getLongProperty("answer.async-timeout-ms", 120000L);
+        requestDispatcher = new AnswerServletRequestDispatcher(dispatchMode, workerPoolSize, workerQueueSize, maxConcurrentRequests, asyncTimeout, managedThreadFactory);
+        bulkExportManager.setInteractiveLoadSupplier(requestDispatcher::getInFlightRequestCount);
         getLogger().debug(".initialize(): Exit");
     }
 
+    /**
+     * All requests pass through here, depending on the configured dispatch mode they are either handled directly
+     * or handed over to the AnswerServletRequestDispatcher (which frees up the container thread).
+     */
+    @Override
+    protected void service(HttpServletRequest theRequest, HttpServletResponse theResponse) throws ServletException, IOException {
+        if(requestDispatcher == null){
+            super.service(theRequest, theResponse);
+            return;
+        }
+        requestDispatcher.dispatch(theRequest, theResponse, (request, response) -> super.service(request, response));
+    }
+
+    @Override
+    public void destroy() {
+        getLogger().debug(".destroy(): Entry");
+        if(requestDispatcher != null){
+            requestDispatcher.shutdown();
+        }
+        super.destroy();
+        getLogger().debug(".destroy(): Exit");
+    }
+
+    public AnswerServletRequestDispatcher getRequestDispatcher() {
+        return requestDispatcher;
+    }
+
+    public SearchResultSnapshotPagingProvider getSearchResultPagingProvider() {
+        return searchResultPagingProvider;
+    }
+
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.servlet.dispatch;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+
+/**
+ * The response handed to a worker thread by the AnswerServletRequestDispatcher. Once the request has been abandoned
+ * (it timed out, and the container has been told the response is complete) everything the worker still writes is
+ * discarded, as the underlying response may by then have been recycled for another request.
+ *
+ * Each write, and abandon() itself, hold the response's monitor, so a write is never in progress while (or after)
+ * the timeout response is sent.
+ */
+public class AbandonableResponse extends HttpServletResponseWrapper {
+
+    private final HttpServletResponse targetResponse;
+    private volatile boolean abandoned;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    public AbandonableResponse(HttpServletResponse response){
+        super(response);
+        this.targetResponse = response;
+        this.abandoned = false;
+    }
+
+    /**
+     * Abandon the response, then send the given error on the underlying response.
+     *
+     * @return false if the response had already been abandoned (or committed by the worker), in which case no error is sent
+     */
+    public synchronized boolean abandon(int statusCode, String message) throws IOException {
+        if(abandoned){
+            return(false);
+        }
+        abandoned = true;
+        if(targetResponse.isCommitted()){
+            return(false);
+        }
+        targetResponse.sendError(statusCode, message);
+        return(true);
+    }
+
+    public boolean isAbandoned() {
+        return abandoned;
+    }
+
+    @Override
+    public synchronized ServletOutputStream getOutputStream() throws IOException {
+        if(outputStream == null){
+            outputStream = new AbandonableOutputStream(abandoned ? null : targetResponse.getOutputStream());
+        }
+        return(outputStream);
+    }
+
+    @Override
+    public synchronized PrintWriter getWriter() throws IOException {
+        if(writer == null){
+            Charset encoding = Charset.forName(getCharacterEncoding());
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), encoding));
+        }
+        return(writer);
+    }
+
+    @Override
+    public synchronized void flushBuffer() throws IOException {
+        if(writer != null){
+            writer.flush();
+        }
+        if(!abandoned){
+            targetResponse.flushBuffer();
+        }
+    }
+
+    @Override
+    public synchronized void sendError(int statusCode, String message) throws IOException {
+        if(!abandoned){
+            targetResponse.sendError(statusCode, message);
+        }
+    }
+
+    @Override
+    public synchronized void sendError(int statusCode) throws IOException {
+        if(!abandoned){
+            targetResponse.sendError(statusCode);
+        }
+    }
+
+    @Override
+    public synchronized void sendRedirect(String location) throws IOException {
+        if(!abandoned){
+            targetResponse.sendRedirect(location);
+        }
+    }
+
+    @Override
+    public synchronized void setStatus(int statusCode) {
+        if(!abandoned){
+            targetResponse.setStatus(statusCode);
+        }
+    }
+
+    @Override
+    public synchronized void setHeader(String name, String value) {
+        if(!abandoned){
+            targetResponse.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void addHeader(String name, String value) {
+        if(!abandoned){
+            targetResponse.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void setContentType(String type) {
+        if(!abandoned){
+            targetResponse.setContentType(type);
+        }
+    }
+
+    @Override
+    public synchronized void setCharacterEncoding(String charset) {
+        if(!abandoned){
+            targetResponse.setCharacterEncoding(charset);
+        }
+    }
+
+    @Override
+    public synchronized void setContentLength(int length) {
+        if(!abandoned){
+            targetResponse.setContentLength(length);
+        }
+    }
+
+    @Override
+    public synchronized void setContentLengthLong(long length) {
+        if(!abandoned){
+            targetResponse.setContentLengthLong(length);
+        }
+    }
+
+    private class AbandonableOutputStream extends ServletOutputStream {
+        private final ServletOutputStream targetStream;
+
+        AbandonableOutputStream(ServletOutputStream targetStream){
+            this.targetStream = targetStream;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            synchronized (AbandonableResponse.this) {
+                if(!abandoned && targetStream != null){
+                    targetStream.write(value);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            synchronized (AbandonableResponse.this) {
+                if(!abandoned && targetStream != null){
+                    targetStream.write(buffer, offset, length);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (AbandonableResponse.this) {
+                if(!abandoned && targetStream != null){
+                    targetStream.flush();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (AbandonableResponse.this) {
+                if(!abandoned && targetStream != null){
+                    targetStream.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return(abandoned || targetStream == null || targetStream.isReady());
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if(targetStream != null){
+                targetStream.setWriteListener(writeListener);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.servlet.dispatch;
+
+/**
+ * The mode in which the EdgeAnswerServlet executes the (HAPI) resource provider methods.
+ */
+public enum AnswerServletDispatchModeEnum {
+    /**
+     * The provider methods (and so the VirtualDB accessor calls) are executed on the container (worker) thread.
+     */
+    DISPATCH_SYNCHRONOUS("synchronous"),
+    /**
+     * The request is placed into a Servlet asynchronous continuation and executed on a bounded pool of platform
+     * threads owned by the servlet, the container thread is returned to its pool immediately.
+     */
+    DISPATCH_ASYNCHRONOUS("asynchronous"),
+    /**
+     * As per DISPATCH_ASYNCHRONOUS, but each request is executed on its own virtual thread. If the JVM does not
+     * support virtual threads, the platform thread pool is used instead.
+     */
+    DISPATCH_ASYNCHRONOUS_VIRTUAL_THREADS("asynchronous-virtual-threads");
+
+    private String dispatchMode;
+
+    private AnswerServletDispatchModeEnum(String mode){
+        this.dispatchMode = mode;
+    }
+
+    public String getDispatchMode(){
+        return(this.dispatchMode);
+    }
+
+    public static AnswerServletDispatchModeEnum fromDispatchMode(String mode){
+        if(mode == null){
+            return(DISPATCH_SYNCHRONOUS);
+        }
+        for(AnswerServletDispatchModeEnum currentMode: AnswerServletDispatchModeEnum.values()){
+            if(currentMode.getDispatchMode().equalsIgnoreCase(mode.trim())){
+                return(currentMode);
+            }
+        }
+        return(DISPATCH_SYNCHRONOUS);
+    }
+}
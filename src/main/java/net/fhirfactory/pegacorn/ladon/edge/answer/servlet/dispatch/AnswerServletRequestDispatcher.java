@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.servlet.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Moves the processing of a FHIR request off the container (worker) thread and into a Servlet asynchronous
+ * continuation, so that container threads are returned to their pool while the VirtualDB accessors are blocking.
+ *
+ * The number of requests in-flight is capped (maxConcurrentRequests), as is the number waiting for a worker
+ * (workerQueueSize), requests beyond that are rejected with a 503 (Service Unavailable) rather than being queued
+ * without bound.
+ *
+ * A request that times out is answered with a 504 (Gateway Timeout) and its worker is interrupted; the worker's
+ * response is an AbandonableResponse, so nothing it writes afterwards reaches the (by then recycled) response.
+ */
+public class AnswerServletRequestDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(AnswerServletRequestDispatcher.class);
+
+    private AnswerServletDispatchModeEnum dispatchMode;
+    private ExecutorService requestExecutor;
+    private Semaphore inFlightPermits;
+    private long asyncTimeout;
+    private AtomicInteger inFlightRequestCount;
+    private AtomicLong rejectedRequestCount;
+    private AtomicLong timedOutRequestCount;
+
+    /**
+     * @param workerThreadFactory The (container managed) factory for the platform worker threads, or null to use plain threads
+     */
+    public AnswerServletRequestDispatcher(AnswerServletDispatchModeEnum mode, int workerPoolSize, int workerQueueSize, int maxConcurrentRequests, long asyncTimeout, ThreadFactory workerThreadFactory){
+        this.dispatchMode = mode;
+        this.asyncTimeout = asyncTimeout;
+        this.inFlightPermits = new Semaphore(maxConcurrentRequests);
+        this.inFlightRequestCount = new AtomicInteger(0);
+        this.rejectedRequestCount = new AtomicLong(0);
+        this.timedOutRequestCount = new AtomicLong(0);
+        switch(mode){
+            case DISPATCH_ASYNCHRONOUS_VIRTUAL_THREADS:{
+                this.requestExecutor = newVirtualThreadExecutor();
+                if(this.requestExecutor != null){
+                    break;
+                }
+                LOG.warn("AnswerServletRequestDispatcher(): Virtual Threads are not supported by this JVM, using a platform thread pool instead");
+                this.dispatchMode = AnswerServletDispatchModeEnum.DISPATCH_ASYNCHRONOUS;
+                this.requestExecutor = newPlatformThreadExecutor(workerPoolSize, workerQueueSize, workerThreadFactory);
+                break;
+            }
+            case DISPATCH_ASYNCHRONOUS:{
+                this.requestExecutor = newPlatformThreadExecutor(workerPoolSize, workerQueueSize, workerThreadFactory);
+                break;
+            }
+            case DISPATCH_SYNCHRONOUS:
+            default:{
+                this.requestExecutor = null;
+            }
+        }
+        LOG.info("AnswerServletRequestDispatcher(): dispatchMode --> {}, workerPoolSize --> {}, workerQueueSize --> {}, maxConcurrentRequests --> {}", this.dispatchMode, workerPoolSize, workerQueueSize, maxConcurrentRequests);
+    }
+
+    public boolean isAsynchronous(){
+        return(this.requestExecutor != null);
+    }
+
+    public AnswerServletDispatchModeEnum getDispatchMode() {
+        return dispatchMode;
+    }
+
+    public int getInFlightRequestCount(){
+        return(inFlightRequestCount.get());
+    }
+
+    public long getRejectedRequestCount(){
+        return(rejectedRequestCount.get());
+    }
+
+    public long getTimedOutRequestCount(){
+        return(timedOutRequestCount.get());
+    }
+
+    /**
+     * Process the request. In synchronous mode the handler is simply invoked on the calling (container) thread,
+     * otherwise the request is placed into an asynchronous continuation and the handler is invoked on a worker
+     * thread - this method then returns immediately.
+     *
+     * @param request The (HTTP) request
+     * @param response The (HTTP) response
+     * @param handler The actual request processing
+     */
+    public void dispatch(HttpServletRequest request, HttpServletResponse response, AnswerServletRequestHandler handler) throws ServletException, IOException {
+        if(!isAsynchronous() || !request.isAsyncSupported()){
+            inFlightRequestCount.incrementAndGet();
+            try {
+                handler.handle(request, response);
+            } finally {
+                inFlightRequestCount.decrementAndGet();
+            }
+            return;
+        }
+        if(!inFlightPermits.tryAcquire()){
+            rejectedRequestCount.incrementAndGet();
+            LOG.warn(".dispatch(): Maximum number of concurrent requests reached, rejecting request --> {}", request.getRequestURI());
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Maximum number of concurrent requests reached");
+            return;
+        }
+        AbandonableResponse workerResponse = new AbandonableResponse(response);
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(asyncTimeout);
+        AtomicBoolean finished = new AtomicBoolean(false);
+        AtomicReference<Future<?>> pendingWork = new AtomicReference<>();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if(finished.compareAndSet(false, true)){
+                    timedOutRequestCount.incrementAndGet();
+                    LOG.warn(".dispatch(): Request has timed out --> {}", request.getRequestURI());
+                    workerResponse.abandon(HttpServletResponse.SC_GATEWAY_TIMEOUT, "Request processing has timed out");
+                    Future<?> work = pendingWork.get();
+                    if(work != null){
+                        work.cancel(true);
+                    }
+                    event.getAsyncContext().complete();
+                }
+            }
+            @Override
+            public void onError(AsyncEvent event) {
+                LOG.warn(".dispatch(): Asynchronous request processing error --> {}", event.getThrowable());
+            }
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        inFlightRequestCount.incrementAndGet();
+        try {
+            pendingWork.set(requestExecutor.submit(() -> {
+                try {
+                    handler.handle(request, workerResponse);
+                } catch(Exception processingException){
+                    if(workerResponse.isAbandoned()){
+                        LOG.debug(".dispatch(): Abandoned request processing ended, request --> {}, message --> {}", request.getRequestURI(), processingException.getMessage());
+                    } else {
+                        LOG.error(".dispatch(): Asynchronous request processing failed, request --> {}", request.getRequestURI(), processingException);
+                    }
+                    if(!workerResponse.isCommitted()){
+                        try {
+                            workerResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        } catch (IOException ioException) {
+                            LOG.debug(".dispatch(): Could not send error response --> {}", ioException.getMessage());
+                        }
+                    }
+                } finally {
+                    inFlightRequestCount.decrementAndGet();
+                    inFlightPermits.release();
+                    if(finished.compareAndSet(false, true)){
+                        asyncContext.complete();
+                    }
+                }
+            }));
+        } catch(RejectedExecutionException rejectedExecutionException){
+            inFlightRequestCount.decrementAndGet();
+            inFlightPermits.release();
+            rejectedRequestCount.incrementAndGet();
+            finished.set(true);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Request could not be scheduled");
+            asyncContext.complete();
+        }
+    }
+
+    public void shutdown(){
+        if(requestExecutor != null){
+            requestExecutor.shutdown();
+            try {
+                if(!requestExecutor.awaitTermination(asyncTimeout, TimeUnit.MILLISECONDS)){
+                    requestExecutor.shutdownNow();
+                }
+            } catch (InterruptedException interruptedException) {
+                requestExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private ExecutorService newPlatformThreadExecutor(int poolSize, int queueSize, ThreadFactory workerThreadFactory){
+        ThreadFactory threadFactory = workerThreadFactory;
+        if(threadFactory == null){
+            AtomicInteger threadCounter = new AtomicInteger(0);
+            threadFactory = runnable -> {
+                Thread workerThread = new Thread(runnable, "ladon-edge-answer-" + threadCounter.incrementAndGet());
+                workerThread.setDaemon(true);
+                return(workerThread);
+            };
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return(executor);
+    }
+
+    private ExecutorService newVirtualThreadExecutor(){
+        try {
+            Method virtualThreadExecutorFactory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return((ExecutorService) virtualThreadExecutorFactory.invoke(null));
+        } catch (ReflectiveOperationException reflectionException) {
+            return(null);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.startup;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import net.fhirfactory.pegacorn.ladon.edge.answer.concurrent.LadonEdgeThreadFactory;
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeProxyBase;
+import net.fhirfactory.pegacorn.ladon.processingplant.LadonProcessingPlant;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Performs the (one-time) startup of the services behind the resource proxies: the LadonProcessingPlant is
+ * initialised once, then the VirtualDB accessors of all the proxies are initialised in parallel
+ * ("ladon.edge.startup.parallelism"). Alongside these, the FHIR model of the served resource types is pre-scanned.
+ * The duration of each stage is recorded, and reported via $edge-statistics.
+ */
+@ApplicationScoped
+public class LadonEdgeStartupCoordinator {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeStartupCoordinator.class);
+
+    private static final String PLANT_STAGE = "processingPlant";
+    private static final String ACCESSOR_STAGE = "accessors";
+    private static final String MODEL_STAGE = "fhirModel";
+    private static final String TOTAL_STAGE = "total";
+
+    @Inject
+    private LadonProcessingPlant ladonPlant;
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    @Inject
+    private LadonEdgeThreadFactory threadFactory;
+
+    private volatile LadonEdgeStartupStateEnum startupState;
+    private Map<String, Long> stageDurations;
+
+    public LadonEdgeStartupCoordinator(){
+        this.startupState = LadonEdgeStartupStateEnum.STARTUP_PENDING;
+        this.stageDurations = Collections.synchronizedMap(new LinkedHashMap<>());
+    }
+
+    /**
+     * Initialise the processing plant and the accessors of the given proxies, and pre-scan the FHIR model of the
+     * resource types they serve. Only the first invocation does any work, subsequent invocations return immediately.
+     *
+     * @param fhirContext The FhirContext used by the answer servlet
+     * @param proxies The resource proxies whose accessors are to be initialised
+     */
+    public synchronized void initialise(FhirContext fhirContext, Collection<? extends LadonEdgeProxyBase> proxies){
+        if(startupState != LadonEdgeStartupStateEnum.STARTUP_PENDING){
+            LOG.debug(".initialise(): Startup already performed, state --> {}", startupState);
+            return;
+        }
+        LOG.info(".initialise(): Entry, proxy count --> {}", proxies.size());
+        startupState = LadonEdgeStartupStateEnum.STARTUP_INITIALISING;
+        long startupStart = System.currentTimeMillis();
+        int parallelism = Math.max(1, answerConfiguration.getIntegerProperty("startup.parallelism", 8));
+        ExecutorService startupExecutor = Executors.newFixedThreadPool(parallelism, threadFactory.newThreadFactory("ladon-edge-startup"));
+        try {
+            long stageStart = System.currentTimeMillis();
+            List<Future<?>> modelScans = submitModelScans(startupExecutor, fhirContext, proxies);
+            ladonPlant.initialisePlant();
+            recordStage(PLANT_STAGE, stageStart);
+            long accessorStageStart = System.currentTimeMillis();
+            List<Future<?>> accessorInitialisations = submitAccessorInitialisations(startupExecutor, proxies);
+            awaitCompletion(modelScans);
+            recordStage(MODEL_STAGE, stageStart);
+            awaitCompletion(accessorInitialisations);
+            recordStage(ACCESSOR_STAGE, accessorStageStart);
+        } catch(RuntimeException startupException){
+            startupState = LadonEdgeStartupStateEnum.STARTUP_FAILED;
+            recordStage(TOTAL_STAGE, startupStart);
+            LOG.error(".initialise(): Startup failed, stage durations (ms) --> {}", stageDurations, startupException);
+            throw startupException;
+        } finally {
+            startupExecutor.shutdownNow();
+        }
+        recordStage(TOTAL_STAGE, startupStart);
+        startupState = LadonEdgeStartupStateEnum.STARTUP_READY;
+        LOG.info(".initialise(): Exit, ready, stage durations (ms) --> {}", stageDurations);
+    }
+
+    /**
+     * The FhirContext scans a resource type (and the datatypes it uses) on first use, which would otherwise land on
+     * the first requests after deployment. So scan (only) the types served by the proxies, plus those used by the
+     * server itself, and exercise the JSON parser for each of them.
+     */
+    private List<Future<?>> submitModelScans(ExecutorService startupExecutor, FhirContext fhirContext, Collection<? extends LadonEdgeProxyBase> proxies){
+        Set<Class<? extends IBaseResource>> resourceTypes = new LinkedHashSet<>();
+        for(LadonEdgeProxyBase currentProxy: proxies){
+            resourceTypes.add(currentProxy.getResourceType());
+        }
+        resourceTypes.add(CapabilityStatement.class);
+        resourceTypes.add(Bundle.class);
+        resourceTypes.add(OperationOutcome.class);
+        resourceTypes.add(Parameters.class);
+        List<Future<?>> modelScans = new ArrayList<>();
+        for(Class<? extends IBaseResource> currentType: resourceTypes){
+            modelScans.add(startupExecutor.submit(() -> {
+                long scanStart = System.currentTimeMillis();
+                RuntimeResourceDefinition resourceDefinition = fhirContext.getResourceDefinition(currentType);
+                fhirContext.newJsonParser().encodeResourceToString(resourceDefinition.newInstance());
+                recordStage(MODEL_STAGE + "." + resourceDefinition.getName(), scanStart);
+            }));
+        }
+        return(modelScans);
+    }
+
+    private List<Future<?>> submitAccessorInitialisations(ExecutorService startupExecutor, Collection<? extends LadonEdgeProxyBase> proxies){
+        List<Future<?>> accessorInitialisations = new ArrayList<>();
+        for(LadonEdgeProxyBase currentProxy: proxies){
+            accessorInitialisations.add(startupExecutor.submit(() -> {
+                long accessorStart = System.currentTimeMillis();
+                currentProxy.initialiseProxy();
+                recordStage(ACCESSOR_STAGE + "." + currentProxy.getResourceTypeName(), accessorStart);
+            }));
+        }
+        return(accessorInitialisations);
+    }
+
+    private void awaitCompletion(List<Future<?>> startupTasks){
+        try {
+            for(Future<?> currentTask: startupTasks){
+                currentTask.get();
+            }
+        } catch(InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst starting the Ladon Edge answer services", interruptedException);
+        } catch(ExecutionException executionException){
+            throw new IllegalStateException("Unable to start the Ladon Edge answer services", executionException.getCause());
+        }
+    }
+
+    private void recordStage(String stageName, long stageStart){
+        long stageDuration = System.currentTimeMillis() - stageStart;
+        stageDurations.put(stageName, stageDuration);
+        LOG.debug(".recordStage(): stage --> {}, duration (ms) --> {}", stageName, stageDuration);
+    }
+
+    public LadonEdgeStartupStateEnum getStartupState() {
+        return startupState;
+    }
+
+    public boolean isReady(){
+        return(startupState == LadonEdgeStartupStateEnum.STARTUP_READY);
+    }
+
+    /**
+     * @return the duration (in milliseconds) of each startup stage, in the order they completed
+     */
+    public Map<String, Long> getStageDurations() {
+        synchronized (stageDurations) {
+            return (new LinkedHashMap<>(stageDurations));
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.writebehind;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.concurrent.LadonEdgeThreadFactory;
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import net.fhirfactory.pegacorn.ladon.edge.answer.guard.AccessorUnavailableException;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeAsynchronousCRUDResourceBase;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeGetResourceBase;
+import net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common.LadonEdgeProxyRegistry;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The write-behind path for the resource proxies extending LadonEdgeAsynchronousCRUDResourceBase. A create/update
+ * is journalled (see WriteBehindJournal), queued and acknowledged to the client with a 202 (Accepted) and a ticket;
+ * a set of background drainers then apply the queued writes to the VirtualDB accessors, in batches.
+ *
+ * Writes are routed to a drainer by resource (type and id), so successive writes to the same Resource are applied
+ * in the order they were accepted. Within a batch, an update of a Resource that is followed by a later update of it
+ * is not applied but superseded ("ladon.edge.write-behind.coalesce-updates", on by default): it completes (or fails)
+ * with the later update, and its ticket reports the id/version that update wrote.
+ *
+ * The queue is bounded ("ladon.edge.write-behind.maximum-queued"), once it is full further writes are rejected with
+ * a 503 (Service Unavailable) rather than being allowed to consume memory.
+ */
+@ApplicationScoped
+public class LadonEdgeWriteBehindQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(LadonEdgeWriteBehindQueue.class);
+
+    private static final ThreadLocal<String> ACCEPTED_TICKET = new ThreadLocal<>();
+
+    @Inject
+    private LadonEdgeAnswerConfiguration answerConfiguration;
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    @Inject
+    private LadonEdgeThreadFactory threadFactory;
+
+    private ConcurrentHashMap<String, WriteBehindEntry> entries;
+    private List<LinkedBlockingQueue<WriteBehindEntry>> drainerQueues;
+    private List<Thread> drainers;
+    private WriteBehindJournal journal;
+    private AtomicInteger queuedCount;
+    private AtomicLong acceptedCount;
+    private AtomicLong rejectedCount;
+    private AtomicLong completedCount;
+    private AtomicLong failedCount;
+    private AtomicLong batchCount;
+    private AtomicLong supersededCount;
+    private boolean coalesceUpdates;
+    private int maximumQueued;
+    private int batchSize;
+    private int maximumAttempts;
+    private long retryInterval;
+    private long retentionPeriod;
+    private volatile long lastPurge;
+    private volatile boolean running;
+    private volatile LadonEdgeProxyRegistry proxyRegistry;
+
+    @PostConstruct
+    public void initialise(){
+        this.entries = new ConcurrentHashMap<>();
+        this.queuedCount = new AtomicInteger(0);
+        this.acceptedCount = new AtomicLong(0);
+        this.rejectedCount = new AtomicLong(0);
+        this.completedCount = new AtomicLong(0);
+        this.failedCount = new AtomicLong(0);
+        this.batchCount = new AtomicLong(0);
+        this.supersededCount = new AtomicLong(0);
+        this.coalesceUpdates = answerConfiguration.getBooleanProperty("write-behind.coalesce-updates", true);
+        this.maximumQueued = answerConfiguration.getIntegerProperty("write-behind.maximum-queued", 10000);
+        this.batchSize = Math.max(1, answerConfiguration.getIntegerProperty("write-behind.batch-size", 50));
+        this.maximumAttempts = Math.max(1, answerConfiguration.getIntegerProperty("write-behind.maximum-attempts", 3));
+        this.retryInterval = answerConfiguration.getLongProperty("write-behind.retry-ms", 500L);
+        this.retentionPeriod = answerConfiguration.getLongProperty("write-behind.retention-ms", 600000L);
+        int drainerCount = Math.max(1, answerConfiguration.getIntegerProperty("write-behind.drainers", 2));
+        this.drainerQueues = new ArrayList<>(drainerCount);
+        for(int counter = 0; counter < drainerCount; counter++){
+            drainerQueues.add(new LinkedBlockingQueue<>());
+        }
+        this.drainers = new ArrayList<>(drainerCount);
+        File journalDirectory = resolveJournalDirectory();
+        boolean syncWrites = answerConfiguration.getBooleanProperty("write-behind.sync", true);
+        long journalSegmentSize = answerConfiguration.getLongProperty("write-behind.journal-segment-bytes", 4L * 1024L * 1024L);
+        this.journal = new WriteBehindJournal(new File(journalDirectory, "write-behind.journal"), syncWrites, journalSegmentSize);
+        this.lastPurge = System.currentTimeMillis();
+        LOG.info(".initialise(): journalDirectory --> {}, maximumQueued --> {}, drainers --> {}, batchSize --> {}, coalesceUpdates --> {}", journalDirectory, maximumQueued, drainerCount, batchSize, coalesceUpdates);
+    }
+
+    /**
+     * The journal must survive a restart (and a temporary directory may well not), so it defaults to a directory
+     * within the server's data directory ("jboss.server.data.dir") - the temporary directory is only used, with a
+     * warning, if neither "ladon.edge.write-behind.directory" nor the server data directory is set.
+     */
+    private File resolveJournalDirectory(){
+        String configuredDirectory = answerConfiguration.getStringProperty("write-behind.directory", null);
+        if(configuredDirectory != null){
+            return(new File(configuredDirectory));
+        }
+        String serverDataDirectory = System.getProperty("jboss.server.data.dir");
+        if(serverDataDirectory != null){
+            return(new File(serverDataDirectory, "ladon-edge-write-behind"));
+        }
+        File temporaryDirectory = new File(System.getProperty("java.io.tmpdir"), "ladon-edge-write-behind");
+        LOG.warn(".resolveJournalDirectory(): Neither ladon.edge.write-behind.directory nor jboss.server.data.dir is set, journalling to {} - accepted writes may be lost if it is cleared", temporaryDirectory);
+        return(temporaryDirectory);
+    }
+
+    /**
+     * Replay the outstanding writes of any previous run and start the drainers. This is called once the resource
+     * proxies (and their VirtualDB accessors) are ready.
+     */
+    public synchronized void start(LadonEdgeProxyRegistry proxyRegistry){
+        if(running){
+            return;
+        }
+        this.proxyRegistry = proxyRegistry;
+        try {
+            List<WriteBehindEntry> outstanding = journal.open();
+            for(WriteBehindEntry currentEntry: outstanding){
+                entries.put(currentEntry.getTicket(), currentEntry);
+                queuedCount.incrementAndGet();
+                selectQueue(currentEntry).add(currentEntry);
+            }
+        } catch(IOException journalException){
+            // Without a journal the writes can not be accepted durably, so the write-behind path stays closed
+            LOG.error(".start(): Unable to open the write-behind journal, message --> {}", journalException.getMessage());
+            return;
+        }
+        running = true;
+        ThreadFactory drainerThreadFactory = threadFactory.newThreadFactory("ladon-edge-write-behind");
+        for(LinkedBlockingQueue<WriteBehindEntry> drainerQueue: drainerQueues){
+            Thread drainer = drainerThreadFactory.newThread(() -> drain(drainerQueue));
+            drainers.add(drainer);
+            drainer.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        running = false;
+        for(Thread currentDrainer: drainers){
+            currentDrainer.interrupt();
+        }
+        journal.close();
+    }
+
+    /**
+     * Accept a create/update for (later) application to the VirtualDB.
+     *
+     * @return the (journalled and queued) entry
+     * @throws UnclassifiedServerFailureException (503) if the queue is full
+     */
+    public WriteBehindEntry enqueue(WriteBehindEntry.WriteBehindOperationEnum operation, Resource resource){
+        if(!running){
+            throw new UnclassifiedServerFailureException(503, "The write-behind queue is not available, please retry later");
+        }
+        if(queuedCount.incrementAndGet() > maximumQueued){
+            queuedCount.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            throw new UnclassifiedServerFailureException(503, "The write-behind queue is full, please retry later");
+        }
+        String resourceId = resource.hasIdElement() && resource.getIdElement().hasIdPart() ? resource.getIdElement().getIdPart() : null;
+        String encodedResource = fhirContextUtility.getFhirContext().newJsonParser().encodeResourceToString(resource);
+        WriteBehindEntry entry = new WriteBehindEntry(UUID.randomUUID().toString(), operation, resource.fhirType(), resourceId, encodedResource, System.currentTimeMillis());
+        try {
+            journal.appendQueued(entry);
+        } catch(IOException journalException){
+            queuedCount.decrementAndGet();
+            LOG.error(".enqueue(): Unable to journal the write, message --> {}", journalException.getMessage());
+            throw new InternalErrorException("Unable to accept the write", journalException);
+        }
+        entries.put(entry.getTicket(), entry);
+        selectQueue(entry).add(entry);
+        acceptedCount.incrementAndGet();
+        LOG.debug(".enqueue(): Accepted, ticket --> {}, operation --> {}, resourceType --> {}", entry.getTicket(), operation, entry.getResourceType());
+        return(entry);
+    }
+
+    public WriteBehindEntry getEntry(String ticket){
+        if(ticket == null){
+            return(null);
+        }
+        return(entries.get(ticket));
+    }
+
+    /**
+     * Note the ticket of the write accepted (or found pending) by the current thread, see takeAcceptedTicket().
+     */
+    public static void setAcceptedTicket(String ticket){
+        ACCEPTED_TICKET.set(ticket);
+    }
+
+    /**
+     * Retrieve (and clear) the ticket of the write accepted by the current thread, so that the response to the
+     * request can be turned into a 202 (Accepted) pointing at the ticket's status.
+     */
+    public static String takeAcceptedTicket(){
+        String ticket = ACCEPTED_TICKET.get();
+        ACCEPTED_TICKET.remove();
+        return(ticket);
+    }
+
+    //
+    // Drainer
+    //
+
+    private LinkedBlockingQueue<WriteBehindEntry> selectQueue(WriteBehindEntry entry){
+        String routingKey = entry.getResourceType() + "/" + (entry.getResourceId() == null ? entry.getTicket() : entry.getResourceId());
+        return(drainerQueues.get(Math.floorMod(routingKey.hashCode(), drainerQueues.size())));
+    }
+
+    private void drain(LinkedBlockingQueue<WriteBehindEntry> drainerQueue){
+        List<WriteBehindEntry> batch = new ArrayList<>(batchSize);
+        while(running){
+            try {
+                WriteBehindEntry firstEntry = drainerQueue.poll(1, TimeUnit.SECONDS);
+                purgeExpiredEntries();
+                if(firstEntry == null){
+                    continue;
+                }
+                batch.add(firstEntry);
+                drainerQueue.drainTo(batch, batchSize - 1);
+                Map<WriteBehindEntry, WriteBehindEntry> supersedingEntries = findSupersedingUpdates(batch);
+                for(WriteBehindEntry currentEntry: batch){
+                    if(!supersedingEntries.containsKey(currentEntry)){
+                        applyWithRetry(currentEntry);
+                    }
+                }
+                for(Map.Entry<WriteBehindEntry, WriteBehindEntry> currentSuperseded: supersedingEntries.entrySet()){
+                    completeSuperseded(currentSuperseded.getKey(), currentSuperseded.getValue());
+                }
+                batchCount.incrementAndGet();
+                completeBatch(batch);
+            } catch(InterruptedException interruptedException){
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the updates in the batch that are followed by a later update of the same Resource, mapped to the
+     * last such update (which is applied in their place)
+     */
+    private Map<WriteBehindEntry, WriteBehindEntry> findSupersedingUpdates(List<WriteBehindEntry> batch){
+        Map<WriteBehindEntry, WriteBehindEntry> supersedingEntries = new HashMap<>();
+        if(!coalesceUpdates || batch.size() < 2){
+            return(supersedingEntries);
+        }
+        Map<String, WriteBehindEntry> lastUpdates = new HashMap<>();
+        for(int index = batch.size() - 1; index >= 0; index--){
+            WriteBehindEntry currentEntry = batch.get(index);
+            if(currentEntry.getOperation() != WriteBehindEntry.WriteBehindOperationEnum.UPDATE || currentEntry.getResourceId() == null){
+                continue;
+            }
+            String resourceKey = currentEntry.getResourceType() + "/" + currentEntry.getResourceId();
+            WriteBehindEntry lastUpdate = lastUpdates.putIfAbsent(resourceKey, currentEntry);
+            if(lastUpdate != null){
+                supersedingEntries.put(currentEntry, lastUpdate);
+            }
+        }
+        return(supersedingEntries);
+    }
+
+    private void completeSuperseded(WriteBehindEntry entry, WriteBehindEntry supersedingEntry){
+        LOG.debug(".completeSuperseded(): ticket --> {}, supersededBy --> {}", entry.getTicket(), supersedingEntry.getTicket());
+        supersededCount.incrementAndGet();
+        entry.setResultId(supersedingEntry.getResultId());
+        if(supersedingEntry.getStatus() == WriteBehindEntry.WriteBehindStatusEnum.WRITE_FAILED){
+            entry.setFailureMessage("Superseded by the update with ticket " + supersedingEntry.getTicket() + ", which failed: " + supersedingEntry.getFailureMessage());
+            entry.setStatus(WriteBehindEntry.WriteBehindStatusEnum.WRITE_FAILED);
+            failedCount.incrementAndGet();
+        } else {
+            entry.setStatus(WriteBehindEntry.WriteBehindStatusEnum.WRITE_COMPLETE);
+            completedCount.incrementAndGet();
+        }
+    }
+
+    private void applyWithRetry(WriteBehindEntry entry) throws InterruptedException {
+        entry.setStatus(WriteBehindEntry.WriteBehindStatusEnum.WRITE_IN_PROGRESS);
+        while(true){
+            try {
+                MethodOutcome outcome = applyWrite(entry);
+                entry.recordAttempt();
+                if(outcome != null && outcome.getId() != null){
+                    entry.setResultId(outcome.getId().getValue());
+                    if(entry.getOperation() == WriteBehindEntry.WriteBehindOperationEnum.CREATE && entry.getResourceId() == null){
+                        journalCreated(entry, outcome.getId().getIdPart());
+                    }
+                }
+                entry.setStatus(WriteBehindEntry.WriteBehindStatusEnum.WRITE_COMPLETE);
+                completedCount.incrementAndGet();
+                return;
+            } catch(AccessorUnavailableException unavailableException){
+                // The call was refused (open circuit or full bulkhead) rather than failed, so the drainer waits for
+                // the accessor to accept calls again without using up one of the write's attempts
+                LOG.debug(".applyWithRetry(): Accessor unavailable, ticket --> {}, retryAfter --> {}", entry.getTicket(), unavailableException.getRetryAfter());
+                Thread.sleep(Math.max(retryInterval, unavailableException.getRetryAfter()));
+            } catch(RuntimeException writeException){
+                entry.recordAttempt();
+                LOG.warn(".applyWithRetry(): Write failed, ticket --> {}, attempt --> {}, message --> {}", entry.getTicket(), entry.getAttempts(), writeException.getMessage());
+                if(entry.getAttempts() >= maximumAttempts){
+                    entry.setFailureMessage(writeException.getMessage());
+                    entry.setStatus(WriteBehindEntry.WriteBehindStatusEnum.WRITE_FAILED);
+                    failedCount.incrementAndGet();
+                    return;
+                }
+                Thread.sleep(retryInterval * entry.getAttempts());
+            }
+        }
+    }
+
+    private MethodOutcome applyWrite(WriteBehindEntry entry){
+        LadonEdgeGetResourceBase proxy = proxyRegistry.getProxy(entry.getResourceType());
+        if(!(proxy instanceof LadonEdgeAsynchronousCRUDResourceBase)){
+            throw new IllegalStateException("Resource type " + entry.getResourceType() + " is not served by a write-behind proxy");
+        }
+        Resource resource = (Resource) fhirContextUtility.getFhirContext().newJsonParser().parseResource(entry.getEncodedResource());
+        if(entry.getResourceId() != null && !resource.getIdElement().hasIdPart()){
+            // A create replayed (as an update) after a restart, see WriteBehindJournal
+            resource.setId(entry.getResourceId());
+        }
+        return(((LadonEdgeAsynchronousCRUDResourceBase) proxy).applyQueuedWrite(entry.getOperation(), resource));
+    }
+
+    private void journalCreated(WriteBehindEntry entry, String resourceId){
+        try {
+            journal.appendCreated(entry, resourceId);
+        } catch(IOException journalException){
+            LOG.error(".journalCreated(): Unable to journal the assigned id, ticket --> {}, message --> {}", entry.getTicket(), journalException.getMessage());
+        }
+    }
+
+    private void completeBatch(List<WriteBehindEntry> batch){
+        queuedCount.addAndGet(-batch.size());
+        try {
+            journal.appendDone(batch);
+        } catch(IOException journalException){
+            // The writes have been applied, so at worst they will be re-applied after a restart (a create whose
+            // assigned id was journalled, as an update of that Resource)
+            LOG.error(".completeBatch(): Unable to journal the completed writes, message --> {}", journalException.getMessage());
+        }
+    }
+
+    private void purgeExpiredEntries(){
+        long now = System.currentTimeMillis();
+        if(now - lastPurge < 10000L){
+            return;
+        }
+        lastPurge = now;
+        Iterator<WriteBehindEntry> entryIterator = entries.values().iterator();
+        while(entryIterator.hasNext()){
+            WriteBehindEntry currentEntry = entryIterator.next();
+            if(currentEntry.isFinished() && now - currentEntry.getCompletedAt() > retentionPeriod){
+                entryIterator.remove();
+            }
+        }
+    }
+
+    //
+    // Statistics
+    //
+
+    public int getQueuedCount(){
+        return(queuedCount.get());
+    }
+
+    public int getMaximumQueued() {
+        return maximumQueued;
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getSupersededCount() {
+        return supersededCount.get();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.writebehind;
+
+/**
+ * A single create/update accepted by the write-behind path: the (encoded) Resource, and - as it is applied to the
+ * VirtualDB - its status. The entry's ticket is what the client polls (via "$write-status") to learn the outcome.
+ */
+public class WriteBehindEntry {
+
+    public enum WriteBehindOperationEnum {
+        CREATE,
+        UPDATE
+    }
+
+    public enum WriteBehindStatusEnum {
+        WRITE_QUEUED,
+        WRITE_IN_PROGRESS,
+        WRITE_COMPLETE,
+        WRITE_FAILED
+    }
+
+    private String ticket;
+    private WriteBehindOperationEnum operation;
+    private String resourceType;
+    private String resourceId;
+    private String encodedResource;
+    private long queuedAt;
+    private volatile long completedAt;
+    private volatile WriteBehindStatusEnum status;
+    private volatile int attempts;
+    private volatile String resultId;
+    private volatile String failureMessage;
+
+    public WriteBehindEntry(String ticket, WriteBehindOperationEnum operation, String resourceType, String resourceId, String encodedResource, long queuedAt){
+        this.ticket = ticket;
+        this.operation = operation;
+        this.resourceType = resourceType;
+        this.resourceId = resourceId;
+        this.encodedResource = encodedResource;
+        this.queuedAt = queuedAt;
+        this.completedAt = -1;
+        this.status = WriteBehindStatusEnum.WRITE_QUEUED;
+        this.attempts = 0;
+    }
+
+    public String getTicket() {
+        return ticket;
+    }
+
+    public WriteBehindOperationEnum getOperation() {
+        return operation;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    /**
+     * @return the logical id of the Resource (null for a create without a client assigned id)
+     */
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public String getEncodedResource() {
+        return encodedResource;
+    }
+
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public WriteBehindStatusEnum getStatus() {
+        return status;
+    }
+
+    public void setStatus(WriteBehindStatusEnum status) {
+        this.status = status;
+        if(status == WriteBehindStatusEnum.WRITE_COMPLETE || status == WriteBehindStatusEnum.WRITE_FAILED){
+            this.completedAt = System.currentTimeMillis();
+            // The content is no longer needed once the write has been applied (or abandoned)
+            this.encodedResource = null;
+        }
+    }
+
+    public boolean isFinished(){
+        return(status == WriteBehindStatusEnum.WRITE_COMPLETE || status == WriteBehindStatusEnum.WRITE_FAILED);
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void recordAttempt(){
+        this.attempts += 1;
+    }
+
+    public String getResultId() {
+        return resultId;
+    }
+
+    public void setResultId(String resultId) {
+        this.resultId = resultId;
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public void setFailureMessage(String failureMessage) {
+        this.failureMessage = failureMessage;
+    }
+}
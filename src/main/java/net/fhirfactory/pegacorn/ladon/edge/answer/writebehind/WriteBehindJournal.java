@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.edge.answer.writebehind;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The append-only journal that makes the write-behind queue durable. An accepted write is appended (and, if
+ * syncWrites is set, forced to the device) before the client is told it has been accepted, and a completion record
+ * is appended once it has been applied. On restart the writes without a completion record are replayed.
+ *
+ * Each record is a single line of tab separated fields: "Q ticket operation resourceType resourceId json" for an
+ * accepted write and "D ticket status" for a completed one (the JSON encoding never contains a raw tab or newline).
+ * Once a create has been applied, a "C ticket resourceId" record holds the id the VirtualDB assigned, so that if the
+ * completion record is lost (to a crash) the write is replayed as an update of that Resource rather than creating
+ * a duplicate.
+ *
+ * The journal is held as a series of segment files ("[journal-file].[sequence]"). Accepted writes are appended to the
+ * current segment, which is rotated once it reaches maximumSegmentSize bytes, and the C/D records of a write are
+ * appended to the segment holding its Q record, so each segment is self-contained. A segment is deleted once all of
+ * its writes have completed (the current one is truncated instead), so under a sustained load the journal holds the
+ * current backlog plus at most the unfinished part of the segments it was accepted into.
+ */
+public class WriteBehindJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindJournal.class);
+
+    private static final String QUEUED_RECORD = "Q";
+    private static final String DONE_RECORD = "D";
+    private static final String CREATED_RECORD = "C";
+    private static final String NO_ID = "-";
+    private static final long DEFAULT_MAXIMUM_SEGMENT_SIZE = 4L * 1024L * 1024L;
+
+    private File journalFile;
+    private boolean syncWrites;
+    private long maximumSegmentSize;
+    private TreeMap<Long, JournalSegment> segments;
+    private Map<String, JournalSegment> ticketSegments;
+    private JournalSegment currentSegment;
+
+    public WriteBehindJournal(File journalFile, boolean syncWrites){
+        this(journalFile, syncWrites, DEFAULT_MAXIMUM_SEGMENT_SIZE);
+    }
+
+    public WriteBehindJournal(File journalFile, boolean syncWrites, long maximumSegmentSize){
+        this.journalFile = journalFile;
+        this.syncWrites = syncWrites;
+        this.maximumSegmentSize = Math.max(1L, maximumSegmentSize);
+        this.segments = new TreeMap<>();
+        this.ticketSegments = new HashMap<>();
+    }
+
+    /**
+     * Open the journal, returning the (outstanding) writes it holds from a previous run.
+     */
+    public synchronized List<WriteBehindEntry> open() throws IOException {
+        File journalDirectory = journalFile.getAbsoluteFile().getParentFile();
+        if(!journalDirectory.exists() && !journalDirectory.mkdirs()){
+            throw new IOException("Unable to create write-behind journal directory " + journalDirectory);
+        }
+        TreeMap<Long, File> previousSegments = findSegmentFiles(journalDirectory);
+        List<File> previousFiles = new ArrayList<>(previousSegments.values());
+        if(journalFile.exists()){
+            // The (single file) journal of an earlier release
+            previousFiles.add(0, journalFile);
+        }
+        LinkedHashMap<String, WriteBehindEntry> outstanding = new LinkedHashMap<>();
+        for(File currentFile: previousFiles){
+            readSegment(currentFile, outstanding);
+        }
+        // Rewrite the outstanding writes into a new segment, and only then discard the previous ones
+        long nextSequence = previousSegments.isEmpty() ? 1 : previousSegments.lastKey() + 1;
+        this.currentSegment = openSegment(nextSequence);
+        StringBuilder records = new StringBuilder();
+        for(WriteBehindEntry currentEntry: outstanding.values()){
+            records.append(queuedRecord(currentEntry));
+            ticketSegments.put(currentEntry.getTicket(), currentSegment);
+        }
+        currentSegment.write(records.toString());
+        currentSegment.outstandingCount = outstanding.size();
+        currentSegment.force();
+        for(File currentFile: previousFiles){
+            Files.deleteIfExists(currentFile.toPath());
+        }
+        LOG.info(".open(): journalFile --> {}, segment --> {}, outstanding writes --> {}", journalFile, currentSegment.sequence, outstanding.size());
+        return(new ArrayList<>(outstanding.values()));
+    }
+
+    public synchronized void appendQueued(WriteBehindEntry entry) throws IOException {
+        if(currentSegment.outstandingCount > 0 && currentSegment.channel.size() >= maximumSegmentSize){
+            this.currentSegment = openSegment(currentSegment.sequence + 1);
+            LOG.debug(".appendQueued(): Rotated the journal, segment --> {}, segments --> {}", currentSegment.sequence, segments.size());
+        }
+        currentSegment.write(queuedRecord(entry));
+        currentSegment.force();
+        currentSegment.outstandingCount++;
+        ticketSegments.put(entry.getTicket(), currentSegment);
+    }
+
+    /**
+     * Record the id assigned to the Resource by an (applied) create.
+     */
+    public synchronized void appendCreated(WriteBehindEntry entry, String resourceId) throws IOException {
+        JournalSegment segment = ticketSegments.get(entry.getTicket());
+        if(segment == null){
+            return;
+        }
+        segment.write(CREATED_RECORD + "\t" + entry.getTicket() + "\t" + resourceId + "\n");
+        segment.force();
+    }
+
+    /**
+     * Record the completion of the writes. A segment whose writes have all completed is deleted (or, if it is the
+     * current segment, truncated). As this is done under the same lock as appendQueued(), a write accepted
+     * concurrently is never discarded.
+     */
+    public synchronized void appendDone(Collection<WriteBehindEntry> entries) throws IOException {
+        Map<JournalSegment, StringBuilder> segmentRecords = new LinkedHashMap<>();
+        for(WriteBehindEntry currentEntry: entries){
+            JournalSegment segment = ticketSegments.remove(currentEntry.getTicket());
+            if(segment == null){
+                continue;
+            }
+            segment.outstandingCount = Math.max(0, segment.outstandingCount - 1);
+            segmentRecords.computeIfAbsent(segment, key -> new StringBuilder())
+                    .append(DONE_RECORD).append('\t').append(currentEntry.getTicket()).append('\t').append(currentEntry.getStatus()).append('\n');
+        }
+        for(Map.Entry<JournalSegment, StringBuilder> currentRecords: segmentRecords.entrySet()){
+            JournalSegment segment = currentRecords.getKey();
+            if(segment.outstandingCount > 0){
+                segment.write(currentRecords.getValue().toString());
+                segment.force();
+            } else if(segment == currentSegment){
+                segment.channel.truncate(0);
+                segment.force();
+            } else {
+                discardSegment(segment);
+            }
+        }
+    }
+
+    public synchronized long getSize() throws IOException {
+        long size = 0;
+        for(JournalSegment currentSegment: segments.values()){
+            size += currentSegment.channel.size();
+        }
+        return(size);
+    }
+
+    public synchronized int getSegmentCount(){
+        return(segments.size());
+    }
+
+    public synchronized void close(){
+        for(JournalSegment currentSegment: segments.values()){
+            currentSegment.close();
+        }
+        segments.clear();
+        ticketSegments.clear();
+    }
+
+    //
+    // Segments
+    //
+
+    private TreeMap<Long, File> findSegmentFiles(File journalDirectory){
+        TreeMap<Long, File> segmentFiles = new TreeMap<>();
+        String segmentPrefix = journalFile.getName() + ".";
+        File[] candidateFiles = journalDirectory.listFiles();
+        if(candidateFiles == null){
+            return(segmentFiles);
+        }
+        for(File currentFile: candidateFiles){
+            String fileName = currentFile.getName();
+            if(!fileName.startsWith(segmentPrefix)){
+                continue;
+            }
+            try {
+                segmentFiles.put(Long.parseLong(fileName.substring(segmentPrefix.length())), currentFile);
+            } catch(NumberFormatException notASegment){
+                LOG.debug(".findSegmentFiles(): Ignoring file --> {}", currentFile);
+            }
+        }
+        return(segmentFiles);
+    }
+
+    private void readSegment(File segmentFile, LinkedHashMap<String, WriteBehindEntry> outstanding) throws IOException {
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(segmentFile), StandardCharsets.UTF_8))){
+            String line;
+            while((line = reader.readLine()) != null){
+                String[] fields = line.split("\t", 6);
+                if(fields.length == 6 && fields[0].equals(QUEUED_RECORD)){
+                    WriteBehindEntry entry = new WriteBehindEntry(fields[1], WriteBehindEntry.WriteBehindOperationEnum.valueOf(fields[2]), fields[3],
+                            fields[4].equals(NO_ID) ? null : fields[4], fields[5], System.currentTimeMillis());
+                    outstanding.put(entry.getTicket(), entry);
+                } else if(fields.length >= 2 && fields[0].equals(DONE_RECORD)){
+                    outstanding.remove(fields[1]);
+                } else if(fields.length == 3 && fields[0].equals(CREATED_RECORD) && outstanding.containsKey(fields[1])){
+                    WriteBehindEntry createdEntry = outstanding.get(fields[1]);
+                    outstanding.put(createdEntry.getTicket(), new WriteBehindEntry(createdEntry.getTicket(), WriteBehindEntry.WriteBehindOperationEnum.UPDATE,
+                            createdEntry.getResourceType(), fields[2], createdEntry.getEncodedResource(), createdEntry.getQueuedAt()));
+                } else {
+                    // A record cut short by a crash can only be the last one, and its write was never acknowledged
+                    LOG.warn(".readSegment(): Ignoring incomplete journal record, segment --> {}", segmentFile);
+                }
+            }
+        }
+    }
+
+    private JournalSegment openSegment(long sequence) throws IOException {
+        File segmentFile = new File(journalFile.getAbsoluteFile().getParentFile(), String.format("%s.%06d", journalFile.getName(), sequence));
+        JournalSegment segment = new JournalSegment(sequence, segmentFile, new RandomAccessFile(segmentFile, "rw").getChannel());
+        segment.channel.truncate(0);
+        segments.put(sequence, segment);
+        return(segment);
+    }
+
+    private void discardSegment(JournalSegment segment){
+        segments.remove(segment.sequence);
+        segment.close();
+        try {
+            Files.deleteIfExists(segment.file.toPath());
+            LOG.debug(".discardSegment(): All writes complete, segment deleted --> {}", segment.sequence);
+        } catch(IOException deleteException){
+            LOG.warn(".discardSegment(): Unable to delete journal segment --> {}, message --> {}", segment.file, deleteException.getMessage());
+        }
+    }
+
+    private String queuedRecord(WriteBehindEntry entry){
+        return(QUEUED_RECORD + "\t" + entry.getTicket() + "\t" + entry.getOperation() + "\t" + entry.getResourceType() + "\t"
+                + (entry.getResourceId() == null ? NO_ID : entry.getResourceId()) + "\t" + entry.getEncodedResource() + "\n");
+    }
+
+    private class JournalSegment {
+        private final long sequence;
+        private final File file;
+        private final FileChannel channel;
+        private int outstandingCount;
+
+        private JournalSegment(long sequence, File file, FileChannel channel){
+            this.sequence = sequence;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        private void write(String record) throws IOException {
+            ByteBuffer recordBuffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+            channel.position(channel.size());
+            while(recordBuffer.hasRemaining()){
+                channel.write(recordBuffer);
+            }
+        }
+
+        private void force() throws IOException {
+            if(syncWrites){
+                channel.force(false);
+            }
+        }
+
+        private void close(){
+            try {
+                channel.close();
+            } catch(IOException closeException){
+                LOG.warn(".close(): Unable to close write-behind journal segment --> {}, message --> {}", file, closeException.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.cache;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LadonEdgeVersionIndexTest {
+
+    private LadonEdgeVersionIndex versionIndex = new LadonEdgeVersionIndex(10, 60000L);
+
+    @Test
+    public void onlyOneUpdateOfAVersionCanReserveIt() {
+        versionIndex.record("Patient", "p1", "1", -1);
+
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "2")).isFalse();
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "1")).isTrue();
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "1")).isFalse();
+        assertThat(versionIndex.reserveForUpdate("Patient", "unknown", "1")).isFalse();
+    }
+
+    @Test
+    public void reReadingTheReservedVersionKeepsTheReservation() {
+        versionIndex.record("Patient", "p1", "1", -1);
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "1")).isTrue();
+
+        versionIndex.record("Patient", "p1", "1", -1);
+
+        assertThat(versionIndex.lookup("Patient", "p1").isReserved()).isTrue();
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "1")).isFalse();
+    }
+
+    @Test
+    public void recordingTheUpdatedVersionReleasesTheReservation() {
+        versionIndex.record("Patient", "p1", "1", -1);
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "1")).isTrue();
+
+        versionIndex.record("Patient", "p1", "2", -1);
+
+        assertThat(versionIndex.lookup("Patient", "p1").isReserved()).isFalse();
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "1")).isFalse();
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "2")).isTrue();
+    }
+
+    @Test
+    public void aFailedUpdateReleasesTheReservation() {
+        versionIndex.record("Patient", "p1", "1", -1);
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "1")).isTrue();
+
+        versionIndex.invalidate("Patient", "p1");
+        versionIndex.record("Patient", "p1", "1", -1);
+
+        assertThat(versionIndex.reserveForUpdate("Patient", "p1", "1")).isTrue();
+    }
+
+    @Test
+    public void evictionKeepsReservedEntries() {
+        versionIndex.record("Patient", "p0", "1", -1);
+        assertThat(versionIndex.reserveForUpdate("Patient", "p0", "1")).isTrue();
+
+        for(int id = 1; id <= 50; id++){
+            versionIndex.record("Patient", "p" + id, "1", -1);
+        }
+
+        assertThat(versionIndex.getSize()).isLessThanOrEqualTo(10);
+        assertThat(versionIndex.lookup("Patient", "p0").isReserved()).isTrue();
+        assertThat(versionIndex.lookup("Patient", "p50")).isNotNull();
+        assertThat(versionIndex.reserveForUpdate("Patient", "p0", "1")).isFalse();
+    }
+}
@@ -0,0 +1,87 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.deadline;
+
+import net.fhirfactory.pegacorn.ladon.edge.answer.configuration.LadonEdgeAnswerConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LadonEdgeDeadlineServiceTest {
+
+    private LadonEdgeDeadlineService deadlineService;
+
+    @Before
+    public void setUp() {
+        deadlineService = new LadonEdgeDeadlineService(new LadonEdgeAnswerConfiguration());
+        deadlineService.initialise();
+    }
+
+    @After
+    public void tearDown() {
+        RequestDeadline.clearCurrent();
+        Thread.interrupted();
+        deadlineService.shutdown();
+    }
+
+    @Test
+    public void callsWithoutADeadlineAreSimplyMade() {
+        RequestDeadline.clearCurrent();
+
+        String result = deadlineService.callWithinDeadline(() -> "result", "a test call");
+
+        assertThat(result).isEqualTo("result");
+        assertThat(deadlineService.getTimedOutCallCount()).isZero();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+
+    @Test
+    public void interruptsACallStillInProgressAtTheDeadline() {
+        RequestDeadline.setCurrent(RequestDeadline.after(50L));
+
+        assertThatThrownBy(() -> deadlineService.callWithinDeadline(() -> {
+            try {
+                Thread.sleep(10000L);
+                return("result");
+            } catch(InterruptedException interruptedException){
+                throw new IllegalStateException("interrupted", interruptedException);
+            }
+        }, "a test call")).isInstanceOf(DeadlineExceededException.class);
+
+        assertThat(deadlineService.getTimedOutCallCount()).isEqualTo(1);
+        assertThat(deadlineService.getCallsInProgress()).isZero();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+
+    @Test
+    public void keepsTheResultOfACallCompletedAsTheDeadlinePassed() {
+        RequestDeadline.setCurrent(RequestDeadline.after(20L));
+
+        // The call ignores the interrupt, so completes (successfully) only once the deadline alarm has fired
+        String result = deadlineService.callWithinDeadline(() -> {
+            while(!Thread.currentThread().isInterrupted()){
+                Thread.yield();
+            }
+            return("result");
+        }, "a test call");
+
+        assertThat(result).isEqualTo("result");
+        assertThat(deadlineService.getTimedOutCallCount()).isZero();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+
+    @Test
+    public void doesNotMakeACallOnceTheDeadlineHasPassed() {
+        RequestDeadline.setCurrent(new RequestDeadline(System.currentTimeMillis() - 1L));
+        AtomicBoolean called = new AtomicBoolean(false);
+
+        assertThatThrownBy(() -> deadlineService.callWithinDeadline(() -> called.getAndSet(true), "a test call"))
+                .isInstanceOf(DeadlineExceededException.class);
+
+        assertThat(called.get()).isFalse();
+        assertThat(deadlineService.getExpiredBeforeCallCount()).isEqualTo(1);
+    }
+}
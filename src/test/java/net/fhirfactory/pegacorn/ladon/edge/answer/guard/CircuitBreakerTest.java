@@ -0,0 +1,112 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.guard;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CircuitBreakerTest {
+
+    private AtomicLong now = new AtomicLong(0);
+
+    private CircuitBreaker breaker = new CircuitBreaker(10, 4, 50, 1000L, 80, 30000L, 2, now::get);
+
+    @Test
+    public void opensOnceTheFailureRateIsReached() {
+        recordCalls(false, false, true);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.CLOSED);
+
+        recordCalls(true);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        assertThat(breaker.getRetryAfter()).isEqualTo(30000L);
+        assertThat(breaker.getRefusedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void opensOnceTheSlowCallRateIsReached() {
+        for(int call = 0; call < 5; call++){
+            assertThat(breaker.tryAcquirePermission()).isTrue();
+            breaker.recordOutcome(call == 0 ? 10L : 1500L, false);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.OPEN);
+        assertThat(breaker.getSlowCallCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void oldOutcomesLeaveTheWindow() {
+        recordCalls(true, false, false, false, false, false, false, false, false, false);
+        recordCalls(false, false, false, true, true, true, true);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.CLOSED);
+    }
+
+    @Test
+    public void closesAfterSuccessfulTrialCalls() {
+        recordCalls(true, true, true, true);
+        now.addAndGet(30000L);
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.HALF_OPEN);
+
+        breaker.recordOutcome(10L, false);
+        breaker.recordOutcome(10L, false);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.CLOSED);
+        recordCalls(true, false, false);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.CLOSED);
+    }
+
+    @Test
+    public void reopensOnAFailedTrialCall() {
+        recordCalls(true, true, true, true);
+        now.addAndGet(30000L);
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.recordOutcome(10L, true);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.OPEN);
+        assertThat(breaker.getOpenedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void cancelledCallsAreNotCounted() {
+        for(int call = 0; call < 10; call++){
+            assertThat(breaker.tryAcquirePermission()).isTrue();
+            breaker.recordCancelled(5L);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.CLOSED);
+        assertThat(breaker.getCancelledCount()).isEqualTo(10);
+        assertThat(breaker.getCallCount()).isZero();
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.recordCancelled(1500L);
+        assertThat(breaker.getSlowCallCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void aCancelledTrialCallHandsBackItsPermission() {
+        recordCalls(true, true, true, true);
+        now.addAndGet(30000L);
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.recordCancelled(5L);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CircuitStateEnum.HALF_OPEN);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+    }
+
+    private void recordCalls(boolean... failures){
+        for(boolean failed: failures){
+            assertThat(breaker.tryAcquirePermission()).isTrue();
+            breaker.recordOutcome(10L, failed);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares HAPI's encoding of a large searchset Bundle (into one String, which is then written) with the
+ * StreamingBundleWriter (entry by entry): the time to the first byte written, the total time, the bytes allocated
+ * and the largest single buffer the encoding holds (the whole document for HAPI's path, none for the streamed path,
+ * which only holds one entry's encoding at a time).
+ *
+ * The first rounds include the JIT warm-up, compare the later ones. The streamed first byte should arrive after a
+ * single entry has been encoded, rather than after all ENTRY_COUNT of them.
+ */
+public class StreamingBundleWriterBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingBundleWriterBenchmark.class);
+
+    private static final int ENTRY_COUNT = 20000;
+    private static final int ROUNDS = 5;
+
+    private FhirContext fhirContext = FhirContext.forR4();
+
+    @Test
+    public void largeSearchsetEncoding() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            measureHapiEncoding(buildSearchOutcome());
+            measureStreamedEncoding(buildSearchOutcome());
+        }
+    }
+
+    private void measureHapiEncoding(Bundle searchOutcome) throws IOException {
+        TimingWriter output = new TimingWriter();
+        long allocatedBefore = getAllocatedBytes();
+        long started = System.nanoTime();
+        String encodedBundle = fhirContext.newJsonParser().encodeResourceToString(searchOutcome);
+        output.write(encodedBundle);
+        report("HAPI (encode to String)", started, output, getAllocatedBytes() - allocatedBefore, encodedBundle.length() * 2L);
+    }
+
+    private void measureStreamedEncoding(Bundle searchOutcome) throws IOException {
+        TimingWriter output = new TimingWriter();
+        long allocatedBefore = getAllocatedBytes();
+        long started = System.nanoTime();
+        new StreamingBundleWriter(fhirContext).write(searchOutcome, output);
+        report("StreamingBundleWriter", started, output, getAllocatedBytes() - allocatedBefore, 0);
+    }
+
+    private void report(String label, long started, TimingWriter output, long allocatedBytes, long documentBufferBytes) {
+        long finished = System.nanoTime();
+        LOG.info(".report(): encoding --> {}, first byte (ms) --> {}, complete (ms) --> {}, allocated (MB) --> {}, document buffer (MB) --> {}, output (MB) --> {}",
+                label, String.format("%.2f", (output.firstWriteAt - started) / 1e6), String.format("%.2f", (finished - started) / 1e6),
+                String.format("%.1f", allocatedBytes / 1e6), String.format("%.1f", documentBufferBytes / 1e6), String.format("%.1f", output.charCount / 1e6));
+        assertThat(output.charCount).isPositive();
+    }
+
+    private long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return (threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()));
+    }
+
+    private Bundle buildSearchOutcome() {
+        Bundle searchOutcome = new Bundle();
+        searchOutcome.setId("search-outcome");
+        searchOutcome.setType(Bundle.BundleType.SEARCHSET);
+        searchOutcome.setTotal(ENTRY_COUNT);
+        searchOutcome.addLink().setRelation("self").setUrl("http://localhost:8080/pegacorn/fhir/r4/DocumentReference?subject=Patient/p1");
+        for (int counter = 0; counter < ENTRY_COUNT; counter++) {
+            DocumentReference documentReference = new DocumentReference();
+            documentReference.setId("DocumentReference/d" + counter);
+            documentReference.setStatus(Enumerations.DocumentReferenceStatus.CURRENT);
+            documentReference.getSubject().setReference("Patient/p1");
+            documentReference.setDate(new Date(1500000000000L + counter * 3600000L));
+            documentReference.setDescription("Discharge summary " + counter + " for the admission to the cardiology ward");
+            documentReference.addContent().getAttachment().setContentType("application/pdf").setUrl("Binary/b" + counter).setTitle("Discharge summary " + counter);
+            Bundle.BundleEntryComponent entry = searchOutcome.addEntry();
+            entry.setFullUrl("http://localhost:8080/pegacorn/fhir/r4/DocumentReference/d" + counter);
+            entry.setResource(documentReference);
+            entry.getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+        }
+        return (searchOutcome);
+    }
+
+    /**
+     * Discards what is written, noting when the first character arrived and how many were written.
+     */
+    private static class TimingWriter extends Writer {
+        private long firstWriteAt;
+        private long charCount;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count(length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            count(length);
+        }
+
+        @Override
+        public void write(int character) {
+            count(1);
+        }
+
+        private void count(int length) {
+            if (charCount == 0 && length > 0) {
+                firstWriteAt = System.nanoTime();
+            }
+            charCount += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
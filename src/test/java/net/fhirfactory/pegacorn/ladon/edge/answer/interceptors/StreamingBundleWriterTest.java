@@ -0,0 +1,73 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.interceptors;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingBundleWriterTest {
+
+    private FhirContext fhirContext;
+
+    @Before
+    public void setUp() {
+        fhirContext = FhirContext.forR4();
+    }
+
+    @Test
+    public void streamedBundleMatchesHapiEncoding() throws Exception {
+        Bundle searchOutcome = buildSearchOutcome(250);
+        String hapiEncoding = fhirContext.newJsonParser().encodeResourceToString(searchOutcome);
+
+        StringWriter streamedEncoding = new StringWriter();
+        StreamingBundleWriter bundleWriter = new StreamingBundleWriter(fhirContext);
+        assertThat(bundleWriter.canStream(searchOutcome)).isTrue();
+        bundleWriter.write(buildSearchOutcome(250), streamedEncoding);
+
+        assertThat(streamedEncoding.toString()).isEqualTo(hapiEncoding);
+    }
+
+    @Test
+    public void emptyBundleIsStreamed() throws Exception {
+        Bundle searchOutcome = buildSearchOutcome(0);
+        String hapiEncoding = fhirContext.newJsonParser().encodeResourceToString(searchOutcome);
+
+        StringWriter streamedEncoding = new StringWriter();
+        new StreamingBundleWriter(fhirContext).write(buildSearchOutcome(0), streamedEncoding);
+
+        assertThat(streamedEncoding.toString()).isEqualTo(hapiEncoding);
+    }
+
+    @Test
+    public void transactionEntriesAreNotStreamed() {
+        Bundle transaction = new Bundle();
+        transaction.setType(Bundle.BundleType.TRANSACTION);
+        transaction.addEntry().setResource(new Patient()).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+
+        assertThat(new StreamingBundleWriter(fhirContext).canStream(transaction)).isFalse();
+    }
+
+    private Bundle buildSearchOutcome(int entryCount) {
+        Bundle searchOutcome = new Bundle();
+        searchOutcome.setId("search-outcome");
+        searchOutcome.setType(Bundle.BundleType.SEARCHSET);
+        searchOutcome.setTotal(entryCount);
+        searchOutcome.addLink().setRelation("self").setUrl("http://localhost:8080/pegacorn/fhir/r4/Patient?name=van");
+        for (int counter = 0; counter < entryCount; counter++) {
+            Patient patient = new Patient();
+            patient.setId("Patient/p" + counter);
+            patient.addName().setFamily("van de \"Heuvel\"").addGiven("Pieter" + counter);
+            patient.setActive(true);
+            Bundle.BundleEntryComponent entry = searchOutcome.addEntry();
+            entry.setFullUrl("http://localhost:8080/pegacorn/fhir/r4/Patient/p" + counter);
+            entry.setResource(patient);
+            entry.getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+        }
+        return (searchOutcome);
+    }
+}
@@ -0,0 +1,53 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.patch;
+
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JsonPatchApplierTest {
+
+    private static final String TASK = "{\"resourceType\":\"Task\",\"id\":\"1\",\"status\":\"requested\",\"note\":[{\"text\":\"a\"},{\"text\":\"b\"}]}";
+
+    private JsonPatchApplier applier = new JsonPatchApplier();
+
+    @Test
+    public void operationsAreAppliedInOrder() {
+        JSONObject task = new JSONObject(TASK);
+        applier.apply(task, new JSONArray("[" +
+                "{\"op\":\"test\",\"path\":\"/status\",\"value\":\"requested\"}," +
+                "{\"op\":\"replace\",\"path\":\"/status\",\"value\":\"completed\"}," +
+                "{\"op\":\"add\",\"path\":\"/note/1\",\"value\":{\"text\":\"inserted\"}}," +
+                "{\"op\":\"add\",\"path\":\"/note/-\",\"value\":{\"text\":\"last\"}}," +
+                "{\"op\":\"remove\",\"path\":\"/note/0\"}," +
+                "{\"op\":\"copy\",\"from\":\"/status\",\"path\":\"/businessStatus~1text\"}]"));
+
+        assertThat(task.getString("status")).isEqualTo("completed");
+        assertThat(task.getJSONArray("note").length()).isEqualTo(3);
+        assertThat(task.getJSONArray("note").getJSONObject(0).getString("text")).isEqualTo("inserted");
+        assertThat(task.getJSONArray("note").getJSONObject(2).getString("text")).isEqualTo("last");
+        assertThat(task.getString("businessStatus/text")).isEqualTo("completed");
+    }
+
+    @Test
+    public void failedTestOrMissingPathIsUnprocessable() {
+        assertThatThrownBy(() -> applier.apply(new JSONObject(TASK), new JSONArray("[{\"op\":\"test\",\"path\":\"/status\",\"value\":\"completed\"}]")))
+                .isInstanceOf(UnprocessableEntityException.class);
+        assertThatThrownBy(() -> applier.apply(new JSONObject(TASK), new JSONArray("[{\"op\":\"remove\",\"path\":\"/note/5\"}]")))
+                .isInstanceOf(UnprocessableEntityException.class);
+        assertThatThrownBy(() -> applier.apply(new JSONObject(TASK), new JSONArray("[{\"op\":\"move\",\"from\":\"/note\",\"path\":\"/note/0/text\"}]")))
+                .isInstanceOf(UnprocessableEntityException.class);
+    }
+
+    @Test
+    public void malformedOperationIsInvalid() {
+        assertThatThrownBy(() -> applier.apply(new JSONObject(TASK), new JSONArray("[{\"op\":\"frobnicate\",\"path\":\"/status\"}]")))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> applier.apply(new JSONObject(TASK), new JSONArray("[{\"op\":\"add\",\"path\":\"/status\"}]")))
+                .isInstanceOf(InvalidRequestException.class);
+    }
+}
@@ -0,0 +1,78 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.projection;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Scanner;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the encode time and payload size of the PatientProxyTest sample Patient in full, with the projection
+ * left to HAPI's encoder alone (as before) and with the ResourceProjector pruning it before encoding.
+ *
+ * Each "encoder" / "projected" pair should report the same payload size (the projection must not change what is
+ * written), the projected encode time including the cost of the projection itself.
+ */
+public class ResourceProjectorBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceProjectorBenchmark.class);
+
+    private static final int WARMUP_ENCODES = 20000;
+    private static final int MEASURED_ENCODES = 100000;
+
+    private FhirContext fhirContext = FhirContext.forR4();
+
+    @Test
+    public void encodeTimeAndPayloadSize() throws Exception {
+        Patient patient = (Patient) fhirContext.newJsonParser().parseResource(loadSample("/samples/patient-f001.json"));
+        ResourceProjector projector = new ResourceProjector(fhirContext);
+        ResourceProjection summary = ResourceProjection.fromParameters(Collections.singletonMap("_summary", new String[]{"true"}));
+        ResourceProjection nameAndIdentifier = ResourceProjection.fromParameters(Collections.singletonMap("_elements", new String[]{"name,identifier"}));
+
+        measure("full resource", () -> fhirContext.newJsonParser().encodeResourceToString(patient));
+        measure("_summary=true, encoder", () -> fhirContext.newJsonParser().setSummaryMode(true).encodeResourceToString(patient));
+        measure("_summary=true, projected", () -> fhirContext.newJsonParser().setSummaryMode(true).encodeResourceToString(projector.project(patient, summary)));
+        measure("_elements, encoder", () -> encodeElements(patient));
+        measure("_elements, projected", () -> encodeElements(projector.project(patient, nameAndIdentifier)));
+    }
+
+    private String encodeElements(Resource resource) {
+        IParser parser = fhirContext.newJsonParser();
+        parser.setEncodeElements(new HashSet<>(Arrays.asList("Patient.name", "Patient.identifier")));
+        return (parser.encodeResourceToString(resource));
+    }
+
+    private void measure(String label, Supplier<String> encoder) {
+        long checksum = 0;
+        for (int counter = 0; counter < WARMUP_ENCODES; counter++) {
+            checksum += encoder.get().length();
+        }
+        long started = System.nanoTime();
+        for (int counter = 0; counter < MEASURED_ENCODES; counter++) {
+            checksum += encoder.get().length();
+        }
+        long elapsed = System.nanoTime() - started;
+        int payloadSize = encoder.get().getBytes(StandardCharsets.UTF_8).length;
+        LOG.info(".measure(): encoding --> {}, time per encode (us) --> {}, payload (bytes) --> {}", label, String.format("%.2f", elapsed / 1000.0 / MEASURED_ENCODES), payloadSize);
+        assertThat(checksum).isPositive();
+    }
+
+    private String loadSample(String samplePath) {
+        InputStream sampleStream = getClass().getResourceAsStream(samplePath);
+        assertThat(sampleStream).isNotNull();
+        try (Scanner sampleScanner = new Scanner(sampleStream, StandardCharsets.UTF_8.name())) {
+            return (sampleScanner.useDelimiter("\\A").next());
+        }
+    }
+}
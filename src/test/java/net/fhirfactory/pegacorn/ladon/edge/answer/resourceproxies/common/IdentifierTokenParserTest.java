@@ -0,0 +1,68 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
+
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.r4.model.Identifier;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdentifierTokenParserTest {
+
+    @Test
+    public void plainTokenMapsToSystemAndValue() {
+        Identifier identifier = IdentifierTokenParser.parseIdentifier(new TokenParam("urn:oid:2.16.840.1.113883.2.4.6.3", "738472983"));
+
+        assertThat(identifier.getSystem()).isEqualTo("urn:oid:2.16.840.1.113883.2.4.6.3");
+        assertThat(identifier.getValue()).isEqualTo("738472983");
+        assertThat(identifier.hasType()).isFalse();
+    }
+
+    @Test
+    public void typedTokenMapsToTypeAndValue() {
+        Identifier identifier = IdentifierTokenParser.parseIdentifier(new TokenParam("http://terminology.hl7.org/CodeSystem/v2-0203", "MR|12345"));
+
+        assertThat(identifier.hasSystem()).isFalse();
+        assertThat(identifier.getValue()).isEqualTo("12345");
+        assertThat(identifier.getType().getCodingFirstRep().getSystem()).isEqualTo("http://terminology.hl7.org/CodeSystem/v2-0203");
+        assertThat(identifier.getType().getCodingFirstRep().getCode()).isEqualTo("MR");
+        assertThat(identifier.getType().getText()).isEqualTo("http://terminology.hl7.org/CodeSystem/v2-0203:MR");
+    }
+
+    @Test
+    public void identifierTypeCodesAreSharedButNotTheirTypes() {
+        Identifier first = IdentifierTokenParser.parseIdentifier(new TokenParam("http://terminology.hl7.org/CodeSystem/v2-0203", "PI|1"));
+        Identifier second = IdentifierTokenParser.parseIdentifier(new TokenParam("http://terminology.hl7.org/CodeSystem/v2-0203", "PI|2"));
+        Identifier other = IdentifierTokenParser.parseIdentifier(new TokenParam("http://terminology.hl7.org/CodeSystem/v2-0203", "PIX|3"));
+
+        assertThat(second.getType()).isNotSameAs(first.getType());
+        assertThat(second.getType().getCodingFirstRep().getCode()).isSameAs(first.getType().getCodingFirstRep().getCode());
+        assertThat(other.getType().getCodingFirstRep().getCode()).isEqualTo("PIX");
+    }
+
+    @Test
+    public void modifyingAnIdentifierTypeDoesNotAffectOthers() {
+        Identifier first = IdentifierTokenParser.parseIdentifier(new TokenParam("http://terminology.hl7.org/CodeSystem/v2-0203", "DL|1"));
+        first.getType().setText("modified");
+        first.getType().getCodingFirstRep().setCode("XX");
+        Identifier second = IdentifierTokenParser.parseIdentifier(new TokenParam("http://terminology.hl7.org/CodeSystem/v2-0203", "DL|2"));
+
+        assertThat(second.getType().getText()).isEqualTo("http://terminology.hl7.org/CodeSystem/v2-0203:DL");
+        assertThat(second.getType().getCodingFirstRep().getCode()).isEqualTo("DL");
+    }
+
+    @Test
+    public void codesOfOtherSystemsAreNotShared() {
+        Identifier first = IdentifierTokenParser.parseIdentifier(new TokenParam("urn:example:client-types", "ABC|1"));
+        Identifier second = IdentifierTokenParser.parseIdentifier(new TokenParam("urn:example:client-types", "ABC|2"));
+
+        assertThat(second.getType().getCodingFirstRep().getCode()).isEqualTo("ABC");
+        assertThat(second.getType().getCodingFirstRep().getCode()).isNotSameAs(first.getType().getCodingFirstRep().getCode());
+    }
+
+    @Test
+    public void onlyTheFirstValueSegmentIsUsed() {
+        Identifier identifier = IdentifierTokenParser.parseIdentifier(new TokenParam("http://terminology.hl7.org/CodeSystem/v2-0203", "MR|12345|ignored"));
+
+        assertThat(identifier.getValue()).isEqualTo("12345");
+    }
+}
@@ -0,0 +1,74 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.resourceproxies.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateCoalescerTest {
+
+    @Test
+    public void anIsolatedUpdateIsAppliedWithoutWaitingForTheWindow() {
+        UpdateCoalescer<String, String> coalescer = new UpdateCoalescer<>(10000L);
+
+        long started = System.currentTimeMillis();
+        String outcome = coalescer.submit("Task/1", "first", update -> "applied:" + update, (applied, appliedOutcome) -> "superseded");
+
+        assertThat(outcome).isEqualTo("applied:first");
+        assertThat(System.currentTimeMillis() - started).isLessThan(5000L);
+        assertThat(coalescer.getAppliedUpdateCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void supersededUpdatesReceiveTheAppliedUpdate() throws Exception {
+        UpdateCoalescer<String, String> coalescer = new UpdateCoalescer<>(200L);
+        CountDownLatch firstApplying = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        List<String> appliedUpdates = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            Future<String> first = callers.submit(() -> coalescer.submit("Task/1", "first", update -> {
+                appliedUpdates.add(update);
+                firstApplying.countDown();
+                awaitQuietly(releaseFirst);
+                return("applied:" + update);
+            }, (applied, appliedOutcome) -> "superseded by " + applied));
+            assertThat(firstApplying.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> second = callers.submit(() -> coalescer.submit("Task/1", "second", update -> {
+                appliedUpdates.add(update);
+                return("applied:" + update);
+            }, (applied, appliedOutcome) -> "superseded by " + applied + ", " + appliedOutcome));
+            Thread.sleep(50L);
+            Future<String> third = callers.submit(() -> coalescer.submit("Task/1", "third", update -> {
+                appliedUpdates.add(update);
+                return("applied:" + update);
+            }, (applied, appliedOutcome) -> "superseded by " + applied + ", " + appliedOutcome));
+            Thread.sleep(50L);
+            releaseFirst.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("applied:first");
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("superseded by third, applied:third");
+            assertThat(third.get(5, TimeUnit.SECONDS)).isEqualTo("applied:third");
+            assertThat(appliedUpdates).containsExactly("first", "third");
+            assertThat(coalescer.getCollapseRatio()).isGreaterThan(0.0);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch(InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
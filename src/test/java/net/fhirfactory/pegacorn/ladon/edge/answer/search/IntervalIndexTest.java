@@ -0,0 +1,61 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Procedure;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntervalIndexTest {
+    private IntervalIndex intervalIndex;
+
+    @Before
+    public void setUp() {
+        intervalIndex = new IntervalIndex(null,
+                resource -> new long[]{((Procedure) resource).getPerformedDateTimeType().getValue().getTime(), ((Procedure) resource).getPerformedDateTimeType().getValue().getTime()},
+                resource -> ((Procedure) resource).hasSubject() ? Collections.singleton(((Procedure) resource).getSubject().getReference()) : null,
+                1000, 60000L);
+    }
+
+    @Test
+    public void invalidationOnlyUncoversTheResourcesPartitions() {
+        intervalIndex.record("first", true, 0, 1000, Arrays.asList(procedure("a", "Patient/1", 100)), intervalIndex.getInvalidationGeneration());
+        intervalIndex.record("second", true, 0, 1000, Arrays.asList(procedure("b", "Patient/2", 100)), intervalIndex.getInvalidationGeneration());
+        intervalIndex.record("empty", true, 0, 1000, Collections.emptyList(), intervalIndex.getInvalidationGeneration());
+
+        intervalIndex.invalidate(procedure("c", "Patient/1", 500));
+
+        assertThat(intervalIndex.getUnresolvedPartitionCount()).isEqualTo(1);
+        assertThat(intervalIndex.query("first", 0, 1000)).isNull();
+        assertThat(intervalIndex.query("second", 0, 1000)).containsExactly("b");
+        assertThat(intervalIndex.query("empty", 0, 1000)).isNull();
+    }
+
+    @Test
+    public void resourcesWithUnknownValuesUncoverEveryPartition() {
+        intervalIndex.record("first", true, 0, 1000, Arrays.asList(procedure("a", "Patient/1", 100)), intervalIndex.getInvalidationGeneration());
+        intervalIndex.record("modified", false, 0, 1000, Arrays.asList(procedure("b", "Patient/2", 100)), intervalIndex.getInvalidationGeneration());
+
+        intervalIndex.invalidate(procedure("c", null, 500));
+
+        assertThat(intervalIndex.query("first", 0, 1000)).isNull();
+        assertThat(intervalIndex.query("modified", 0, 1000)).isNull();
+    }
+
+    private static Resource procedure(String id, String subject, long performed) {
+        Procedure procedure = new Procedure();
+        procedure.setId(id);
+        if(subject != null){
+            procedure.setSubject(new Reference(subject));
+        }
+        procedure.setPerformed(new DateTimeType(new Date(performed)));
+        return(procedure);
+    }
+}
@@ -0,0 +1,86 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractList;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the cost of a one hour range query against an IntervalPartition holding from 10k up to (by default)
+ * 1M intervals - one starting every minute, each lasting up to an hour - and again with a few of them lasting the
+ * whole span (e.g. a long running Procedure), which must not make the queries scan the partition. Building the 10M
+ * point needs a heap of several GB, so it is only included when "benchmark.intervals.maximum" is set to 10000000
+ * (with e.g. -DargLine=-Xmx6g).
+ *
+ * The time per query should grow with the logarithm of the interval count (and the number of matches), with or
+ * without the long intervals.
+ */
+public class IntervalPartitionBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(IntervalPartitionBenchmark.class);
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final int QUERY_COUNT = 200000;
+    private static final int LONG_INTERVAL_COUNT = 5;
+
+    @Test
+    public void queryCostScaling() {
+        int maximumIntervals = Integer.getInteger("benchmark.intervals.maximum", 1000000);
+        for (int intervalCount = 10000; intervalCount <= maximumIntervals; intervalCount *= 10) {
+            measureQueries(intervalCount, 0);
+            measureQueries(intervalCount, LONG_INTERVAL_COUNT);
+        }
+    }
+
+    private void measureQueries(int intervalCount, int longIntervalCount) {
+        IntervalIndex.IntervalPartition partition = buildPartition(intervalCount, longIntervalCount);
+        long span = intervalCount * MINUTE;
+        Random queryStarts = new Random(intervalCount);
+        long matches = 0;
+        for (int counter = 0; counter < QUERY_COUNT; counter++) {
+            long rangeStart = (long) (queryStarts.nextDouble() * (span - HOUR));
+            matches += partition.findOverlapping(rangeStart, rangeStart + HOUR).size();
+        }
+        long started = System.nanoTime();
+        for (int counter = 0; counter < QUERY_COUNT; counter++) {
+            long rangeStart = (long) (queryStarts.nextDouble() * (span - HOUR));
+            matches += partition.findOverlapping(rangeStart, rangeStart + HOUR).size();
+        }
+        long elapsed = System.nanoTime() - started;
+        LOG.info(".measureQueries(): intervals --> {}, long intervals --> {}, time per query (us) --> {}, matches per query --> {}", intervalCount, longIntervalCount,
+                String.format("%.2f", elapsed / 1000.0 / QUERY_COUNT), String.format("%.1f", matches / (2.0 * QUERY_COUNT)));
+        assertThat(partition.getSize()).isEqualTo(intervalCount);
+    }
+
+    private IntervalIndex.IntervalPartition buildPartition(int intervalCount, int longIntervalCount) {
+        long[] starts = new long[intervalCount];
+        long[] ends = new long[intervalCount];
+        Random durations = new Random(42);
+        for (int index = 0; index < intervalCount; index++) {
+            starts[index] = index * MINUTE;
+            ends[index] = starts[index] + (long) (durations.nextDouble() * HOUR);
+        }
+        // Spread the long intervals through the (start ordered) partition, each lasting until the end of the span
+        for (int counter = 0; counter < longIntervalCount; counter++) {
+            int index = (int) ((long) intervalCount * counter / longIntervalCount);
+            ends[index] = intervalCount * MINUTE;
+        }
+        IntervalIndex.IntervalPartition partition = new IntervalIndex.IntervalPartition();
+        partition.replaceRange(0, intervalCount * MINUTE, new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return ("Procedure/" + index);
+            }
+
+            @Override
+            public int size() {
+                return (intervalCount);
+            }
+        }, starts, ends);
+        return (partition);
+    }
+}
@@ -0,0 +1,63 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntervalPartitionTest {
+
+    @Test
+    public void overlappingIntervalsAreFound() {
+        IntervalIndex.IntervalPartition partition = new IntervalIndex.IntervalPartition();
+        partition.replaceRange(0, 1000, Arrays.asList("point", "period", "open", "later"),
+                new long[]{100, 50, 10, 900}, new long[]{100, 400, Long.MAX_VALUE, 950});
+
+        assertThat(partition.findOverlapping(300, 500)).containsExactlyInAnyOrder("period", "open");
+        assertThat(partition.findOverlapping(100, 100)).containsExactlyInAnyOrder("point", "period", "open");
+        assertThat(partition.findOverlapping(960, 990)).containsExactly("open");
+    }
+
+    @Test
+    public void longIntervalsAreFoundAmongShortOnes() {
+        IntervalIndex.IntervalPartition partition = new IntervalIndex.IntervalPartition();
+        partition.replaceRange(0, 10000, Arrays.asList("long", "a", "b", "c", "d", "e"),
+                new long[]{0, 1000, 2000, 3000, 4000, 5000}, new long[]{9000, 1010, 2010, 3010, 4010, 5010});
+
+        assertThat(partition.findOverlapping(3005, 3100)).containsExactly("long", "c");
+        assertThat(partition.findOverlapping(6000, 7000)).containsExactly("long");
+        assertThat(partition.findOverlapping(9500, 9600)).isEmpty();
+
+        partition.remove("long");
+
+        assertThat(partition.findOverlapping(6000, 7000)).isEmpty();
+        assertThat(partition.findOverlapping(4000, 4000)).containsExactly("d");
+    }
+
+    @Test
+    public void replacingARangeDiscardsStaleIntervals() {
+        IntervalIndex.IntervalPartition partition = new IntervalIndex.IntervalPartition();
+        partition.replaceRange(0, 1000, Arrays.asList("a", "b"), new long[]{100, 800}, new long[]{100, 800});
+        partition.replaceRange(0, 500, Arrays.asList("c"), new long[]{200}, new long[]{200});
+
+        assertThat(partition.getSize()).isEqualTo(2);
+        assertThat(partition.findOverlapping(0, 1000)).containsExactly("c", "b");
+    }
+
+    @Test
+    public void coverageMergesAndIsSplitByUncover() {
+        IntervalIndex.IntervalPartition partition = new IntervalIndex.IntervalPartition();
+        partition.cover(0, 99, 10, 0);
+        partition.cover(100, 199, 20, 0);
+
+        assertThat(partition.isCovered(50, 150, 0)).isTrue();
+        assertThat(partition.isCovered(50, 150, 15)).isFalse();
+
+        partition.uncover(120, 130);
+
+        assertThat(partition.isCovered(0, 119, 0)).isTrue();
+        assertThat(partition.isCovered(110, 140, 0)).isFalse();
+        assertThat(partition.isCovered(131, 199, 0)).isTrue();
+    }
+}
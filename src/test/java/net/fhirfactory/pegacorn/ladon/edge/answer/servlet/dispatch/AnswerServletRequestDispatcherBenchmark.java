@@ -0,0 +1,133 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.servlet.dispatch;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A load test of the AnswerServletRequestDispatcher modes: CLIENT_COUNT concurrent requests, each blocking (as on a
+ * slow VirtualDB accessor) for ACCESSOR_LATENCY milliseconds, arrive at a container with CONTAINER_THREADS worker
+ * threads. It reports the most requests blocked on the accessor at once (the concurrency ceiling) and the time to
+ * answer them all, for the synchronous mode and the asynchronous (platform and virtual thread) modes.
+ *
+ * The synchronous ceiling is CONTAINER_THREADS. The asynchronous modes should reach WORKER_POOL_SIZE (platform
+ * threads) or CLIENT_COUNT (virtual threads); a lower ceiling means requests are queuing in front of the accessor.
+ */
+public class AnswerServletRequestDispatcherBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(AnswerServletRequestDispatcherBenchmark.class);
+
+    private static final int CONTAINER_THREADS = 32;
+    private static final int CLIENT_COUNT = 2000;
+    private static final long ACCESSOR_LATENCY = 100L;
+    private static final int WORKER_POOL_SIZE = 512;
+
+    @Test
+    public void concurrencyCeiling() throws Exception {
+        for (AnswerServletDispatchModeEnum currentMode : AnswerServletDispatchModeEnum.values()) {
+            measure(currentMode);
+        }
+    }
+
+    private void measure(AnswerServletDispatchModeEnum mode) throws Exception {
+        AnswerServletRequestDispatcher dispatcher = new AnswerServletRequestDispatcher(mode, WORKER_POOL_SIZE, CLIENT_COUNT, CLIENT_COUNT, 60000L, null);
+        ExecutorService containerThreads = Executors.newFixedThreadPool(CONTAINER_THREADS);
+        CountDownLatch answered = new CountDownLatch(CLIENT_COUNT);
+        AtomicInteger blockedOnAccessor = new AtomicInteger(0);
+        AtomicInteger maximumBlockedOnAccessor = new AtomicInteger(0);
+        AnswerServletRequestHandler accessorCall = (request, response) -> {
+            maximumBlockedOnAccessor.accumulateAndGet(blockedOnAccessor.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(ACCESSOR_LATENCY);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            } finally {
+                blockedOnAccessor.decrementAndGet();
+            }
+        };
+        long started = System.nanoTime();
+        try {
+            for (int counter = 0; counter < CLIENT_COUNT; counter++) {
+                containerThreads.execute(() -> {
+                    AtomicBoolean requestAnswered = new AtomicBoolean(false);
+                    Runnable answer = () -> {
+                        if (requestAnswered.compareAndSet(false, true)) {
+                            answered.countDown();
+                        }
+                    };
+                    try {
+                        dispatcher.dispatch(stubRequest(answer), stubResponse(answer), accessorCall);
+                        if (!dispatcher.isAsynchronous()) {
+                            answer.run();
+                        }
+                    } catch (Exception dispatchException) {
+                        throw new IllegalStateException(dispatchException);
+                    }
+                });
+            }
+            assertThat(answered.await(5, TimeUnit.MINUTES)).isTrue();
+        } finally {
+            containerThreads.shutdownNow();
+            dispatcher.shutdown();
+        }
+        long elapsed = System.nanoTime() - started;
+        LOG.info(".measure(): mode --> {}, concurrent accessor calls --> {}, elapsed (s) --> {}, requests --> {}, rejected --> {}", dispatcher.getDispatchMode(),
+                maximumBlockedOnAccessor.get(), String.format("%.2f", elapsed / 1e9), CLIENT_COUNT, dispatcher.getRejectedRequestCount());
+    }
+
+    private HttpServletRequest stubRequest(Runnable answer) {
+        AsyncContext asyncContext = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{AsyncContext.class}, (proxy, method, arguments) -> {
+            if (method.getName().equals("complete")) {
+                answer.run();
+            }
+            return (defaultValue(method.getReturnType()));
+        });
+        return ((HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletRequest.class}, (proxy, method, arguments) -> {
+            switch (method.getName()) {
+                case "isAsyncSupported":
+                    return (Boolean.TRUE);
+                case "startAsync":
+                    return (asyncContext);
+                case "getRequestURI":
+                    return ("/pegacorn/fhir/r4/Patient/f001");
+                default:
+                    return (defaultValue(method.getReturnType()));
+            }
+        }));
+    }
+
+    private HttpServletResponse stubResponse(Runnable answer) {
+        return ((HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletResponse.class}, (proxy, method, arguments) -> {
+            if (method.getName().equals("sendError")) {
+                // A rejected request (503) is answered without a continuation
+                answer.run();
+            }
+            return (defaultValue(method.getReturnType()));
+        }));
+    }
+
+    private static Object defaultValue(Class<?> returnType) {
+        if (returnType == boolean.class) {
+            return (Boolean.FALSE);
+        }
+        if (returnType == int.class) {
+            return (0);
+        }
+        if (returnType == long.class) {
+            return (0L);
+        }
+        return (null);
+    }
+}
@@ -0,0 +1,116 @@
+package net.fhirfactory.pegacorn.ladon.edge.answer.writebehind;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WriteBehindJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void completingABatchKeepsAWriteAcceptedMeanwhile() throws Exception {
+        File journalFile = new File(temporaryFolder.getRoot(), "write-behind.journal");
+        WriteBehindJournal journal = new WriteBehindJournal(journalFile, false);
+        journal.open();
+        WriteBehindEntry first = newEntry("1", WriteBehindEntry.WriteBehindOperationEnum.UPDATE, "a");
+        WriteBehindEntry second = newEntry("2", WriteBehindEntry.WriteBehindOperationEnum.UPDATE, "b");
+        journal.appendQueued(first);
+        journal.appendQueued(second);
+        first.setStatus(WriteBehindEntry.WriteBehindStatusEnum.WRITE_COMPLETE);
+        journal.appendDone(Collections.singletonList(first));
+        journal.close();
+
+        List<WriteBehindEntry> outstanding = new WriteBehindJournal(journalFile, false).open();
+
+        assertThat(outstanding).extracting(WriteBehindEntry::getTicket).containsExactly("2");
+    }
+
+    @Test
+    public void aCreateWithAnAssignedIdIsReplayedAsAnUpdate() throws Exception {
+        File journalFile = new File(temporaryFolder.getRoot(), "write-behind.journal");
+        WriteBehindJournal journal = new WriteBehindJournal(journalFile, false);
+        journal.open();
+        WriteBehindEntry create = newEntry("1", WriteBehindEntry.WriteBehindOperationEnum.CREATE, null);
+        journal.appendQueued(create);
+        journal.appendCreated(create, "assigned-id");
+        journal.close();
+
+        List<WriteBehindEntry> outstanding = new WriteBehindJournal(journalFile, false).open();
+
+        assertThat(outstanding).hasSize(1);
+        assertThat(outstanding.get(0).getOperation()).isEqualTo(WriteBehindEntry.WriteBehindOperationEnum.UPDATE);
+        assertThat(outstanding.get(0).getResourceId()).isEqualTo("assigned-id");
+        assertThat(outstanding.get(0).getEncodedResource()).isEqualTo("{\"resourceType\":\"Task\"}");
+    }
+
+    @Test
+    public void theJournalIsEmptiedOnceNothingIsOutstanding() throws Exception {
+        File journalFile = new File(temporaryFolder.getRoot(), "write-behind.journal");
+        WriteBehindJournal journal = new WriteBehindJournal(journalFile, false);
+        journal.open();
+        WriteBehindEntry entry = newEntry("1", WriteBehindEntry.WriteBehindOperationEnum.UPDATE, "a");
+        journal.appendQueued(entry);
+        journal.appendDone(Collections.singletonList(entry));
+
+        assertThat(journal.getSize()).isZero();
+        journal.close();
+    }
+
+    @Test
+    public void completedSegmentsAreDiscardedUnderASustainedLoad() throws Exception {
+        File journalFile = new File(temporaryFolder.getRoot(), "write-behind.journal");
+        WriteBehindJournal journal = new WriteBehindJournal(journalFile, false, 256L);
+        journal.open();
+        WriteBehindEntry previous = null;
+        for(int ticket = 1; ticket <= 200; ticket++){
+            WriteBehindEntry current = newEntry(Integer.toString(ticket), WriteBehindEntry.WriteBehindOperationEnum.UPDATE, "a");
+            journal.appendQueued(current);
+            // There is always a write outstanding, so the journal is never simply emptied
+            if(previous != null){
+                previous.setStatus(WriteBehindEntry.WriteBehindStatusEnum.WRITE_COMPLETE);
+                journal.appendDone(Collections.singletonList(previous));
+            }
+            previous = current;
+        }
+
+        assertThat(journal.getSegmentCount()).isLessThanOrEqualTo(2);
+        assertThat(journal.getSize()).isLessThan(1024L);
+        journal.close();
+
+        List<WriteBehindEntry> outstanding = new WriteBehindJournal(journalFile, false, 256L).open();
+        assertThat(outstanding).extracting(WriteBehindEntry::getTicket).containsExactly("200");
+    }
+
+    @Test
+    public void aWriteOutstandingInAnOlderSegmentIsReplayed() throws Exception {
+        File journalFile = new File(temporaryFolder.getRoot(), "write-behind.journal");
+        WriteBehindJournal journal = new WriteBehindJournal(journalFile, false, 64L);
+        journal.open();
+        WriteBehindEntry stuck = newEntry("stuck", WriteBehindEntry.WriteBehindOperationEnum.CREATE, null);
+        journal.appendQueued(stuck);
+        for(int ticket = 1; ticket <= 20; ticket++){
+            WriteBehindEntry current = newEntry(Integer.toString(ticket), WriteBehindEntry.WriteBehindOperationEnum.UPDATE, "a");
+            journal.appendQueued(current);
+            journal.appendDone(Collections.singletonList(current));
+        }
+        journal.appendCreated(stuck, "assigned-id");
+        journal.close();
+
+        List<WriteBehindEntry> outstanding = new WriteBehindJournal(journalFile, false, 64L).open();
+
+        assertThat(outstanding).extracting(WriteBehindEntry::getTicket).containsExactly("stuck");
+        assertThat(outstanding.get(0).getResourceId()).isEqualTo("assigned-id");
+    }
+
+    private WriteBehindEntry newEntry(String ticket, WriteBehindEntry.WriteBehindOperationEnum operation, String resourceId){
+        return(new WriteBehindEntry(ticket, operation, "Task", resourceId, "{\"resourceType\":\"Task\"}", System.currentTimeMillis()));
+    }
+}